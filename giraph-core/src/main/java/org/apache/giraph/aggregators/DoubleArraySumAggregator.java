@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.aggregators;
+
+/**
+ * Aggregator for summing up double vectors, entry by entry.  Entries
+ * missing from a vector do not contribute.
+ */
+public class DoubleArraySumAggregator
+    extends BasicAggregator<DoubleArrayWritable> {
+  @Override
+  public void aggregate(DoubleArrayWritable value) {
+    double[] sums = getAggregatedValue().ensureLength(value.getLength());
+    double[] values = value.getValues();
+    if (value.isSparse()) {
+      int[] indices = value.getIndices();
+      for (int i = 0; i < value.getNumEntries(); i++) {
+        sums[indices[i]] += values[i];
+      }
+    } else {
+      for (int i = 0; i < value.getLength(); i++) {
+        sums[i] += values[i];
+      }
+    }
+  }
+
+  @Override
+  public DoubleArrayWritable createInitialValue() {
+    return new DoubleArrayWritable();
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.aggregators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Vector of floats used as the value of the Float array aggregators (see
+ * {@link PrimitiveArrayWritable}).
+ */
+public class FloatArrayWritable extends PrimitiveArrayWritable {
+  /** Value of the entries which were not set */
+  private float defaultValue;
+  /**
+   * Values of a dense vector, where the ones past the length have the
+   * default value, or values of the entries of a sparse vector
+   */
+  private float[] values;
+
+  /**
+   * Constructor for an empty dense vector with zero as default value
+   */
+  public FloatArrayWritable() {
+    this(0f);
+  }
+
+  /**
+   * Constructor for an empty dense vector
+   *
+   * @param defaultValue Value of the entries which were not set
+   */
+  public FloatArrayWritable(float defaultValue) {
+    super(4, 0);
+    this.defaultValue = defaultValue;
+    values = new float[0];
+  }
+
+  /**
+   * Constructor for a dense vector which uses the array without copying it
+   *
+   * @param values Values of the vector
+   */
+  public FloatArrayWritable(float[] values) {
+    super(4, values.length);
+    this.values = values;
+  }
+
+  /**
+   * Create an empty sparse vector with zero as default value.
+   *
+   * @return Sparse vector
+   */
+  public static FloatArrayWritable createSparse() {
+    FloatArrayWritable vector = new FloatArrayWritable();
+    vector.makeSparse();
+    return vector;
+  }
+
+  /**
+   * Get the value of the entries which were not set.
+   *
+   * @return Default value
+   */
+  public float getDefaultValue() {
+    return defaultValue;
+  }
+
+  /**
+   * Get the values of a dense vector, valid up to getLength(), or the values
+   * of the entries of a sparse vector, valid up to getNumEntries().
+   *
+   * @return Values of the vector
+   */
+  public float[] getValues() {
+    return values;
+  }
+
+  /**
+   * Get the value at an index.  This is a scan of the entries for sparse
+   * vectors.
+   *
+   * @param index Index in the vector
+   * @return Value at the index
+   */
+  public float get(int index) {
+    int slot = findSlot(index);
+    return slot < 0 ? defaultValue : values[slot];
+  }
+
+  /**
+   * Set the value at an index, growing the vector if needed.  Sparse vectors
+   * add an entry.
+   *
+   * @param index Index in the vector
+   * @param value Value at the index
+   */
+  public void set(int index, float value) {
+    values[prepareSet(index)] = value;
+  }
+
+  /**
+   * Make the vector dense and at least as long as requested.  New values
+   * have the default value.
+   *
+   * @param minLength Minimum length of the vector
+   * @return Values of the vector, valid up to getLength()
+   */
+  public float[] ensureLength(int minLength) {
+    growDense(minLength);
+    return values;
+  }
+
+  /**
+   * Get the values of the vector in a new dense array.
+   *
+   * @param arrayLength Length of the array, at least the vector length
+   * @return Dense array of the values
+   */
+  private float[] toDenseArray(int arrayLength) {
+    if (!isSparse()) {
+      float[] dense = Arrays.copyOf(values, arrayLength);
+      if (arrayLength > values.length) {
+        Arrays.fill(dense, values.length, arrayLength, defaultValue);
+      }
+      return dense;
+    }
+    float[] dense = new float[arrayLength];
+    Arrays.fill(dense, defaultValue);
+    int[] indices = getIndices();
+    for (int i = 0; i < getNumEntries(); i++) {
+      dense[indices[i]] = values[i];
+    }
+    return dense;
+  }
+
+  @Override
+  protected int getCapacity() {
+    return values.length;
+  }
+
+  @Override
+  protected void resizeValues(int capacity) {
+    values = Arrays.copyOf(values, capacity);
+  }
+
+  @Override
+  protected void densify(int arrayLength) {
+    values = toDenseArray(arrayLength);
+  }
+
+  @Override
+  protected void fillDefault(int from, int to) {
+    Arrays.fill(values, from, to, defaultValue);
+  }
+
+  @Override
+  protected boolean isDefault(int slot) {
+    return values[slot] == defaultValue;
+  }
+
+  @Override
+  protected void writeDefaultValue(DataOutput out) throws IOException {
+    out.writeFloat(defaultValue);
+  }
+
+  @Override
+  protected void readDefaultValue(DataInput in) throws IOException {
+    defaultValue = in.readFloat();
+  }
+
+  @Override
+  protected void writeValue(DataOutput out, int slot) throws IOException {
+    out.writeFloat(values[slot]);
+  }
+
+  @Override
+  protected void readValue(DataInput in, int slot) throws IOException {
+    values[slot] = in.readFloat();
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toDenseArray(getLength()));
+  }
+}
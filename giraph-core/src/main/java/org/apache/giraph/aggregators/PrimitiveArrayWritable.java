@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.aggregators;
+
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base class of the vectors of primitive values used by the array
+ * aggregators.  It keeps the length and the sparse entries of the vector
+ * and serializes it, while subclasses hold the values in a primitive array
+ * of their type, so that aggregators reduce vectors in place without
+ * boxing.  The slots below are positions in that array.
+ *
+ * A vector is either dense, or sparse with a list of (index, value) entries
+ * for the few values a vertex contributes to a long vector; each index
+ * should be set only once in a sparse vector.  Entries which were not set
+ * have the default value.  A vector is serialized as one blob, in
+ * whichever of the dense and sparse encodings is smaller, and it is always
+ * dense once read.
+ */
+public abstract class PrimitiveArrayWritable implements Writable {
+  /** Initial capacity of the arrays of a sparse vector */
+  private static final int INITIAL_SPARSE_CAPACITY = 16;
+  /** Number of bytes of a serialized value */
+  private final int valueBytes;
+  /** Length of the vector */
+  private int length;
+  /** Indices of the entries of a sparse vector, null if dense */
+  private int[] indices;
+  /** Number of entries of a sparse vector */
+  private int numEntries;
+
+  /**
+   * Constructor for a dense vector
+   *
+   * @param valueBytes Number of bytes of a serialized value
+   * @param length Length of the vector, with the values already set
+   */
+  protected PrimitiveArrayWritable(int valueBytes, int length) {
+    this.valueBytes = valueBytes;
+    this.length = length;
+  }
+
+  /**
+   * Make an empty vector sparse.
+   */
+  protected void makeSparse() {
+    indices = new int[INITIAL_SPARSE_CAPACITY];
+    resizeValues(INITIAL_SPARSE_CAPACITY);
+  }
+
+  /**
+   * Get the length of the vector, one more than the largest index set.
+   *
+   * @return Length of the vector
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Check if the vector is a list of entries.
+   *
+   * @return True iff the vector is sparse
+   */
+  public boolean isSparse() {
+    return indices != null;
+  }
+
+  /**
+   * Get the number of entries of a sparse vector.
+   *
+   * @return Number of entries
+   */
+  public int getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Get the indices of the entries of a sparse vector, valid up to
+   * getNumEntries().
+   *
+   * @return Indices of the entries, null if the vector is dense
+   */
+  public int[] getIndices() {
+    return indices;
+  }
+
+  /**
+   * Get the slot of the value at an index.  This is a scan of the entries
+   * for sparse vectors.
+   *
+   * @param index Index in the vector
+   * @return Slot of the value, -1 if the index has the default value
+   */
+  protected int findSlot(int index) {
+    if (indices == null) {
+      return index < length ? index : -1;
+    }
+    for (int i = 0; i < numEntries; i++) {
+      if (indices[i] == index) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Make room for the value at an index, growing the vector if needed.
+   * Sparse vectors add an entry.
+   *
+   * @param index Index in the vector
+   * @return Slot to store the value in
+   */
+  protected int prepareSet(int index) {
+    if (indices == null) {
+      growDense(index + 1);
+      return index;
+    }
+    if (numEntries == indices.length) {
+      indices = Arrays.copyOf(indices, 2 * numEntries);
+      resizeValues(2 * numEntries);
+    }
+    indices[numEntries] = index;
+    length = Math.max(length, index + 1);
+    return numEntries++;
+  }
+
+  /**
+   * Make the vector dense and at least as long as requested.  New values
+   * have the default value.
+   *
+   * @param minLength Minimum length of the vector
+   */
+  protected void growDense(int minLength) {
+    if (indices != null) {
+      densify(Math.max(length, minLength));
+      indices = null;
+      numEntries = 0;
+    } else if (minLength > getCapacity()) {
+      int capacity = getCapacity();
+      resizeValues(Math.max(minLength, 2 * capacity));
+      fillDefault(capacity, getCapacity());
+    }
+    length = Math.max(length, minLength);
+  }
+
+  /**
+   * Get the number of values the array can hold.
+   *
+   * @return Length of the array of values
+   */
+  protected abstract int getCapacity();
+
+  /**
+   * Copy the values to an array of another length, padded with zeros.
+   *
+   * @param capacity Length of the new array
+   */
+  protected abstract void resizeValues(int capacity);
+
+  /**
+   * Replace the values of a sparse vector with a dense array of them.
+   *
+   * @param arrayLength Length of the array, at least the vector length
+   */
+  protected abstract void densify(int arrayLength);
+
+  /**
+   * Set slots to the default value.
+   *
+   * @param from First slot, inclusive
+   * @param to Last slot, exclusive
+   */
+  protected abstract void fillDefault(int from, int to);
+
+  /**
+   * Check if a slot holds the default value.
+   *
+   * @param slot Slot of the value
+   * @return True iff the value is the default value
+   */
+  protected abstract boolean isDefault(int slot);
+
+  /**
+   * Write the default value.
+   *
+   * @param out Output to write to
+   * @throws IOException
+   */
+  protected abstract void writeDefaultValue(DataOutput out)
+    throws IOException;
+
+  /**
+   * Read the default value.
+   *
+   * @param in Input to read from
+   * @throws IOException
+   */
+  protected abstract void readDefaultValue(DataInput in) throws IOException;
+
+  /**
+   * Write the value of a slot.
+   *
+   * @param out Output to write to
+   * @param slot Slot of the value
+   * @throws IOException
+   */
+  protected abstract void writeValue(DataOutput out, int slot)
+    throws IOException;
+
+  /**
+   * Read a value into a slot.
+   *
+   * @param in Input to read from
+   * @param slot Slot of the value
+   * @throws IOException
+   */
+  protected abstract void readValue(DataInput in, int slot)
+    throws IOException;
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    writeDefaultValue(out);
+    out.writeInt(length);
+    int numSet = numEntries;
+    if (indices == null) {
+      for (int i = 0; i < length; i++) {
+        if (!isDefault(i)) {
+          numSet++;
+        }
+      }
+    }
+    // A sparse entry takes an int index on top of its value
+    boolean writeSparse =
+        (4L + valueBytes) * numSet < (long) valueBytes * length;
+    out.writeBoolean(writeSparse);
+    if (writeSparse) {
+      out.writeInt(numSet);
+      if (indices != null) {
+        for (int i = 0; i < numEntries; i++) {
+          out.writeInt(indices[i]);
+          writeValue(out, i);
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          if (!isDefault(i)) {
+            out.writeInt(i);
+            writeValue(out, i);
+          }
+        }
+      }
+    } else if (indices == null) {
+      for (int i = 0; i < length; i++) {
+        writeValue(out, i);
+      }
+    } else {
+      // Slots of the entries in index order, the last one set winning
+      int[] slots = new int[length];
+      Arrays.fill(slots, -1);
+      for (int i = 0; i < numEntries; i++) {
+        slots[indices[i]] = i;
+      }
+      for (int i = 0; i < length; i++) {
+        if (slots[i] < 0) {
+          writeDefaultValue(out);
+        } else {
+          writeValue(out, slots[i]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    readDefaultValue(in);
+    length = in.readInt();
+    if (indices != null || getCapacity() < length) {
+      resizeValues(length);
+    }
+    indices = null;
+    numEntries = 0;
+    if (in.readBoolean()) {
+      fillDefault(0, getCapacity());
+      int numSet = in.readInt();
+      for (int i = 0; i < numSet; i++) {
+        readValue(in, in.readInt());
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        readValue(in, i);
+      }
+      fillDefault(length, getCapacity());
+    }
+  }
+}
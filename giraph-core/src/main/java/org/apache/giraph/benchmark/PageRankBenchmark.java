@@ -23,6 +23,7 @@ import org.apache.giraph.combiner.FloatSumCombiner;
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.conf.GiraphTypes;
 import org.apache.giraph.edge.IntNullArrayEdges;
+import org.apache.giraph.edge.IntNullCompressedEdges;
 import org.apache.giraph.graph.Language;
 import org.apache.giraph.io.formats.PseudoRandomInputFormatConstants;
 import org.apache.giraph.io.formats.PseudoRandomIntNullVertexInputFormat;
@@ -33,6 +34,7 @@ import org.apache.giraph.utils.DistributedCacheUtils;
 import org.apache.giraph.utils.ReflectionUtils;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
 
 import com.google.common.collect.Sets;
 
@@ -42,12 +44,21 @@ import java.util.Set;
  * Benchmark for {@link PageRankComputation}
  */
 public class PageRankBenchmark extends GiraphBenchmark {
+  /** Class logger */
+  private static final Logger LOG = Logger.getLogger(PageRankBenchmark.class);
+
+  /** Option for OutEdges class */
+  private static final BenchmarkOption EDGES_CLASS = new BenchmarkOption(
+      "c", "edgesClass", true,
+      "Vertex edges class (0 for IntNullArrayEdges (default), " +
+          "1 for IntNullCompressedEdges)");
+
   @Override
   public Set<BenchmarkOption> getBenchmarkOptions() {
     return Sets.newHashSet(BenchmarkOption.VERTICES,
         BenchmarkOption.EDGES_PER_VERTEX, BenchmarkOption.SUPERSTEPS,
         BenchmarkOption.LOCAL_EDGES_MIN_RATIO, BenchmarkOption.JYTHON,
-        BenchmarkOption.SCRIPT_PATH);
+        BenchmarkOption.SCRIPT_PATH, EDGES_CLASS);
   }
 
   @Override
@@ -75,7 +86,18 @@ public class PageRankBenchmark extends GiraphBenchmark {
     } else {
       conf.setComputationClass(PageRankComputation.class);
     }
-    conf.setOutEdgesClass(IntNullArrayEdges.class);
+    int edgesClassOption = EDGES_CLASS.getOptionIntValue(cmd, 0);
+    switch (edgesClassOption) {
+    case 0:
+      conf.setOutEdgesClass(IntNullArrayEdges.class);
+      break;
+    case 1:
+      conf.setOutEdgesClass(IntNullCompressedEdges.class);
+      break;
+    default:
+      LOG.info("Unknown OutEdges class, defaulting to IntNullArrayEdges");
+      conf.setOutEdgesClass(IntNullArrayEdges.class);
+    }
     conf.setCombinerClass(FloatSumCombiner.class);
     conf.setVertexInputFormatClass(
         PseudoRandomIntNullVertexInputFormat.class);
@@ -160,6 +160,14 @@ public abstract class BspService<I extends WritableComparable,
   public static final String MASTER_SUFFIX = "_master";
   /** If at the end of a checkpoint file, indicates metadata */
   public static final String CHECKPOINT_METADATA_POSTFIX = ".metadata";
+  /**
+   * Starts the checkpoint metadata files, followed by the format version.
+   * Metadata of the first format, which wrote all of the partitions of a
+   * worker to one vertices file, starts with the partition count instead.
+   */
+  public static final int CHECKPOINT_METADATA_VERSION_MARKER = -1;
+  /** Format version of the checkpoints, with one file per partition */
+  public static final int CHECKPOINT_FORMAT_VERSION = 2;
   /**
    * If at the end of a checkpoint file, indicates vertices, edges,
    * messages, etc.
@@ -18,6 +18,7 @@
 
 package org.apache.giraph.bsp;
 
+import org.apache.giraph.master.FinishedWorkerData;
 import org.apache.giraph.master.MasterAggregatorHandler;
 import org.apache.giraph.master.MasterCompute;
 import org.apache.giraph.master.MasterInfo;
@@ -123,6 +124,14 @@ public interface CentralizedServiceMaster<I extends WritableComparable,
    */
   MasterAggregatorHandler getAggregatorHandler();
 
+  /**
+   * Get the information of the workers which finished a superstep, when
+   * they send it directly to the master
+   *
+   * @return Finished worker data
+   */
+  FinishedWorkerData getFinishedWorkerData();
+
   /**
    * Get MasterCompute object
    *
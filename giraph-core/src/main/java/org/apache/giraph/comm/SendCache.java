@@ -23,6 +23,7 @@ import com.google.common.collect.Maps;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.partition.PartitionOwner;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ByteArrayVertexIdData;
 import org.apache.giraph.utils.PairList;
 import org.apache.giraph.worker.WorkerInfo;
@@ -53,6 +54,8 @@ public abstract class SendCache<I extends WritableComparable, T,
       Maps.newHashMap();
   /** Giraph configuration */
   private final ImmutableClassesGiraphConfiguration conf;
+  /** Pool of the buffers (null if not pooled) */
+  private final ByteArrayPool bufferPool;
 
   /**
    * Constructor.
@@ -62,12 +65,15 @@ public abstract class SendCache<I extends WritableComparable, T,
    * @param maxRequestSize Maximum request size (in bytes)
    * @param additionalRequestSize Additional request size (expressed as a
    *                              ratio of the average request size)
+   * @param bufferPool Pool of the buffers (null if not pooled)
    */
   public SendCache(ImmutableClassesGiraphConfiguration conf,
                    CentralizedServiceWorker<?, ?, ?> serviceWorker,
                    int maxRequestSize,
-                   float additionalRequestSize) {
+                   float additionalRequestSize,
+                   ByteArrayPool bufferPool) {
     this.conf = conf;
+    this.bufferPool = bufferPool;
 
     int maxPartition = 0;
     for (PartitionOwner partitionOwner : serviceWorker.getPartitionOwners()) {
@@ -122,7 +128,12 @@ public abstract class SendCache<I extends WritableComparable, T,
     if (partitionData == null) {
       partitionData = createByteArrayVertexIdData();
       partitionData.setConf(conf);
-      partitionData.initialize(initialBufferSizes[workerInfo.getTaskId()]);
+      if (bufferPool == null) {
+        partitionData.initialize(initialBufferSizes[workerInfo.getTaskId()]);
+      } else {
+        partitionData.initialize(
+            initialBufferSizes[workerInfo.getTaskId()], bufferPool);
+      }
       dataCache[partitionId] = partitionData;
     } else {
       originalSize = partitionData.getSize();
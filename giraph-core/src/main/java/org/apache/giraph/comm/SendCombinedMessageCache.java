@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm;
+
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.combiner.Combiner;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.partition.PartitionOwner;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.giraph.worker.WorkerInfo;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+import com.google.common.collect.Maps;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.util.Map;
+
+import static org.apache.giraph.conf.GiraphConstants.SEND_COMBINING_CACHE_MAX_MESSAGES;
+
+/**
+ * Combines the messages to be sent to the same vertex with the configured
+ * {@link Combiner} before they are serialized, so that only one message
+ * per destination vertex goes over the wire.  Messages are kept in a hash
+ * map per destination partition, keyed by primitives for
+ * {@link IntWritable} and {@link LongWritable} vertex ids.
+ *
+ * The number of combined messages is capped; once the cap is reached,
+ * messages to vertices without a combined message aren't accepted and
+ * have to be added to the {@link SendMessageCache} instead.  The combined
+ * messages are moved to the {@link SendMessageCache} when flushing.
+ * Not thread-safe.
+ *
+ * @param <I> Vertex id
+ * @param <M> Message data
+ */
+@SuppressWarnings("unchecked")
+public class SendCombinedMessageCache<I extends WritableComparable,
+    M extends Writable> {
+  /** Giraph configuration */
+  private final ImmutableClassesGiraphConfiguration<I, ?, ?> conf;
+  /** Message combiner */
+  private final Combiner<I, M> combiner;
+  /** Maximum number of combined messages */
+  private final int maxMessages;
+  /** Combined messages of every partition (null if none yet) */
+  private final CombinedMessages[] partitionMessages;
+  /** Worker owning every partition with combined messages */
+  private final WorkerInfo[] partitionWorkers;
+  /** Current number of combined messages */
+  private int numMessages = 0;
+
+  /**
+   * Constructor
+   *
+   * @param conf Giraph configuration
+   * @param serviceWorker Service worker
+   */
+  public SendCombinedMessageCache(
+      ImmutableClassesGiraphConfiguration<I, ?, ?> conf,
+      CentralizedServiceWorker<?, ?, ?> serviceWorker) {
+    this.conf = conf;
+    combiner = conf.<M>createCombiner();
+    maxMessages = SEND_COMBINING_CACHE_MAX_MESSAGES.get(conf);
+    int maxPartition = 0;
+    for (PartitionOwner partitionOwner : serviceWorker.getPartitionOwners()) {
+      maxPartition = Math.max(partitionOwner.getPartitionId(), maxPartition);
+    }
+    partitionMessages =
+        (CombinedMessages[]) new SendCombinedMessageCache.CombinedMessages[
+            maxPartition + 1];
+    partitionWorkers = new WorkerInfo[maxPartition + 1];
+  }
+
+  /**
+   * Create the combined messages of a partition, keyed by primitives if
+   * the vertex id type allows it.
+   *
+   * @return Empty combined messages
+   */
+  private CombinedMessages createCombinedMessages() {
+    Class<I> vertexIdClass = conf.getVertexIdClass();
+    if (vertexIdClass.equals(IntWritable.class)) {
+      return new IntCombinedMessages();
+    } else if (vertexIdClass.equals(LongWritable.class)) {
+      return new LongCombinedMessages();
+    } else {
+      return new ObjectCombinedMessages();
+    }
+  }
+
+  /**
+   * Combine a message with the other messages to the same vertex.
+   *
+   * @param workerInfo The remote worker destination
+   * @param partitionId The remote partition this message belongs to
+   * @param destVertexId Vertex id that is the ultimate destination
+   * @param message Message to send (not held on to)
+   * @return True if the message was combined, false if the cache is full
+   *         and the message has to be sent without combining
+   */
+  public boolean addMessage(WorkerInfo workerInfo, int partitionId,
+      I destVertexId, M message) {
+    CombinedMessages messages = partitionMessages[partitionId];
+    if (messages == null) {
+      messages = createCombinedMessages();
+      partitionMessages[partitionId] = messages;
+      partitionWorkers[partitionId] = workerInfo;
+    }
+    M combinedMessage = messages.get(destVertexId);
+    if (combinedMessage == null) {
+      if (numMessages >= maxMessages) {
+        return false;
+      }
+      combinedMessage = combiner.createInitialMessage();
+      messages.put(destVertexId, combinedMessage);
+      ++numMessages;
+    }
+    combiner.combine(destVertexId, combinedMessage, message);
+    return true;
+  }
+
+  /**
+   * Move all of the combined messages to a sink, which adds them to the
+   * message cache to be sent.
+   *
+   * @param messageSink Sink to move the messages to
+   */
+  public void moveMessages(MessageSink<I, M> messageSink) {
+    if (numMessages == 0) {
+      return;
+    }
+    for (int partitionId = 0; partitionId < partitionMessages.length;
+         ++partitionId) {
+      if (partitionMessages[partitionId] != null) {
+        partitionMessages[partitionId].moveMessages(messageSink,
+            partitionWorkers[partitionId], partitionId);
+      }
+    }
+    numMessages = 0;
+  }
+
+  public int getNumMessages() {
+    return numMessages;
+  }
+
+  /**
+   * Receives the combined messages as they are moved out of the cache, so
+   * that the caller can send a request whenever a worker's messages are
+   * big enough.
+   *
+   * @param <I> Vertex id
+   * @param <M> Message data
+   */
+  public interface MessageSink<I extends WritableComparable,
+      M extends Writable> {
+    /**
+     * Add a combined message to be sent.
+     *
+     * @param workerInfo The remote worker destination
+     * @param partitionId The remote partition this message belongs to
+     * @param destVertexId Vertex id (reused, must not be held on to)
+     * @param message Combined message
+     */
+    void addMessage(WorkerInfo workerInfo, int partitionId, I destVertexId,
+        M message);
+  }
+
+  /**
+   * Combined messages of a partition, one per destination vertex.
+   */
+  private abstract class CombinedMessages {
+    /**
+     * Get the combined message of a vertex.
+     *
+     * @param vertexId Vertex id
+     * @return Combined message, null if there is none
+     */
+    abstract M get(I vertexId);
+
+    /**
+     * Add the combined message of a vertex.
+     *
+     * @param vertexId Vertex id (may be reused by the caller)
+     * @param message Combined message
+     */
+    abstract void put(I vertexId, M message);
+
+    /**
+     * Move the combined messages to a sink, leaving this empty.
+     *
+     * @param messageSink Sink to move the messages to
+     * @param workerInfo Worker owning the partition
+     * @param partitionId Partition id
+     */
+    abstract void moveMessages(MessageSink<I, M> messageSink,
+        WorkerInfo workerInfo, int partitionId);
+  }
+
+  /**
+   * Combined messages keyed by int vertex ids.
+   */
+  private class IntCombinedMessages extends CombinedMessages {
+    /** Combined message of every vertex */
+    private final Int2ObjectOpenHashMap<M> map =
+        new Int2ObjectOpenHashMap<M>();
+
+    @Override
+    M get(I vertexId) {
+      return map.get(((IntWritable) vertexId).get());
+    }
+
+    @Override
+    void put(I vertexId, M message) {
+      map.put(((IntWritable) vertexId).get(), message);
+    }
+
+    @Override
+    void moveMessages(MessageSink<I, M> messageSink,
+        WorkerInfo workerInfo, int partitionId) {
+      IntWritable vertexId = new IntWritable();
+      ObjectIterator<Int2ObjectMap.Entry<M>> iterator =
+          map.int2ObjectEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Int2ObjectMap.Entry<M> entry = iterator.next();
+        vertexId.set(entry.getIntKey());
+        messageSink.addMessage(
+            workerInfo, partitionId, (I) vertexId, entry.getValue());
+      }
+      map.clear();
+    }
+  }
+
+  /**
+   * Combined messages keyed by long vertex ids.
+   */
+  private class LongCombinedMessages extends CombinedMessages {
+    /** Combined message of every vertex */
+    private final Long2ObjectOpenHashMap<M> map =
+        new Long2ObjectOpenHashMap<M>();
+
+    @Override
+    M get(I vertexId) {
+      return map.get(((LongWritable) vertexId).get());
+    }
+
+    @Override
+    void put(I vertexId, M message) {
+      map.put(((LongWritable) vertexId).get(), message);
+    }
+
+    @Override
+    void moveMessages(MessageSink<I, M> messageSink,
+        WorkerInfo workerInfo, int partitionId) {
+      LongWritable vertexId = new LongWritable();
+      ObjectIterator<Long2ObjectMap.Entry<M>> iterator =
+          map.long2ObjectEntrySet().fastIterator();
+      while (iterator.hasNext()) {
+        Long2ObjectMap.Entry<M> entry = iterator.next();
+        vertexId.set(entry.getLongKey());
+        messageSink.addMessage(
+            workerInfo, partitionId, (I) vertexId, entry.getValue());
+      }
+      map.clear();
+    }
+  }
+
+  /**
+   * Combined messages keyed by copies of any other vertex ids.
+   */
+  private class ObjectCombinedMessages extends CombinedMessages {
+    /** Combined message of every vertex */
+    private final Map<I, M> map = Maps.newHashMap();
+
+    @Override
+    M get(I vertexId) {
+      return map.get(vertexId);
+    }
+
+    @Override
+    void put(I vertexId, M message) {
+      I vertexIdCopy = conf.createVertexId();
+      WritableUtils.readFieldsFromByteArray(
+          WritableUtils.writeToByteArray(vertexId), vertexIdCopy);
+      map.put(vertexIdCopy, message);
+    }
+
+    @Override
+    void moveMessages(MessageSink<I, M> messageSink,
+        WorkerInfo workerInfo, int partitionId) {
+      for (Map.Entry<I, M> entry : map.entrySet()) {
+        messageSink.addMessage(
+            workerInfo, partitionId, entry.getKey(), entry.getValue());
+      }
+      map.clear();
+    }
+  }
+}
@@ -21,6 +21,7 @@ package org.apache.giraph.comm;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.edge.Edge;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ByteArrayVertexIdEdges;
 import org.apache.giraph.utils.PairList;
 import org.apache.giraph.worker.WorkerInfo;
@@ -44,11 +45,13 @@ public class SendEdgeCache<I extends WritableComparable, E extends Writable>
    *
    * @param conf Giraph configuration
    * @param serviceWorker Service worker
+   * @param bufferPool Pool of the buffers (null if not pooled)
    */
   public SendEdgeCache(ImmutableClassesGiraphConfiguration conf,
-                       CentralizedServiceWorker<?, ?, ?> serviceWorker) {
+                       CentralizedServiceWorker<?, ?, ?> serviceWorker,
+                       ByteArrayPool bufferPool) {
     super(conf, serviceWorker, MAX_EDGE_REQUEST_SIZE.get(conf),
-        ADDITIONAL_EDGE_REQUEST_SIZE.get(conf));
+        ADDITIONAL_EDGE_REQUEST_SIZE.get(conf), bufferPool);
   }
 
   @Override
@@ -20,6 +20,7 @@ package org.apache.giraph.comm;
 
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ByteArrayVertexIdMessages;
 import org.apache.giraph.utils.PairList;
 import org.apache.giraph.worker.WorkerInfo;
@@ -43,11 +44,13 @@ public class SendMessageCache<I extends WritableComparable, M extends Writable>
    *
    * @param conf Giraph configuration
    * @param serviceWorker Service worker
+   * @param bufferPool Pool of the buffers (null if not pooled)
    */
   public SendMessageCache(ImmutableClassesGiraphConfiguration conf,
-      CentralizedServiceWorker<?, ?, ?> serviceWorker) {
+      CentralizedServiceWorker<?, ?, ?> serviceWorker,
+      ByteArrayPool bufferPool) {
     super(conf, serviceWorker, MAX_MSG_REQUEST_SIZE.get(conf),
-        ADDITIONAL_MSG_REQUEST_SIZE.get(conf));
+        ADDITIONAL_MSG_REQUEST_SIZE.get(conf), bufferPool);
   }
 
   @Override
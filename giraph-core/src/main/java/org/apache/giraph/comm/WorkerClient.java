@@ -21,6 +21,7 @@ package org.apache.giraph.comm;
 import org.apache.giraph.comm.requests.WritableRequest;
 
 import org.apache.giraph.partition.PartitionOwner;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 
@@ -75,6 +76,13 @@ else[HADOOP_NON_SECURE]*/
    */
   void sendWritableRequest(Integer destTaskId, WritableRequest request);
 
+  /**
+   * Get the pool of the buffers of the sent requests.
+   *
+   * @return Pool of the send buffers, null if they aren't pooled
+   */
+  ByteArrayPool getSendBufferPool();
+
   /**
    * Wait until all the outstanding requests are completed.
    */
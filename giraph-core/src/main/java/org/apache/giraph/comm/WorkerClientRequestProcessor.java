@@ -63,6 +63,17 @@ public interface WorkerClientRequestProcessor<I extends WritableComparable,
   void sendPartitionRequest(WorkerInfo workerInfo,
                             Partition<I, V, E> partition);
 
+  /**
+   * Send a partition which is moved to another worker, in chunks of
+   * vertices, so that the partition is never serialized as a whole.
+   *
+   * @param workerInfo Worker to send the partition to
+   * @param partition Partition to send
+   * @return Number of bytes of vertices sent
+   */
+  long sendPartitionInChunks(WorkerInfo workerInfo,
+                             Partition<I, V, E> partition);
+
   /**
    * Sends a request to the appropriate vertex range owner to add an edge
    *
@@ -120,6 +131,15 @@ public interface WorkerClientRequestProcessor<I extends WritableComparable,
    */
   void flush() throws IOException;
 
+  /**
+   * Flush only the outgoing messages, e.g. after computing a partition.
+   * Like {@link #flush()}, the messages are sent but not guaranteed to have
+   * been delivered yet.
+   *
+   * @throws IOException
+   */
+  void flushMessages() throws IOException;
+
   /**
    * Get the messages sent during this superstep and clear them.
    *
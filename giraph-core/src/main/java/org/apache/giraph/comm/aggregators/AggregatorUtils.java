@@ -18,12 +18,15 @@
 
 package org.apache.giraph.comm.aggregators;
 
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.aggregators.Aggregator;
 import org.apache.giraph.utils.ReflectionUtils;
 import org.apache.giraph.worker.WorkerInfo;
 import org.apache.hadoop.io.Writable;
 
+import com.google.common.collect.Lists;
+
 import java.util.List;
 
 /**
@@ -101,6 +104,91 @@ public class AggregatorUtils {
     return workers.get(index);
   }
 
+  /**
+   * Get the fan-out of the tree over workers which reduces and broadcasts
+   * the aggregators.
+   *
+   * @param conf Giraph configuration
+   * @return Fan-out of the tree, 0 if aggregators go through their owners
+   */
+  public static int getTreeFanOut(ImmutableClassesGiraphConfiguration conf) {
+    return Math.max(0, GiraphConstants.AGGREGATOR_TREE_FAN_OUT.get(conf));
+  }
+
+  /**
+   * Check if aggregators are reduced and broadcast through a tree over
+   * workers.
+   *
+   * @param conf Giraph configuration
+   * @return True iff aggregators go through the tree
+   */
+  public static boolean useAggregatorTree(
+      ImmutableClassesGiraphConfiguration conf) {
+    return getTreeFanOut(conf) > 0;
+  }
+
+  /**
+   * Get the root of the aggregator tree, which exchanges the aggregators
+   * with the master.
+   *
+   * @param workers List of workers
+   * @return Root of the tree
+   */
+  public static WorkerInfo getTreeRoot(List<WorkerInfo> workers) {
+    return workers.get(0);
+  }
+
+  /**
+   * Get the parent of a worker in the aggregator tree.  Workers are the
+   * nodes of the tree in the order of the list, so every worker builds the
+   * same tree.
+   *
+   * @param taskId Task id of the worker
+   * @param workers List of workers
+   * @param fanOut Fan-out of the tree
+   * @return Parent of the worker, null for the root
+   */
+  public static WorkerInfo getTreeParent(int taskId,
+      List<WorkerInfo> workers, int fanOut) {
+    int index = getTreeIndex(taskId, workers);
+    return index == 0 ? null : workers.get((index - 1) / fanOut);
+  }
+
+  /**
+   * Get the children of a worker in the aggregator tree.
+   *
+   * @param taskId Task id of the worker
+   * @param workers List of workers
+   * @param fanOut Fan-out of the tree
+   * @return Children of the worker
+   */
+  public static List<WorkerInfo> getTreeChildren(int taskId,
+      List<WorkerInfo> workers, int fanOut) {
+    int first = getTreeIndex(taskId, workers) * fanOut + 1;
+    List<WorkerInfo> children = Lists.newArrayListWithCapacity(fanOut);
+    for (int i = first; i < Math.min(first + fanOut, workers.size()); i++) {
+      children.add(workers.get(i));
+    }
+    return children;
+  }
+
+  /**
+   * Get the position of a worker in the aggregator tree.
+   *
+   * @param taskId Task id of the worker
+   * @param workers List of workers
+   * @return Index of the worker in the list
+   */
+  private static int getTreeIndex(int taskId, List<WorkerInfo> workers) {
+    for (int i = 0; i < workers.size(); i++) {
+      if (workers.get(i).getTaskId() == taskId) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("getTreeIndex: Task " + taskId +
+        " is not one of the workers " + workers);
+  }
+
   /**
    * Check if we should use thread local aggregators.
    *
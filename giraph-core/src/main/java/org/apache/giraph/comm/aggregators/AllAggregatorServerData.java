@@ -82,6 +82,15 @@ public class AllAggregatorServerData {
    * to know how many requests it has to receive.
    */
   private final TaskIdsPermitsBarrier workersBarrier;
+  /**
+   * Aggregator data which this worker received from its parent in the
+   * aggregator tree and which it is going to forward to its children.
+   * Thread-safe.
+   */
+  private final List<byte[]> workerData =
+      Collections.synchronizedList(Lists.<byte[]>newArrayList());
+  /** Are the aggregators broadcast through the tree over workers? */
+  private final boolean useAggregatorTree;
   /** Progressable used to report progress */
   private final Progressable progressable;
   /** Configuration */
@@ -99,6 +108,7 @@ public class AllAggregatorServerData {
     this.conf = conf;
     workersBarrier = new TaskIdsPermitsBarrier(progressable);
     masterBarrier = new TaskIdsPermitsBarrier(progressable);
+    useAggregatorTree = AggregatorUtils.useAggregatorTree(conf);
   }
 
   /**
@@ -146,6 +156,15 @@ public class AllAggregatorServerData {
     }
   }
 
+  /**
+   * Check if the aggregators are broadcast through the tree over workers.
+   *
+   * @return True iff aggregators go through the tree
+   */
+  public boolean useAggregatorTree() {
+    return useAggregatorTree;
+  }
+
   /**
    * Notify this object that an aggregator request from master has been
    * received.
@@ -171,8 +190,14 @@ public class AllAggregatorServerData {
   /**
    * Notify this object that an aggregator request from some worker has been
    * received.
+   *
+   * @param aggregatorData Byte request with data received from the worker,
+   *                       kept to be forwarded in the aggregator tree
    */
-  public void receivedRequestFromWorker() {
+  public void receivedRequestFromWorker(byte[] aggregatorData) {
+    if (useAggregatorTree) {
+      workerData.add(aggregatorData);
+    }
     workersBarrier.releaseOnePermit();
   }
 
@@ -204,11 +229,29 @@ public class AllAggregatorServerData {
     return masterData;
   }
 
+  /**
+   * This function will wait until all aggregator requests from the parent of
+   * this worker in the aggregator tree have arrived, and return that data
+   * afterwards.
+   *
+   * @param parentTaskId Task id of the parent
+   * @return Iterable through data received from the parent
+   */
+  public Iterable<byte[]> getDataFromWorkerWhenReady(int parentTaskId) {
+    workersBarrier.waitForRequiredPermits(
+        Collections.singleton(parentTaskId));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("getDataFromWorkerWhenReady: " +
+          "Aggregator data for forwarding ready");
+    }
+    return workerData;
+  }
+
   /**
    * This function will wait until all aggregator requests from workers have
    * arrived, and fill the maps for next superstep when ready.
    *
-   * @param workerIds All workers in the job apart from the current one
+   * @param workerIds Workers which send aggregators to the current one
    * @param previousAggregatedValuesMap Map of values from previous
    *                                    superstep to fill out
    * @param currentAggregatorMap Map of aggregators for current superstep to
@@ -243,6 +286,7 @@ public class AllAggregatorServerData {
    */
   public void reset() {
     masterData.clear();
+    workerData.clear();
     if (LOG.isDebugEnabled()) {
       LOG.debug("reset: Ready for next superstep");
     }
@@ -55,10 +55,19 @@ public interface WorkerAggregatorRequestProcessor {
   void sendAggregatedValuesToMaster(byte[] aggregatorData) throws IOException;
 
   /**
-   * Sends aggregators to all other workers
+   * Sends aggregators to all other workers, or to the children of this
+   * worker in the aggregator tree
    *
    * @param aggregatorDataList Serialized aggregator data split into chunks
    */
   void distributeAggregators(
       Iterable<byte[]> aggregatorDataList) throws IOException;
+
+  /**
+   * Get the number of bytes of aggregator data sent since the last call,
+   * and start counting again from zero.
+   *
+   * @return Bytes sent
+   */
+  long resetSentBytes();
 }
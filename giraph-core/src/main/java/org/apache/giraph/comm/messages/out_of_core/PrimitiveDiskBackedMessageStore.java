@@ -0,0 +1,662 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.messages.out_of_core;
+
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.combiner.Combiner;
+import org.apache.giraph.comm.messages.MessageStore;
+import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.EmptyIterable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Out-of-core message store to be used when ids are IntWritable or
+ * LongWritable, messages are IntWritable, LongWritable, FloatWritable or
+ * DoubleWritable, and combiner is used.  The ids and the messages are
+ * kept as longs (see {@link PrimitiveWritableType}), so int ids and int or
+ * float messages take as much memory as long ones, but not on disk.
+ * Messages are combined in fastutil primitive maps.  When there are more
+ * than the maximum number of messages in memory, the biggest partition map
+ * is spilled to disk as a run of (vertex id, message) pairs sorted by
+ * vertex id.  The first time the messages of a partition are read, its runs
+ * are merged in vertex id order (combining the messages of the same vertex)
+ * into sorted arrays, which are looked up sequentially or by binary search.
+ *
+ * @param <I> Vertex id
+ * @param <M> Message data
+ */
+public class PrimitiveDiskBackedMessageStore<I extends WritableComparable,
+    M extends Writable> implements MessageStore<I, M> {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(PrimitiveDiskBackedMessageStore.class);
+  /** Orders run cursors by their current vertex id */
+  private static final Comparator<RunCursor> CURSOR_COMPARATOR =
+      new Comparator<RunCursor>() {
+        @Override
+        public int compare(RunCursor cursor1, RunCursor cursor2) {
+          return cursor1.vertexId < cursor2.vertexId ? -1 :
+              (cursor1.vertexId == cursor2.vertexId ? 0 : 1);
+        }
+      };
+  /** Map from partition id to its messages */
+  private final ConcurrentMap<Integer, PartitionMessages> partitionMessages =
+      Maps.newConcurrentMap();
+  /** Message combiner */
+  private final Combiner<I, M> combiner;
+  /** Service worker */
+  private final CentralizedServiceWorker<I, ?, ?> service;
+  /** Type of the vertex ids */
+  private final PrimitiveWritableType idType;
+  /** Type of the messages */
+  private final PrimitiveWritableType messageType;
+  /** Base paths of the run files, one per directory */
+  private final String[] basePaths;
+  /** Buffer size to use when reading and writing runs */
+  private final int bufferSize;
+  /** Number of messages to keep in memory */
+  private final int maxMessagesInMemory;
+  /** Number of messages in the partition maps */
+  private final AtomicInteger messagesInMemory = new AtomicInteger();
+  /** Counter for naming the run files */
+  private final AtomicInteger runCounter = new AtomicInteger();
+
+  /**
+   * Constructor
+   *
+   * @param service Service worker
+   * @param combiner Message combiner
+   * @param idType Type of the vertex ids, int or long
+   * @param messageType Type of the messages
+   * @param basePaths Base paths of the run files, one per directory
+   * @param bufferSize Buffer size to use when reading and writing runs
+   * @param maxMessagesInMemory Number of messages to keep in memory
+   */
+  public PrimitiveDiskBackedMessageStore(
+      CentralizedServiceWorker<I, ?, ?> service, Combiner<I, M> combiner,
+      PrimitiveWritableType idType, PrimitiveWritableType messageType,
+      String[] basePaths, int bufferSize, int maxMessagesInMemory) {
+    this.service = service;
+    this.combiner = combiner;
+    this.idType = idType;
+    this.messageType = messageType;
+    this.basePaths = basePaths;
+    this.bufferSize = bufferSize;
+    this.maxMessagesInMemory = maxMessagesInMemory;
+  }
+
+  /**
+   * Get the messages of a partition, creating them if needed.
+   *
+   * @param partitionId Id of the partition
+   * @return Messages of the partition
+   */
+  private PartitionMessages getOrCreatePartitionMessages(int partitionId) {
+    PartitionMessages messages = partitionMessages.get(partitionId);
+    if (messages == null) {
+      PartitionMessages newMessages = new PartitionMessages(partitionId);
+      messages = partitionMessages.putIfAbsent(partitionId, newMessages);
+      if (messages == null) {
+        messages = newMessages;
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Get the messages of the partition which a vertex belongs to.
+   *
+   * @param vertexId Id of the vertex
+   * @return Messages of the partition, null if there are none
+   */
+  private PartitionMessages getPartitionMessages(I vertexId) {
+    return partitionMessages.get(service.getPartitionId(vertexId));
+  }
+
+  @Override
+  public void addPartitionMessages(int partitionId,
+      ByteArrayVertexIdMessages<I, M> messages)
+    throws IOException {
+    MessageCombining combining = new MessageCombining();
+    PartitionMessages partition = getOrCreatePartitionMessages(partitionId);
+    synchronized (partition) {
+      int previousSize = partition.received.size();
+      ByteArrayVertexIdMessages<I, M>.VertexIdMessageIterator iterator =
+          messages.getVertexIdMessageIterator();
+      while (iterator.hasNext()) {
+        iterator.next();
+        partition.receive(idType.toLong(iterator.getCurrentVertexId()),
+            messageType.toLong(iterator.getCurrentMessage()), combining);
+      }
+      messagesInMemory.addAndGet(partition.received.size() - previousSize);
+    }
+    checkMemory();
+  }
+
+  /**
+   * Spill the biggest partition maps until there are no more than the
+   * maximum number of messages in memory.
+   *
+   * @throws IOException
+   */
+  private void checkMemory() throws IOException {
+    while (messagesInMemory.get() > maxMessagesInMemory) {
+      PartitionMessages biggest = null;
+      int biggestSize = 0;
+      for (PartitionMessages partition : partitionMessages.values()) {
+        int size = partition.received.size();
+        if (size > biggestSize) {
+          biggestSize = size;
+          biggest = partition;
+        }
+      }
+      if (biggest == null) {
+        break;
+      }
+      biggest.spill();
+    }
+  }
+
+  @Override
+  public void clearPartition(int partitionId) throws IOException {
+    PartitionMessages partition = partitionMessages.get(partitionId);
+    if (partition != null) {
+      partition.clear();
+    }
+  }
+
+  @Override
+  public boolean hasMessagesForVertex(I vertexId) {
+    PartitionMessages partition = getPartitionMessages(vertexId);
+    if (partition == null) {
+      return false;
+    }
+    try {
+      synchronized (partition) {
+        return partition.find(idType.toLong(vertexId)) >= 0;
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "hasMessagesForVertex: Merging runs failed", e);
+    }
+  }
+
+  @Override
+  public Iterable<M> getVertexMessages(I vertexId) throws IOException {
+    PartitionMessages partition = getPartitionMessages(vertexId);
+    if (partition == null) {
+      return EmptyIterable.get();
+    }
+    synchronized (partition) {
+      int index = partition.find(idType.toLong(vertexId));
+      if (index < 0) {
+        return EmptyIterable.get();
+      }
+      M message = (M) messageType.create();
+      messageType.set(message, partition.mergedMessages[index]);
+      return Collections.singleton(message);
+    }
+  }
+
+  @Override
+  public void clearVertexMessages(I vertexId) throws IOException {
+    PartitionMessages partition = getPartitionMessages(vertexId);
+    if (partition != null) {
+      synchronized (partition) {
+        int index = partition.find(idType.toLong(vertexId));
+        if (index >= 0) {
+          partition.cleared.set(index);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void clearAll() throws IOException {
+    for (PartitionMessages partition : partitionMessages.values()) {
+      partition.clear();
+    }
+    partitionMessages.clear();
+  }
+
+  @Override
+  public Iterable<I> getPartitionDestinationVertices(
+      int partitionId) {
+    PartitionMessages partition = partitionMessages.get(partitionId);
+    if (partition == null) {
+      return Collections.emptyList();
+    }
+    synchronized (partition) {
+      try {
+        partition.merge();
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            "getPartitionDestinationVertices: Merging runs failed", e);
+      }
+      List<I> vertices = Lists.newArrayListWithCapacity(partition.mergedSize);
+      for (int i = 0; i < partition.mergedSize; ++i) {
+        if (!partition.cleared.get(i)) {
+          I vertexId = (I) idType.create();
+          idType.set(vertexId, partition.mergedIds[i]);
+          vertices.add(vertexId);
+        }
+      }
+      return vertices;
+    }
+  }
+
+  @Override
+  public void writePartition(DataOutput out,
+      int partitionId) throws IOException {
+    PartitionMessages partition = partitionMessages.get(partitionId);
+    if (partition == null) {
+      out.writeInt(0);
+      return;
+    }
+    synchronized (partition) {
+      partition.merge();
+      out.writeInt(partition.mergedSize - partition.cleared.cardinality());
+      for (int i = 0; i < partition.mergedSize; ++i) {
+        if (!partition.cleared.get(i)) {
+          idType.write(out, partition.mergedIds[i]);
+          messageType.write(out, partition.mergedMessages[i]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void readFieldsForPartition(DataInput in,
+      int partitionId) throws IOException {
+    MessageCombining combining = new MessageCombining();
+    PartitionMessages partition = getOrCreatePartitionMessages(partitionId);
+    synchronized (partition) {
+      int previousSize = partition.received.size();
+      int size = in.readInt();
+      while (size-- > 0) {
+        long vertexId = idType.read(in);
+        long message = messageType.read(in);
+        partition.receive(vertexId, message, combining);
+      }
+      messagesInMemory.addAndGet(partition.received.size() - previousSize);
+    }
+    checkMemory();
+  }
+
+  /**
+   * Reusable objects to combine primitive messages with.  Not thread-safe.
+   */
+  private class MessageCombining {
+    /** Reusable vertex id */
+    private final I reusableVertexId = (I) idType.create();
+    /** Reusable combined message */
+    private final M reusableCurrentMessage = (M) messageType.create();
+    /** Reusable message to combine */
+    private final M reusableMessage = (M) messageType.create();
+
+    /**
+     * Combine two messages of a vertex.
+     *
+     * @param vertexId Id of the vertex
+     * @param currentMessage Message received first
+     * @param message Message received next
+     * @return Combined message
+     */
+    long combine(long vertexId, long currentMessage, long message) {
+      idType.set(reusableVertexId, vertexId);
+      messageType.set(reusableCurrentMessage, currentMessage);
+      messageType.set(reusableMessage, message);
+      combiner.combine(reusableVertexId, reusableCurrentMessage,
+          reusableMessage);
+      return messageType.toLong(reusableCurrentMessage);
+    }
+  }
+
+  /**
+   * Messages of a partition: the ones received since the last spill, the
+   * spilled runs and the merged ones.  Callers synchronize on it.
+   */
+  private class PartitionMessages {
+    /** Id of the partition */
+    private final int partitionId;
+    /** Messages received since the last spill */
+    private Long2LongOpenHashMap received = new Long2LongOpenHashMap();
+    /** Spilled runs */
+    private final List<File> runs = Lists.newArrayList();
+    /** Sorted ids of the vertices with merged messages */
+    private long[] mergedIds = new long[0];
+    /** Merged messages, in the order of mergedIds */
+    private long[] mergedMessages = new long[0];
+    /** Number of merged messages */
+    private int mergedSize = 0;
+    /** Indexes of the merged messages which were cleared */
+    private BitSet cleared = new BitSet();
+    /** Index of the last merged message found */
+    private int lastFound = 0;
+
+    /**
+     * Constructor
+     *
+     * @param partitionId Id of the partition
+     */
+    PartitionMessages(int partitionId) {
+      this.partitionId = partitionId;
+    }
+
+    /**
+     * Combine a message into the received ones.
+     *
+     * @param vertexId Id of the destination vertex
+     * @param message Message
+     * @param combining Objects to combine with
+     */
+    void receive(long vertexId, long message, MessageCombining combining) {
+      if (received.containsKey(vertexId)) {
+        message = combining.combine(vertexId, received.get(vertexId),
+            message);
+      }
+      received.put(vertexId, message);
+    }
+
+    /**
+     * Write the received messages to a new run, sorted by vertex id.
+     *
+     * @throws IOException
+     */
+    synchronized void spill() throws IOException {
+      if (received.isEmpty()) {
+        return;
+      }
+      long[] vertexIds = received.keySet().toLongArray();
+      Arrays.sort(vertexIds);
+      File file = new File(basePaths[partitionId % basePaths.length] +
+          "-" + partitionId + "-" + runCounter.getAndIncrement());
+      file.getParentFile().mkdirs();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(file), bufferSize));
+      try {
+        out.writeInt(vertexIds.length);
+        for (long vertexId : vertexIds) {
+          idType.write(out, vertexId);
+          messageType.write(out, received.get(vertexId));
+        }
+      } finally {
+        out.close();
+      }
+      runs.add(file);
+      messagesInMemory.addAndGet(-vertexIds.length);
+      received = new Long2LongOpenHashMap();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("spill: Wrote " + vertexIds.length + " messages of " +
+            "partition " + partitionId + " to " + file);
+      }
+    }
+
+    /**
+     * Merge the runs, the received and the previously merged messages (not
+     * cleared) into sorted arrays, combining the messages of each vertex.
+     *
+     * @throws IOException
+     */
+    void merge() throws IOException {
+      if (runs.isEmpty() && received.isEmpty()) {
+        return;
+      }
+      List<RunCursor> cursors = Lists.newArrayListWithCapacity(runs.size() + 2);
+      try {
+        int maxSize = mergedSize + received.size();
+        cursors.add(new ArrayCursor(mergedIds, mergedMessages, mergedSize,
+            cleared));
+        long[] receivedIds = received.keySet().toLongArray();
+        Arrays.sort(receivedIds);
+        long[] receivedMessages = new long[receivedIds.length];
+        for (int i = 0; i < receivedIds.length; ++i) {
+          receivedMessages[i] = received.get(receivedIds[i]);
+        }
+        cursors.add(new ArrayCursor(receivedIds, receivedMessages,
+            receivedIds.length, new BitSet()));
+        for (File run : runs) {
+          FileCursor cursor = new FileCursor(run);
+          cursors.add(cursor);
+          maxSize += cursor.remaining;
+        }
+
+        long[] ids = new long[maxSize];
+        long[] messages = new long[maxSize];
+        int size = 0;
+        MessageCombining combining = new MessageCombining();
+        PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(
+            cursors.size(), CURSOR_COMPARATOR);
+        for (RunCursor cursor : cursors) {
+          if (cursor.next()) {
+            queue.add(cursor);
+          }
+        }
+        while (!queue.isEmpty()) {
+          RunCursor cursor = queue.poll();
+          if (size > 0 && ids[size - 1] == cursor.vertexId) {
+            messages[size - 1] = combining.combine(cursor.vertexId,
+                messages[size - 1], cursor.message);
+          } else {
+            ids[size] = cursor.vertexId;
+            messages[size] = cursor.message;
+            ++size;
+          }
+          if (cursor.next()) {
+            queue.add(cursor);
+          }
+        }
+        mergedIds = ids;
+        mergedMessages = messages;
+        mergedSize = size;
+      } finally {
+        for (RunCursor cursor : cursors) {
+          cursor.close();
+        }
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("merge: Merged " + runs.size() + " runs of partition " +
+            partitionId + " into " + mergedSize + " messages");
+      }
+      for (File run : runs) {
+        run.delete();
+      }
+      runs.clear();
+      messagesInMemory.addAndGet(-received.size());
+      received = new Long2LongOpenHashMap();
+      cleared = new BitSet();
+      lastFound = 0;
+    }
+
+    /**
+     * Find the merged message of a vertex, merging first if needed.
+     * Vertices looked up in increasing id order are found sequentially.
+     *
+     * @param vertexId Id of the vertex
+     * @return Index of the merged message, negative if there is none
+     * @throws IOException
+     */
+    int find(long vertexId) throws IOException {
+      merge();
+      int index;
+      if (lastFound < mergedSize && mergedIds[lastFound] == vertexId) {
+        index = lastFound;
+      } else if (lastFound + 1 < mergedSize &&
+          mergedIds[lastFound + 1] == vertexId) {
+        index = lastFound + 1;
+      } else {
+        index = Arrays.binarySearch(mergedIds, 0, mergedSize, vertexId);
+        if (index < 0) {
+          return -1;
+        }
+      }
+      lastFound = index;
+      return cleared.get(index) ? -1 : index;
+    }
+
+    /**
+     * Drop all of the messages and delete the runs.
+     */
+    synchronized void clear() {
+      for (File run : runs) {
+        run.delete();
+      }
+      runs.clear();
+      messagesInMemory.addAndGet(-received.size());
+      received = new Long2LongOpenHashMap();
+      mergedIds = new long[0];
+      mergedMessages = new long[0];
+      mergedSize = 0;
+      cleared = new BitSet();
+      lastFound = 0;
+    }
+  }
+
+  /**
+   * Cursor over a run of messages sorted by vertex id.
+   */
+  private abstract static class RunCursor {
+    /** Current vertex id */
+    protected long vertexId;
+    /** Current message */
+    protected long message;
+
+    /**
+     * Move to the next message.
+     *
+     * @return False if there are no more messages
+     * @throws IOException
+     */
+    abstract boolean next() throws IOException;
+
+    /**
+     * Release the resources of the cursor.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException { }
+  }
+
+  /**
+   * Cursor over sorted arrays, skipping cleared messages.
+   */
+  private static class ArrayCursor extends RunCursor {
+    /** Sorted vertex ids */
+    private final long[] vertexIds;
+    /** Messages, in the order of vertexIds */
+    private final long[] messages;
+    /** Number of messages */
+    private final int size;
+    /** Indexes of the messages to skip */
+    private final BitSet skipped;
+    /** Index of the current message */
+    private int index = -1;
+
+    /**
+     * Constructor
+     *
+     * @param vertexIds Sorted vertex ids
+     * @param messages Messages, in the order of vertexIds
+     * @param size Number of messages
+     * @param skipped Indexes of the messages to skip
+     */
+    ArrayCursor(long[] vertexIds, long[] messages, int size,
+        BitSet skipped) {
+      this.vertexIds = vertexIds;
+      this.messages = messages;
+      this.size = size;
+      this.skipped = skipped;
+    }
+
+    @Override
+    boolean next() {
+      index = skipped.nextClearBit(index + 1);
+      if (index >= size) {
+        return false;
+      }
+      vertexId = vertexIds[index];
+      message = messages[index];
+      return true;
+    }
+  }
+
+  /**
+   * Cursor over a spilled run.
+   */
+  private class FileCursor extends RunCursor {
+    /** Input of the run */
+    private final DataInputStream in;
+    /** Number of messages left */
+    private int remaining;
+
+    /**
+     * Constructor
+     *
+     * @param file Spilled run
+     * @throws IOException
+     */
+    FileCursor(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file), bufferSize));
+      remaining = in.readInt();
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      --remaining;
+      vertexId = idType.read(in);
+      message = messageType.read(in);
+      return true;
+    }
+
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.messages.out_of_core;
+
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.combiner.Combiner;
+import org.apache.giraph.comm.messages.MessageStore;
+import org.apache.giraph.comm.messages.MessageStoreFactory;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.factories.MessageValueFactory;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.giraph.conf.GiraphConstants.MESSAGES_DIRECTORY;
+
+/**
+ * Message store factory for out-of-core messages.  With a combiner, int or
+ * long vertex ids and int, long, float or double messages (the types of the
+ * in-memory primitive combining stores), it creates stores which spill
+ * combined primitive messages in sorted runs
+ * ({@link PrimitiveDiskBackedMessageStore}).  Otherwise, without a combiner
+ * or for other types, it falls back to another factory.
+ *
+ * @param <I> Vertex id
+ * @param <M> Message data
+ */
+public class PrimitiveDiskBackedMessageStoreFactory<
+    I extends WritableComparable, M extends Writable>
+    implements MessageStoreFactory<I, M, MessageStore<I, M>> {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(PrimitiveDiskBackedMessageStoreFactory.class);
+  /** Service worker */
+  private final CentralizedServiceWorker<I, ?, ?> service;
+  /** Hadoop configuration */
+  private final ImmutableClassesGiraphConfiguration<I, ?, ?> conf;
+  /** Number of messages to keep in memory */
+  private final int maxMessagesInMemory;
+  /** Factory for the unsupported types */
+  private final MessageStoreFactory<I, M, MessageStore<I, M>>
+  fallbackFactory;
+  /** Directories in which we'll keep the runs */
+  private final String[] directories;
+  /** Buffer size to use when reading and writing */
+  private final int bufferSize;
+  /** Counter for created message stores */
+  private final AtomicInteger storeCounter = new AtomicInteger();
+
+  /**
+   * Constructor
+   *
+   * @param service Service worker
+   * @param conf Configuration
+   * @param maxMessagesInMemory Number of messages to keep in memory
+   * @param fallbackFactory Factory for the unsupported types
+   */
+  public PrimitiveDiskBackedMessageStoreFactory(
+      CentralizedServiceWorker<I, ?, ?> service,
+      ImmutableClassesGiraphConfiguration<I, ?, ?> conf,
+      int maxMessagesInMemory,
+      MessageStoreFactory<I, M, MessageStore<I, M>> fallbackFactory) {
+    this.service = service;
+    this.conf = conf;
+    this.maxMessagesInMemory = maxMessagesInMemory;
+    this.fallbackFactory = fallbackFactory;
+    String jobId = conf.get("mapred.job.id", "Unknown Job");
+    int taskId = conf.getTaskPartition();
+    List<String> userPaths = MESSAGES_DIRECTORY.getList(conf);
+    directories = new String[userPaths.size()];
+    int i = 0;
+    for (String path : userPaths) {
+      directories[i++] = path + File.separator + jobId + File.separator +
+          taskId + File.separator;
+    }
+    bufferSize = GiraphConstants.MESSAGES_BUFFER_SIZE.get(conf);
+  }
+
+  @Override
+  public MessageStore<I, M> newStore(
+      MessageValueFactory<M> messageValueFactory) {
+    Class<M> messageClass = messageValueFactory.getMessageValueClass();
+    Class<I> vertexIdClass = conf.getVertexIdClass();
+    MessageStore messageStore = null;
+    if (conf.useCombiner()) {
+      Combiner combiner = conf.<M>createCombiner();
+      // Every store spills to its own files
+      int storeId = storeCounter.getAndIncrement();
+      String[] basePaths = new String[directories.length];
+      for (int i = 0; i < directories.length; ++i) {
+        basePaths[i] = directories[i] + "primitive-messages-" + storeId;
+      }
+      PrimitiveWritableType idType = PrimitiveWritableType.of(vertexIdClass);
+      PrimitiveWritableType messageType =
+          PrimitiveWritableType.of(messageClass);
+      if ((idType == PrimitiveWritableType.INT ||
+          idType == PrimitiveWritableType.LONG) && messageType != null) {
+        messageStore = new PrimitiveDiskBackedMessageStore(service,
+            combiner, idType, messageType, basePaths, bufferSize,
+            maxMessagesInMemory);
+      }
+    }
+    if (messageStore == null) {
+      return fallbackFactory.newStore(messageValueFactory);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("newStore: Created " + messageStore.getClass() +
+          " for vertex id " + vertexIdClass + " and message value " +
+          messageClass + " and combiner " + conf.getCombinerClass());
+    }
+    return (MessageStore<I, M>) messageStore;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.messages.out_of_core;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Primitive writable types which {@link PrimitiveDiskBackedMessageStore}
+ * keeps as longs.  Int and long values are kept as they are, so they keep
+ * their order, floats and doubles as their bits.
+ */
+public enum PrimitiveWritableType {
+  /** {@link IntWritable} */
+  INT(IntWritable.class) {
+    @Override
+    public long toLong(Writable writable) {
+      return ((IntWritable) writable).get();
+    }
+
+    @Override
+    public void set(Writable writable, long value) {
+      ((IntWritable) writable).set((int) value);
+    }
+
+    @Override
+    public Writable create() {
+      return new IntWritable();
+    }
+
+    @Override
+    public void write(DataOutput out, long value) throws IOException {
+      out.writeInt((int) value);
+    }
+
+    @Override
+    public long read(DataInput in) throws IOException {
+      return in.readInt();
+    }
+  },
+  /** {@link LongWritable} */
+  LONG(LongWritable.class) {
+    @Override
+    public long toLong(Writable writable) {
+      return ((LongWritable) writable).get();
+    }
+
+    @Override
+    public void set(Writable writable, long value) {
+      ((LongWritable) writable).set(value);
+    }
+
+    @Override
+    public Writable create() {
+      return new LongWritable();
+    }
+
+    @Override
+    public void write(DataOutput out, long value) throws IOException {
+      out.writeLong(value);
+    }
+
+    @Override
+    public long read(DataInput in) throws IOException {
+      return in.readLong();
+    }
+  },
+  /** {@link FloatWritable} */
+  FLOAT(FloatWritable.class) {
+    @Override
+    public long toLong(Writable writable) {
+      return Float.floatToRawIntBits(((FloatWritable) writable).get());
+    }
+
+    @Override
+    public void set(Writable writable, long value) {
+      ((FloatWritable) writable).set(Float.intBitsToFloat((int) value));
+    }
+
+    @Override
+    public Writable create() {
+      return new FloatWritable();
+    }
+
+    @Override
+    public void write(DataOutput out, long value) throws IOException {
+      out.writeFloat(Float.intBitsToFloat((int) value));
+    }
+
+    @Override
+    public long read(DataInput in) throws IOException {
+      return Float.floatToRawIntBits(in.readFloat());
+    }
+  },
+  /** {@link DoubleWritable} */
+  DOUBLE(DoubleWritable.class) {
+    @Override
+    public long toLong(Writable writable) {
+      return Double.doubleToRawLongBits(((DoubleWritable) writable).get());
+    }
+
+    @Override
+    public void set(Writable writable, long value) {
+      ((DoubleWritable) writable).set(Double.longBitsToDouble(value));
+    }
+
+    @Override
+    public Writable create() {
+      return new DoubleWritable();
+    }
+
+    @Override
+    public void write(DataOutput out, long value) throws IOException {
+      out.writeDouble(Double.longBitsToDouble(value));
+    }
+
+    @Override
+    public long read(DataInput in) throws IOException {
+      return Double.doubleToRawLongBits(in.readDouble());
+    }
+  };
+
+  /** Writable class of the type */
+  private final Class<? extends Writable> writableClass;
+
+  /**
+   * Constructor
+   *
+   * @param writableClass Writable class of the type
+   */
+  private PrimitiveWritableType(Class<? extends Writable> writableClass) {
+    this.writableClass = writableClass;
+  }
+
+  /**
+   * Get the type of a writable class.
+   *
+   * @param writableClass Writable class
+   * @return Type of the class, or null if it isn't a primitive writable
+   */
+  public static PrimitiveWritableType of(Class<?> writableClass) {
+    for (PrimitiveWritableType type : values()) {
+      if (type.writableClass.equals(writableClass)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the value of a writable as a long.
+   *
+   * @param writable Writable of this type
+   * @return Value as a long
+   */
+  public abstract long toLong(Writable writable);
+
+  /**
+   * Set a writable to a value kept as a long.
+   *
+   * @param writable Writable of this type
+   * @param value Value as a long
+   */
+  public abstract void set(Writable writable, long value);
+
+  /**
+   * Create a writable of this type.
+   *
+   * @return New writable
+   */
+  public abstract Writable create();
+
+  /**
+   * Write a value kept as a long in the format of its writable.
+   *
+   * @param out Output to write to
+   * @param value Value as a long
+   * @throws IOException
+   */
+  public abstract void write(DataOutput out, long value) throws IOException;
+
+  /**
+   * Read a value written in the format of its writable.
+   *
+   * @param in Input to read from
+   * @return Value as a long
+   * @throws IOException
+   */
+  public abstract long read(DataInput in) throws IOException;
+}
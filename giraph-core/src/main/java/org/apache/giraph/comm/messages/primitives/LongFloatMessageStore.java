@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.messages.primitives;
+
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.combiner.Combiner;
+import org.apache.giraph.comm.messages.MessageStore;
+import org.apache.giraph.partition.Partition;
+import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.EmptyIterable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.LongWritable;
+
+import com.google.common.collect.Lists;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2FloatMap;
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Special message store to be used when ids are LongWritable and messages
+ * are FloatWritable and combiner is used.
+ * Uses fastutil primitive maps in order to decrease number of objects and
+ * get better performance.
+ */
+public class LongFloatMessageStore
+    implements MessageStore<LongWritable, FloatWritable> {
+  /** Map from partition id to map from vertex id to message */
+  private final Int2ObjectOpenHashMap<Long2FloatOpenHashMap> map;
+  /** Message combiner */
+  private final Combiner<LongWritable, FloatWritable> combiner;
+  /** Service worker */
+  private final CentralizedServiceWorker<LongWritable, ?, ?> service;
+
+  /**
+   * Constructor
+   *
+   * @param service Service worker
+   * @param combiner Message combiner
+   */
+  public LongFloatMessageStore(
+      CentralizedServiceWorker<LongWritable, ?, ?> service,
+      Combiner<LongWritable, FloatWritable> combiner) {
+    this.service = service;
+    this.combiner = combiner;
+
+    map = new Int2ObjectOpenHashMap<Long2FloatOpenHashMap>();
+    for (int partitionId : service.getPartitionStore().getPartitionIds()) {
+      Partition<LongWritable, ?, ?> partition =
+          service.getPartitionStore().getPartition(partitionId);
+      Long2FloatOpenHashMap partitionMap =
+          new Long2FloatOpenHashMap((int) partition.getVertexCount());
+      map.put(partitionId, partitionMap);
+    }
+  }
+
+  /**
+   * Get map which holds messages for partition which vertex belongs to.
+   *
+   * @param vertexId Id of the vertex
+   * @return Map which holds messages for partition which vertex belongs to.
+   */
+  private Long2FloatOpenHashMap getPartitionMap(LongWritable vertexId) {
+    return map.get(service.getPartitionId(vertexId));
+  }
+
+  @Override
+  public void addPartitionMessages(int partitionId,
+      ByteArrayVertexIdMessages<LongWritable, FloatWritable> messages) throws
+      IOException {
+    LongWritable reusableVertexId = new LongWritable();
+    FloatWritable reusableMessage = new FloatWritable();
+    FloatWritable reusableCurrentMessage = new FloatWritable();
+
+    Long2FloatOpenHashMap partitionMap = map.get(partitionId);
+    synchronized (partitionMap) {
+      ByteArrayVertexIdMessages<LongWritable,
+          FloatWritable>.VertexIdMessageIterator
+          iterator = messages.getVertexIdMessageIterator();
+      while (iterator.hasNext()) {
+        iterator.next();
+        long vertexId = iterator.getCurrentVertexId().get();
+        float message = iterator.getCurrentMessage().get();
+        if (partitionMap.containsKey(vertexId)) {
+          reusableVertexId.set(vertexId);
+          reusableMessage.set(message);
+          reusableCurrentMessage.set(partitionMap.get(vertexId));
+          combiner.combine(reusableVertexId, reusableCurrentMessage,
+              reusableMessage);
+          message = reusableCurrentMessage.get();
+        }
+        partitionMap.put(vertexId, message);
+      }
+    }
+  }
+
+  @Override
+  public void clearPartition(int partitionId) throws IOException {
+    map.get(partitionId).clear();
+  }
+
+  @Override
+  public boolean hasMessagesForVertex(LongWritable vertexId) {
+    return getPartitionMap(vertexId).containsKey(vertexId.get());
+  }
+
+  @Override
+  public Iterable<FloatWritable> getVertexMessages(
+      LongWritable vertexId) throws IOException {
+    Long2FloatOpenHashMap partitionMap = getPartitionMap(vertexId);
+    if (!partitionMap.containsKey(vertexId.get())) {
+      return EmptyIterable.get();
+    } else {
+      return Collections.singleton(
+          new FloatWritable(partitionMap.get(vertexId.get())));
+    }
+  }
+
+  @Override
+  public void clearVertexMessages(LongWritable vertexId) throws IOException {
+    getPartitionMap(vertexId).remove(vertexId.get());
+  }
+
+  @Override
+  public void clearAll() throws IOException {
+    map.clear();
+  }
+
+  @Override
+  public Iterable<LongWritable> getPartitionDestinationVertices(
+      int partitionId) {
+    Long2FloatOpenHashMap partitionMap = map.get(partitionId);
+    List<LongWritable> vertices =
+        Lists.newArrayListWithCapacity(partitionMap.size());
+    LongIterator iterator = partitionMap.keySet().iterator();
+    while (iterator.hasNext()) {
+      vertices.add(new LongWritable(iterator.nextLong()));
+    }
+    return vertices;
+  }
+
+  @Override
+  public void writePartition(DataOutput out,
+      int partitionId) throws IOException {
+    Long2FloatOpenHashMap partitionMap = map.get(partitionId);
+    out.writeInt(partitionMap.size());
+    ObjectIterator<Long2FloatMap.Entry> iterator =
+        partitionMap.long2FloatEntrySet().fastIterator();
+    while (iterator.hasNext()) {
+      Long2FloatMap.Entry entry = iterator.next();
+      out.writeLong(entry.getLongKey());
+      out.writeFloat(entry.getFloatValue());
+    }
+  }
+
+  @Override
+  public void readFieldsForPartition(DataInput in,
+      int partitionId) throws IOException {
+    int size = in.readInt();
+    Long2FloatOpenHashMap partitionMap = new Long2FloatOpenHashMap(size);
+    while (size-- > 0) {
+      long vertexId = in.readLong();
+      float message = in.readFloat();
+      partitionMap.put(vertexId, message);
+    }
+    synchronized (map) {
+      map.put(partitionId, partitionMap);
+    }
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.giraph.comm.netty;
 
 import org.apache.giraph.comm.netty.handler.AddressRequestIdGenerator;
 import org.apache.giraph.comm.netty.handler.ClientRequestId;
+import org.apache.giraph.comm.netty.handler.CreditBasedFlowControl;
 import org.apache.giraph.comm.netty.handler.RequestEncoder;
 import org.apache.giraph.comm.netty.handler.RequestInfo;
 import org.apache.giraph.comm.netty.handler.RequestServerHandler;
@@ -33,6 +34,7 @@ import org.apache.giraph.comm.requests.WritableRequest;
 import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.graph.TaskInfo;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ProgressableUtils;
 import org.apache.giraph.utils.TimedLogger;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -72,11 +74,13 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.giraph.conf.GiraphConstants.CLIENT_RECEIVE_BUFFER_SIZE;
 import static org.apache.giraph.conf.GiraphConstants.CLIENT_SEND_BUFFER_SIZE;
+import static org.apache.giraph.conf.GiraphConstants.MAX_OPEN_REQUEST_BYTES;
 import static org.apache.giraph.conf.GiraphConstants.MAX_REQUEST_MILLISECONDS;
 import static org.apache.giraph.conf.GiraphConstants.MAX_RESOLVE_ADDRESS_ATTEMPTS;
 import static org.apache.giraph.conf.GiraphConstants.NETTY_CLIENT_EXECUTION_AFTER_HANDLER;
 import static org.apache.giraph.conf.GiraphConstants.NETTY_CLIENT_EXECUTION_THREADS;
 import static org.apache.giraph.conf.GiraphConstants.NETTY_CLIENT_USE_EXECUTION_HANDLER;
+import static org.apache.giraph.conf.GiraphConstants.NETTY_CREDIT_FLOW_CONTROL;
 import static org.apache.giraph.conf.GiraphConstants.NETTY_MAX_CONNECTION_FAILURES;
 import static org.apache.giraph.conf.GiraphConstants.WAITING_REQUEST_MSECS;
 import static org.jboss.netty.channel.Channels.pipeline;
@@ -143,6 +147,15 @@ public class NettyClient {
   private final boolean limitNumberOfOpenRequests;
   /** Maximum number of requests without confirmation we can have */
   private final int maxNumberOfOpenRequests;
+  /**
+   * Maximum number of bytes of requests without confirmation we can have
+   * (0 if not limited)
+   */
+  private final long maxOpenRequestBytes;
+  /** Number of bytes of requests without confirmation (null if unlimited) */
+  private final AtomicLong openRequestBytes;
+  /** Per-destination credit based flow control (null if not used) */
+  private final CreditBasedFlowControl flowControl;
   /** Maximum number of connection failures */
   private final int maxConnectionFailures;
   /** Maximum number of milliseconds for a request */
@@ -175,7 +188,7 @@ public class NettyClient {
       new AtomicLong(0);
 
   /**
-   * Only constructor
+   * Constructor
    *
    * @param context Context for progress
    * @param conf Configuration
@@ -184,13 +197,47 @@ public class NettyClient {
   public NettyClient(Mapper<?, ?, ?, ?>.Context context,
                      final ImmutableClassesGiraphConfiguration conf,
                      TaskInfo myTaskInfo) {
+    this(context, conf, myTaskInfo, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param context Context for progress
+   * @param conf Configuration
+   * @param myTaskInfo Current task info
+   * @param sendBufferPool Pool of the buffers of the encoded requests
+   *                       (null if not pooled)
+   */
+  public NettyClient(Mapper<?, ?, ?, ?>.Context context,
+                     final ImmutableClassesGiraphConfiguration conf,
+                     TaskInfo myTaskInfo,
+                     final ByteArrayPool sendBufferPool) {
     this.context = context;
     this.myTaskInfo = myTaskInfo;
     this.channelsPerServer = GiraphConstants.CHANNELS_PER_SERVER.get(conf);
     sendBufferSize = CLIENT_SEND_BUFFER_SIZE.get(conf);
     receiveBufferSize = CLIENT_RECEIVE_BUFFER_SIZE.get(conf);
 
-    limitNumberOfOpenRequests = conf.getBoolean(
+    if (NETTY_CREDIT_FLOW_CONTROL.get(conf)) {
+      flowControl = new CreditBasedFlowControl(conf,
+          new CreditBasedFlowControl.RequestSender() {
+            @Override
+            public void sendQueuedRequest(ClientRequestId clientRequestId,
+                RequestInfo requestInfo) {
+              writeQueuedRequest(clientRequestId, requestInfo);
+            }
+          });
+      if (LOG.isInfoEnabled()) {
+        LOG.info("NettyClient: Using credit based flow control, the " +
+            "number of open requests isn't limited");
+      }
+    } else {
+      flowControl = null;
+    }
+
+    // Credit based flow control replaces the open request count limit
+    limitNumberOfOpenRequests = flowControl == null && conf.getBoolean(
         LIMIT_NUMBER_OF_OPEN_REQUESTS,
         LIMIT_NUMBER_OF_OPEN_REQUESTS_DEFAULT);
     if (limitNumberOfOpenRequests) {
@@ -204,6 +251,16 @@ public class NettyClient {
     } else {
       maxNumberOfOpenRequests = -1;
     }
+    maxOpenRequestBytes = MAX_OPEN_REQUEST_BYTES.get(conf);
+    if (maxOpenRequestBytes > 0) {
+      openRequestBytes = new AtomicLong(0);
+      if (LOG.isInfoEnabled()) {
+        LOG.info("NettyClient: Limit bytes of open requests to " +
+            maxOpenRequestBytes);
+      }
+    } else {
+      openRequestBytes = null;
+    }
 
     maxRequestMilliseconds = MAX_REQUEST_MILLISECONDS.get(conf);
 
@@ -280,7 +337,8 @@ public class NettyClient {
           // completes (as in non-auth pipeline below).
           pipeline.addLast("length-field-based-frame-decoder",
               new LengthFieldBasedFrameDecoder(1024, 0, 4, 0, 4));
-          pipeline.addLast("request-encoder", new RequestEncoder(conf));
+          pipeline.addLast("request-encoder",
+              new RequestEncoder(conf, sendBufferPool));
           // The following pipeline component responds to the server's SASL
           // tokens with its own responses. Both client and server share the
           // same Hadoop Job token, which is used to create the SASL tokens to
@@ -289,7 +347,8 @@ public class NettyClient {
           pipeline.addLast("sasl-client-handler",
               new SaslClientHandler(conf));
           pipeline.addLast("response-handler",
-              new ResponseClientHandler(clientRequestIdRequestInfoMap, conf));
+              new ResponseClientHandler(clientRequestIdRequestInfoMap,
+                  openRequestBytes, flowControl, conf));
           return pipeline;
         } else {
           LOG.info("Using Netty without authentication.");
@@ -298,9 +357,11 @@ public class NettyClient {
           pipeline.addLast("clientByteCounter", byteCounter);
           pipeline.addLast("responseFrameDecoder",
               new FixedLengthFrameDecoder(RequestServerHandler.RESPONSE_BYTES));
-          pipeline.addLast("requestEncoder", new RequestEncoder(conf));
+          pipeline.addLast("requestEncoder",
+              new RequestEncoder(conf, sendBufferPool));
           pipeline.addLast("responseClientHandler",
-              new ResponseClientHandler(clientRequestIdRequestInfoMap, conf));
+              new ResponseClientHandler(clientRequestIdRequestInfoMap,
+                  openRequestBytes, flowControl, conf));
           if (executionHandler != null) {
             pipeline.addAfter(handlerBeforeExecutionHandler,
                 "executionHandler", executionHandler);
@@ -530,6 +591,9 @@ public class NettyClient {
    * Stop the client.
    */
   public void stop() {
+    if (flowControl != null) {
+      flowControl.shutdown();
+    }
     // Close connections asynchronously, in a Netty-approved
     // way, without cleaning up thread pools until all channels
     // in addressChannelMap are closed (success or failure)
@@ -637,8 +701,8 @@ public class NettyClient {
     }
 /*end[HADOOP_NON_SECURE]*/
 
-    Channel channel = getNextChannel(remoteServer);
     RequestInfo newRequestInfo = new RequestInfo(remoteServer, request);
+    boolean queued = false;
     if (registerRequest) {
       request.setClientId(myTaskInfo.getTaskId());
       request.setRequestId(
@@ -652,14 +716,79 @@ public class NettyClient {
           "have a previous request id = " + request.getRequestId() + ", " +
           "request info of " + oldRequestInfo);
       }
+      if (openRequestBytes != null) {
+        openRequestBytes.addAndGet(newRequestInfo.getRequestBytes());
+      }
+      // Without credit, the request is sent once the destination returns
+      // some, while the caller can go on with requests to other destinations
+      queued = flowControl != null &&
+          !flowControl.reserveOrQueue(clientRequestId, newRequestInfo);
+    }
+    if (!queued) {
+      Channel channel = getNextChannel(remoteServer);
+      ChannelFuture writeFuture = channel.write(request);
+      newRequestInfo.setWriteFuture(writeFuture);
     }
-    ChannelFuture writeFuture = channel.write(request);
-    newRequestInfo.setWriteFuture(writeFuture);
 
     if (limitNumberOfOpenRequests &&
         clientRequestIdRequestInfoMap.size() > maxNumberOfOpenRequests) {
       waitSomeRequests(maxNumberOfOpenRequests);
     }
+    if (openRequestBytes != null &&
+        openRequestBytes.get() > maxOpenRequestBytes) {
+      waitSomeRequestBytes(maxOpenRequestBytes);
+    }
+    if (flowControl != null && flowControl.isQueueFull()) {
+      waitQueuedRequests();
+    }
+  }
+
+  /**
+   * Send a request which was queued by the credit based flow control.  The
+   * request is registered again, so that the time it took to be sent
+   * doesn't count as the time it took to complete.
+   *
+   * @param clientRequestId Id of the request
+   * @param requestInfo Queued request
+   */
+  private void writeQueuedRequest(ClientRequestId clientRequestId,
+      RequestInfo requestInfo) {
+    RequestInfo sentRequestInfo = new RequestInfo(
+        requestInfo.getDestinationAddress(), requestInfo.getRequest());
+    clientRequestIdRequestInfoMap.replace(clientRequestId, sentRequestInfo);
+    Channel channel = getNextChannel(requestInfo.getDestinationAddress());
+    sentRequestInfo.setWriteFuture(
+        channel.write(requestInfo.getRequest()));
+  }
+
+  /**
+   * Wait until the credit based flow control has few enough queued bytes,
+   * while checking for problems like {@link #waitSomeRequests(int)}.
+   */
+  private void waitQueuedRequests() {
+    while (flowControl.isQueueFull()) {
+      if (LOG.isInfoEnabled() && requestLogger.isPrintable()) {
+        LOG.info("waitQueuedRequests: Waiting interval of " +
+            waitingRequestMsecs + " msecs, " + flowControl.getQueuedBytes() +
+            " bytes of requests are waiting for credit, " +
+            byteCounter.getMetrics());
+      }
+      synchronized (clientRequestIdRequestInfoMap) {
+        if (!flowControl.isQueueFull()) {
+          break;
+        }
+        try {
+          clientRequestIdRequestInfoMap.wait(waitingRequestMsecs);
+        } catch (InterruptedException e) {
+          LOG.error("waitQueuedRequests: Got unexpected " +
+              "InterruptedException", e);
+        }
+      }
+      // Make sure that waiting doesn't kill the job
+      context.progress();
+
+      checkRequestsForProblems();
+    }
   }
 
   /**
@@ -704,6 +833,43 @@ public class NettyClient {
     }
   }
 
+  /**
+   * Ensure that at most maxBytes of requests are not complete, while
+   * checking for problems like {@link #waitSomeRequests(int)}.  A single
+   * request bigger than maxBytes is let through once the others completed.
+   *
+   * @param maxBytes Maximum number of bytes of requests which can be not
+   *                 complete
+   */
+  private void waitSomeRequestBytes(long maxBytes) {
+    while (openRequestBytes.get() > maxBytes &&
+        clientRequestIdRequestInfoMap.size() > 1) {
+      // Wait for requests to complete for some time
+      if (LOG.isInfoEnabled() && requestLogger.isPrintable()) {
+        LOG.info("waitSomeRequestBytes: Waiting interval of " +
+            waitingRequestMsecs + " msecs, " + openRequestBytes.get() +
+            " bytes of open requests, waiting for it to be <= " + maxBytes +
+            ", " + byteCounter.getMetrics());
+      }
+      synchronized (clientRequestIdRequestInfoMap) {
+        if (openRequestBytes.get() <= maxBytes ||
+            clientRequestIdRequestInfoMap.size() <= 1) {
+          break;
+        }
+        try {
+          clientRequestIdRequestInfoMap.wait(waitingRequestMsecs);
+        } catch (InterruptedException e) {
+          LOG.error("waitSomeRequestBytes: Got unexpected " +
+              "InterruptedException", e);
+        }
+      }
+      // Make sure that waiting doesn't kill the job
+      context.progress();
+
+      checkRequestsForProblems();
+    }
+  }
+
   /**
    * Log the status of open requests.
    *
@@ -812,19 +978,27 @@ public class NettyClient {
       ClientRequestId requestId = addedRequestIds.get(i);
       RequestInfo requestInfo = addedRequestInfos.get(i);
 
-      if (clientRequestIdRequestInfoMap.put(requestId, requestInfo) ==
-          null) {
-        LOG.warn("checkRequestsForProblems: Request " + requestId +
-            " completed prior to sending the next request");
-        clientRequestIdRequestInfoMap.remove(requestId);
-      }
       InetSocketAddress remoteServer = requestInfo.getDestinationAddress();
       Channel channel = getNextChannel(remoteServer);
-      if (LOG.isInfoEnabled()) {
-        LOG.info("checkRequestsForProblems: Re-issuing request " + requestInfo);
+      // The response handler releases the buffers of a completed request
+      // while holding its lock, so they can't be recycled while the request
+      // is encoded again
+      WritableRequest request = requestInfo.getRequest();
+      synchronized (request) {
+        if (clientRequestIdRequestInfoMap.put(requestId, requestInfo) ==
+            null) {
+          LOG.warn("checkRequestsForProblems: Request " + requestId +
+              " completed prior to sending the next request");
+          clientRequestIdRequestInfoMap.remove(requestId);
+          continue;
+        }
+        if (LOG.isInfoEnabled()) {
+          LOG.info("checkRequestsForProblems: Re-issuing request " +
+              requestInfo);
+        }
+        ChannelFuture writeFuture = channel.write(request);
+        requestInfo.setWriteFuture(writeFuture);
       }
-      ChannelFuture writeFuture = channel.write(requestInfo.getRequest());
-      requestInfo.setWriteFuture(writeFuture);
     }
     addedRequestIds.clear();
     addedRequestInfos.clear();
@@ -47,6 +47,8 @@ public class NettyMasterClient implements MasterClient {
   private final int maxBytesPerAggregatorRequest;
   /** Progressable used to report progress */
   private final Progressable progressable;
+  /** Send the aggregators through the tree over workers? */
+  private final boolean useAggregatorTree;
 
   /**
    * Constructor
@@ -65,6 +67,7 @@ public class NettyMasterClient implements MasterClient {
     maxBytesPerAggregatorRequest = configuration.getInt(
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST,
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST_DEFAULT);
+    useAggregatorTree = AggregatorUtils.useAggregatorTree(configuration);
   }
 
   @Override
@@ -76,7 +79,9 @@ public class NettyMasterClient implements MasterClient {
   public void sendAggregator(String aggregatorName,
       Class<? extends Aggregator> aggregatorClass,
       Writable aggregatedValue) throws IOException {
-    WorkerInfo owner =
+    // With the aggregator tree all of the aggregators go to its root
+    WorkerInfo owner = useAggregatorTree ?
+        AggregatorUtils.getTreeRoot(service.getWorkerInfoList()) :
         AggregatorUtils.getOwner(aggregatorName, service.getWorkerInfoList());
     int currentSize = sendAggregatorCache.addAggregator(owner.getTaskId(),
         aggregatorName, aggregatorClass, aggregatedValue);
@@ -44,7 +44,7 @@ public class NettyMasterServer implements MasterServer {
       CentralizedServiceMaster<?, ?, ?> service,
       Progressable progressable) {
     nettyServer = new NettyServer(conf,
-        new MasterRequestServerHandler.Factory(service.getAggregatorHandler()),
+        new MasterRequestServerHandler.Factory(service),
         service.getMasterInfo(), progressable);
     nettyServer.start();
   }
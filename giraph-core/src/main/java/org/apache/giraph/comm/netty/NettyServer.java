@@ -22,6 +22,7 @@ package org.apache.giraph.comm.netty;
 import org.apache.giraph.comm.netty.handler.AuthorizeServerHandler;
 /*end[HADOOP_NON_SECURE]*/
 import org.apache.giraph.comm.netty.handler.RequestDecoder;
+import org.apache.giraph.comm.netty.handler.ServerCreditHandler;
 import org.apache.giraph.comm.netty.handler.RequestServerHandler;
 import org.apache.giraph.comm.netty.handler.ResponseEncoder;
 /*if_not[HADOOP_NON_SECURE]*/
@@ -124,6 +125,8 @@ public class NettyServer {
   private final ExecutionHandler executionHandler;
   /** Name of the handler before the execution handler (if used) */
   private final String handlerBeforeExecutionHandler;
+  /** Derives the advertised credit from the backlog (null if not used) */
+  private final ServerCreditHandler serverCreditHandler;
 
   /**
    * Constructor for creating the server
@@ -191,6 +194,11 @@ public class NettyServer {
     } else {
       executionHandler = null;
     }
+    if (GiraphConstants.NETTY_CREDIT_FLOW_CONTROL.get(conf)) {
+      serverCreditHandler = new ServerCreditHandler(conf);
+    } else {
+      serverCreditHandler = null;
+    }
   }
 
 /*if_not[HADOOP_NON_SECURE]*/
@@ -245,7 +253,7 @@ public class NettyServer {
           // pipeline components SaslServerHandler and ResponseEncoder are
           // removed, leaving the pipeline the same as in the non-authenticated
           // configuration except for the presence of the Authorize component.
-          return Channels.pipeline(
+          ChannelPipeline pipeline = Channels.pipeline(
               byteCounter,
               new LengthFieldBasedFrameDecoder(1024 * 1024 * 1024, 0, 4, 0, 4),
               new RequestDecoder(conf, byteCounter),
@@ -256,6 +264,14 @@ public class NettyServer {
                   conf, myTaskInfo),
               // Removed after authentication completes:
               new ResponseEncoder());
+          if (serverCreditHandler != null) {
+            // Between the frame decoder and the request decoder, as without
+            // authentication
+            pipeline.addBefore(
+                pipeline.getContext(RequestDecoder.class).getName(),
+                "serverCredit", serverCreditHandler);
+          }
+          return pipeline;
         } else {
           LOG.info("start: Using Netty without authentication.");
 /*end[HADOOP_NON_SECURE]*/
@@ -286,6 +302,12 @@ public class NettyServer {
             pipeline.addAfter(handlerBeforeExecutionHandler,
                 "executionHandler", executionHandler);
           }
+          if (serverCreditHandler != null) {
+            // Before the execution handler, to count the frames waiting for
+            // it as backlog
+            pipeline.addAfter("requestFrameDecoder", "serverCredit",
+                serverCreditHandler);
+          }
           return pipeline;
 /*if_not[HADOOP_NON_SECURE]*/
         }
@@ -32,6 +32,8 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.util.Progressable;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Netty implementation of {@link WorkerAggregatorRequestProcessor}
@@ -49,6 +51,10 @@ public class NettyWorkerAggregatorRequestProcessor
       new SendAggregatedValueCache();
   /** How big a single aggregator request can be */
   private final int maxBytesPerAggregatorRequest;
+  /** Fan-out of the aggregator tree, 0 if aggregators go through owners */
+  private final int treeFanOut;
+  /** Bytes of aggregator data sent since the last reset */
+  private long sentBytes = 0;
 
   /**
    * Constructor.
@@ -67,16 +73,21 @@ public class NettyWorkerAggregatorRequestProcessor
     maxBytesPerAggregatorRequest = configuration.getInt(
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST,
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST_DEFAULT);
-
+    treeFanOut = AggregatorUtils.getTreeFanOut(configuration);
   }
 
   @Override
   public boolean sendAggregatedValue(String aggregatorName,
       Writable aggregatedValue) throws IOException {
-    WorkerInfo owner =
+    // With the aggregator tree the values go to the parent of this worker,
+    // the root has nobody to send them to
+    WorkerInfo owner = treeFanOut > 0 ?
+        AggregatorUtils.getTreeParent(
+            serviceWorker.getWorkerInfo().getTaskId(),
+            serviceWorker.getWorkerInfoList(), treeFanOut) :
         AggregatorUtils.getOwner(aggregatorName,
             serviceWorker.getWorkerInfoList());
-    if (isThisWorker(owner)) {
+    if (owner == null || isThisWorker(owner)) {
       return false;
     } else {
       int currentSize = sendAggregatedValueCache.addAggregator(
@@ -90,7 +101,7 @@ public class NettyWorkerAggregatorRequestProcessor
 
   @Override
   public void flush() throws IOException {
-    for (WorkerInfo workerInfo : serviceWorker.getWorkerInfoList()) {
+    for (WorkerInfo workerInfo : getDestinations(true)) {
       if (!isThisWorker(workerInfo)) {
         sendAggregatedValueCache.addCountAggregator(workerInfo.getTaskId());
         flushAggregatorsToWorker(workerInfo);
@@ -108,6 +119,7 @@ public class NettyWorkerAggregatorRequestProcessor
   private void flushAggregatorsToWorker(WorkerInfo worker) {
     byte[] aggregatorData =
         sendAggregatedValueCache.removeAggregators(worker.getTaskId());
+    sentBytes += aggregatorData.length;
     workerClient.sendWritableRequest(worker.getTaskId(),
         new SendWorkerAggregatorsRequest(aggregatorData,
             serviceWorker.getWorkerInfo().getTaskId()));
@@ -116,6 +128,7 @@ public class NettyWorkerAggregatorRequestProcessor
   @Override
   public void sendAggregatedValuesToMaster(
       byte[] aggregatorData) throws IOException {
+    sentBytes += aggregatorData.length;
     workerClient.sendWritableRequest(serviceWorker.getMasterInfo().getTaskId(),
         new SendAggregatorsToMasterRequest(aggregatorData));
   }
@@ -127,15 +140,46 @@ public class NettyWorkerAggregatorRequestProcessor
       SendAggregatorsToWorkerRequest request =
           new SendAggregatorsToWorkerRequest(aggregatorData,
               serviceWorker.getWorkerInfo().getTaskId());
-      for (WorkerInfo worker : serviceWorker.getWorkerInfoList()) {
+      for (WorkerInfo worker : getDestinations(false)) {
         if (!isThisWorker(worker)) {
           workerClient.sendWritableRequest(worker.getTaskId(), request);
+          sentBytes += aggregatorData.length;
         }
         progressable.progress();
       }
     }
   }
 
+  @Override
+  public long resetSentBytes() {
+    long bytes = sentBytes;
+    sentBytes = 0;
+    return bytes;
+  }
+
+  /**
+   * Get the workers which this worker sends aggregators to.  Without the
+   * aggregator tree these are all of the workers.
+   *
+   * @param toParent Reducing towards the root of the tree, otherwise
+   *                 broadcasting from it
+   * @return Parent or children of this worker in the tree, or all workers
+   */
+  private List<WorkerInfo> getDestinations(boolean toParent) {
+    if (treeFanOut == 0) {
+      return serviceWorker.getWorkerInfoList();
+    }
+    int taskId = serviceWorker.getWorkerInfo().getTaskId();
+    if (toParent) {
+      WorkerInfo parent = AggregatorUtils.getTreeParent(taskId,
+          serviceWorker.getWorkerInfoList(), treeFanOut);
+      return parent == null ? Collections.<WorkerInfo>emptyList() :
+          Collections.singletonList(parent);
+    }
+    return AggregatorUtils.getTreeChildren(taskId,
+        serviceWorker.getWorkerInfoList(), treeFanOut);
+  }
+
   /**
    * Check if workerInfo describes current worker.
    *
@@ -29,6 +29,7 @@ import org.apache.giraph.metrics.MetricNames;
 import org.apache.giraph.metrics.ResetSuperstepMetricsObserver;
 import org.apache.giraph.metrics.SuperstepMetricsRegistry;
 import org.apache.giraph.partition.PartitionOwner;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.worker.WorkerInfo;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -43,6 +44,8 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
+import static org.apache.giraph.conf.GiraphConstants.SEND_BUFFER_POOL_MAX_BYTES;
+
 /**
  * Takes users facing APIs in {@link WorkerClient} and implements them
  * using the available {@link WritableRequest} objects.
@@ -61,6 +64,8 @@ public class NettyWorkerClient<I extends WritableComparable,
   private final ImmutableClassesGiraphConfiguration<I, V, E> conf;
   /** Netty client that does that actual I/O */
   private final NettyClient nettyClient;
+  /** Pool of the send buffers (null if not pooled) */
+  private final ByteArrayPool sendBufferPool;
   /** Centralized service, needed to get vertex ranges */
   private final CentralizedServiceWorker<I, V, E> service;
 
@@ -79,8 +84,14 @@ public class NettyWorkerClient<I extends WritableComparable,
       Mapper<?, ?, ?, ?>.Context context,
       ImmutableClassesGiraphConfiguration<I, V, E> configuration,
       CentralizedServiceWorker<I, V, E> service) {
-    this.nettyClient =
-        new NettyClient(context, configuration, service.getWorkerInfo());
+    if (configuration.useSendBufferPool()) {
+      sendBufferPool = new ByteArrayPool(
+          SEND_BUFFER_POOL_MAX_BYTES.get(configuration));
+    } else {
+      sendBufferPool = null;
+    }
+    this.nettyClient = new NettyClient(context, configuration,
+        service.getWorkerInfo(), sendBufferPool);
     this.conf = configuration;
     this.service = service;
     this.superstepRequestCounters = Maps.newHashMap();
@@ -92,6 +103,8 @@ public class NettyWorkerClient<I extends WritableComparable,
     superstepRequestCounters.clear();
     superstepRequestCounters.put(RequestType.SEND_VERTEX_REQUEST,
         metrics.getCounter(MetricNames.SEND_VERTEX_REQUESTS));
+    superstepRequestCounters.put(RequestType.SEND_PARTITION_VERTICES_REQUEST,
+        metrics.getCounter(MetricNames.SEND_PARTITION_VERTICES_REQUESTS));
     superstepRequestCounters.put(RequestType.SEND_WORKER_MESSAGES_REQUEST,
         metrics.getCounter(MetricNames.SEND_WORKER_MESSAGES_REQUESTS));
     superstepRequestCounters.put(
@@ -133,6 +146,11 @@ public class NettyWorkerClient<I extends WritableComparable,
     return service.getVertexPartitionOwner(vertexId);
   }
 
+  @Override
+  public ByteArrayPool getSendBufferPool() {
+    return sendBufferPool;
+  }
+
   @Override
   public void sendWritableRequest(Integer destTaskId,
                                   WritableRequest request) {
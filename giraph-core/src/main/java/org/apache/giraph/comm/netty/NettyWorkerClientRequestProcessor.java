@@ -19,6 +19,7 @@ package org.apache.giraph.comm.netty;
 
 import org.apache.giraph.bsp.BspService;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.comm.SendCombinedMessageCache;
 import org.apache.giraph.comm.SendEdgeCache;
 import org.apache.giraph.comm.SendMessageCache;
 import org.apache.giraph.comm.SendMutationsCache;
@@ -29,6 +30,7 @@ import org.apache.giraph.comm.WorkerClientRequestProcessor;
 import org.apache.giraph.comm.messages.MessageStore;
 import org.apache.giraph.comm.requests.SendPartitionCurrentMessagesRequest;
 import org.apache.giraph.comm.requests.SendPartitionMutationsRequest;
+import org.apache.giraph.comm.requests.SendPartitionVerticesRequest;
 import org.apache.giraph.comm.requests.SendVertexRequest;
 import org.apache.giraph.comm.requests.SendWorkerEdgesRequest;
 import org.apache.giraph.comm.requests.SendWorkerMessagesRequest;
@@ -44,8 +46,11 @@ import org.apache.giraph.metrics.SuperstepMetricsRegistry;
 import org.apache.giraph.partition.Partition;
 import org.apache.giraph.partition.PartitionOwner;
 import org.apache.giraph.utils.ByteArrayVertexIdEdges;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.ExtendedDataOutput;
 import org.apache.giraph.utils.PairList;
+import org.apache.giraph.utils.WritableUtils;
 import org.apache.giraph.worker.WorkerInfo;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -62,6 +67,9 @@ import java.util.Map;
 import static org.apache.giraph.conf.GiraphConstants.MAX_EDGE_REQUEST_SIZE;
 import static org.apache.giraph.conf.GiraphConstants.MAX_MSG_REQUEST_SIZE;
 import static org.apache.giraph.conf.GiraphConstants.MAX_MUTATIONS_PER_REQUEST;
+import static org.apache.giraph.conf.GiraphConstants.PARTITION_MIGRATION_CHUNK_SIZE;
+import static org.apache.giraph.conf.GiraphConstants.PARTITION_MIGRATION_MAX_OPEN_BYTES;
+import static org.apache.giraph.conf.GiraphConstants.SEND_COMBINING_CACHE;
 
 /**
  * Aggregate requests and sends them to the thread-safe NettyClient.  This
@@ -83,6 +91,9 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
   private final SendPartitionCache<I, V, E> sendPartitionCache;
   /** Cached map of partitions to vertex indices to messages */
   private final SendMessageCache<I, Writable> sendMessageCache;
+  /** Combines messages before they are cached (null if not combining) */
+  private final SendCombinedMessageCache<I, Writable>
+  sendCombinedMessageCache;
   /** Cache of edges to be sent. */
   private final SendEdgeCache<I, E> sendEdgeCache;
   /** Cached map of partitions to vertex indices to mutations */
@@ -98,6 +109,12 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
   private final int maxEdgesSizePerWorker;
   /** Maximum number of mutations per partition before sending */
   private final int maxMutationsPerPartition;
+  /** Maximum size of the vertices of a moving partition per request */
+  private final int migrationChunkSize;
+  /** Maximum bytes of moving partitions sent before waiting for them */
+  private final long maxOpenMigrationBytes;
+  /** Bytes of moving partitions sent since the last wait */
+  private long openMigrationBytes = 0;
   /** Giraph configuration */
   private final ImmutableClassesGiraphConfiguration<I, V, E> configuration;
   /** Service worker */
@@ -126,11 +143,22 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     this.configuration = conf;
 
     sendPartitionCache = new SendPartitionCache<I, V, E>(context, conf);
-    sendMessageCache = new SendMessageCache<I, Writable>(conf, serviceWorker);
-    sendEdgeCache = new SendEdgeCache<I, E>(conf, serviceWorker);
+    ByteArrayPool sendBufferPool = workerClient.getSendBufferPool();
+    sendMessageCache = new SendMessageCache<I, Writable>(
+        conf, serviceWorker, sendBufferPool);
+    if (SEND_COMBINING_CACHE.get(conf) && conf.useCombiner()) {
+      sendCombinedMessageCache =
+          new SendCombinedMessageCache<I, Writable>(conf, serviceWorker);
+    } else {
+      sendCombinedMessageCache = null;
+    }
+    sendEdgeCache =
+        new SendEdgeCache<I, E>(conf, serviceWorker, sendBufferPool);
     maxMessagesSizePerWorker = MAX_MSG_REQUEST_SIZE.get(conf);
     maxEdgesSizePerWorker = MAX_EDGE_REQUEST_SIZE.get(conf);
     maxMutationsPerPartition = MAX_MUTATIONS_PER_REQUEST.get(conf);
+    migrationChunkSize = PARTITION_MIGRATION_CHUNK_SIZE.get(conf);
+    maxOpenMigrationBytes = PARTITION_MIGRATION_MAX_OPEN_BYTES.get(conf);
     this.serviceWorker = serviceWorker;
     this.serverData = serviceWorker.getServerData();
 
@@ -170,6 +198,28 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     }
     ++totalMsgsSentInSuperstep;
 
+    // Combine the message, if the combining cache isn't full
+    if (sendCombinedMessageCache != null &&
+        sendCombinedMessageCache.addMessage(
+            workerInfo, partitionId, destVertexId, message)) {
+      return false;
+    }
+
+    return cacheMessage(workerInfo, partitionId, destVertexId, message);
+  }
+
+  /**
+   * Add a message to the message cache, and send the messages of the
+   * destination worker if they are big enough.
+   *
+   * @param workerInfo The remote worker destination
+   * @param partitionId The remote partition this message belongs to
+   * @param destVertexId Vertex id that is the ultimate destination
+   * @param message Message to send
+   * @return True if a request was sent, false otherwise
+   */
+  private boolean cacheMessage(WorkerInfo workerInfo, int partitionId,
+      I destVertexId, Writable message) {
     // Add the message to the cache
     int workerMessageSize = sendMessageCache.addMessage(
         workerInfo, partitionId, destVertexId, message);
@@ -206,6 +256,77 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     }
   }
 
+  @Override
+  public long sendPartitionInChunks(WorkerInfo workerInfo,
+                                    Partition<I, V, E> partition) {
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("sendPartitionInChunks: Sending to " + workerInfo +
+          ", with partition " + partition);
+    }
+    final int partitionId = partition.getId();
+    long sentBytes = 0;
+    int numChunks = 0;
+    ExtendedDataOutput vertices =
+        configuration.createExtendedDataOutput(migrationChunkSize);
+    int numVertices = 0;
+    try {
+      for (Vertex<I, V, E> vertex : partition) {
+        WritableUtils.writeVertexToDataOutput(vertices, vertex, configuration);
+        ++numVertices;
+        if (vertices.getPos() >= migrationChunkSize) {
+          sentBytes += sendPartitionVertices(
+              workerInfo, partitionId, numVertices, vertices);
+          ++numChunks;
+          vertices =
+              configuration.createExtendedDataOutput(migrationChunkSize);
+          numVertices = 0;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("sendPartitionInChunks: Failed to " +
+          "serialize partition " + partitionId, e);
+    }
+    // Always send the last chunk, so that empty partitions are moved too
+    if (numVertices > 0 || numChunks == 0) {
+      sentBytes += sendPartitionVertices(
+          workerInfo, partitionId, numVertices, vertices);
+    }
+
+    // Messages are stored separately
+    if (serviceWorker.getSuperstep() != BspService.INPUT_SUPERSTEP) {
+      sendPartitionMessages(workerInfo, partition);
+    }
+    return sentBytes;
+  }
+
+  /**
+   * Send a chunk of the vertices of a moving partition, and wait for the
+   * chunks in flight once there are too many bytes of them.
+   *
+   * @param workerInfo Worker to send the vertices to
+   * @param partitionId Partition the vertices belong to
+   * @param numVertices Number of vertices in the chunk
+   * @param vertices Serialized vertices
+   * @return Number of bytes of vertices sent
+   */
+  private int sendPartitionVertices(WorkerInfo workerInfo, int partitionId,
+      int numVertices, ExtendedDataOutput vertices) {
+    SendPartitionVerticesRequest<I, V, E> verticesRequest =
+        new SendPartitionVerticesRequest<I, V, E>(
+            partitionId, numVertices, vertices);
+    verticesRequest.setConf(configuration);
+    doRequest(workerInfo, verticesRequest);
+    if (serviceWorker.getWorkerInfo().getTaskId() != workerInfo.getTaskId()) {
+      openMigrationBytes += vertices.getPos();
+      if (maxOpenMigrationBytes > 0 &&
+          openMigrationBytes > maxOpenMigrationBytes) {
+        workerClient.waitAllRequests();
+        openMigrationBytes = 0;
+      }
+    }
+    return vertices.getPos();
+  }
+
   /**
    * Send all messages for a partition to another worker.
    *
@@ -405,19 +526,7 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     sendPartitionCache.clear();
 
     // Execute the remaining sends messages (if any)
-    PairList<WorkerInfo, PairList<Integer,
-        ByteArrayVertexIdMessages<I, Writable>>>
-        remainingMessageCache = sendMessageCache.removeAllMessages();
-    PairList<WorkerInfo,
-        PairList<Integer, ByteArrayVertexIdMessages<I, Writable>>>.Iterator
-        iterator = remainingMessageCache.getIterator();
-    while (iterator.hasNext()) {
-      iterator.next();
-      WritableRequest writableRequest =
-          new SendWorkerMessagesRequest<I, Writable>(
-              iterator.getCurrentSecond());
-      doRequest(iterator.getCurrentFirst(), writableRequest);
-    }
+    flushMessages();
 
     // Execute the remaining sends edges (if any)
     PairList<WorkerInfo, PairList<Integer,
@@ -449,6 +558,33 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     }
   }
 
+  @Override
+  public void flushMessages() throws IOException {
+    if (sendCombinedMessageCache != null) {
+      sendCombinedMessageCache.moveMessages(
+          new SendCombinedMessageCache.MessageSink<I, Writable>() {
+            @Override
+            public void addMessage(WorkerInfo workerInfo, int partitionId,
+                I destVertexId, Writable message) {
+              cacheMessage(workerInfo, partitionId, destVertexId, message);
+            }
+          });
+    }
+    PairList<WorkerInfo, PairList<Integer,
+        ByteArrayVertexIdMessages<I, Writable>>>
+        remainingMessageCache = sendMessageCache.removeAllMessages();
+    PairList<WorkerInfo,
+        PairList<Integer, ByteArrayVertexIdMessages<I, Writable>>>.Iterator
+        iterator = remainingMessageCache.getIterator();
+    while (iterator.hasNext()) {
+      iterator.next();
+      WritableRequest writableRequest =
+          new SendWorkerMessagesRequest<I, Writable>(
+              iterator.getCurrentSecond());
+      doRequest(iterator.getCurrentFirst(), writableRequest);
+    }
+  }
+
   @Override
   public long resetMessageCount() {
     long messagesSentInSuperstep = totalMsgsSentInSuperstep;
@@ -468,6 +604,7 @@ public class NettyWorkerClientRequestProcessor<I extends WritableComparable,
     if (serviceWorker.getWorkerInfo().getTaskId() ==
         workerInfo.getTaskId()) {
       ((WorkerRequest) writableRequest).doRequest(serverData);
+      writableRequest.releaseBuffers();
       localRequests.inc();
     } else {
       workerClient.sendWritableRequest(
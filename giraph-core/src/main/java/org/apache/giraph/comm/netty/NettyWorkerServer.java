@@ -26,6 +26,7 @@ import org.apache.giraph.comm.messages.InMemoryMessageStoreFactory;
 import org.apache.giraph.comm.messages.MessageStore;
 import org.apache.giraph.comm.messages.MessageStoreFactory;
 import org.apache.giraph.comm.messages.out_of_core.PartitionDiskBackedMessageStore;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveDiskBackedMessageStoreFactory;
 import org.apache.giraph.comm.messages.out_of_core.SequentialFileMessageStore;
 import org.apache.giraph.comm.netty.handler.WorkerRequestServerHandler;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
@@ -122,8 +123,9 @@ public class NettyWorkerServer<I extends WritableComparable,
           PartitionDiskBackedMessageStore<I, Writable>>
           partitionStoreFactory =
           PartitionDiskBackedMessageStore.newFactory(conf, fileStoreFactory);
-      return DiskBackedMessageStore.newFactory(service,
-          maxMessagesInMemory, partitionStoreFactory);
+      return new PrimitiveDiskBackedMessageStoreFactory<I, Writable>(service,
+          conf, maxMessagesInMemory, DiskBackedMessageStore.newFactory(
+              service, maxMessagesInMemory, partitionStoreFactory));
     }
   }
 
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.netty.handler;
+
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.giraph.conf.GiraphConstants.NETTY_MAX_QUEUED_REQUEST_BYTES;
+import static org.apache.giraph.conf.GiraphConstants.NETTY_SERVER_CREDIT_BYTES;
+
+/**
+ * Per-destination, byte-based credit flow control of the requests a client
+ * sends.  Every server advertises in its responses how many bytes of
+ * requests without confirmation it accepts from a client (its credit),
+ * which it lowers while it falls behind the client (see
+ * {@link ServerCreditHandler}).
+ * A request to a destination without enough credit is queued instead of
+ * blocking the sender, and is sent once responses from that destination
+ * return credit, so a slow destination doesn't stall the requests to the
+ * others.  Senders only have to wait if too many bytes are queued overall.
+ *
+ * A single request is always allowed to a destination without open
+ * requests, even if it is bigger than the credit.
+ */
+public class CreditBasedFlowControl {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(CreditBasedFlowControl.class);
+  /** Credit of a destination until it advertised its own */
+  private final int initialCredit;
+  /** Maximum number of queued bytes before senders have to wait */
+  private final long maxQueuedBytes;
+  /** Sends the queued requests once they have credit */
+  private final RequestSender requestSender;
+  /** Credit state of every destination task */
+  private final ConcurrentMap<Integer, DestinationCredit> destinations =
+      Maps.newConcurrentMap();
+  /** Number of bytes of requests queued for all destinations */
+  private final AtomicLong queuedBytes = new AtomicLong(0);
+  /** Thread sending the queued requests (not a Netty I/O thread) */
+  private final ExecutorService sendExecutorService =
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("netty-client-credit-%d").setDaemon(true).build());
+
+  /**
+   * Constructor
+   *
+   * @param conf Configuration
+   * @param requestSender Sends the queued requests once they have credit
+   */
+  public CreditBasedFlowControl(ImmutableClassesGiraphConfiguration conf,
+      RequestSender requestSender) {
+    initialCredit = NETTY_SERVER_CREDIT_BYTES.get(conf);
+    maxQueuedBytes = NETTY_MAX_QUEUED_REQUEST_BYTES.get(conf);
+    this.requestSender = requestSender;
+  }
+
+  /**
+   * Get the credit state of a destination, creating it if necessary.
+   *
+   * @param taskId Destination task id
+   * @return Credit state of the destination
+   */
+  private DestinationCredit getDestination(int taskId) {
+    DestinationCredit destination = destinations.get(taskId);
+    if (destination == null) {
+      destination = new DestinationCredit(initialCredit);
+      DestinationCredit oldDestination =
+          destinations.putIfAbsent(taskId, destination);
+      if (oldDestination != null) {
+        destination = oldDestination;
+      }
+    }
+    return destination;
+  }
+
+  /**
+   * Use the credit of the destination of a request, or queue the request if
+   * there is not enough credit.
+   *
+   * @param clientRequestId Id of the request
+   * @param requestInfo Request which is already registered as open
+   * @return True if the request can be sent now, false if it was queued
+   */
+  public boolean reserveOrQueue(ClientRequestId clientRequestId,
+      RequestInfo requestInfo) {
+    int bytes = requestInfo.getRequestBytes();
+    DestinationCredit destination =
+        getDestination(clientRequestId.getDestinationTaskId());
+    synchronized (destination) {
+      if (destination.queue.isEmpty() && destination.hasCredit(bytes)) {
+        destination.openBytes += bytes;
+        return true;
+      }
+      destination.queue.add(new QueuedRequest(clientRequestId, requestInfo));
+    }
+    queuedBytes.addAndGet(bytes);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("reserveOrQueue: Queued request " + clientRequestId +
+          " of " + bytes + " bytes, " + queuedBytes.get() +
+          " bytes queued in total");
+    }
+    return false;
+  }
+
+  /**
+   * Return the credit used by a completed request, update the credit of
+   * its destination and send the queued requests which have credit now.
+   *
+   * @param taskId Destination task id of the completed request
+   * @param bytes Bytes of the completed request
+   * @param credit Credit advertised by the destination
+   */
+  public void requestCompleted(int taskId, int bytes, int credit) {
+    DestinationCredit destination = getDestination(taskId);
+    List<QueuedRequest> readyRequests = null;
+    synchronized (destination) {
+      destination.openBytes -= bytes;
+      destination.credit = credit;
+      while (!destination.queue.isEmpty()) {
+        int nextBytes = destination.queue.peek().requestInfo.getRequestBytes();
+        if (!destination.hasCredit(nextBytes)) {
+          break;
+        }
+        destination.openBytes += nextBytes;
+        queuedBytes.addAndGet(-nextBytes);
+        if (readyRequests == null) {
+          readyRequests = Lists.newArrayList();
+        }
+        readyRequests.add(destination.queue.poll());
+      }
+    }
+    if (readyRequests != null) {
+      final List<QueuedRequest> requestsToSend = readyRequests;
+      // Sending may have to reconnect, which can't be done on an I/O thread
+      sendExecutorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          for (QueuedRequest queuedRequest : requestsToSend) {
+            requestSender.sendQueuedRequest(queuedRequest.clientRequestId,
+                queuedRequest.requestInfo);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Are more bytes queued than allowed, so senders have to wait?
+   *
+   * @return True iff senders have to wait
+   */
+  public boolean isQueueFull() {
+    return queuedBytes.get() > maxQueuedBytes;
+  }
+
+  public long getQueuedBytes() {
+    return queuedBytes.get();
+  }
+
+  /**
+   * Stop the thread sending the queued requests.
+   */
+  public void shutdown() {
+    sendExecutorService.shutdownNow();
+  }
+
+  /**
+   * Sends the requests which were queued for lack of credit.
+   */
+  public interface RequestSender {
+    /**
+     * Send a request which was queued for lack of credit.
+     *
+     * @param clientRequestId Id of the request
+     * @param requestInfo Request which is already registered as open
+     */
+    void sendQueuedRequest(ClientRequestId clientRequestId,
+        RequestInfo requestInfo);
+  }
+
+  /**
+   * Credit state of a destination, guarded by its own lock.
+   */
+  private static class DestinationCredit {
+    /** Queued requests without credit, in order */
+    private final Queue<QueuedRequest> queue =
+        new ArrayDeque<QueuedRequest>();
+    /** Latest credit advertised by the destination */
+    private int credit;
+    /** Bytes of the sent requests without confirmation */
+    private long openBytes;
+
+    /**
+     * Constructor
+     *
+     * @param credit Credit until the destination advertised its own
+     */
+    DestinationCredit(int credit) {
+      this.credit = credit;
+    }
+
+    /**
+     * Is there enough credit to send a request?
+     *
+     * @param bytes Bytes of the request
+     * @return True iff the request can be sent
+     */
+    boolean hasCredit(int bytes) {
+      return openBytes == 0 || openBytes + bytes <= credit;
+    }
+  }
+
+  /**
+   * Request waiting for credit.
+   */
+  private static class QueuedRequest {
+    /** Id of the request */
+    private final ClientRequestId clientRequestId;
+    /** Request */
+    private final RequestInfo requestInfo;
+
+    /**
+     * Constructor
+     *
+     * @param clientRequestId Id of the request
+     * @param requestInfo Request
+     */
+    QueuedRequest(ClientRequestId clientRequestId, RequestInfo requestInfo) {
+      this.clientRequestId = clientRequestId;
+      this.requestInfo = requestInfo;
+    }
+  }
+}
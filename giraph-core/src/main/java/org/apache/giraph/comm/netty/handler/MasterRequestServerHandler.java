@@ -18,16 +18,16 @@
 
 package org.apache.giraph.comm.netty.handler;
 
+import org.apache.giraph.bsp.CentralizedServiceMaster;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.comm.requests.MasterRequest;
-import org.apache.giraph.master.MasterAggregatorHandler;
 import org.apache.giraph.graph.TaskInfo;
 
 /** Handler for requests on master */
 public class MasterRequestServerHandler extends
     RequestServerHandler<MasterRequest> {
-  /** Aggregator handler */
-  private final MasterAggregatorHandler aggregatorHandler;
+  /** Master service */
+  private final CentralizedServiceMaster<?, ?, ?> service;
 
   /**
    * Constructor
@@ -35,36 +35,36 @@ public class MasterRequestServerHandler extends
    * @param workerRequestReservedMap Worker request reservation map
    * @param conf                     Configuration
    * @param myTaskInfo               Current task info
-   * @param aggregatorHandler        Master aggregator handler
+   * @param service                  Master service
    */
   public MasterRequestServerHandler(
       WorkerRequestReservedMap workerRequestReservedMap,
       ImmutableClassesGiraphConfiguration conf,
       TaskInfo myTaskInfo,
-      MasterAggregatorHandler aggregatorHandler) {
+      CentralizedServiceMaster<?, ?, ?> service) {
     super(workerRequestReservedMap, conf, myTaskInfo);
-    this.aggregatorHandler = aggregatorHandler;
+    this.service = service;
   }
 
   @Override
   public void processRequest(MasterRequest request) {
-    request.doRequest(aggregatorHandler);
+    request.doRequest(service);
   }
 
   /**
    * Factory for {@link MasterRequestServerHandler}
    */
   public static class Factory implements RequestServerHandler.Factory {
-    /** Master aggregator handler */
-    private final MasterAggregatorHandler aggregatorHandler;
+    /** Master service */
+    private final CentralizedServiceMaster<?, ?, ?> service;
 
     /**
      * Constructor
      *
-     * @param aggregatorHandler Master aggregator handler
+     * @param service Master service
      */
-    public Factory(MasterAggregatorHandler aggregatorHandler) {
-      this.aggregatorHandler = aggregatorHandler;
+    public Factory(CentralizedServiceMaster<?, ?, ?> service) {
+      this.service = service;
     }
 
     @Override
@@ -73,7 +73,7 @@ public class MasterRequestServerHandler extends
         ImmutableClassesGiraphConfiguration conf,
         TaskInfo myTaskInfo) {
       return new MasterRequestServerHandler(workerRequestReservedMap, conf,
-          myTaskInfo, aggregatorHandler);
+          myTaskInfo, service);
     }
   }
 }
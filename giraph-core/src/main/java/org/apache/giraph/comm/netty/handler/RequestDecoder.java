@@ -33,6 +33,8 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
 
+import static org.apache.giraph.conf.GiraphConstants.NETTY_REQUEST_DECODER_ZERO_COPY;
+
 /**
  * Decodes encoded requests from the client.
  */
@@ -46,6 +48,8 @@ public class RequestDecoder extends OneToOneDecoder {
   private final ImmutableClassesGiraphConfiguration conf;
   /** Byte counter to output */
   private final ByteCounter byteCounter;
+  /** Share the bytes of the requests with the buffers instead of copying? */
+  private final boolean zeroCopy;
   /** Start nanoseconds for the decoding time */
   private long startDecodingNanoseconds = -1;
   /**
@@ -58,6 +62,7 @@ public class RequestDecoder extends OneToOneDecoder {
                         ByteCounter byteCounter) {
     this.conf = conf;
     this.byteCounter = byteCounter;
+    zeroCopy = NETTY_REQUEST_DECODER_ZERO_COPY.get(conf);
   }
 
   @Override
@@ -81,7 +86,11 @@ public class RequestDecoder extends OneToOneDecoder {
 
     // Decode the request
     ChannelBuffer buffer = (ChannelBuffer) msg;
-    ChannelBufferInputStream inputStream = new ChannelBufferInputStream(buffer);
+    int frameBytes = buffer.readableBytes();
+    // The frame is a copy of its own, so the request may keep ranges of it
+    ChannelBufferInputStream inputStream = zeroCopy ?
+        new SharedChannelBufferInputStream(buffer) :
+        new ChannelBufferInputStream(buffer);
     int enumValue = inputStream.readByte();
     RequestType type = RequestType.values()[enumValue];
     Class<? extends WritableRequest> writableRequestClass =
@@ -90,6 +99,12 @@ public class RequestDecoder extends OneToOneDecoder {
     WritableRequest writableRequest =
         ReflectionUtils.newInstance(writableRequestClass, conf);
     writableRequest.readFields(inputStream);
+    ServerCreditHandler serverCreditHandler =
+        ctx.getPipeline().get(ServerCreditHandler.class);
+    if (serverCreditHandler != null) {
+      serverCreditHandler.requestDecoded(
+          writableRequest.getClientId(), frameBytes);
+    }
     if (LOG.isDebugEnabled()) {
       LOG.debug("decode: Client " + writableRequest.getClientId() +
           ", requestId " + writableRequest.getRequestId() +
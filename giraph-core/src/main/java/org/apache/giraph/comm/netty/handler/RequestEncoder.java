@@ -21,6 +21,7 @@ package org.apache.giraph.comm.netty.handler;
 import org.apache.giraph.comm.requests.WritableRequest;
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.time.SystemTime;
 import org.apache.giraph.time.Time;
 import org.apache.giraph.time.Times;
@@ -29,9 +30,16 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
+import java.io.IOException;
+
 /**
  * Requests have a request type and an encoded request.
  */
@@ -46,6 +54,8 @@ public class RequestEncoder extends OneToOneEncoder {
   private final int bufferStartingSize;
   /** Whether or not to use direct byte buffers */
   private final boolean useDirectBuffers;
+  /** Pool of the buffers of the encoded requests (null if not pooled) */
+  private final ByteArrayPool bufferPool;
   /** Start nanoseconds for the encoding time */
   private long startEncodingNanoseconds = -1;
 
@@ -55,10 +65,50 @@ public class RequestEncoder extends OneToOneEncoder {
    * @param conf Giraph configuration
    */
   public RequestEncoder(GiraphConfiguration conf) {
+    this(conf, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param conf Giraph configuration
+   * @param bufferPool Pool of the buffers of the encoded requests, which
+   *                   are recycled once written (null if not pooled)
+   */
+  public RequestEncoder(GiraphConfiguration conf, ByteArrayPool bufferPool) {
     bufferStartingSize =
         GiraphConstants.NETTY_REQUEST_ENCODER_BUFFER_SIZE.get(conf);
     useDirectBuffers =
         GiraphConstants.NETTY_REQUEST_ENCODER_USE_DIRECT_BUFFERS.get(conf);
+    this.bufferPool = useDirectBuffers ? null : bufferPool;
+  }
+
+  @Override
+  public void handleDownstream(
+      ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+    if (bufferPool != null && evt instanceof MessageEvent &&
+        ((MessageEvent) evt).getMessage() instanceof WritableRequest) {
+      MessageEvent e = (MessageEvent) evt;
+      WritableRequest writableRequest = (WritableRequest) e.getMessage();
+      int requestSize = writableRequest.getSerializedSize();
+      if (requestSize != WritableRequest.UNKNOWN_SIZE) {
+        // Recycle the array once Netty is done with the encoded buffer
+        final byte[] array = bufferPool.getArray(
+            requestSize + LENGTH_PLACEHOLDER.length + 1);
+        ChannelBuffer encodedBuffer =
+            encodeRequest(ctx, writableRequest, array);
+        e.getFuture().addListener(new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture future) {
+            bufferPool.recycle(array);
+          }
+        });
+        Channels.write(ctx, e.getFuture(), encodedBuffer,
+            e.getRemoteAddress());
+        return;
+      }
+    }
+    super.handleDownstream(ctx, evt);
   }
 
   @Override
@@ -68,18 +118,33 @@ public class RequestEncoder extends OneToOneEncoder {
       throw new IllegalArgumentException(
           "encode: Got a message of type " + msg.getClass());
     }
+    return encodeRequest(ctx, (WritableRequest) msg, null);
+  }
 
+  /**
+   * Encode a request.
+   *
+   * @param ctx Channel handler context
+   * @param writableRequest Request to encode
+   * @param array Array to encode into if the size of the request is known
+   *              (null to allocate a buffer)
+   * @return Encoded request
+   */
+  private ChannelBuffer encodeRequest(ChannelHandlerContext ctx,
+      WritableRequest writableRequest, byte[] array) throws IOException {
     // Encode the request
     if (LOG.isDebugEnabled()) {
       startEncodingNanoseconds = TIME.getNanoseconds();
     }
-    WritableRequest writableRequest = (WritableRequest) msg;
     int requestSize = writableRequest.getSerializedSize();
     ChannelBuffer channelBuffer;
     if (requestSize == WritableRequest.UNKNOWN_SIZE) {
       channelBuffer = ChannelBuffers.dynamicBuffer(
           bufferStartingSize,
           ctx.getChannel().getConfig().getBufferFactory());
+    } else if (array != null) {
+      channelBuffer = ChannelBuffers.wrappedBuffer(array);
+      channelBuffer.clear();
     } else {
       requestSize += LENGTH_PLACEHOLDER.length + 1;
       channelBuffer = useDirectBuffers ?
@@ -40,6 +40,8 @@ public class RequestInfo {
   private final WritableRequest request;
   /** Future of the write of this request*/
   private volatile ChannelFuture writeFuture;
+  /** Serialized size of the request (-1 until computed) */
+  private volatile int requestBytes = -1;
 
   /**
    * Constructor.
@@ -90,6 +92,19 @@ public class RequestInfo {
     return request;
   }
 
+  /**
+   * Get the number of bytes of the request, for limiting the number of bytes
+   * of open requests.
+   *
+   * @return Serialized size of the request, 0 if it is unknown
+   */
+  public int getRequestBytes() {
+    if (requestBytes < 0) {
+      requestBytes = Math.max(0, request.getSerializedSize());
+    }
+    return requestBytes;
+  }
+
   public void setWriteFuture(ChannelFuture writeFuture) {
     this.writeFuture = writeFuture;
   }
@@ -33,6 +33,7 @@ import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 
+import static org.apache.giraph.conf.GiraphConstants.NETTY_SERVER_CREDIT_BYTES;
 import static org.apache.giraph.conf.GiraphConstants.NETTY_SIMULATE_FIRST_REQUEST_CLOSED;
 
 /**
@@ -42,8 +43,11 @@ import static org.apache.giraph.conf.GiraphConstants.NETTY_SIMULATE_FIRST_REQUES
  */
 public abstract class RequestServerHandler<R> extends
     SimpleChannelUpstreamHandler {
-  /** Number of bytes in the encoded response */
-  public static final int RESPONSE_BYTES = 13;
+  /**
+   * Number of bytes in the encoded response (task id, request id, whether
+   * it was already done and the credit of the client)
+   */
+  public static final int RESPONSE_BYTES = 17;
   /** Time class to use */
   private static Time TIME = SystemTime.get();
   /** Class logger */
@@ -57,6 +61,11 @@ public abstract class RequestServerHandler<R> extends
   private final WorkerRequestReservedMap workerRequestReservedMap;
   /** My task info */
   private final TaskInfo myTaskInfo;
+  /**
+   * Bytes of open requests a client may have, sent in every response
+   * unless the server adjusts the credit to its backlog
+   */
+  private final int creditBytes;
   /** Start nanoseconds for the processing time */
   private long startProcessingNanoseconds = -1;
 
@@ -74,6 +83,7 @@ public abstract class RequestServerHandler<R> extends
     this.workerRequestReservedMap = workerRequestReservedMap;
     closeFirstRequest = NETTY_SIMULATE_FIRST_REQUEST_CLOSED.get(conf);
     this.myTaskInfo = myTaskInfo;
+    creditBytes = NETTY_SERVER_CREDIT_BYTES.get(conf);
   }
 
   @Override
@@ -125,6 +135,10 @@ public abstract class RequestServerHandler<R> extends
     buffer.writeInt(myTaskInfo.getTaskId());
     buffer.writeLong(writableRequest.getRequestId());
     buffer.writeByte(alreadyDone);
+    ServerCreditHandler serverCreditHandler =
+        ctx.getPipeline().get(ServerCreditHandler.class);
+    buffer.writeInt(serverCreditHandler == null ? creditBytes :
+        serverCreditHandler.getCredit(writableRequest.getClientId()));
     e.getChannel().write(buffer);
   }
 
@@ -18,6 +18,7 @@
 
 package org.apache.giraph.comm.netty.handler;
 
+import org.apache.giraph.comm.requests.WritableRequest;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.log4j.Logger;
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -30,6 +31,7 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.giraph.conf.GiraphConstants.NETTY_SIMULATE_FIRST_RESPONSE_FAILED;
 
@@ -47,6 +49,10 @@ public class ResponseClientHandler extends SimpleChannelUpstreamHandler {
   /** Outstanding worker request map */
   private final ConcurrentMap<ClientRequestId, RequestInfo>
   workerIdOutstandingRequestMap;
+  /** Number of bytes of outstanding requests (null if not tracked) */
+  private final AtomicLong outstandingRequestBytes;
+  /** Credit based flow control (null if not used) */
+  private final CreditBasedFlowControl flowControl;
 
   /**
    * Constructor.
@@ -59,7 +65,30 @@ public class ResponseClientHandler extends SimpleChannelUpstreamHandler {
       ConcurrentMap<ClientRequestId, RequestInfo>
           workerIdOutstandingRequestMap,
       Configuration conf) {
+    this(workerIdOutstandingRequestMap, null, null, conf);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param workerIdOutstandingRequestMap Map of worker ids to outstanding
+   *                                      requests
+   * @param outstandingRequestBytes Number of bytes of outstanding requests,
+   *                                decreased when they complete (can be
+   *                                null if not tracked)
+   * @param flowControl Credit based flow control, which gets the credit
+   *                    from the responses (can be null if not used)
+   * @param conf Configuration
+   */
+  public ResponseClientHandler(
+      ConcurrentMap<ClientRequestId, RequestInfo>
+          workerIdOutstandingRequestMap,
+      AtomicLong outstandingRequestBytes,
+      CreditBasedFlowControl flowControl,
+      Configuration conf) {
     this.workerIdOutstandingRequestMap = workerIdOutstandingRequestMap;
+    this.outstandingRequestBytes = outstandingRequestBytes;
+    this.flowControl = flowControl;
     dropFirstResponse = NETTY_SIMULATE_FIRST_RESPONSE_FAILED.get(conf);
   }
 
@@ -76,10 +105,12 @@ public class ResponseClientHandler extends SimpleChannelUpstreamHandler {
     int senderId = -1;
     long requestId = -1;
     int response = -1;
+    int credit = -1;
     try {
       senderId = inputStream.readInt();
       requestId = inputStream.readLong();
       response = inputStream.readByte();
+      credit = inputStream.readInt();
       inputStream.close();
     } catch (IOException e) {
       throw new IllegalStateException(
@@ -110,11 +141,24 @@ public class ResponseClientHandler extends SimpleChannelUpstreamHandler {
       LOG.info("messageReceived: Already received response for request id = " +
           requestId);
     } else {
+      if (outstandingRequestBytes != null) {
+        outstandingRequestBytes.addAndGet(-requestInfo.getRequestBytes());
+      }
+      if (flowControl != null) {
+        flowControl.requestCompleted(
+            senderId, requestInfo.getRequestBytes(), credit);
+      }
       if (LOG.isDebugEnabled()) {
         LOG.debug("messageReceived: Completed " + requestInfo +
             ".  Waiting on " + workerIdOutstandingRequestMap.size() +
             " requests");
       }
+      // A resend of the request may still be encoding it, resends hold
+      // the lock of the request (see NettyClient#checkRequestsForProblems)
+      WritableRequest request = requestInfo.getRequest();
+      synchronized (request) {
+        request.releaseBuffers();
+      }
     }
 
     // Help NettyClient#waitSomeRequests() to finish faster
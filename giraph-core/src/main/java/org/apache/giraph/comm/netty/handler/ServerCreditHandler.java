@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.netty.handler;
+
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.giraph.conf.GiraphConstants.NETTY_SERVER_CREDIT_BYTES;
+import static org.apache.giraph.conf.GiraphConstants.NETTY_SERVER_MIN_CREDIT_BYTES;
+
+/**
+ * Derives the credit a server advertises to every client (see
+ * {@link CreditBasedFlowControl}) from its backlog: the bytes of request
+ * frames from the client which are still waiting for the execution handler
+ * to decode and process them.  It is shared by all the channels of a
+ * server and placed after the frame decoder, before the execution handler.
+ *
+ * Once per credit worth of decoded bytes of a client, its credit is halved
+ * if the backlog stayed above half of the credit while those bytes were
+ * decoded (the server falls behind the client), or doubled if the backlog
+ * (almost) ran out.  A server which keeps up empties its backlog between
+ * bursts of requests, so only a server which falls behind is throttled.
+ */
+@Sharable
+public class ServerCreditHandler extends SimpleChannelUpstreamHandler {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(ServerCreditHandler.class);
+  /** Maximum credit of a client */
+  private final int maxCredit;
+  /** Minimum credit of a client */
+  private final int minCredit;
+  /** Backlog and credit of every client task */
+  private final ConcurrentMap<Integer, ClientCredit> clients =
+      Maps.newConcurrentMap();
+
+  /**
+   * Constructor
+   *
+   * @param conf Configuration
+   */
+  public ServerCreditHandler(ImmutableClassesGiraphConfiguration conf) {
+    maxCredit = NETTY_SERVER_CREDIT_BYTES.get(conf);
+    minCredit = Math.min(maxCredit, NETTY_SERVER_MIN_CREDIT_BYTES.get(conf));
+  }
+
+  /**
+   * Get the backlog and credit of a client, creating them if necessary.
+   *
+   * @param clientId Client task id
+   * @return Backlog and credit of the client
+   */
+  private ClientCredit getClient(int clientId) {
+    ClientCredit client = clients.get(clientId);
+    if (client == null) {
+      client = new ClientCredit(maxCredit);
+      ClientCredit oldClient = clients.putIfAbsent(clientId, client);
+      if (oldClient != null) {
+        client = oldClient;
+      }
+    }
+    return client;
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+    throws Exception {
+    if (e.getMessage() instanceof ChannelBuffer) {
+      // A frame starts with the request type, followed by the client id
+      // (see WritableRequest#write())
+      ChannelBuffer frame = (ChannelBuffer) e.getMessage();
+      ClientCredit client = getClient(frame.getInt(frame.readerIndex() + 1));
+      synchronized (client) {
+        client.backlogBytes += frame.readableBytes();
+      }
+    }
+    super.messageReceived(ctx, e);
+  }
+
+  /**
+   * A request frame was taken out of the backlog to be processed.
+   *
+   * @param clientId Client task id
+   * @param frameBytes Bytes of the request frame
+   */
+  public void requestDecoded(int clientId, int frameBytes) {
+    ClientCredit client = getClient(clientId);
+    synchronized (client) {
+      client.backlogBytes -= frameBytes;
+      client.windowBytes += frameBytes;
+      client.minBacklogBytes =
+          Math.min(client.minBacklogBytes, client.backlogBytes);
+    }
+  }
+
+  /**
+   * Get the credit to advertise to a client, adjusting it to the backlog of
+   * the client once per credit worth of decoded bytes.
+   *
+   * @param clientId Client task id
+   * @return Credit of the client in bytes
+   */
+  public int getCredit(int clientId) {
+    ClientCredit client = getClient(clientId);
+    synchronized (client) {
+      if (client.windowBytes >= client.credit) {
+        int oldCredit = client.credit;
+        if (client.minBacklogBytes > client.credit / 2) {
+          client.credit = Math.max(minCredit, client.credit / 2);
+        } else if (client.minBacklogBytes <= client.credit / 8) {
+          client.credit = (int) Math.min(maxCredit, 2L * client.credit);
+        }
+        if (LOG.isDebugEnabled() && oldCredit != client.credit) {
+          LOG.debug("getCredit: Credit of client " + clientId + " changed " +
+              "from " + oldCredit + " to " + client.credit + " bytes with " +
+              "at least " + client.minBacklogBytes + " bytes of backlog");
+        }
+        client.windowBytes = 0;
+        client.minBacklogBytes = client.backlogBytes;
+      }
+      return client.credit;
+    }
+  }
+
+  /**
+   * Backlog and credit of a client (synchronized on itself)
+   */
+  private static class ClientCredit {
+    /** Bytes of frames received but not decoded yet */
+    private long backlogBytes;
+    /** Bytes of frames decoded since the credit was last adjusted */
+    private long windowBytes;
+    /** Lowest backlog since the credit was last adjusted */
+    private long minBacklogBytes;
+    /** Credit advertised to the client */
+    private int credit;
+
+    /**
+     * Constructor
+     *
+     * @param credit Initial credit
+     */
+    public ClientCredit(int credit) {
+      this.credit = credit;
+    }
+  }
+}
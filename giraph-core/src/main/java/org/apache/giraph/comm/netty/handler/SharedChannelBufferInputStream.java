@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.comm.netty.handler;
+
+import org.apache.giraph.utils.SharedBufferDataInput;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream over a decoded request frame which shares the bytes of
+ * the frame instead of copying them.  The frame must not be reused after
+ * it was decoded, which is the case for the frames produced by
+ * {@link org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder}.
+ */
+public class SharedChannelBufferInputStream extends ChannelBufferInputStream
+    implements SharedBufferDataInput {
+  /** Buffer to read from */
+  private final ChannelBuffer buffer;
+
+  /**
+   * Constructor
+   *
+   * @param buffer Buffer to read from
+   */
+  public SharedChannelBufferInputStream(ChannelBuffer buffer) {
+    super(buffer);
+    this.buffer = buffer;
+  }
+
+  @Override
+  public ByteBuffer readSharedBytes(int length) throws IOException {
+    if (available() < length) {
+      throw new EOFException("readSharedBytes: Only " + available() +
+          " bytes available, trying to read " + length);
+    }
+    if (buffer.hasArray()) {
+      ByteBuffer sharedBytes = ByteBuffer.wrap(buffer.array(),
+          buffer.arrayOffset() + buffer.readerIndex(), length).slice();
+      buffer.skipBytes(length);
+      return sharedBytes;
+    } else {
+      byte[] bytes = new byte[length];
+      readFully(bytes);
+      return ByteBuffer.wrap(bytes);
+    }
+  }
+}
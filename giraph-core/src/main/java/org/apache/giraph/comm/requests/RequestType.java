@@ -53,7 +53,11 @@ public enum RequestType {
   /** Send aggregators from master to worker owners */
   SEND_AGGREGATORS_TO_OWNER_REQUEST(SendAggregatorsToOwnerRequest.class),
   /** Send aggregators from worker owner to other workers */
-  SEND_AGGREGATORS_TO_WORKER_REQUEST(SendAggregatorsToWorkerRequest.class);
+  SEND_AGGREGATORS_TO_WORKER_REQUEST(SendAggregatorsToWorkerRequest.class),
+  /** Let the master know that a worker finished a superstep */
+  SEND_WORKER_FINISHED_REQUEST(SendWorkerFinishedRequest.class),
+  /** Send a chunk of the vertices of a partition being moved */
+  SEND_PARTITION_VERTICES_REQUEST(SendPartitionVerticesRequest.class);
 
   /** Class of request which this type corresponds to */
   private final Class<? extends WritableRequest> requestClass;
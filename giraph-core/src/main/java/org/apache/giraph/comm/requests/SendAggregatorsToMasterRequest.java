@@ -18,7 +18,7 @@
 
 package org.apache.giraph.comm.requests;
 
-import org.apache.giraph.master.MasterAggregatorHandler;
+import org.apache.giraph.bsp.CentralizedServiceMaster;
 
 import java.io.IOException;
 
@@ -45,9 +45,9 @@ public class SendAggregatorsToMasterRequest extends ByteArrayRequest
   }
 
   @Override
-  public void doRequest(MasterAggregatorHandler aggregatorHandler) {
+  public void doRequest(CentralizedServiceMaster<?, ?, ?> service) {
     try {
-      aggregatorHandler.acceptAggregatedValues(getDataInput());
+      service.getAggregatorHandler().acceptAggregatedValues(getDataInput());
     } catch (IOException e) {
       throw new IllegalStateException("doRequest: " +
           "IOException occurred while processing request", e);
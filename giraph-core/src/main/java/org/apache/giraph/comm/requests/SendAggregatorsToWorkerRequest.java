@@ -74,13 +74,18 @@ public class SendAggregatorsToWorkerRequest extends
               aggregatorData.createAggregatorInitialValue(aggregatorName);
           aggregatorValue.readFields(input);
           aggregatorData.setAggregatorValue(aggregatorName, aggregatorValue);
+          if (aggregatorData.useAggregatorTree()) {
+            // Every worker in the tree reduces the values of its children
+            serverData.getOwnerAggregatorData().registerAggregator(
+                aggregatorName, aggregatorClass);
+          }
         }
       }
     } catch (IOException e) {
       throw new IllegalStateException("doRequest: " +
           "IOException occurred while processing request", e);
     }
-    aggregatorData.receivedRequestFromWorker();
+    aggregatorData.receivedRequestFromWorker(getData());
   }
 
   @Override
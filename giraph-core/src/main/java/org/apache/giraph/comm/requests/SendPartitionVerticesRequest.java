@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.requests;
+
+import org.apache.giraph.comm.ServerData;
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.partition.Partition;
+import org.apache.giraph.utils.ExtendedDataInput;
+import org.apache.giraph.utils.ExtendedDataOutput;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Send a chunk of the vertices of a partition which is being moved to
+ * another worker.  The vertices are kept serialized until the request is
+ * handled, and every chunk is merged into the destination partition, so
+ * neither side has to hold a whole partition in a single request.
+ *
+ * @param <I> Vertex id
+ * @param <V> Vertex data
+ * @param <E> Edge data
+ */
+@SuppressWarnings("rawtypes")
+public class SendPartitionVerticesRequest<I extends WritableComparable,
+    V extends Writable, E extends Writable> extends
+    WritableRequest<I, V, E> implements WorkerRequest<I, V, E> {
+  /** Partition the vertices belong to */
+  private int partitionId;
+  /** Number of vertices in the chunk */
+  private int numVertices;
+  /** Serialized vertices */
+  private byte[] data;
+  /** Number of valid bytes in data */
+  private int dataSize;
+
+  /**
+   * Constructor used for reflection only
+   */
+  public SendPartitionVerticesRequest() { }
+
+  /**
+   * Constructor for sending a request.
+   *
+   * @param partitionId Partition the vertices belong to
+   * @param numVertices Number of vertices in the chunk
+   * @param vertices Vertices serialized with
+   *        {@link WritableUtils#writeVertexToDataOutput}
+   */
+  public SendPartitionVerticesRequest(int partitionId, int numVertices,
+      ExtendedDataOutput vertices) {
+    this.partitionId = partitionId;
+    this.numVertices = numVertices;
+    this.data = vertices.getByteArray();
+    this.dataSize = vertices.getPos();
+  }
+
+  @Override
+  public void readFieldsRequest(DataInput input) throws IOException {
+    partitionId = input.readInt();
+    numVertices = input.readInt();
+    dataSize = input.readInt();
+    data = new byte[dataSize];
+    input.readFully(data);
+  }
+
+  @Override
+  public void writeRequest(DataOutput output) throws IOException {
+    output.writeInt(partitionId);
+    output.writeInt(numVertices);
+    output.writeInt(dataSize);
+    output.write(data, 0, dataSize);
+  }
+
+  @Override
+  public RequestType getType() {
+    return RequestType.SEND_PARTITION_VERTICES_REQUEST;
+  }
+
+  @Override
+  public void doRequest(ServerData<I, V, E> serverData) {
+    Partition<I, V, E> partition =
+        getConf().createPartition(partitionId, null);
+    ExtendedDataInput input =
+        getConf().createExtendedDataInput(data, 0, dataSize);
+    try {
+      for (int i = 0; i < numVertices; ++i) {
+        Vertex<I, V, E> vertex =
+            WritableUtils.readVertexFromDataInput(input, getConf());
+        partition.putVertex(vertex);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("doRequest: Failed to read vertices " +
+          "of partition " + partitionId, e);
+    }
+    data = null;
+    serverData.getPartitionStore().addPartition(partition);
+  }
+
+  @Override
+  public int getSerializedSize() {
+    return super.getSerializedSize() + 12 + dataSize;
+  }
+}
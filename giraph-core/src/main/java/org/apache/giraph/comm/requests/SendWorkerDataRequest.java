@@ -97,6 +97,15 @@ public abstract class SendWorkerDataRequest<I extends WritableComparable, T,
     }
   }
 
+  @Override
+  public void releaseBuffers() {
+    PairList<Integer, B>.Iterator iterator = partitionVertexData.getIterator();
+    while (iterator.hasNext()) {
+      iterator.next();
+      iterator.getCurrentSecond().release();
+    }
+  }
+
   @Override
   public int getSerializedSize() {
     int size = super.getSerializedSize() + 4;
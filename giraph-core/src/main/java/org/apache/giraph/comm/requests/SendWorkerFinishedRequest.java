@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.requests;
+
+import org.apache.giraph.bsp.CentralizedServiceMaster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Request to let the master know that a worker finished a superstep, with
+ * the statistics of the worker for the superstep
+ */
+public class SendWorkerFinishedRequest extends ByteArrayRequest
+    implements MasterRequest {
+  /** Application attempt */
+  private long applicationAttempt;
+  /** Finished superstep */
+  private long superstep;
+  /** Hostname and id of the worker */
+  private String hostnameId;
+
+  /**
+   * Constructor
+   *
+   * @param applicationAttempt Application attempt
+   * @param superstep Finished superstep
+   * @param hostnameId Hostname and id of the worker
+   * @param finishedInfo Serialized finished superstep information
+   */
+  public SendWorkerFinishedRequest(long applicationAttempt, long superstep,
+      String hostnameId, byte[] finishedInfo) {
+    super(finishedInfo);
+    this.applicationAttempt = applicationAttempt;
+    this.superstep = superstep;
+    this.hostnameId = hostnameId;
+  }
+
+  /**
+   * Constructor used for reflection only
+   */
+  public SendWorkerFinishedRequest() {
+  }
+
+  @Override
+  public void doRequest(CentralizedServiceMaster<?, ?, ?> service) {
+    service.getFinishedWorkerData().workerFinished(
+        applicationAttempt, superstep, hostnameId, getData());
+  }
+
+  @Override
+  void writeRequest(DataOutput output) throws IOException {
+    super.writeRequest(output);
+    output.writeLong(applicationAttempt);
+    output.writeLong(superstep);
+    output.writeUTF(hostnameId);
+  }
+
+  @Override
+  void readFieldsRequest(DataInput input) throws IOException {
+    super.readFieldsRequest(input);
+    applicationAttempt = input.readLong();
+    superstep = input.readLong();
+    hostnameId = input.readUTF();
+  }
+
+  @Override
+  public int getSerializedSize() {
+    return WritableRequest.UNKNOWN_SIZE;
+  }
+
+  @Override
+  public RequestType getType() {
+    return RequestType.SEND_WORKER_FINISHED_REQUEST;
+  }
+}
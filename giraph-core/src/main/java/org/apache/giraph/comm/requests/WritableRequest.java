@@ -79,6 +79,14 @@ public abstract class WritableRequest<I extends WritableComparable,
     return 4 + 8;
   }
 
+  /**
+   * Release the buffers of a request which is done (acknowledged or
+   * processed locally), so that they can be reused.  The request can't be
+   * used after this.
+   */
+  public void releaseBuffers() {
+  }
+
   /**
    * Get the type of the request
    *
@@ -374,6 +374,20 @@ public class GiraphConfiguration extends Configuration
     return VERTEX_OUTPUT_FORMAT_THREAD_SAFE.get(this);
   }
 
+  /**
+   * Set whether or not the text and sequence file output formats write a
+   * file per vertex writer. Only with this set may those formats be
+   * declared thread-safe with
+   * {@link #setVertexOutputFormatThreadSafe(boolean)}.
+   *
+   * @param vertexOutputFilePerWriter True iff each vertex writer should
+   *                                  write a file of its own
+   */
+  public final void setVertexOutputFilePerWriter(
+      boolean vertexOutputFilePerWriter) {
+    VERTEX_OUTPUT_FILE_PER_WRITER.set(this, vertexOutputFilePerWriter);
+  }
+
   /**
    * Set whether or not selected VertexOutputFormat is thread-safe
    *
@@ -787,6 +801,97 @@ public class GiraphConfiguration extends Configuration
     return NUM_COMPUTE_THREADS.get(this);
   }
 
+  /**
+   * Set the vertex range size used to split large partitions between
+   * compute threads.
+   *
+   * @param vertexRangeSize Vertex range size (0 disables splitting)
+   */
+  public void setComputeVertexRangeSize(int vertexRangeSize) {
+    COMPUTE_VERTEX_RANGE_SIZE.set(this, vertexRangeSize);
+  }
+
+  public int getComputeVertexRangeSize() {
+    return COMPUTE_VERTEX_RANGE_SIZE.get(this);
+  }
+
+  /**
+   * Set whether to create one Computation per compute thread (instead of
+   * one per partition) in every superstep.
+   *
+   * @param computationPerThread True to create a Computation per thread
+   */
+  public void setComputationPerThread(boolean computationPerThread) {
+    COMPUTATION_PER_THREAD.set(this, computationPerThread);
+  }
+
+  public boolean isComputationPerThread() {
+    return COMPUTATION_PER_THREAD.get(this);
+  }
+
+  /**
+   * Only compute the vertices which are active or received messages, for
+   * partitions which keep track of their active vertices.
+   *
+   * @param activeVertexFrontier True to skip halted vertices without
+   *                             messages
+   */
+  public void setActiveVertexFrontier(boolean activeVertexFrontier) {
+    ACTIVE_VERTEX_FRONTIER.set(this, activeVertexFrontier);
+  }
+
+  public boolean useActiveVertexFrontier() {
+    return ACTIVE_VERTEX_FRONTIER.get(this);
+  }
+
+  /**
+   * Combine messages with the combiner before sending them too.
+   *
+   * @param sendCombiningCache True to combine messages on the sending side
+   */
+  public void setSendCombiningCache(boolean sendCombiningCache) {
+    SEND_COMBINING_CACHE.set(this, sendCombiningCache);
+  }
+
+  public boolean useSendCombiningCache() {
+    return SEND_COMBINING_CACHE.get(this);
+  }
+
+  /**
+   * Reuse the buffers of the sent requests once they are acknowledged.
+   *
+   * @param sendBufferPool True to pool the send buffers
+   */
+  public void setSendBufferPool(boolean sendBufferPool) {
+    SEND_BUFFER_POOL.set(this, sendBufferPool);
+  }
+
+  public boolean useSendBufferPool() {
+    return SEND_BUFFER_POOL.get(this);
+  }
+
+  /**
+   * Send the messages of every partition as soon as it is computed.
+   *
+   * @param pipelineMessageFlush True to flush messages after every partition
+   */
+  public void setPipelineMessageFlush(boolean pipelineMessageFlush) {
+    PIPELINE_MESSAGE_FLUSH.set(this, pipelineMessageFlush);
+  }
+
+  public boolean isPipelineMessageFlush() {
+    return PIPELINE_MESSAGE_FLUSH.get(this);
+  }
+
+  /**
+   * Set the maximum number of bytes of requests without confirmation.
+   *
+   * @param maxOpenRequestBytes Maximum number of bytes, 0 for no limit
+   */
+  public void setMaxOpenRequestBytes(long maxOpenRequestBytes) {
+    MAX_OPEN_REQUEST_BYTES.set(this, maxOpenRequestBytes);
+  }
+
   /**
    * Set the number of input split threads
    *
@@ -927,6 +1032,20 @@ public class GiraphConfiguration extends Configuration
     }
   }
 
+  /**
+   * Set whether the edge store sorts the incoming edges in append-only
+   * chunks when moving them to the vertices.
+   *
+   * @param sortedIngestion True iff edges should be ingested sorted
+   */
+  public void setEdgeStoreSortedIngestion(boolean sortedIngestion) {
+    EDGE_STORE_SORTED_INGESTION.set(this, sortedIngestion);
+  }
+
+  public boolean useEdgeStoreSortedIngestion() {
+    return EDGE_STORE_SORTED_INGESTION.get(this);
+  }
+
   /**
    * Check if we want to prioritize input splits which reside on the host.
    *
@@ -51,6 +51,7 @@ import org.apache.giraph.master.MasterCompute;
 import org.apache.giraph.master.MasterObserver;
 import org.apache.giraph.partition.GraphPartitionerFactory;
 import org.apache.giraph.partition.HashPartitionerFactory;
+import org.apache.giraph.partition.OutOfCoreEvictionPolicy;
 import org.apache.giraph.partition.Partition;
 import org.apache.giraph.partition.SimplePartition;
 import org.apache.giraph.worker.DefaultWorkerContext;
@@ -58,6 +59,7 @@ import org.apache.giraph.worker.WorkerContext;
 import org.apache.giraph.worker.WorkerObserver;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -224,6 +226,17 @@ public interface GiraphConstants {
           "Vertex output format thread-safe - if your VertexOutputFormat " +
           "allows several vertexWriters to be created and written to in " +
           "parallel, you should set this to true.");
+  /**
+   * Write a file of its own per vertex writer with the text and sequence
+   * file output formats, so that they can be declared thread-safe
+   */
+  BooleanConfOption VERTEX_OUTPUT_FILE_PER_WRITER =
+      new BooleanConfOption("giraph.vertexOutputFilePerWriter", false,
+          "Have the text and sequence file vertex output formats write a " +
+          "file of their own per vertex writer. Only then may they be " +
+          "declared thread-safe with giraph.vertexOutputFormatThreadSafe. " +
+          "The files are committed with the task output, and compressed " +
+          "if the output compression of the job is on.");
   /** Number of threads for writing output in the end of the application */
   IntConfOption NUM_OUTPUT_THREADS =
       new IntConfOption("giraph.numOutputThreads", 1,
@@ -341,6 +354,38 @@ public interface GiraphConstants {
           "Minimum percent of the maximum number of workers that have " +
           "responded in order to continue progressing. (float)");
 
+  /**
+   * Workers let the master know that they finished a superstep through
+   * Netty instead of ZooKeeper
+   */
+  BooleanConfOption NETTY_SUPERSTEP_BARRIER =
+      new BooleanConfOption("giraph.nettySuperstepBarrier", false,
+          "Workers send their superstep statistics and let the master know " +
+          "that they finished a superstep through Netty, instead of " +
+          "writing finished znodes that the master has to read. " +
+          "ZooKeeper is still used to detect failed workers.");
+
+  /**
+   * Accumulate the common sum, min and max aggregators of primitive values
+   * without locking
+   */
+  BooleanConfOption USE_STRIPED_AGGREGATORS =
+      new BooleanConfOption("giraph.useStripedAggregators", false,
+          "Accumulate the common sum, min and max aggregators of primitive " +
+          "values in lock-free per-thread cells, instead of synchronizing " +
+          "on each aggregate() call or copying them for each thread");
+
+  /**
+   * Fan-out of the tree over workers which reduces and broadcasts the
+   * aggregators, 0 to send them through the owners of the aggregators
+   */
+  IntConfOption AGGREGATOR_TREE_FAN_OUT =
+      new IntConfOption("giraph.aggregatorTreeFanOut", 0,
+          "Fan-out of the tree over workers which reduces the partial " +
+          "aggregated values on their way to the master, and broadcasts " +
+          "the final values from the master.  0 sends each aggregator " +
+          "through the worker which owns it instead.");
+
   /** Enable the Metrics system */
   BooleanConfOption METRICS_ENABLE =
       new BooleanConfOption("giraph.metrics.enable", false,
@@ -410,6 +455,15 @@ public interface GiraphConstants {
                             false, "Whether or not netty request encoder " +
                                    "should use direct byte buffers");
 
+  /**
+   * Whether or not netty request decoder should share the bytes of the
+   * received requests instead of copying them
+   */
+  BooleanConfOption NETTY_REQUEST_DECODER_ZERO_COPY =
+      new BooleanConfOption("giraph.nettyRequestDecoderZeroCopy", true,
+          "Whether or not netty request decoder should share the bytes of " +
+          "the received requests instead of copying them");
+
   /** Netty client threads */
   IntConfOption NETTY_CLIENT_THREADS =
       new IntConfOption("giraph.nettyClientThreads", 4, "Netty client threads");
@@ -496,6 +550,44 @@ public interface GiraphConstants {
       new IntConfOption("giraph.nettyMaxConnectionFailures", 1000,
           "Netty max connection failures");
 
+  /**
+   * Use per-destination, byte-based credit flow control for requests
+   * instead of limiting the total number of open requests.
+   */
+  BooleanConfOption NETTY_CREDIT_FLOW_CONTROL =
+      new BooleanConfOption("giraph.creditFlowControl", false,
+          "Use per-destination, byte-based credit flow control for " +
+          "requests instead of limiting the number of open requests");
+
+  /**
+   * Maximum bytes of requests without confirmation a server accepts from
+   * each client, advertised in every response (credit flow control).  A
+   * server which falls behind a client advertises less.
+   */
+  IntConfOption NETTY_SERVER_CREDIT_BYTES =
+      new IntConfOption("giraph.serverCreditBytes", 4 * ONE_KB * ONE_KB,
+          "Maximum bytes of requests without confirmation a server accepts " +
+          "from each client, advertised in every response");
+
+  /**
+   * Minimum credit a server advertises to a client it falls behind of
+   * (credit flow control).
+   */
+  IntConfOption NETTY_SERVER_MIN_CREDIT_BYTES =
+      new IntConfOption("giraph.serverMinCreditBytes", 64 * ONE_KB,
+          "Minimum bytes of requests without confirmation a server accepts " +
+          "from each client, when it falls behind the client");
+
+  /**
+   * Maximum number of bytes of requests a client queues for destinations
+   * without credit before sending threads have to wait.
+   */
+  LongConfOption NETTY_MAX_QUEUED_REQUEST_BYTES =
+      new LongConfOption("giraph.maxQueuedRequestBytes",
+          128L * ONE_KB * ONE_KB,
+          "Maximum number of bytes of requests a client queues for " +
+          "destinations without credit before sending threads wait");
+
   /** Initial port to start using for the IPC communication */
   IntConfOption IPC_INITIAL_PORT =
       new IntConfOption("giraph.ipcInitialPort", 30000,
@@ -539,6 +631,58 @@ public interface GiraphConstants {
       new IntConfOption("giraph.msgRequestSize", 512 * ONE_KB,
           "Maximum size of messages (in bytes) per peer before flush");
 
+  /**
+   * Combine the messages to the same vertex with the combiner on the sending
+   * side too, before they are serialized (only if a combiner is set).
+   */
+  BooleanConfOption SEND_COMBINING_CACHE =
+      new BooleanConfOption("giraph.sendCombiningCache", false,
+          "Combine the messages to the same vertex with the combiner before " +
+          "sending them, if a combiner is set");
+
+  /**
+   * Maximum number of combined messages every compute thread keeps before
+   * messages to other vertices are sent without combining.
+   */
+  IntConfOption SEND_COMBINING_CACHE_MAX_MESSAGES =
+      new IntConfOption("giraph.sendCombiningCacheMaxMessages", 100000,
+          "Maximum number of combined messages every compute thread keeps " +
+          "before messages to other vertices are sent without combining");
+
+  /**
+   * Reuse the buffers of the sent messages and edges, and of the encoded
+   * requests, once the requests are acknowledged
+   */
+  BooleanConfOption SEND_BUFFER_POOL =
+      new BooleanConfOption("giraph.sendBufferPool", false,
+          "Reuse the buffers of the sent messages and edges, and of the " +
+          "encoded requests, once the requests are acknowledged");
+
+  /** Maximum number of bytes of unused buffers kept by the send pool */
+  LongConfOption SEND_BUFFER_POOL_MAX_BYTES =
+      new LongConfOption("giraph.sendBufferPoolMaxBytes",
+          128L * ONE_KB * ONE_KB,
+          "Maximum number of bytes of unused buffers kept by the send pool");
+
+  /**
+   * Send the cached messages of every partition (or vertex range) as soon as
+   * it is computed, so that the transfer overlaps with the computation of
+   * the next partitions instead of piling up at the end of the superstep.
+   */
+  BooleanConfOption PIPELINE_MESSAGE_FLUSH =
+      new BooleanConfOption("giraph.pipelineMessageFlush", false,
+          "Send the cached messages of every partition as soon as it is " +
+          "computed, instead of when the compute thread is done");
+
+  /**
+   * Maximum number of bytes of requests without confirmation a client can
+   * have, sending threads wait once it is exceeded (0 for no limit).
+   */
+  LongConfOption MAX_OPEN_REQUEST_BYTES =
+      new LongConfOption("giraph.maxOpenRequestBytes", 0,
+          "Maximum number of bytes of requests without confirmation a " +
+          "client can have, 0 for no limit");
+
   /**
    * How much bigger than the average per partition size to make initial per
    * partition buffers.
@@ -558,6 +702,25 @@ public interface GiraphConstants {
       new IntConfOption("giraph.edgeRequestSize", 512 * ONE_KB,
           "Maximum size of edges (in bytes) per peer before flush");
 
+  /**
+   * Maximum size of the vertices (in bytes) of a partition being moved to
+   * another worker which are sent in one request.
+   */
+  IntConfOption PARTITION_MIGRATION_CHUNK_SIZE =
+      new IntConfOption("giraph.partitionMigrationChunkSize", 512 * ONE_KB,
+          "Maximum size of vertices (in bytes) of a moving partition per " +
+          "request");
+
+  /**
+   * How many bytes of moving partitions a worker sends before waiting for
+   * them to be acknowledged, so that the chunks in flight stay bounded.
+   */
+  LongConfOption PARTITION_MIGRATION_MAX_OPEN_BYTES =
+      new LongConfOption("giraph.partitionMigrationMaxOpenBytes",
+          64 * ONE_KB * ONE_KB, "Maximum number of bytes of moving " +
+          "partitions a worker sends before waiting for them, 0 for no " +
+          "limit");
+
   /**
    * Additional size (expressed as a ratio) of each per-partition buffer on
    * top of the average size.
@@ -567,6 +730,18 @@ public interface GiraphConstants {
           "Additional size (expressed as a ratio) of each per-partition " +
           "buffer on top of the average size.");
 
+  /**
+   * Whether the edge store keeps the incoming edges in append-only chunks
+   * and builds the out-edges of each partition by sorting them when
+   * moving them to the vertices, instead of adding them one by one to
+   * per-vertex out-edges.
+   */
+  BooleanConfOption EDGE_STORE_SORTED_INGESTION =
+      new BooleanConfOption("giraph.edgeStoreSortedIngestion", false,
+          "Whether the edge store keeps the incoming edges in append-only " +
+          "chunks and builds the out-edges of each partition by sorting " +
+          "them when moving them to the vertices");
+
   /** Maximum number of mutations per partition before flush */
   IntConfOption MAX_MUTATIONS_PER_REQUEST =
       new IntConfOption("giraph.maxMutationsPerRequest", 100,
@@ -594,6 +769,37 @@ public interface GiraphConstants {
       new IntConfOption("giraph.numComputeThreads", 1,
           "Number of threads for vertex computation");
 
+  /**
+   * Partitions with more vertices than this are split into vertex ranges
+   * that idle compute threads can steal.  Splitting is disabled when 0.
+   */
+  IntConfOption COMPUTE_VERTEX_RANGE_SIZE =
+      new IntConfOption("giraph.computeVertexRangeSize", 0,
+          "Partitions with more vertices than this are split into vertex " +
+          "ranges that idle compute threads can steal (0 disables splitting)");
+
+  /**
+   * Create one Computation per compute thread per superstep instead of one
+   * per partition.
+   */
+  BooleanConfOption COMPUTATION_PER_THREAD =
+      new BooleanConfOption("giraph.computationPerThread", false,
+          "Create one Computation per compute thread per superstep instead " +
+          "of one per partition, so preSuperstep()/postSuperstep() are only " +
+          "called once per thread and prePartition()/postPartition() " +
+          "bracket each partition");
+
+  /**
+   * Only compute the vertices which are not halted or have messages, as
+   * tracked by {@link org.apache.giraph.partition.ActiveVerticesPartition},
+   * instead of iterating over the whole partition.
+   */
+  BooleanConfOption ACTIVE_VERTEX_FRONTIER =
+      new BooleanConfOption("giraph.activeVertexFrontier", false,
+          "Only compute the vertices which are not halted or have messages, " +
+          "if the partition keeps track of them, instead of iterating over " +
+          "the whole partition");
+
   /** Number of threads for input split loading */
   IntConfOption NUM_INPUT_THREADS =
       new IntConfOption("giraph.numInputThreads", 1,
@@ -733,6 +939,65 @@ public interface GiraphConstants {
       new StrConfOption("giraph.checkpointDirectory", "_bsp/_checkpoints/",
           "This directory has/stores the available checkpoint files in HDFS.");
 
+  /**
+   * Number of threads writing and reading the checkpointed partitions of a
+   * worker.  Every partition is checkpointed to its own file.
+   */
+  IntConfOption NUM_CHECKPOINT_IO_THREADS =
+      new IntConfOption("giraph.checkpointIoThreads", 8,
+          "Number of threads writing and reading the checkpointed partitions " +
+          "of a worker.  Every partition is checkpointed to its own file.");
+
+  /** Compression codec for the checkpointed partitions - optional */
+  ClassConfOption<CompressionCodec> CHECKPOINT_COMPRESSION_CODEC =
+      ClassConfOption.create("giraph.checkpointCompressionCodec", null,
+          CompressionCodec.class,
+          "Compression codec for the checkpointed partitions - optional");
+
+  /**
+   * For static graphs (see giraph.isStaticGraph), checkpoint the edges of a
+   * partition only once and afterwards only the vertex values and messages.
+   */
+  BooleanConfOption INCREMENTAL_CHECKPOINTS =
+      new BooleanConfOption("giraph.incrementalCheckpoints", false,
+          "For static graphs (see giraph.isStaticGraph), checkpoint the " +
+          "edges of a partition only once and afterwards only the vertex " +
+          "values and messages.");
+
+  /**
+   * Capture the checkpointed partitions in memory at the start of the
+   * superstep and write them while it computes.  Needs memory for a
+   * serialized copy of the partitions of a worker.
+   */
+  BooleanConfOption ASYNC_CHECKPOINTS =
+      new BooleanConfOption("giraph.asyncCheckpoints", false,
+          "Capture the checkpointed partitions in memory at the start of " +
+          "the superstep and write them while it computes.  Needs memory " +
+          "for a serialized copy of the partitions of a worker.");
+
+  /**
+   * Keep a copy of the checkpointed partitions on the local disk of the
+   * workers, and restart from it when a partition is assigned back to the
+   * same host.
+   */
+  BooleanConfOption USE_CHECKPOINT_LOCAL_CACHE =
+      new BooleanConfOption("giraph.useCheckpointLocalCache", false,
+          "Keep a copy of the checkpointed partitions on the local disk of " +
+          "the workers, and restart from it when a partition is assigned " +
+          "back to the same host.");
+
+  /**
+   * Directory in the local file system for the copies of the checkpointed
+   * partitions.  It has to outlive the task, so it shouldn't be relative to
+   * the working directory of the task.
+   */
+  StrConfOption CHECKPOINT_LOCAL_CACHE_DIRECTORY =
+      new StrConfOption("giraph.checkpointLocalCacheDirectory",
+          "/tmp/_giraphCheckpointCache/",
+          "Directory in the local file system for the copies of the " +
+          "checkpointed partitions.  It has to outlive the task, so it " +
+          "shouldn't be relative to the working directory of the task.");
+
   /**
    * Comma-separated list of directories in the local file system for
    * out-of-core messages.
@@ -783,6 +1048,55 @@ public interface GiraphConstants {
       new IntConfOption("giraph.maxPartitionsInMemory", 10,
           "Maximum number of partitions to hold in memory for each worker.");
 
+  /**
+   * Whether the out-of-core graph decides how many partitions to hold in
+   * memory from the heap usage, instead of giraph.maxPartitionsInMemory.
+   */
+  BooleanConfOption OUT_OF_CORE_ADAPTIVE_EVICTION =
+      new BooleanConfOption("giraph.outOfCoreAdaptiveEviction", false,
+          "Whether the out-of-core graph decides how many partitions to " +
+          "hold in memory from the heap usage, instead of " +
+          "giraph.maxPartitionsInMemory.");
+
+  /**
+   * Fraction of the maximum heap in use after a garbage collection above
+   * which adaptive out-of-core eviction spills partitions to disk.
+   */
+  FloatConfOption OUT_OF_CORE_HEAP_HIGH_WATERMARK =
+      new FloatConfOption("giraph.outOfCoreHeapHighWatermark", 0.8f,
+          "Fraction of the maximum heap in use after a garbage collection " +
+          "above which adaptive out-of-core eviction spills partitions to " +
+          "disk.");
+
+  /**
+   * Fraction of the maximum heap in use after a garbage collection below
+   * which adaptive out-of-core eviction stops spilling partitions.
+   */
+  FloatConfOption OUT_OF_CORE_HEAP_LOW_WATERMARK =
+      new FloatConfOption("giraph.outOfCoreHeapLowWatermark", 0.6f,
+          "Fraction of the maximum heap in use after a garbage collection " +
+          "below which adaptive out-of-core eviction stops spilling " +
+          "partitions.");
+
+  /** Order in which the out-of-core graph spills partitions to disk */
+  EnumConfOption<OutOfCoreEvictionPolicy> OUT_OF_CORE_EVICTION_POLICY =
+      EnumConfOption.create("giraph.outOfCoreEvictionPolicy",
+          OutOfCoreEvictionPolicy.class, OutOfCoreEvictionPolicy.LRU,
+          "Order in which the out-of-core graph spills partitions to disk");
+
+  /**
+   * Number of upcoming partitions the out-of-core graph loads in the
+   * background while the current ones are computed.  If positive, evicted
+   * partitions are also written back in the background.  0 to load and
+   * write back partitions on demand.
+   */
+  IntConfOption OUT_OF_CORE_PREFETCH_PARTITIONS =
+      new IntConfOption("giraph.outOfCorePrefetchPartitions", 0,
+          "Number of upcoming partitions the out-of-core graph loads in the " +
+          "background while the current ones are computed.  If positive, " +
+          "evicted partitions are also written back in the background.  0 " +
+          "to load and write back partitions on demand.");
+
   /** Keep the zookeeper output for debugging? Default is to remove it. */
   BooleanConfOption KEEP_ZOOKEEPER_DATA =
       new BooleanConfOption("giraph.keepZooKeeperData", false,
@@ -869,5 +1183,15 @@ public interface GiraphConstants {
           "The application will not mutate the graph topology (the edges). " +
           "It is used to optimise out-of-core graph, by not writing back " +
           "edges every time.");
+
+  /**
+   * Whether the out-of-core graph memory-maps the edges of static graphs,
+   * instead of reading them into the partitions when loading them.
+   */
+  BooleanConfOption MMAP_STATIC_GRAPH_EDGES =
+      new BooleanConfOption("giraph.mmapStaticGraphEdges", false,
+          "Whether the out-of-core graph memory-maps the edges of static " +
+          "graphs (see giraph.isStaticGraph), instead of reading them into " +
+          "the partitions when loading them.");
 }
 // CHECKSTYLE: resume InterfaceIsTypeCheck
@@ -21,25 +21,48 @@ package org.apache.giraph.edge;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.metrics.GiraphMetrics;
+import org.apache.giraph.metrics.MetricNames;
+import org.apache.giraph.metrics.SuperstepMetricsRegistry;
 import org.apache.giraph.partition.Partition;
 import org.apache.giraph.utils.ByteArrayVertexIdEdges;
 import org.apache.giraph.utils.CallableFactory;
+import org.apache.giraph.utils.ExtendedDataInput;
 import org.apache.giraph.utils.ProgressableUtils;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.util.Progressable;
 import org.apache.log4j.Logger;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
+import com.yammer.metrics.core.Gauge;
 
+import it.unimi.dsi.fastutil.longs.AbstractLongComparator;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Collects incoming edges for vertices owned by this worker.
  *
+ * By default the edges are added one by one to the out-edges of their
+ * source vertices as they arrive.  With sorted ingestion, the incoming
+ * chunks of edges are only appended to their partition, and the out-edges
+ * of every partition are built in one pass by sorting its edges by source
+ * vertex when moving them to the vertices.
+ *
  * @param <I> Vertex id
  * @param <V> Vertex value
  * @param <E> Edge value
@@ -57,6 +80,13 @@ public class EdgeStore<I extends WritableComparable,
   /** Map used to temporarily store incoming edges. */
   private ConcurrentMap<Integer,
       ConcurrentMap<I, OutEdges<I, E>>> transientEdges;
+  /** Map used to temporarily store chunks of incoming edges (if sorted) */
+  private ConcurrentMap<Integer,
+      Queue<ByteArrayVertexIdEdges<I, E>>> transientEdgeChunks;
+  /** Whether the incoming edges are kept in chunks and sorted when moved */
+  private boolean sortedIngestion;
+  /** Peak used heap (in bytes) seen while loading the edges */
+  private final AtomicLong peakUsedHeap = new AtomicLong(0);
   /**
    * Whether the chosen {@link OutEdges} implementation allows for Edge
    * reuse.
@@ -84,6 +114,9 @@ public class EdgeStore<I extends WritableComparable,
     this.progressable = progressable;
     transientEdges = new MapMaker().concurrencyLevel(
         configuration.getNettyServerExecutionConcurrency()).makeMap();
+    transientEdgeChunks = new MapMaker().concurrencyLevel(
+        configuration.getNettyServerExecutionConcurrency()).makeMap();
+    sortedIngestion = configuration.useEdgeStoreSortedIngestion();
     reuseEdgeObjects = configuration.reuseEdgeObjects();
     useInputOutEdges = configuration.useInputOutEdges();
   }
@@ -97,6 +130,11 @@ public class EdgeStore<I extends WritableComparable,
    */
   public void addPartitionEdges(
       int partitionId, ByteArrayVertexIdEdges<I, E> edges) {
+    updatePeakUsedHeap();
+    if (sortedIngestion) {
+      addPartitionEdgeChunk(partitionId, edges);
+      return;
+    }
     ConcurrentMap<I, OutEdges<I, E>> partitionEdges =
         transientEdges.get(partitionId);
     if (partitionEdges == null) {
@@ -135,6 +173,44 @@ public class EdgeStore<I extends WritableComparable,
     }
   }
 
+  /**
+   * Append a chunk of edges to the chunks of a given partition, to be
+   * sorted when moving the edges to the vertices.
+   * Note: This method is thread-safe.
+   *
+   * @param partitionId Partition id for the incoming edges.
+   * @param edges Incoming edges
+   */
+  private void addPartitionEdgeChunk(
+      int partitionId, ByteArrayVertexIdEdges<I, E> edges) {
+    Queue<ByteArrayVertexIdEdges<I, E>> partitionEdgeChunks =
+        transientEdgeChunks.get(partitionId);
+    if (partitionEdgeChunks == null) {
+      Queue<ByteArrayVertexIdEdges<I, E>> newPartitionEdgeChunks =
+          new ConcurrentLinkedQueue<ByteArrayVertexIdEdges<I, E>>();
+      partitionEdgeChunks = transientEdgeChunks.putIfAbsent(partitionId,
+          newPartitionEdgeChunks);
+      if (partitionEdgeChunks == null) {
+        partitionEdgeChunks = newPartitionEdgeChunks;
+      }
+    }
+    // The chunk outlives the request it came with
+    edges.detachFromPool();
+    partitionEdgeChunks.add(edges);
+  }
+
+  /**
+   * Record the currently used heap if it is the highest seen so far.
+   */
+  private void updatePeakUsedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+    long peak = peakUsedHeap.get();
+    while (usedHeap > peak && !peakUsedHeap.compareAndSet(peak, usedHeap)) {
+      peak = peakUsedHeap.get();
+    }
+  }
+
   /**
    * Convert the input edges to the {@link OutEdges} data structure used
    * for computation (if different).
@@ -151,12 +227,177 @@ public class EdgeStore<I extends WritableComparable,
     }
   }
 
+  /**
+   * Set the out-edges of a vertex in a partition, creating the vertex if it
+   * doesn't exist.
+   *
+   * @param partition Partition of the vertex
+   * @param vertexId Id of the vertex
+   * @param outEdges Compute edges of the vertex
+   */
+  private void setVertexEdges(Partition<I, V, E> partition, I vertexId,
+      OutEdges<I, E> outEdges) {
+    Vertex<I, V, E> vertex = partition.getVertex(vertexId);
+    // If the source vertex doesn't exist, create it. Otherwise,
+    // just set the edges.
+    if (vertex == null) {
+      vertex = configuration.createVertex();
+      vertex.initialize(vertexId, configuration.createVertexValue(),
+          outEdges);
+      partition.putVertex(vertex);
+    } else {
+      vertex.setEdges(outEdges);
+      // Some Partition implementations (e.g. ByteArrayPartition)
+      // require us to put back the vertex after modifying it.
+      partition.saveVertex(vertex);
+    }
+  }
+
+  /**
+   * Build the out-edges of a partition from its chunks of incoming edges,
+   * by sorting the edges by source vertex and grouping them, and set them
+   * to their source vertices.  Since all of the edges of a vertex are known
+   * at once, the compute edges are built directly with their final size.
+   *
+   * Only the positions of the edges in the serialized chunks are sorted,
+   * together with their source ids if those are primitive.  The edges are
+   * then read from their chunks in sorted order.
+   *
+   * @param partition Partition of the edges
+   * @param partitionEdgeChunks Chunks of incoming edges of the partition
+   */
+  private void moveSortedEdges(Partition<I, V, E> partition,
+      Queue<ByteArrayVertexIdEdges<I, E>> partitionEdgeChunks) {
+    final List<ByteArrayVertexIdEdges<I, E>> edgeChunks =
+        Lists.newArrayList(partitionEdgeChunks);
+    Class<I> vertexIdClass = configuration.getVertexIdClass();
+    boolean primitiveIds = vertexIdClass == LongWritable.class ||
+        vertexIdClass == IntWritable.class;
+    // Position of an edge: index of its chunk, and offset in the chunk
+    LongArrayList positions = new LongArrayList();
+    LongArrayList sourceIds = primitiveIds ? new LongArrayList() : null;
+    for (int i = 0; i < edgeChunks.size(); ++i) {
+      ByteArrayVertexIdEdges<I, E>.VertexIdEdgeIterator vertexIdEdgeIterator =
+          edgeChunks.get(i).getVertexIdEdgeIterator();
+      while (vertexIdEdgeIterator.hasNext()) {
+        positions.add(((long) i << 32) | vertexIdEdgeIterator.getPos());
+        vertexIdEdgeIterator.next();
+        if (primitiveIds) {
+          sourceIds.add(toLong(vertexIdEdgeIterator.getCurrentVertexId()));
+        }
+      }
+    }
+    updatePeakUsedHeap();
+
+    int numEdges = positions.size();
+    final long[] sortedPositions = positions.elements();
+    // Positions break the ties, so the edges of a vertex keep their order
+    if (primitiveIds) {
+      LongArrays.radixSort(sourceIds.elements(), sortedPositions,
+          0, numEdges);
+    } else {
+      LongArrays.quickSort(sortedPositions, 0, numEdges,
+          new AbstractLongComparator() {
+            /** Source id of the first edge */
+            private final I sourceId1 = configuration.createVertexId();
+            /** Source id of the second edge */
+            private final I sourceId2 = configuration.createVertexId();
+
+            @Override
+            public int compare(long position1, long position2) {
+              readEdge(edgeChunks, position1, sourceId1, null);
+              readEdge(edgeChunks, position2, sourceId2, null);
+              int result = sourceId1.compareTo(sourceId2);
+              if (result != 0) {
+                return result;
+              }
+              return position1 < position2 ? -1 :
+                  (position1 == position2 ? 0 : 1);
+            }
+          });
+    }
+
+    I otherSourceId = configuration.createVertexId();
+    Edge<I, E> edge = configuration.createEdge();
+    int start = 0;
+    while (start < numEdges) {
+      I sourceId = configuration.createVertexId();
+      readEdge(edgeChunks, sortedPositions[start], sourceId, null);
+      int end = start + 1;
+      if (primitiveIds) {
+        long primitiveSourceId = sourceIds.getLong(start);
+        while (end < numEdges &&
+            sourceIds.getLong(end) == primitiveSourceId) {
+          ++end;
+        }
+      } else {
+        while (end < numEdges) {
+          readEdge(edgeChunks, sortedPositions[end], otherSourceId, null);
+          if (otherSourceId.compareTo(sourceId) != 0) {
+            break;
+          }
+          ++end;
+        }
+      }
+      OutEdges<I, E> outEdges =
+          configuration.createAndInitializeOutEdges(end - start);
+      for (int i = start; i < end; ++i) {
+        if (!reuseEdgeObjects) {
+          edge = configuration.createEdge();
+        }
+        readEdge(edgeChunks, sortedPositions[i], otherSourceId, edge);
+        outEdges.add(edge);
+      }
+      setVertexEdges(partition, sourceId, outEdges);
+      start = end;
+    }
+  }
+
+  /**
+   * Read an edge from its position in the chunks of edges of a partition.
+   *
+   * @param edgeChunks Chunks of edges of the partition
+   * @param position Position of the edge
+   * @param sourceId Source id to read into
+   * @param edge Edge to read into, or null to read only the source id
+   */
+  private void readEdge(List<ByteArrayVertexIdEdges<I, E>> edgeChunks,
+      long position, I sourceId, Edge<I, E> edge) {
+    ByteArrayVertexIdEdges<I, E> edgeChunk =
+        edgeChunks.get((int) (position >>> 32));
+    byte[] data = edgeChunk.getByteArray();
+    int offset = (int) position;
+    ExtendedDataInput input = configuration.createExtendedDataInput(
+        data, offset, data.length - offset);
+    try {
+      sourceId.readFields(input);
+      if (edge != null) {
+        edgeChunk.readData(input, edge);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("readEdge: IOException", e);
+    }
+  }
+
+  /**
+   * Get the value of a primitive vertex id.
+   *
+   * @param vertexId Vertex id, either an IntWritable or a LongWritable
+   * @return Value of the vertex id
+   */
+  private static long toLong(WritableComparable vertexId) {
+    if (vertexId instanceof LongWritable) {
+      return ((LongWritable) vertexId).get();
+    }
+    return ((IntWritable) vertexId).get();
+  }
+
   /**
    * Move all edges from temporary storage to their source vertices.
    * Note: this method is not thread-safe.
    */
   public void moveEdgesToVertices() {
-    if (transientEdges.isEmpty()) {
+    if (transientEdges.isEmpty() && transientEdgeChunks.isEmpty()) {
       if (LOG.isInfoEnabled()) {
         LOG.info("moveEdgesToVertices: No edges to move");
       }
@@ -167,9 +408,12 @@ public class EdgeStore<I extends WritableComparable,
       LOG.info("moveEdgesToVertices: Moving incoming edges to vertices.");
     }
 
+    long startMillis = System.currentTimeMillis();
     final BlockingQueue<Integer> partitionIdQueue =
-        new ArrayBlockingQueue<Integer>(transientEdges.size());
+        new ArrayBlockingQueue<Integer>(
+            transientEdges.size() + transientEdgeChunks.size());
     partitionIdQueue.addAll(transientEdges.keySet());
+    partitionIdQueue.addAll(transientEdgeChunks.keySet());
     int numThreads = configuration.getNumInputSplitsThreads();
 
     CallableFactory<Void> callableFactory = new CallableFactory<Void>() {
@@ -182,24 +426,16 @@ public class EdgeStore<I extends WritableComparable,
             while ((partitionId = partitionIdQueue.poll()) != null) {
               Partition<I, V, E> partition =
                   service.getPartitionStore().getPartition(partitionId);
-              ConcurrentMap<I, OutEdges<I, E>> partitionEdges =
-                  transientEdges.remove(partitionId);
-              for (I vertexId : partitionEdges.keySet()) {
-                OutEdges<I, E> outEdges = convertInputToComputeEdges(
-                    partitionEdges.remove(vertexId));
-                Vertex<I, V, E> vertex = partition.getVertex(vertexId);
-                // If the source vertex doesn't exist, create it. Otherwise,
-                // just set the edges.
-                if (vertex == null) {
-                  vertex = configuration.createVertex();
-                  vertex.initialize(vertexId, configuration.createVertexValue(),
-                      outEdges);
-                  partition.putVertex(vertex);
-                } else {
-                  vertex.setEdges(outEdges);
-                  // Some Partition implementations (e.g. ByteArrayPartition)
-                  // require us to put back the vertex after modifying it.
-                  partition.saveVertex(vertex);
+              if (sortedIngestion) {
+                moveSortedEdges(partition,
+                    transientEdgeChunks.remove(partitionId));
+              } else {
+                ConcurrentMap<I, OutEdges<I, E>> partitionEdges =
+                    transientEdges.remove(partitionId);
+                for (I vertexId : partitionEdges.keySet()) {
+                  setVertexEdges(partition, vertexId,
+                      convertInputToComputeEdges(
+                          partitionEdges.remove(vertexId)));
                 }
               }
               // Some PartitionStore implementations
@@ -216,10 +452,32 @@ public class EdgeStore<I extends WritableComparable,
         "move-edges-%d", progressable);
 
     transientEdges.clear();
+    transientEdgeChunks.clear();
+
+    final long moveMillis = System.currentTimeMillis() - startMillis;
+    updatePeakUsedHeap();
+    final long peakUsedHeapMB = peakUsedHeap.get() / 1024 / 1024;
+    SuperstepMetricsRegistry metrics = GiraphMetrics.get().perSuperstep();
+    metrics.getGauge(MetricNames.MOVE_EDGES_TO_VERTICES_MS,
+        new Gauge<Long>() {
+          @Override
+          public Long value() {
+            return moveMillis;
+          }
+        });
+    metrics.getGauge(MetricNames.EDGE_INPUT_PEAK_HEAP_MB,
+        new Gauge<Long>() {
+          @Override
+          public Long value() {
+            return peakUsedHeapMB;
+          }
+        });
 
     if (LOG.isInfoEnabled()) {
       LOG.info("moveEdgesToVertices: Finished moving incoming edges to " +
-          "vertices.");
+          "vertices in " + moveMillis + " ms" +
+          (sortedIngestion ? " (sorted)" : "") + ", peak used heap " +
+          peakUsedHeapMB + " MB.");
     }
   }
 }
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.edge;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import org.apache.giraph.utils.EdgeIterables;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Implementation of {@link OutEdges} with long ids and null edge
+ * values, backed by a compressed byte array.
+ * The target vertex ids are kept sorted, and the gaps between them are
+ * stored as variable-length integers, so dense adjacency lists take one or
+ * two bytes per edge.  Edges added after initialization are kept
+ * uncompressed until there are as many of them as compressed ones, or the
+ * edges are read or serialized.
+ * Parallel edges are allowed.
+ * Note: this implementation is optimized for space usage and iteration,
+ * but random access and edge removals are linear.
+ */
+public class LongNullCompressedEdges
+    implements ReuseObjectsOutEdges<LongWritable, NullWritable>,
+    StrictRandomAccessOutEdges<LongWritable, NullWritable> {
+  /** Minimum number of added edges before they are compressed */
+  private static final int MIN_ADDED_TO_COMPRESS = 16;
+  /** Compressed neighbors of a vertex without edges */
+  private static final byte[] NO_NEIGHBORS = new byte[0];
+  /** Gaps between the sorted target vertex ids, as varints */
+  private byte[] compressedNeighbors;
+  /** Number of target vertex ids in compressedNeighbors */
+  private int numCompressedNeighbors;
+  /** Target vertex ids added since the last compression (null if none) */
+  private LongArrayList addedNeighbors;
+
+  @Override
+  public void initialize(Iterable<Edge<LongWritable, NullWritable>> edges) {
+    EdgeIterables.initialize(this, edges);
+    compress();
+  }
+
+  @Override
+  public void initialize(int capacity) {
+    initialize();
+    if (capacity > 0) {
+      addedNeighbors = new LongArrayList(capacity);
+    }
+  }
+
+  @Override
+  public void initialize() {
+    compressedNeighbors = NO_NEIGHBORS;
+    numCompressedNeighbors = 0;
+    addedNeighbors = null;
+  }
+
+  @Override
+  public void add(Edge<LongWritable, NullWritable> edge) {
+    if (addedNeighbors == null) {
+      addedNeighbors = new LongArrayList();
+    }
+    addedNeighbors.add(edge.getTargetVertexId().get());
+    if (addedNeighbors.size() >=
+        Math.max(MIN_ADDED_TO_COMPRESS, numCompressedNeighbors)) {
+      compress();
+    }
+  }
+
+  /**
+   * Number of bytes of a value encoded as an unsigned varint.
+   *
+   * @param value Value
+   * @return Number of bytes
+   */
+  private static int varLongSize(long value) {
+    int size = 1;
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      ++size;
+    }
+    return size;
+  }
+
+  /**
+   * Encode a value as an unsigned varint.
+   *
+   * @param bytes Array to write to
+   * @param position Position to write at
+   * @param value Value
+   * @return Position after the encoded value
+   */
+  private static int writeVarLong(byte[] bytes, int position, long value) {
+    while ((value & ~0x7FL) != 0) {
+      bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[position++] = (byte) value;
+    return position;
+  }
+
+  /**
+   * Replace the compressed neighbors with sorted target vertex ids.
+   *
+   * @param neighbors Sorted target vertex ids
+   * @param numNeighbors Number of target vertex ids in the array
+   */
+  private void setCompressedNeighbors(long[] neighbors, int numNeighbors) {
+    int numBytes = 0;
+    long previous = 0;
+    for (int i = 0; i < numNeighbors; ++i) {
+      numBytes += varLongSize(neighbors[i] - previous);
+      previous = neighbors[i];
+    }
+    byte[] bytes = numBytes == 0 ? NO_NEIGHBORS : new byte[numBytes];
+    int position = 0;
+    previous = 0;
+    for (int i = 0; i < numNeighbors; ++i) {
+      position = writeVarLong(bytes, position, neighbors[i] - previous);
+      previous = neighbors[i];
+    }
+    compressedNeighbors = bytes;
+    numCompressedNeighbors = numNeighbors;
+  }
+
+  /**
+   * Merge the added target vertex ids into the compressed ones.
+   */
+  private void compress() {
+    if (addedNeighbors == null) {
+      return;
+    }
+    long[] neighbors = new long[size()];
+    int numNeighbors = 0;
+    NeighborIterator neighborIterator = new NeighborIterator();
+    while (neighborIterator.hasNext()) {
+      neighbors[numNeighbors++] = neighborIterator.nextLong();
+    }
+    addedNeighbors.getElements(0, neighbors, numNeighbors,
+        addedNeighbors.size());
+    addedNeighbors = null;
+    Arrays.sort(neighbors);
+    setCompressedNeighbors(neighbors, neighbors.length);
+  }
+
+  @Override
+  public void remove(LongWritable targetVertexId) {
+    compress();
+    long target = targetVertexId.get();
+    long[] neighbors = new long[numCompressedNeighbors];
+    int numNeighbors = 0;
+    NeighborIterator neighborIterator = new NeighborIterator();
+    while (neighborIterator.hasNext()) {
+      long neighbor = neighborIterator.nextLong();
+      if (neighbor != target) {
+        neighbors[numNeighbors++] = neighbor;
+      }
+    }
+    if (numNeighbors < numCompressedNeighbors) {
+      setCompressedNeighbors(neighbors, numNeighbors);
+    }
+  }
+
+  @Override
+  public int size() {
+    return numCompressedNeighbors +
+        (addedNeighbors == null ? 0 : addedNeighbors.size());
+  }
+
+  @Override
+  public NullWritable getEdgeValue(LongWritable targetVertexId) {
+    long target = targetVertexId.get();
+    if (addedNeighbors != null && addedNeighbors.contains(target)) {
+      return NullWritable.get();
+    }
+    NeighborIterator neighborIterator = new NeighborIterator();
+    while (neighborIterator.hasNext()) {
+      long neighbor = neighborIterator.nextLong();
+      if (neighbor == target) {
+        return NullWritable.get();
+      } else if (neighbor > target) {
+        break;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void setEdgeValue(LongWritable targetVertexId,
+      NullWritable edgeValue) {
+    // No operation.
+    // Only set value for an existing edge.
+    // If the edge exist, the Null value is already there.
+  }
+
+  @Override
+  public Iterator<Edge<LongWritable, NullWritable>> iterator() {
+    compress();
+    // Returns an iterator that reuses objects.
+    return new Iterator<Edge<LongWritable, NullWritable>>() {
+      /** Iterator over the target vertex ids */
+      private final NeighborIterator neighborIterator =
+          new NeighborIterator();
+      /** Representative edge object. */
+      private final ReusableEdge<LongWritable, NullWritable>
+          representativeEdge = EdgeFactory.createReusable(new LongWritable());
+
+      @Override
+      public boolean hasNext() {
+        return neighborIterator.hasNext();
+      }
+
+      @Override
+      public Edge<LongWritable, NullWritable> next() {
+        representativeEdge.getTargetVertexId().set(
+            neighborIterator.nextLong());
+        return representativeEdge;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "remove: Not supported, use remove(targetVertexId)");
+      }
+    };
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    compress();
+    out.writeInt(numCompressedNeighbors);
+    out.writeInt(compressedNeighbors.length);
+    out.write(compressedNeighbors);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    numCompressedNeighbors = in.readInt();
+    int numBytes = in.readInt();
+    compressedNeighbors = numBytes == 0 ? NO_NEIGHBORS : new byte[numBytes];
+    in.readFully(compressedNeighbors);
+    addedNeighbors = null;
+  }
+
+  /**
+   * Decodes the compressed target vertex ids in order.
+   */
+  private class NeighborIterator {
+    /** Compressed neighbors being decoded */
+    private final byte[] bytes = compressedNeighbors;
+    /** Number of target vertex ids left */
+    private int remaining = numCompressedNeighbors;
+    /** Position of the next gap */
+    private int position = 0;
+    /** Last decoded target vertex id */
+    private long previous = 0;
+
+    /**
+     * Are there more target vertex ids?
+     *
+     * @return True iff there are more target vertex ids
+     */
+    boolean hasNext() {
+      return remaining > 0;
+    }
+
+    /**
+     * Decode the next target vertex id.
+     *
+     * @return Next target vertex id
+     */
+    long nextLong() {
+      long gap = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        gap |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      previous += gap;
+      --remaining;
+      return previous;
+    }
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.edge;
+
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.utils.ByteBufferInputStream;
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * {@link OutEdges} of a static graph kept serialized in a (memory-mapped)
+ * buffer, one edge after the other as written by
+ * {@link WritableUtils#writeEdge(DataOutput, Edge)} to a big-endian
+ * {@link DataOutput}.  The edges aren't held on the heap: iterating reads
+ * them one by one from the buffer into the same reusable edge.  The first
+ * mutation reads the edges into {@link OutEdges} of the configured class,
+ * which are used from then on.
+ *
+ * The buffer may also hold the edges as written by the configured
+ * {@link OutEdges} class to a big-endian output.  Then writing the edges
+ * to a big-endian output (e.g. a checkpoint) copies those bytes instead of
+ * reading the edges again.
+ *
+ * @param <I> Vertex id
+ * @param <E> Edge value
+ */
+public class MappedOutEdges<I extends WritableComparable, E extends Writable>
+    implements OutEdges<I, E> {
+  /** Configuration */
+  private final ImmutableClassesGiraphConfiguration<I, ?, E> conf;
+  /** Serialized edges, between position and limit (null once mutated) */
+  private ByteBuffer serializedEdges;
+  /**
+   * Edges as written by the configured OutEdges class, between position
+   * and limit (null if not available or once mutated)
+   */
+  private ByteBuffer writtenEdges;
+  /** Number of serialized edges */
+  private final int numEdges;
+  /** Deserialized edges after the first mutation */
+  private OutEdges<I, E> edges;
+
+  /**
+   * Constructor
+   *
+   * @param conf Configuration
+   * @param serializedEdges Serialized edges, between position and limit
+   * @param numEdges Number of serialized edges
+   */
+  public MappedOutEdges(ImmutableClassesGiraphConfiguration<I, ?, E> conf,
+      ByteBuffer serializedEdges, int numEdges) {
+    this(conf, serializedEdges, null, numEdges);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param conf Configuration
+   * @param serializedEdges Serialized edges, between position and limit
+   * @param writtenEdges Edges as written by the configured OutEdges class
+   *                     to a big-endian output, between position and limit
+   *                     (null if not available)
+   * @param numEdges Number of serialized edges
+   */
+  public MappedOutEdges(ImmutableClassesGiraphConfiguration<I, ?, E> conf,
+      ByteBuffer serializedEdges, ByteBuffer writtenEdges, int numEdges) {
+    this.conf = conf;
+    this.serializedEdges = serializedEdges;
+    this.writtenEdges = writtenEdges;
+    this.numEdges = numEdges;
+  }
+
+  /**
+   * Read the serialized edges into new {@link OutEdges}.
+   *
+   * @return Deserialized edges
+   */
+  private OutEdges<I, E> readSerializedEdges() {
+    OutEdges<I, E> readEdges = conf.createAndInitializeOutEdges(numEdges);
+    ByteBufferInputStream in =
+        new ByteBufferInputStream(serializedEdges.duplicate());
+    try {
+      for (int i = 0; i < numEdges; ++i) {
+        // OutEdges may keep the added edge, so it can't be reused
+        Edge<I, E> edge = conf.createEdge();
+        WritableUtils.readEdge(in, edge);
+        readEdges.add(edge);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "readSerializedEdges: IOException", e);
+    }
+    return readEdges;
+  }
+
+  /**
+   * Get the edges to mutate, reading them if still serialized.
+   *
+   * @return Mutable edges
+   */
+  private OutEdges<I, E> getMutableEdges() {
+    if (edges == null) {
+      edges = readSerializedEdges();
+      serializedEdges = null;
+      writtenEdges = null;
+    }
+    return edges;
+  }
+
+  /**
+   * Are the edges still only kept serialized?
+   *
+   * @return True iff the edges weren't mutated
+   */
+  public boolean isSerialized() {
+    return edges == null;
+  }
+
+  @Override
+  public void initialize(Iterable<Edge<I, E>> edgesToInitialize) {
+    edges = conf.createAndInitializeOutEdges(edgesToInitialize);
+    serializedEdges = null;
+    writtenEdges = null;
+  }
+
+  @Override
+  public void initialize(int capacity) {
+    edges = conf.createAndInitializeOutEdges(capacity);
+    serializedEdges = null;
+    writtenEdges = null;
+  }
+
+  @Override
+  public void initialize() {
+    edges = conf.createAndInitializeOutEdges();
+    serializedEdges = null;
+    writtenEdges = null;
+  }
+
+  @Override
+  public void add(Edge<I, E> edge) {
+    getMutableEdges().add(edge);
+  }
+
+  @Override
+  public void remove(I targetVertexId) {
+    getMutableEdges().remove(targetVertexId);
+  }
+
+  @Override
+  public int size() {
+    return edges == null ? numEdges : edges.size();
+  }
+
+  /**
+   * Iterator reading the serialized edges into the same Edge object.
+   */
+  private class MappedEdgeIterator extends UnmodifiableIterator<Edge<I, E>> {
+    /** Input reading the serialized edges */
+    private final ByteBufferInputStream in =
+        new ByteBufferInputStream(serializedEdges.duplicate());
+    /** Representative edge object */
+    private final ReusableEdge<I, E> representativeEdge =
+        conf.createReusableEdge();
+    /** Number of edges read so far */
+    private int numRead = 0;
+
+    @Override
+    public boolean hasNext() {
+      return numRead < numEdges;
+    }
+
+    @Override
+    public Edge<I, E> next() {
+      try {
+        WritableUtils.readEdge(in, representativeEdge);
+      } catch (IOException e) {
+        throw new IllegalStateException("next: Failed on edge " + numRead +
+            " of " + numEdges, e);
+      }
+      ++numRead;
+      return representativeEdge;
+    }
+  }
+
+  @Override
+  public Iterator<Edge<I, E>> iterator() {
+    return edges == null ? new MappedEdgeIterator() : edges.iterator();
+  }
+
+  /**
+   * Copy the bytes of a buffer, between its position and limit, to an
+   * output.
+   *
+   * @param buffer Buffer to copy (its position isn't changed)
+   * @param out Output to copy the bytes to
+   * @throws IOException
+   */
+  private static void copy(ByteBuffer buffer, DataOutput out)
+    throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    } else {
+      ByteBuffer source = buffer.duplicate();
+      byte[] chunk = new byte[Math.min(source.remaining(), 4096)];
+      while (source.hasRemaining()) {
+        int length = Math.min(chunk.length, source.remaining());
+        source.get(chunk, 0, length);
+        out.write(chunk, 0, length);
+      }
+    }
+  }
+
+  /**
+   * Write the edges for {@link #MappedOutEdges(
+   * ImmutableClassesGiraphConfiguration, ByteBuffer, ByteBuffer, int)}:
+   * the number of edges, the size and the bytes of the serialized edges,
+   * and the size and the bytes of the edges as written by the configured
+   * OutEdges class.  Serialized mapped edges are copied as they are.
+   *
+   * @param out Big-endian output
+   * @param outEdges Edges to write
+   * @param <I> Vertex id
+   * @param <E> Edge value
+   * @throws IOException
+   */
+  public static <I extends WritableComparable, E extends Writable>
+  void writeMappable(DataOutput out, OutEdges<I, E> outEdges)
+    throws IOException {
+    out.writeInt(outEdges.size());
+    if (outEdges instanceof MappedOutEdges &&
+        ((MappedOutEdges<I, E>) outEdges).writtenEdges != null) {
+      MappedOutEdges<I, E> mappedEdges = (MappedOutEdges<I, E>) outEdges;
+      out.writeInt(mappedEdges.serializedEdges.remaining());
+      copy(mappedEdges.serializedEdges, out);
+      out.writeInt(mappedEdges.writtenEdges.remaining());
+      copy(mappedEdges.writtenEdges, out);
+      return;
+    }
+    ExtendedByteArrayDataOutput edgesOutput =
+        new ExtendedByteArrayDataOutput();
+    for (Edge<I, E> edge : outEdges) {
+      WritableUtils.writeEdge(edgesOutput, edge);
+    }
+    out.writeInt(edgesOutput.getPos());
+    out.write(edgesOutput.getByteArray(), 0, edgesOutput.getPos());
+    edgesOutput.reset();
+    outEdges.write(edgesOutput);
+    out.writeInt(edgesOutput.getPos());
+    out.write(edgesOutput.getByteArray(), 0, edgesOutput.getPos());
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    if (edges != null) {
+      edges.write(out);
+    } else if (writtenEdges != null &&
+        (out instanceof DataOutputStream ||
+            out instanceof ExtendedByteArrayDataOutput)) {
+      // Written big-endian, so only big-endian outputs get a copy
+      copy(writtenEdges, out);
+    } else {
+      readSerializedEdges().write(out);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    edges = conf.createOutEdges();
+    edges.readFields(in);
+    serializedEdges = null;
+    writtenEdges = null;
+  }
+}
@@ -84,18 +84,46 @@ public abstract class Computation<I extends WritableComparable,
   /**
    * Prepare for computation. This method is executed exactly once prior to
    * {@link #compute(Vertex, Iterable)} being called for any of the vertices
-   * in the partition.
+   * in the partition.  When a Computation is created per compute thread
+   * (see {@link org.apache.giraph.conf.GiraphConstants#COMPUTATION_PER_THREAD})
+   * it is executed once per superstep before any of the partitions of the
+   * thread are computed, which makes it the place to allocate per-thread
+   * scratch state.
    */
   public void preSuperstep() {
   }
 
   /**
    * Finish computation. This method is executed exactly once after computation
-   * for all vertices in the partition is complete.
+   * for all vertices in the partition is complete.  When a Computation is
+   * created per compute thread, it is executed once after all of the
+   * partitions of the thread are computed.
    */
   public void postSuperstep() {
   }
 
+  /**
+   * Prepare for the computation of a partition.  This method is executed
+   * once before {@link #compute(Vertex, Iterable)} is called for the
+   * vertices of each partition this Computation is used for.  If the
+   * partition is split into vertex ranges, threads which steal some of its
+   * ranges compute them with Computations of their own.
+   *
+   * @param partitionId Id of the partition about to be computed
+   */
+  public void prePartition(int partitionId) {
+  }
+
+  /**
+   * Finish the computation of a partition.  This method is executed once
+   * after the vertices of each partition this Computation is used for are
+   * computed, before the partition is put back into the partition store.
+   *
+   * @param partitionId Id of the partition which was computed
+   */
+  public void postPartition(int partitionId) {
+  }
+
   /**
    * Initialize, called by infrastructure before the superstep starts.
    * Shouldn't be called by user code.
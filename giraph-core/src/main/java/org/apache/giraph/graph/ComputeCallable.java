@@ -27,6 +27,7 @@ import org.apache.giraph.metrics.GiraphMetrics;
 import org.apache.giraph.metrics.MetricNames;
 import org.apache.giraph.metrics.SuperstepMetricsRegistry;
 import org.apache.giraph.metrics.TimerDesc;
+import org.apache.giraph.partition.ActiveVerticesPartition;
 import org.apache.giraph.partition.Partition;
 import org.apache.giraph.partition.PartitionStats;
 import org.apache.giraph.time.SystemTime;
@@ -50,16 +51,17 @@ import com.yammer.metrics.core.TimerContext;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 
+import static org.apache.giraph.conf.GiraphConstants.ACTIVE_VERTEX_FRONTIER;
+import static org.apache.giraph.conf.GiraphConstants.USE_OUT_OF_CORE_MESSAGES;
+
 /**
- * Compute as many vertex partitions as possible.  Every thread will has its
- * own instance of WorkerClientRequestProcessor to send requests.  Note that
- * the partition ids are used in the partitionIdQueue rather than the actual
- * partitions since that would cause the partitions to be loaded into memory
- * when using the out-of-core graph partition store.  We should only load on
- * demand.
+ * Compute as many vertex partitions (or vertex ranges of them) as possible.
+ * Every thread will has its own instance of WorkerClientRequestProcessor to
+ * send requests.  Work is handed out by the {@link VertexRangeScheduler},
+ * which only loads partitions on demand when using the out-of-core graph
+ * partition store.
  *
  * @param <I> Vertex index value
  * @param <V> Vertex value
@@ -78,8 +80,8 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
   private final Mapper<?, ?, ?, ?>.Context context;
   /** Graph state */
   private final GraphState graphState;
-  /** Thread-safe queue of all partition ids */
-  private final BlockingQueue<Integer> partitionIdQueue;
+  /** Thread-safe scheduler of partitions and vertex ranges */
+  private final VertexRangeScheduler<I, V, E> scheduler;
   /** Message store */
   private final MessageStore<I, M1> messageStore;
   /** Configuration */
@@ -92,6 +94,13 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
   private SimpleVertexWriter<I, V, E> vertexWriter;
   /** Get the start time in nanos */
   private final long startNanos = TIME.getNanoseconds();
+  /**
+   * Whether to only compute the active vertices and message receivers of
+   * partitions which track them
+   */
+  private final boolean useActiveVertexFrontier;
+  /** Whether to send the messages of every range as soon as it is done */
+  private final boolean pipelineMessageFlush;
 
   // Per-Superstep Metrics
   /** Messages sent */
@@ -105,22 +114,26 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
    * @param context Context
    * @param graphState Current graph state (use to create own graph state)
    * @param messageStore Message store
-   * @param partitionIdQueue Queue of partition ids (thread-safe)
+   * @param scheduler Scheduler of partitions and vertex ranges
    * @param configuration Configuration
    * @param serviceWorker Service worker
    */
   public ComputeCallable(
       Mapper<?, ?, ?, ?>.Context context, GraphState graphState,
       MessageStore<I, M1> messageStore,
-      BlockingQueue<Integer> partitionIdQueue,
+      VertexRangeScheduler<I, V, E> scheduler,
       ImmutableClassesGiraphConfiguration<I, V, E> configuration,
       CentralizedServiceWorker<I, V, E> serviceWorker) {
     this.context = context;
     this.configuration = configuration;
-    this.partitionIdQueue = partitionIdQueue;
+    this.scheduler = scheduler;
     this.messageStore = messageStore;
     this.serviceWorker = serviceWorker;
     this.graphState = graphState;
+    // Out-of-core message stores can only be read vertex by vertex in order
+    useActiveVertexFrontier = ACTIVE_VERTEX_FRONTIER.get(configuration) &&
+        !USE_OUT_OF_CORE_MESSAGES.get(configuration);
+    pipelineMessageFlush = configuration.isPipelineMessageFlush();
 
     SuperstepMetricsRegistry metrics = GiraphMetrics.get().perSuperstep();
     // Normally we would use ResetSuperstepMetricsObserver but this class is
@@ -141,43 +154,75 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
 
     vertexWriter = serviceWorker.getSuperstepOutput().getVertexWriter();
 
-    List<PartitionStats> partitionStatsList = Lists.newArrayList();
-    while (!partitionIdQueue.isEmpty()) {
-      Integer partitionId = partitionIdQueue.poll();
-      if (partitionId == null) {
-        break;
-      }
-
-      Partition<I, V, E> partition =
-          serviceWorker.getPartitionStore().getPartition(partitionId);
+    // With a Computation per thread, it is shared by all of the partitions
+    // this thread computes, otherwise a new one is created for each of them
+    boolean computationPerThread = configuration.isComputationPerThread();
+    Computation<I, V, E, M1, M2> computation = null;
+    if (computationPerThread) {
+      computation = createComputation(workerClientRequestProcessor,
+          aggregatorUsage, workerContext);
+    }
 
-      Computation<I, V, E, M1, M2> computation =
-          (Computation<I, V, E, M1, M2>) configuration.createComputation();
-      computation.initialize(graphState, workerClientRequestProcessor,
-          serviceWorker.getGraphTaskManager(), aggregatorUsage, workerContext);
-      computation.preSuperstep();
+    List<PartitionStats> partitionStatsList = Lists.newArrayList();
+    VertexRangeScheduler.VertexRange<I, V, E> range = scheduler.next(null);
+    while (range != null) {
+      Partition<I, V, E> partition = range.getPartition();
 
-      try {
-        PartitionStats partitionStats =
-            computePartition(computation, partition);
-        partitionStatsList.add(partitionStats);
-        long partitionMsgs = workerClientRequestProcessor.resetMessageCount();
-        partitionStats.addMessagesSentCount(partitionMsgs);
-        messagesSentCounter.inc(partitionMsgs);
-        timedLogger.info("call: Completed " +
-            partitionStatsList.size() + " partitions, " +
-            partitionIdQueue.size() + " remaining " +
-            MemoryUtils.getRuntimeMemoryStats());
-      } catch (IOException e) {
-        throw new IllegalStateException("call: Caught unexpected IOException," +
-            " failing.", e);
-      } catch (InterruptedException e) {
-        throw new IllegalStateException("call: Caught unexpected " +
-            "InterruptedException, failing.", e);
-      } finally {
-        serviceWorker.getPartitionStore().putPartition(partition);
+      // The ranges of a partition this thread computes in a row share the
+      // Computation and are bracketed by a single prePartition() and
+      // postPartition()
+      if (!computationPerThread) {
+        computation = createComputation(workerClientRequestProcessor,
+            aggregatorUsage, workerContext);
       }
+      computation.prePartition(partition.getId());
 
+      VertexRangeScheduler.VertexRange<I, V, E> nextRange = null;
+      do {
+        try {
+          PartitionStats partitionStats = computeRange(computation, range);
+          partitionStatsList.add(partitionStats);
+          long partitionMsgs =
+              workerClientRequestProcessor.resetMessageCount();
+          partitionStats.addMessagesSentCount(partitionMsgs);
+          messagesSentCounter.inc(partitionMsgs);
+          if (pipelineMessageFlush) {
+            // Overlap sending the messages with computing the next ranges
+            workerClientRequestProcessor.flushMessages();
+          }
+          timedLogger.info("call: Completed " +
+              partitionStatsList.size() + " partitions or ranges, " +
+              scheduler.getNumRemainingPartitions() +
+              " partitions remaining " + MemoryUtils.getRuntimeMemoryStats());
+
+          // Claim the next range of the partition before finishing this
+          // one, so the partition isn't put back while this thread still
+          // has to call postPartition()
+          nextRange = scheduler.nextInPartition(range);
+          if (nextRange == null) {
+            computation.postPartition(partition.getId());
+            if (!computationPerThread) {
+              computation.postSuperstep();
+            }
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException("call: Caught unexpected " +
+              "IOException, failing.", e);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException("call: Caught unexpected " +
+              "InterruptedException, failing.", e);
+        } finally {
+          if (scheduler.finish(range)) {
+            finishPartition(partition);
+          }
+        }
+        if (nextRange != null) {
+          range = nextRange;
+        }
+      } while (nextRange != null);
+      range = scheduler.next(range);
+    }
+    if (computationPerThread) {
       computation.postSuperstep();
     }
 
@@ -188,7 +233,7 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
       float seconds = Times.getNanosSince(TIME, startNanos) /
           Time.NS_PER_SECOND_AS_FLOAT;
       LOG.info("call: Computation took " + seconds + " secs for "  +
-          partitionStatsList.size() + " partitions on superstep " +
+          partitionStatsList.size() + " partitions or ranges on superstep " +
           graphState.getSuperstep() + ".  Flushing started");
     }
     try {
@@ -201,53 +246,208 @@ public class ComputeCallable<I extends WritableComparable, V extends Writable,
   }
 
   /**
-   * Compute a single partition
+   * Create a Computation for this superstep and prepare it for computing.
+   *
+   * @param workerClientRequestProcessor Processor for handling requests
+   * @param aggregatorUsage Aggregator usage of this thread
+   * @param workerContext Worker context
+   * @return Computation which is ready to compute partitions
+   */
+  private Computation<I, V, E, M1, M2> createComputation(
+      WorkerClientRequestProcessor<I, V, E> workerClientRequestProcessor,
+      WorkerThreadAggregatorUsage aggregatorUsage,
+      WorkerContext workerContext) {
+    Computation<I, V, E, M1, M2> computation =
+        (Computation<I, V, E, M1, M2>) configuration.createComputation();
+    computation.initialize(graphState, workerClientRequestProcessor,
+        serviceWorker.getGraphTaskManager(), aggregatorUsage, workerContext);
+    computation.preSuperstep();
+    return computation;
+  }
+
+  /**
+   * Compute a whole partition or a range of its vertices
+   *
+   * @param computation Computation to use
+   * @param range Partition or vertex range to compute
+   * @return Partition stats for this computed range
+   */
+  private PartitionStats computeRange(
+      Computation<I, V, E, M1, M2> computation,
+      VertexRangeScheduler.VertexRange<I, V, E> range)
+    throws IOException, InterruptedException {
+    Partition<I, V, E> partition = range.getPartition();
+    if (range.isWholePartition()) {
+      // Make sure this is thread-safe across runs
+      synchronized (partition) {
+        if (useActiveVertexFrontier &&
+            partition instanceof ActiveVerticesPartition) {
+          return computeActiveVertices(computation,
+              (ActiveVerticesPartition<I, V, E>) partition);
+        }
+        return computeVertices(computation, partition,
+            range.getVertices(), true);
+      }
+    } else {
+      // Other threads may be computing other ranges of this partition, so
+      // messages are only cleared once the whole partition is finished
+      return computeVertices(computation, partition,
+          range.getVertices(), false);
+    }
+  }
+
+  /**
+   * Compute vertices of a partition
    *
    * @param computation Computation to use
-   * @param partition Partition to compute
-   * @return Partition stats for this computed partition
+   * @param partition Partition the vertices belong to
+   * @param vertices Vertices to compute
+   * @param clearMessages Whether to clear the messages of each vertex after
+   *                      computing it
+   * @return Partition stats for the computed vertices
    */
-  private PartitionStats computePartition(
+  private PartitionStats computeVertices(
       Computation<I, V, E, M1, M2> computation,
-      Partition<I, V, E> partition) throws IOException, InterruptedException {
+      Partition<I, V, E> partition, Iterable<Vertex<I, V, E>> vertices,
+      boolean clearMessages) throws IOException, InterruptedException {
     PartitionStats partitionStats =
         new PartitionStats(partition.getId(), 0, 0, 0, 0);
-    // Make sure this is thread-safe across runs
-    synchronized (partition) {
-      for (Vertex<I, V, E> vertex : partition) {
-        Iterable<M1> messages = messageStore.getVertexMessages(vertex.getId());
-        if (vertex.isHalted() && !Iterables.isEmpty(messages)) {
-          vertex.wakeUp();
-        }
+    for (Vertex<I, V, E> vertex : vertices) {
+      if (computeVertex(computation, vertex)) {
+        // Need to save the vertex changes (possibly)
+        partition.saveVertex(vertex);
+      }
+      if (vertex.isHalted()) {
+        partitionStats.incrFinishedVertexCount();
+      }
+      if (clearMessages) {
+        // Remove the messages now that the vertex has finished computation
+        messageStore.clearVertexMessages(vertex.getId());
+      }
+
+      // Add statistics for this vertex
+      partitionStats.incrVertexCount();
+      partitionStats.addEdgeCount(vertex.getNumEdges());
+    }
+    return partitionStats;
+  }
+
+  /**
+   * Compute only the vertices of a partition which are active or received
+   * messages, instead of iterating over all of its vertices.  Vertices which
+   * are skipped are halted and have no messages, so computing them would
+   * have been a no-op.  Messages are cleared once the partition is finished.
+   *
+   * @param computation Computation to use
+   * @param partition Partition which tracks its active vertices
+   * @return Partition stats for the partition
+   */
+  private PartitionStats computeActiveVertices(
+      Computation<I, V, E, M1, M2> computation,
+      ActiveVerticesPartition<I, V, E> partition)
+    throws IOException, InterruptedException {
+    // Message receivers which are still active are skipped below
+    Iterable<I> activeVertexIds = partition.getActiveVertexIds();
+    long activeVertices = 0;
+    long computedVertices = 0;
+    for (I vertexId :
+        messageStore.getPartitionDestinationVertices(partition.getId())) {
+      Vertex<I, V, E> vertex = partition.getVertex(vertexId);
+      if (vertex != null) {
+        computeActiveVertex(computation, partition, vertex);
+        ++computedVertices;
         if (!vertex.isHalted()) {
-          context.progress();
-          TimerContext computeOneTimerContext = computeOneTimer.time();
-          try {
-            computation.compute(vertex, messages);
-          } finally {
-            computeOneTimerContext.stop();
-          }
-          // Need to unwrap the mutated edges (possibly)
-          vertex.unwrapMutableEdges();
-          // Write vertex to superstep output (no-op if it is not used)
-          vertexWriter.writeVertex(vertex);
-          // Need to save the vertex changes (possibly)
-          partition.saveVertex(vertex);
+          ++activeVertices;
         }
-        if (vertex.isHalted()) {
-          partitionStats.incrFinishedVertexCount();
+      }
+    }
+    for (I vertexId : activeVertexIds) {
+      // Vertices with messages were already computed above
+      if (!messageStore.hasMessagesForVertex(vertexId)) {
+        Vertex<I, V, E> vertex = partition.getVertex(vertexId);
+        if (vertex != null) {
+          computeActiveVertex(computation, partition, vertex);
+          ++computedVertices;
+          if (!vertex.isHalted()) {
+            ++activeVertices;
+          }
         }
-        // Remove the messages now that the vertex has finished computation
-        messageStore.clearVertexMessages(vertex.getId());
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("computeActiveVertices: Computed " + computedVertices +
+          " out of " + partition.getVertexCount() + " vertices of partition " +
+          partition.getId());
+    }
+    // Every vertex which wasn't computed is halted
+    long vertexCount = partition.getVertexCount();
+    return new PartitionStats(partition.getId(), vertexCount,
+        vertexCount - activeVertices, partition.getEdgeCount(), 0);
+  }
+
+  /**
+   * Compute a single vertex of a partition which tracks its active vertices,
+   * and save its changes to the partition together with its previous
+   * number of edges, so that the partition keeps its edge count.
+   *
+   * @param computation Computation to use
+   * @param partition Partition the vertex belongs to
+   * @param vertex Vertex to compute
+   */
+  private void computeActiveVertex(Computation<I, V, E, M1, M2> computation,
+      ActiveVerticesPartition<I, V, E> partition, Vertex<I, V, E> vertex)
+    throws IOException, InterruptedException {
+    int previousNumEdges = vertex.getNumEdges();
+    if (computeVertex(computation, vertex)) {
+      partition.saveComputedVertex(vertex, previousNumEdges);
+    }
+  }
 
-        // Add statistics for this vertex
-        partitionStats.incrVertexCount();
-        partitionStats.addEdgeCount(vertex.getNumEdges());
+  /**
+   * Compute a single vertex if it is active or received messages.  The
+   * caller has to save the vertex to its partition if it was computed.
+   *
+   * @param computation Computation to use
+   * @param vertex Vertex to compute
+   * @return Whether the vertex was computed
+   */
+  private boolean computeVertex(Computation<I, V, E, M1, M2> computation,
+      Vertex<I, V, E> vertex) throws IOException, InterruptedException {
+    Iterable<M1> messages = messageStore.getVertexMessages(vertex.getId());
+    if (vertex.isHalted() && !Iterables.isEmpty(messages)) {
+      vertex.wakeUp();
+    }
+    if (!vertex.isHalted()) {
+      context.progress();
+      TimerContext computeOneTimerContext = computeOneTimer.time();
+      try {
+        computation.compute(vertex, messages);
+      } finally {
+        computeOneTimerContext.stop();
       }
+      // Need to unwrap the mutated edges (possibly)
+      vertex.unwrapMutableEdges();
+      // Write vertex to superstep output (no-op if it is not used)
+      vertexWriter.writeVertex(vertex);
+      return true;
+    }
+    return false;
+  }
 
+  /**
+   * Clear the messages of a partition whose vertices were all computed and
+   * put it back into the partition store.
+   *
+   * @param partition Finished partition
+   */
+  private void finishPartition(Partition<I, V, E> partition) {
+    try {
       messageStore.clearPartition(partition.getId());
+    } catch (IOException e) {
+      throw new IllegalStateException("finishPartition: Clearing messages " +
+          "of partition " + partition.getId() + " failed.", e);
+    } finally {
+      serviceWorker.getPartitionStore().putPartition(partition);
     }
-    return partitionStats;
   }
 }
-
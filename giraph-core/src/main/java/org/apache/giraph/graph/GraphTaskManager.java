@@ -57,6 +57,8 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
 
+import com.google.common.collect.Maps;
+
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLDecoder;
@@ -64,8 +66,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -274,7 +275,9 @@ public class GraphTaskManager<I extends WritableComparable, V extends Writable,
       MessageStore<I, Writable> messageStore =
         serviceWorker.getServerData().getCurrentMessageStore();
       int numPartitions = serviceWorker.getPartitionStore().getNumPartitions();
-      int numThreads = Math.min(numComputeThreads, numPartitions);
+      // Threads can share partitions if they are split into vertex ranges
+      int numThreads = conf.getComputeVertexRangeSize() > 0 ?
+          numComputeThreads : Math.min(numComputeThreads, numPartitions);
       if (LOG.isInfoEnabled()) {
         LOG.info("execute: " + numPartitions + " partitions to process with " +
           numThreads + " compute thread(s), originally " +
@@ -284,7 +287,7 @@ public class GraphTaskManager<I extends WritableComparable, V extends Writable,
       // execute the current superstep
       if (numPartitions > 0) {
         processGraphPartitions(context, partitionStatsList, graphState,
-          messageStore, numPartitions, numThreads);
+          messageStore, numThreads);
       }
       finishedSuperstepStats = completeSuperstepAndCollectStats(
         partitionStatsList, superstepTimerContext);
@@ -703,21 +706,21 @@ public class GraphTaskManager<I extends WritableComparable, V extends Writable,
    * @param partitionStatsList to pick up this superstep's processing stats
    * @param graphState the BSP graph state
    * @param messageStore the messages to be processed in this superstep
-   * @param numPartitions the number of data partitions (vertices) to process
    * @param numThreads number of concurrent threads to do processing
    */
   private void processGraphPartitions(final Mapper<?, ?, ?, ?>.Context context,
       List<PartitionStats> partitionStatsList,
       final GraphState graphState,
       final MessageStore<I, Writable> messageStore,
-      int numPartitions,
       int numThreads) {
-    final BlockingQueue<Integer> computePartitionIdQueue =
-      new ArrayBlockingQueue<Integer>(numPartitions);
-    for (Integer partitionId :
-      serviceWorker.getPartitionStore().getPartitionIds()) {
-      computePartitionIdQueue.add(partitionId);
-    }
+    // Splitting partitions is only safe with in-memory messages, which can
+    // be read concurrently
+    int vertexRangeSize =
+        GiraphConstants.USE_OUT_OF_CORE_MESSAGES.get(conf) ?
+            0 : conf.getComputeVertexRangeSize();
+    final VertexRangeScheduler<I, V, E> scheduler =
+        new VertexRangeScheduler<I, V, E>(
+            serviceWorker.getPartitionStore(), vertexRangeSize);
 
     GiraphTimerContext computeAllTimerContext = computeAll.time();
     timeToFirstMessageTimerContext = timeToFirstMessage.time();
@@ -731,7 +734,7 @@ public class GraphTaskManager<I extends WritableComparable, V extends Writable,
                 context,
                 graphState,
                 messageStore,
-                computePartitionIdQueue,
+                scheduler,
                 conf,
                 serviceWorker);
           }
@@ -739,9 +742,21 @@ public class GraphTaskManager<I extends WritableComparable, V extends Writable,
     List<Collection<PartitionStats>> results =
         ProgressableUtils.getResultsWithNCallables(callableFactory,
             numThreads, "compute-%d", context);
+    // Merge the stats of ranges of the same partition
+    Map<Integer, PartitionStats> partitionStatsMap = Maps.newHashMap();
     for (Collection<PartitionStats> result : results) {
-      partitionStatsList.addAll(result);
+      for (PartitionStats partitionStats : result) {
+        PartitionStats existing =
+            partitionStatsMap.get(partitionStats.getPartitionId());
+        if (existing == null) {
+          partitionStatsMap.put(partitionStats.getPartitionId(),
+              partitionStats);
+        } else {
+          existing.addPartitionStats(partitionStats);
+        }
+      }
     }
+    partitionStatsList.addAll(partitionStatsMap.values());
 
     computeAllTimerContext.stop();
   }
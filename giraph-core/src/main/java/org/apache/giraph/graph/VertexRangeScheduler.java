@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.graph;
+
+import org.apache.giraph.partition.Partition;
+import org.apache.giraph.partition.PartitionStore;
+import org.apache.giraph.partition.ReusesObjectsPartition;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the work of a superstep to the compute threads.  Partitions are
+ * handed out by id, so that out-of-core partitions are only loaded on
+ * demand.  If a vertex range size is set, a loaded partition with more
+ * vertices than that is split into vertex ranges.  The thread which loaded
+ * it keeps claiming its ranges, while threads which ran out of partitions
+ * steal the remaining ranges instead of going idle.  The partition is
+ * finished by whichever thread completes its last range.  Every time a
+ * partition is handed out, the store is told which ones come next, so it
+ * can prefetch them.
+ *
+ * Only partitions which keep their vertices as separate objects
+ * (i.e. not {@link ReusesObjectsPartition}) are split.
+ *
+ * @param <I> Vertex id
+ * @param <V> Vertex value
+ * @param <E> Edge value
+ */
+public class VertexRangeScheduler<I extends WritableComparable,
+    V extends Writable, E extends Writable> {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(VertexRangeScheduler.class);
+  /** Partition store to load partitions from */
+  private final PartitionStore<I, V, E> partitionStore;
+  /** Thread-safe queue of partition ids which weren't handed out yet */
+  private final BlockingQueue<Integer> partitionIdQueue;
+  /**
+   * Ids of the partitions which weren't handed out yet, for the partition
+   * store to check membership without copying the queue
+   */
+  private final Set<Integer> remainingPartitionIds =
+      Sets.newSetFromMap(Maps.<Integer, Boolean>newConcurrentMap());
+  /** Maximum number of vertices in a range (0 if not splitting) */
+  private final int vertexRangeSize;
+  /** Split partitions which may still have unclaimed ranges */
+  private final Queue<SplitPartition<I, V, E>> splitPartitions =
+      new ConcurrentLinkedQueue<SplitPartition<I, V, E>>();
+
+  /**
+   * Constructor
+   *
+   * @param partitionStore Partition store
+   * @param vertexRangeSize Maximum number of vertices in a range, 0 to
+   *                        only hand out whole partitions
+   */
+  public VertexRangeScheduler(PartitionStore<I, V, E> partitionStore,
+      int vertexRangeSize) {
+    this.partitionStore = partitionStore;
+    this.vertexRangeSize = vertexRangeSize;
+    partitionIdQueue = new ArrayBlockingQueue<Integer>(
+        Math.max(1, partitionStore.getNumPartitions()));
+    for (Integer partitionId : partitionStore.getPartitionIds()) {
+      partitionIdQueue.add(partitionId);
+      remainingPartitionIds.add(partitionId);
+    }
+  }
+
+  /**
+   * Get the number of partitions which weren't handed out yet.
+   *
+   * @return Number of remaining partitions
+   */
+  public int getNumRemainingPartitions() {
+    return partitionIdQueue.size();
+  }
+
+  /**
+   * Get the next range to compute.  Ranges of the partition the caller
+   * previously worked on are preferred, then new partitions and finally
+   * ranges stolen from partitions other threads are working on.
+   *
+   * @param previous Range previously computed by the caller (can be null)
+   * @return Next range to compute, null if there is no work left
+   */
+  public VertexRange<I, V, E> next(VertexRange<I, V, E> previous) {
+    if (previous != null && previous.split != null) {
+      VertexRange<I, V, E> range = previous.split.claim();
+      if (range != null) {
+        return range;
+      }
+    }
+
+    Integer partitionId = partitionIdQueue.poll();
+    if (partitionId != null) {
+      remainingPartitionIds.remove(partitionId);
+      partitionStore.prefetchPartitions(
+          partitionIdQueue, remainingPartitionIds);
+      Partition<I, V, E> partition = partitionStore.getPartition(partitionId);
+      if (vertexRangeSize > 0 &&
+          !(partition instanceof ReusesObjectsPartition) &&
+          partition.getVertexCount() > vertexRangeSize) {
+        SplitPartition<I, V, E> split =
+            new SplitPartition<I, V, E>(partition, vertexRangeSize);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("next: Split partition " + partitionId + " into " +
+              split.unfinishedRanges.get() + " ranges");
+        }
+        VertexRange<I, V, E> range = split.claim();
+        splitPartitions.add(split);
+        return range;
+      }
+      return new VertexRange<I, V, E>(partition);
+    }
+
+    Iterator<SplitPartition<I, V, E>> iterator = splitPartitions.iterator();
+    while (iterator.hasNext()) {
+      VertexRange<I, V, E> range = iterator.next().claim();
+      if (range != null) {
+        return range;
+      }
+      iterator.remove();
+    }
+    return null;
+  }
+
+  /**
+   * Get the next range of the partition the caller is working on, without
+   * handing out a new partition.
+   *
+   * @param previous Range previously computed by the caller
+   * @return Next range of the same partition, null if it has none left
+   */
+  public VertexRange<I, V, E> nextInPartition(VertexRange<I, V, E> previous) {
+    return previous.split == null ? null : previous.split.claim();
+  }
+
+  /**
+   * Mark a range as computed.
+   *
+   * @param range Computed range
+   * @return True if this was the last range of its partition, in which case
+   *         the caller has to finish the partition (clear its messages and
+   *         put it back into the partition store)
+   */
+  public boolean finish(VertexRange<I, V, E> range) {
+    return range.split == null ||
+        range.split.unfinishedRanges.decrementAndGet() == 0;
+  }
+
+  /**
+   * Range of vertices of a partition, or the whole partition.
+   *
+   * @param <I> Vertex id
+   * @param <V> Vertex value
+   * @param <E> Edge value
+   */
+  public static class VertexRange<I extends WritableComparable,
+      V extends Writable, E extends Writable> {
+    /** Partition the range belongs to */
+    private final Partition<I, V, E> partition;
+    /** Split partition this range is a part of (null if whole partition) */
+    private final SplitPartition<I, V, E> split;
+    /** Vertices of the range */
+    private final Iterable<Vertex<I, V, E>> vertices;
+
+    /**
+     * Constructor for a whole partition
+     *
+     * @param partition Partition
+     */
+    VertexRange(Partition<I, V, E> partition) {
+      this.partition = partition;
+      this.split = null;
+      this.vertices = partition;
+    }
+
+    /**
+     * Constructor for a part of a split partition
+     *
+     * @param split Split partition
+     * @param vertices Vertices of the range
+     */
+    VertexRange(SplitPartition<I, V, E> split,
+        Iterable<Vertex<I, V, E>> vertices) {
+      this.partition = split.partition;
+      this.split = split;
+      this.vertices = vertices;
+    }
+
+    public Partition<I, V, E> getPartition() {
+      return partition;
+    }
+
+    /**
+     * Is this range the whole partition?  If not, other threads may be
+     * computing other ranges of the same partition concurrently.
+     *
+     * @return True iff this range is the whole partition
+     */
+    public boolean isWholePartition() {
+      return split == null;
+    }
+
+    public Iterable<Vertex<I, V, E>> getVertices() {
+      return vertices;
+    }
+  }
+
+  /**
+   * Partition split into vertex ranges which are claimed by threads.
+   *
+   * @param <I> Vertex id
+   * @param <V> Vertex value
+   * @param <E> Edge value
+   */
+  private static class SplitPartition<I extends WritableComparable,
+      V extends Writable, E extends Writable> {
+    /** Partition which was split */
+    private final Partition<I, V, E> partition;
+    /** Snapshot of the vertices of the partition */
+    private final List<Vertex<I, V, E>> vertices;
+    /** Maximum number of vertices in a range */
+    private final int vertexRangeSize;
+    /** Start of the next unclaimed range */
+    private final AtomicInteger nextRangeStart = new AtomicInteger(0);
+    /** Number of ranges which weren't computed yet */
+    private final AtomicInteger unfinishedRanges;
+
+    /**
+     * Constructor
+     *
+     * @param partition Partition to split
+     * @param vertexRangeSize Maximum number of vertices in a range
+     */
+    SplitPartition(Partition<I, V, E> partition, int vertexRangeSize) {
+      this.partition = partition;
+      this.vertexRangeSize = vertexRangeSize;
+      vertices = Lists.newArrayListWithCapacity(
+          (int) partition.getVertexCount());
+      for (Vertex<I, V, E> vertex : partition) {
+        vertices.add(vertex);
+      }
+      unfinishedRanges = new AtomicInteger(
+          (vertices.size() + vertexRangeSize - 1) / vertexRangeSize);
+    }
+
+    /**
+     * Claim the next range of this partition.
+     *
+     * @return Claimed range, null if all ranges were already claimed
+     */
+    VertexRange<I, V, E> claim() {
+      if (nextRangeStart.get() >= vertices.size()) {
+        return null;
+      }
+      int start = nextRangeStart.getAndAdd(vertexRangeSize);
+      if (start >= vertices.size()) {
+        return null;
+      }
+      int end = Math.min(start + vertexRangeSize, vertices.size());
+      return new VertexRange<I, V, E>(this, vertices.subList(start, end));
+    }
+  }
+}
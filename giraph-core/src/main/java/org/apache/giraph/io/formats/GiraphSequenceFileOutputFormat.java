@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.io.formats;
+
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides functionality similar to
+ * {@link org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat},
+ * but can give each record writer a file of its own so that several
+ * threads can write the output of a task.
+ *
+ * @param <K> Key
+ * @param <V> Value
+ */
+public class GiraphSequenceFileOutputFormat<K, V>
+    extends SequenceFileOutputFormat<K, V> {
+  /** Number of work files handed out to record writers */
+  private final AtomicInteger workFileCount = new AtomicInteger();
+
+  @Override
+  public Path getDefaultWorkFile(TaskAttemptContext context,
+      String extension) throws IOException {
+    if (!GiraphConstants.VERTEX_OUTPUT_FILE_PER_WRITER.get(
+        context.getConfiguration())) {
+      return super.getDefaultWorkFile(context, extension);
+    }
+    return super.getDefaultWorkFile(context,
+        "-" + workFileCount.getAndIncrement() + extension);
+  }
+}
@@ -53,7 +53,7 @@ public abstract class SequenceFileVertexOutputFormat<
    * desired types.
    */
   private SequenceFileOutputFormat<OK, OV> sequenceFileOutputFormat =
-      new SequenceFileOutputFormat<OK, OV>();
+      new GiraphSequenceFileOutputFormat<OK, OV>();
 
   @Override
   public void checkOutputSpecs(JobContext context)
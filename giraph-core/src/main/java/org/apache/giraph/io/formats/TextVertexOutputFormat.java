@@ -46,7 +46,7 @@ public abstract class TextVertexOutputFormat<I extends WritableComparable,
 
   /** Uses the TextOutputFormat to do everything */
   protected TextOutputFormat<Text, Text> textOutputFormat =
-      new TextOutputFormat<Text, Text>();
+      new GiraphTextOutputFormat<Text, Text>();
 
   @Override
   public void checkOutputSpecs(JobContext context)
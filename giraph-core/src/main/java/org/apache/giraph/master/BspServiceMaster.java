@@ -83,6 +83,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import net.iharder.Base64;
 
@@ -99,6 +100,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
@@ -178,6 +180,12 @@ public class BspServiceMaster<I extends WritableComparable,
   private final int localityLimit = 5;
   /** Observers over master lifecycle. */
   private final MasterObserver[] observers;
+  /** Do the workers write checkpoints while computing? */
+  private final boolean asyncCheckpoints;
+  /** Do the workers let the master know they finished through Netty? */
+  private final boolean nettySuperstepBarrier;
+  /** Workers which finished a superstep, with the Netty barrier */
+  private final FinishedWorkerData finishedWorkerData;
 
   // Per-Superstep Metrics
   /** MasterCompute time */
@@ -218,6 +226,9 @@ public class BspServiceMaster<I extends WritableComparable,
       conf.addMasterObserverClass(JMapHistoDumper.class);
     }
     observers = conf.createMasterObservers();
+    asyncCheckpoints = GiraphConstants.ASYNC_CHECKPOINTS.get(conf);
+    nettySuperstepBarrier = GiraphConstants.NETTY_SUPERSTEP_BARRIER.get(conf);
+    finishedWorkerData = new FinishedWorkerData(superstepStateChanged);
 
     GiraphMetrics.get().addSuperstepResetObserver(this);
     GiraphStats.init(context);
@@ -717,6 +728,11 @@ public class BspServiceMaster<I extends WritableComparable,
     return aggregatorHandler;
   }
 
+  @Override
+  public FinishedWorkerData getFinishedWorkerData() {
+    return finishedWorkerData;
+  }
+
   @Override
   public MasterCompute getMasterCompute() {
     return masterCompute;
@@ -732,13 +748,15 @@ public class BspServiceMaster<I extends WritableComparable,
    * @param superstep Checkpoint set to examine.
    * @param partitionOwners Partition owners to modify with checkpoint
    *        prefixes
+   * @param chosenWorkerInfoList Workers of this superstep
    * @throws IOException
    * @throws InterruptedException
    * @throws KeeperException
    */
   private void prepareCheckpointRestart(
     long superstep,
-    Collection<PartitionOwner> partitionOwners)
+    Collection<PartitionOwner> partitionOwners,
+    List<WorkerInfo> chosenWorkerInfoList)
     throws IOException, KeeperException, InterruptedException {
     FileSystem fs = getFs();
     List<Path> validMetadataPathList = new ArrayList<Path>();
@@ -784,13 +802,26 @@ public class BspServiceMaster<I extends WritableComparable,
               CHECKPOINT_METADATA_POSTFIX.length());
       DataInputStream metadataStream = fs.open(metadataPath);
       long partitions = metadataStream.readInt();
+      int formatVersion = 1;
+      if (partitions == CHECKPOINT_METADATA_VERSION_MARKER) {
+        formatVersion = metadataStream.readInt();
+        partitions = metadataStream.readInt();
+      }
+      if (formatVersion != CHECKPOINT_FORMAT_VERSION) {
+        metadataStream.close();
+        throw new IllegalStateException("prepareCheckpointRestart: " +
+            metadataPath + " has checkpoint format version " +
+            formatVersion + ", but only version " +
+            CHECKPOINT_FORMAT_VERSION + " (one file per partition) can " +
+            "be restored, so the job must restart from scratch");
+      }
       for (long i = 0; i < partitions; ++i) {
-        long dataPos = metadataStream.readLong();
+        long dataLength = metadataStream.readLong();
         int partitionId = metadataStream.readInt();
         PartitionOwner partitionOwner = idOwnerMap.get(partitionId);
         if (LOG.isInfoEnabled()) {
           LOG.info("prepareSuperstepRestart: File " + metadataPath +
-              " with position " + dataPos +
+              " with data length " + dataLength +
               ", partition id = " + partitionId +
               " assigned to " + partitionOwner);
         }
@@ -798,6 +829,99 @@ public class BspServiceMaster<I extends WritableComparable,
       }
       metadataStream.close();
     }
+
+    if (GiraphConstants.USE_CHECKPOINT_LOCAL_CACHE.get(getConfiguration())) {
+      assignLocalCheckpointOwners(partitionOwners, chosenWorkerInfoList);
+    }
+  }
+
+  /**
+   * Assign the partitions of a restarted checkpoint to the workers on the
+   * hosts that wrote them, so that they can load the local copies of their
+   * checkpoint files.  Each worker gets at most its even share of the
+   * partitions, and the partitions that can't stay local keep their owner
+   * if it has room, or go to the least loaded worker.
+   *
+   * @param partitionOwners Partition owners, with their checkpoint file
+   *                        prefixes
+   * @param chosenWorkerInfoList Workers of this superstep
+   */
+  private void assignLocalCheckpointOwners(
+      Collection<PartitionOwner> partitionOwners,
+      List<WorkerInfo> chosenWorkerInfoList) {
+    int maxPartitionsPerWorker = (partitionOwners.size() +
+        chosenWorkerInfoList.size() - 1) / chosenWorkerInfoList.size();
+    Map<String, List<WorkerInfo>> hostnameWorkers = Maps.newHashMap();
+    Map<WorkerInfo, Integer> workerPartitions = Maps.newHashMap();
+    for (WorkerInfo workerInfo : chosenWorkerInfoList) {
+      List<WorkerInfo> workers =
+          hostnameWorkers.get(workerInfo.getHostname());
+      if (workers == null) {
+        workers = Lists.newArrayList();
+        hostnameWorkers.put(workerInfo.getHostname(), workers);
+      }
+      workers.add(workerInfo);
+      workerPartitions.put(workerInfo, 0);
+    }
+
+    // Prefix names are <superstep>.<hostname>_<task id>
+    List<PartitionOwner> remoteOwners = Lists.newArrayList();
+    for (PartitionOwner partitionOwner : partitionOwners) {
+      if (partitionOwner.getCheckpointFilesPrefix() == null) {
+        remoteOwners.add(partitionOwner);
+        continue;
+      }
+      String prefixName =
+          new Path(partitionOwner.getCheckpointFilesPrefix()).getName();
+      String hostnameId = prefixName.substring(prefixName.indexOf('.') + 1);
+      String hostname = hostnameId.substring(0,
+          Math.max(0, hostnameId.lastIndexOf('_')));
+      List<WorkerInfo> workers = hostnameWorkers.get(hostname);
+      WorkerInfo localWorker = null;
+      if (workers != null) {
+        for (WorkerInfo workerInfo : workers) {
+          int partitions = workerPartitions.get(workerInfo);
+          if (partitions >= maxPartitionsPerWorker) {
+            continue;
+          }
+          if (workerInfo.getHostnameId().equals(hostnameId)) {
+            localWorker = workerInfo;
+            break;
+          }
+          if (localWorker == null ||
+              partitions < workerPartitions.get(localWorker)) {
+            localWorker = workerInfo;
+          }
+        }
+      }
+      if (localWorker == null) {
+        remoteOwners.add(partitionOwner);
+      } else {
+        partitionOwner.setWorkerInfo(localWorker);
+        workerPartitions.put(localWorker,
+            workerPartitions.get(localWorker) + 1);
+      }
+    }
+
+    for (PartitionOwner partitionOwner : remoteOwners) {
+      WorkerInfo worker = partitionOwner.getWorkerInfo();
+      if (workerPartitions.get(worker) >= maxPartitionsPerWorker) {
+        for (WorkerInfo workerInfo : chosenWorkerInfoList) {
+          if (workerPartitions.get(workerInfo) <
+              workerPartitions.get(worker)) {
+            worker = workerInfo;
+          }
+        }
+      }
+      partitionOwner.setWorkerInfo(worker);
+      workerPartitions.put(worker, workerPartitions.get(worker) + 1);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("assignLocalCheckpointOwners: " +
+          (partitionOwners.size() - remoteOwners.size()) + " of " +
+          partitionOwners.size() +
+          " partitions assigned to the hosts of their checkpoints");
+    }
   }
 
   @Override
@@ -903,6 +1027,41 @@ public class BspServiceMaster<I extends WritableComparable,
     return masterInfo;
   }
 
+  /**
+   * Get the finished superstep information of the workers, either sent
+   * directly to the master or read from their finished znodes.
+   *
+   * @param superstep Finished superstep
+   * @return Finished superstep information by worker hostname and id
+   */
+  private Map<String, byte[]> getWorkerFinishedInfos(long superstep) {
+    if (nettySuperstepBarrier) {
+      Map<String, byte[]> workerFinishedInfos =
+          finishedWorkerData.getFinishedWorkers(
+              getApplicationAttempt(), superstep);
+      finishedWorkerData.removeFinishedWorkers(
+          getApplicationAttempt(), superstep);
+      return workerFinishedInfos;
+    }
+    String workerFinishedPath =
+        getWorkerFinishedPath(getApplicationAttempt(), superstep);
+    Map<String, byte[]> workerFinishedInfos = Maps.newHashMap();
+    try {
+      for (String finishedPath : getZkExt().getChildrenExt(
+          workerFinishedPath, false, false, true)) {
+        workerFinishedInfos.put(FilenameUtils.getName(finishedPath),
+            getZkExt().getData(finishedPath, false, null));
+      }
+    } catch (KeeperException e) {
+      throw new IllegalStateException(
+          "getWorkerFinishedInfos: KeeperException", e);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(
+          "getWorkerFinishedInfos: InterruptedException", e);
+    }
+    return workerFinishedInfos;
+  }
+
   /**
    * Collect and aggregate the worker statistics for a particular superstep.
    *
@@ -916,31 +1075,17 @@ public class BspServiceMaster<I extends WritableComparable,
         masterGraphPartitioner.createPartitionStats().getClass();
     GlobalStats globalStats = new GlobalStats();
     // Get the stats from the all the worker selected nodes
-    String workerFinishedPath =
-        getWorkerFinishedPath(getApplicationAttempt(), superstep);
-    List<String> workerFinishedPathList = null;
-    try {
-      workerFinishedPathList =
-          getZkExt().getChildrenExt(
-              workerFinishedPath, false, false, true);
-    } catch (KeeperException e) {
-      throw new IllegalStateException(
-          "aggregateWorkerStats: KeeperException", e);
-    } catch (InterruptedException e) {
-      throw new IllegalStateException(
-          "aggregateWorkerStats: InterruptedException", e);
-    }
+    Map<String, byte[]> workerFinishedInfos =
+        getWorkerFinishedInfos(superstep);
 
     AggregatedMetrics aggregatedMetrics = new AggregatedMetrics();
 
     allPartitionStatsList.clear();
-    for (String finishedPath : workerFinishedPathList) {
-      String hostnamePartitionId = FilenameUtils.getName(finishedPath);
+    for (Entry<String, byte[]> entry : workerFinishedInfos.entrySet()) {
+      String hostnamePartitionId = entry.getKey();
       JSONObject workerFinishedInfoObj = null;
       try {
-        byte [] zkData =
-            getZkExt().getData(finishedPath, false, null);
-        workerFinishedInfoObj = new JSONObject(new String(zkData));
+        workerFinishedInfoObj = new JSONObject(new String(entry.getValue()));
         List<PartitionStats> statsList =
             WritableUtils.readListFieldsFromByteArray(
                 Base64.decode(workerFinishedInfoObj.getString(
@@ -967,12 +1112,6 @@ public class BspServiceMaster<I extends WritableComparable,
       } catch (JSONException e) {
         throw new IllegalStateException(
             "aggregateWorkerStats: JSONException", e);
-      } catch (KeeperException e) {
-        throw new IllegalStateException(
-            "aggregateWorkerStats: KeeperException", e);
-      } catch (InterruptedException e) {
-        throw new IllegalStateException(
-            "aggregateWorkerStats: InterruptedException", e);
       } catch (IOException e) {
         throw new IllegalStateException(
             "aggregateWorkerStats: IOException", e);
@@ -1029,29 +1168,20 @@ public class BspServiceMaster<I extends WritableComparable,
   }
 
   /**
-   * Finalize the checkpoint file prefixes by taking the chosen workers and
-   * writing them to a finalized file.  Also write out the master
-   * aggregated aggregator array from the previous superstep.
+   * Capture the content of the finalized checkpoint file: the checkpoint
+   * file prefixes of the chosen workers, the master aggregated aggregator
+   * array from the previous superstep and the master compute data.
    *
    * @param superstep superstep to finalize
    * @param chosenWorkerInfoList list of chosen workers that will be finalized
+   * @return Content of the finalized checkpoint file
    * @throws IOException
    * @throws InterruptedException
    * @throws KeeperException
    */
-  private void finalizeCheckpoint(long superstep,
+  private byte[] captureFinalizedCheckpoint(long superstep,
     List<WorkerInfo> chosenWorkerInfoList)
     throws IOException, KeeperException, InterruptedException {
-    Path finalizedCheckpointPath =
-        new Path(getCheckpointBasePath(superstep) +
-            CHECKPOINT_FINALIZED_POSTFIX);
-    try {
-      getFs().delete(finalizedCheckpointPath, false);
-    } catch (IOException e) {
-      LOG.warn("finalizedValidCheckpointPrefixes: Removed old file " +
-          finalizedCheckpointPath);
-    }
-
     // Format:
     // <global statistics>
     // <superstep classes>
@@ -1059,27 +1189,67 @@ public class BspServiceMaster<I extends WritableComparable,
     // <used file prefix 0><used file prefix 1>...
     // <aggregator data>
     // <masterCompute data>
-    FSDataOutputStream finalizedOutputStream =
-        getFs().create(finalizedCheckpointPath);
+    ByteArrayOutputStream finalizedByteStream = new ByteArrayOutputStream();
+    DataOutputStream finalizedOutput =
+        new DataOutputStream(finalizedByteStream);
 
     String superstepFinishedNode =
         getSuperstepFinishedPath(getApplicationAttempt(), superstep - 1);
-    finalizedOutputStream.write(
+    finalizedOutput.write(
         getZkExt().getData(superstepFinishedNode, false, null));
 
-    finalizedOutputStream.writeInt(chosenWorkerInfoList.size());
+    finalizedOutput.writeInt(chosenWorkerInfoList.size());
     for (WorkerInfo chosenWorkerInfo : chosenWorkerInfoList) {
       String chosenWorkerInfoPrefix =
           getCheckpointBasePath(superstep) + "." +
               chosenWorkerInfo.getHostnameId();
-      finalizedOutputStream.writeUTF(chosenWorkerInfoPrefix);
+      finalizedOutput.writeUTF(chosenWorkerInfoPrefix);
+    }
+    aggregatorHandler.write(finalizedOutput);
+    masterCompute.write(finalizedOutput);
+    finalizedOutput.close();
+    return finalizedByteStream.toByteArray();
+  }
+
+  /**
+   * Wait for all of the workers to write their checkpoint data, and then
+   * finalize the checkpoint by writing the finalized checkpoint file.
+   *
+   * @param superstep superstep to finalize
+   * @param finalizedCheckpoint Content of the finalized checkpoint file
+   * @return False if a worker failed before writing its checkpoint data
+   */
+  private boolean finalizeCheckpoint(long superstep,
+      byte[] finalizedCheckpoint) {
+    String workerWroteCheckpointPath =
+        getWorkerWroteCheckpointPath(getApplicationAttempt(), superstep);
+    if (!barrierOnWorkerList(workerWroteCheckpointPath,
+        chosenWorkerInfoList,
+        getWorkerWroteCheckpointEvent())) {
+      return false;
+    }
+    Path finalizedCheckpointPath =
+        new Path(getCheckpointBasePath(superstep) +
+            CHECKPOINT_FINALIZED_POSTFIX);
+    try {
+      try {
+        getFs().delete(finalizedCheckpointPath, false);
+      } catch (IOException e) {
+        LOG.warn("finalizedValidCheckpointPrefixes: Removed old file " +
+            finalizedCheckpointPath);
+      }
+      FSDataOutputStream finalizedOutputStream =
+          getFs().create(finalizedCheckpointPath);
+      finalizedOutputStream.write(finalizedCheckpoint);
+      finalizedOutputStream.close();
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "finalizeCheckpoint: IOException on finalizing checkpoint", e);
     }
-    aggregatorHandler.write(finalizedOutputStream);
-    masterCompute.write(finalizedOutputStream);
-    finalizedOutputStream.close();
     lastCheckpointedSuperstep = superstep;
     GiraphStats.getInstance().
         getLastCheckpointedSuperstep().setValue(superstep);
+    return true;
   }
 
   /**
@@ -1122,7 +1292,8 @@ public class BspServiceMaster<I extends WritableComparable,
     // If restarted, prepare the checkpoint restart
     if (getRestartedSuperstep() == getSuperstep()) {
       try {
-        prepareCheckpointRestart(getSuperstep(), partitionOwners);
+        prepareCheckpointRestart(getSuperstep(), partitionOwners,
+            chosenWorkerInfoList);
       } catch (IOException e) {
         throw new IllegalStateException(
             "assignPartitionOwners: IOException on preparing", e);
@@ -1284,6 +1455,26 @@ public class BspServiceMaster<I extends WritableComparable,
     return lastCheckpointedSuperstep;
   }
 
+  /**
+   * Get the workers which registered as finished on a path.  With the Netty
+   * barrier, the workers which finished the current superstep let the
+   * master know directly, instead of through znodes.
+   *
+   * @param finishedWorkerPath Path where the workers register as finished
+   * @return Hostnames and ids of the finished workers
+   * @throws KeeperException
+   * @throws InterruptedException
+   */
+  private List<String> getFinishedHostnameIds(String finishedWorkerPath)
+    throws KeeperException, InterruptedException {
+    if (nettySuperstepBarrier && finishedWorkerPath.equals(
+        getWorkerFinishedPath(getApplicationAttempt(), getSuperstep()))) {
+      return new ArrayList<String>(finishedWorkerData.getFinishedWorkers(
+          getApplicationAttempt(), getSuperstep()).keySet());
+    }
+    return getZkExt().getChildrenExt(finishedWorkerPath, true, false, false);
+  }
+
   /**
    * Wait for a set of workers to signal that they are done with the
    * barrier.
@@ -1327,11 +1518,7 @@ public class BspServiceMaster<I extends WritableComparable,
         "mapred.task.timeout", defaultTaskTimeoutMsec);
     while (true) {
       try {
-        finishedHostnameIdList =
-            getZkExt().getChildrenExt(finishedWorkerPath,
-                true,
-                false,
-                false);
+        finishedHostnameIdList = getFinishedHostnameIds(finishedWorkerPath);
       } catch (KeeperException e) {
         throw new IllegalStateException(
             "barrierOnWorkerList: KeeperException - Couldn't get " +
@@ -1570,24 +1757,24 @@ public class BspServiceMaster<I extends WritableComparable,
     }
 
     // Finalize the valid checkpoint file prefixes and possibly
-    // the aggregators.
+    // the aggregators.  Asynchronous checkpoints are written by the workers
+    // while they compute, so they are finalized once the superstep is done.
+    byte[] asyncFinalizedCheckpoint = null;
     if (checkpointFrequencyMet(getSuperstep())) {
-      String workerWroteCheckpointPath =
-          getWorkerWroteCheckpointPath(getApplicationAttempt(),
-              getSuperstep());
-      // first wait for all the workers to write their checkpoint data
-      if (!barrierOnWorkerList(workerWroteCheckpointPath,
-          chosenWorkerInfoList,
-          getWorkerWroteCheckpointEvent())) {
-        return SuperstepState.WORKER_FAILURE;
-      }
+      byte[] finalizedCheckpoint;
       try {
-        finalizeCheckpoint(getSuperstep(), chosenWorkerInfoList);
+        finalizedCheckpoint =
+            captureFinalizedCheckpoint(getSuperstep(), chosenWorkerInfoList);
       } catch (IOException e) {
         throw new IllegalStateException(
             "coordinateSuperstep: IOException on finalizing checkpoint",
             e);
       }
+      if (asyncCheckpoints) {
+        asyncFinalizedCheckpoint = finalizedCheckpoint;
+      } else if (!finalizeCheckpoint(getSuperstep(), finalizedCheckpoint)) {
+        return SuperstepState.WORKER_FAILURE;
+      }
     }
 
     if (getSuperstep() == INPUT_SUPERSTEP) {
@@ -1611,6 +1798,10 @@ public class BspServiceMaster<I extends WritableComparable,
         getSuperstepStateChangedEvent())) {
       return SuperstepState.WORKER_FAILURE;
     }
+    if (asyncFinalizedCheckpoint != null &&
+        !finalizeCheckpoint(getSuperstep(), asyncFinalizedCheckpoint)) {
+      return SuperstepState.WORKER_FAILURE;
+    }
 
     // Collect aggregator values, then run the master.compute() and
     // finally save the aggregator values
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.master;
+
+import org.apache.giraph.zk.BspEvent;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Information of the workers which finished a superstep, sent directly to
+ * the master instead of through their finished znodes.
+ */
+public class FinishedWorkerData {
+  /** Event to signal when a worker finishes */
+  private final BspEvent workerFinishedEvent;
+  /**
+   * Finished superstep information of the workers, by application attempt
+   * and superstep, and then by worker hostname and id
+   */
+  private final Map<String, Map<String, byte[]>> finishedWorkers =
+      Maps.newHashMap();
+
+  /**
+   * Constructor
+   *
+   * @param workerFinishedEvent Event to signal when a worker finishes
+   */
+  public FinishedWorkerData(BspEvent workerFinishedEvent) {
+    this.workerFinishedEvent = workerFinishedEvent;
+  }
+
+  /**
+   * Get the key of the workers which finished a superstep
+   *
+   * @param applicationAttempt Application attempt
+   * @param superstep Superstep
+   * @return Key of the finished workers
+   */
+  private static String getKey(long applicationAttempt, long superstep) {
+    return applicationAttempt + "/" + superstep;
+  }
+
+  /**
+   * Record that a worker finished a superstep.
+   *
+   * @param applicationAttempt Application attempt
+   * @param superstep Finished superstep
+   * @param hostnameId Hostname and id of the worker
+   * @param finishedInfo Finished superstep information of the worker
+   */
+  public void workerFinished(long applicationAttempt, long superstep,
+      String hostnameId, byte[] finishedInfo) {
+    synchronized (finishedWorkers) {
+      String key = getKey(applicationAttempt, superstep);
+      Map<String, byte[]> superstepWorkers = finishedWorkers.get(key);
+      if (superstepWorkers == null) {
+        superstepWorkers = Maps.newHashMap();
+        finishedWorkers.put(key, superstepWorkers);
+      }
+      superstepWorkers.put(hostnameId, finishedInfo);
+    }
+    workerFinishedEvent.signal();
+  }
+
+  /**
+   * Get the workers which finished a superstep so far.
+   *
+   * @param applicationAttempt Application attempt
+   * @param superstep Superstep
+   * @return Finished superstep information by worker hostname and id
+   */
+  public Map<String, byte[]> getFinishedWorkers(long applicationAttempt,
+      long superstep) {
+    synchronized (finishedWorkers) {
+      Map<String, byte[]> superstepWorkers =
+          finishedWorkers.get(getKey(applicationAttempt, superstep));
+      if (superstepWorkers == null) {
+        return Maps.newHashMap();
+      }
+      return Maps.newHashMap(superstepWorkers);
+    }
+  }
+
+  /**
+   * Forget the workers which finished a superstep, once its information
+   * was used.
+   *
+   * @param applicationAttempt Application attempt
+   * @param superstep Superstep
+   */
+  public void removeFinishedWorkers(long applicationAttempt, long superstep) {
+    synchronized (finishedWorkers) {
+      finishedWorkers.remove(getKey(applicationAttempt, superstep));
+    }
+  }
+}
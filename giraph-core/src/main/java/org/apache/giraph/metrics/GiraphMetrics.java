@@ -124,6 +124,17 @@ public class GiraphMetrics {
     observers.add(observer);
   }
 
+  /**
+   * Stop calling back an observer registered with
+   * {@link #addSuperstepResetObserver(ResetSuperstepMetricsObserver)}.
+   *
+   * @param observer SuperstepObserver to stop watching
+   */
+  public void removeSuperstepResetObserver(
+      ResetSuperstepMetricsObserver observer) {
+    observers.remove(observer);
+  }
+
   /**
    * Reset the per-superstep MetricsRegistry
    *
@@ -39,6 +39,9 @@ public interface MetricNames {
 
   /** Counter for sending vertices requests */
   String SEND_VERTEX_REQUESTS = "send-vertex-requests";
+  /** Counter for sending chunks of vertices of a moving partition */
+  String SEND_PARTITION_VERTICES_REQUESTS =
+      "send-partition-vertices-requests";
   /** Counter for sending a partition of messages for next superstep */
   String SEND_WORKER_MESSAGES_REQUESTS = "send-worker-messages-requests";
   /**
@@ -75,10 +78,40 @@ public interface MetricNames {
   String SENT_BYTES = "sent-bytes";
   /** Number of bytes received in superstep */
   String RECEIVED_BYTES = "received-bytes";
+  /** Counter of send buffers taken from the pool in superstep */
+  String SEND_BUFFER_POOL_HITS = "send-buffer-pool-hits";
+  /** Counter of send buffers allocated because the pool had none */
+  String SEND_BUFFER_POOL_MISSES = "send-buffer-pool-misses";
+
+  /** Bytes of partitions spilled to disk by the out-of-core graph */
+  String OUT_OF_CORE_SPILL_BYTES = "ooc-spill-bytes";
+  /** Bytes of partitions loaded from disk by the out-of-core graph */
+  String OUT_OF_CORE_LOAD_BYTES = "ooc-load-bytes";
+  /** Milliseconds spent waiting for out-of-core partitions to be loaded */
+  String OUT_OF_CORE_STALL_MS = "ooc-stall-ms";
+
+  /** Bytes of partial aggregated values a worker sent in superstep */
+  String AGGREGATOR_REDUCE_BYTES = "aggregator-reduce-bytes";
+  /** Milliseconds a worker spent reducing the aggregators */
+  String AGGREGATOR_REDUCE_MS = "aggregator-reduce-ms";
+  /** Bytes of final aggregated values a worker forwarded in superstep */
+  String AGGREGATOR_BROADCAST_BYTES = "aggregator-broadcast-bytes";
+  /** Milliseconds a worker spent receiving and forwarding the aggregators */
+  String AGGREGATOR_BROADCAST_MS = "aggregator-broadcast-ms";
+
+  /** Bytes of vertices of the partitions a worker moved in superstep */
+  String PARTITION_MIGRATION_BYTES = "partition-migration-bytes";
+  /** Milliseconds a worker spent sending the partitions it moved */
+  String PARTITION_MIGRATION_MS = "partition-migration-ms";
 
   /** PercentGauge of memory free */
   String MEMORY_FREE_PERCENT = "memory-free-pct";
 
+  /** Milliseconds spent moving the input edges to their vertices */
+  String MOVE_EDGES_TO_VERTICES_MS = "move-edges-to-vertices-ms";
+  /** Peak used heap (in megabytes) while loading the input edges */
+  String EDGE_INPUT_PEAK_HEAP_MB = "edge-input-peak-heap-mb";
+
   /** Total edges loaded */
   String EDGES_FILTERED = "edges-filtered";
   /** Percent of edges filtered out */
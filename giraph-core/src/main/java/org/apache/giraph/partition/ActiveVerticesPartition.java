@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.partition;
+
+import org.apache.giraph.graph.Vertex;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+
+/**
+ * {@link Partition} which keeps track of the vertices which are not halted,
+ * so that computation can skip halted vertices without messages instead of
+ * iterating over the whole partition (see
+ * {@link org.apache.giraph.conf.GiraphConstants#ACTIVE_VERTEX_FRONTIER}).
+ *
+ * @param <I> Vertex id
+ * @param <V> Vertex value
+ * @param <E> Edge value
+ */
+public interface ActiveVerticesPartition<I extends WritableComparable,
+    V extends Writable, E extends Writable> extends Partition<I, V, E> {
+  /**
+   * Get the ids of the vertices which are not halted.  Vertices can be
+   * computed (and halted) while iterating over the ids, every vertex which
+   * is still active when the iteration reaches it is returned.  The ids may
+   * be reused objects, so they must be copied to be kept.
+   *
+   * @return Ids of the active vertices
+   */
+  Iterable<I> getActiveVertexIds();
+
+  /**
+   * Save a computed vertex back to the partition, like
+   * {@link #saveVertex(Vertex)}, knowing how many edges it had before it was
+   * computed, so that the partition can keep its edge count up to date
+   * without iterating over all of its vertices.
+   *
+   * @param vertex Computed vertex
+   * @param previousNumEdges Number of edges of the vertex before computing
+   */
+  void saveComputedVertex(Vertex<I, V, E> vertex, int previousNumEdges);
+}
@@ -19,8 +19,15 @@
 package org.apache.giraph.partition;
 
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.edge.MappedOutEdges;
 import org.apache.giraph.edge.OutEdges;
 import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.metrics.GiraphMetrics;
+import org.apache.giraph.metrics.MetricNames;
+import org.apache.giraph.metrics.ResetSuperstepMetricsObserver;
+import org.apache.giraph.metrics.SuperstepMetricsRegistry;
+import org.apache.giraph.utils.ByteBufferInputStream;
+import org.apache.giraph.utils.HeapPressureMonitor;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -28,10 +35,13 @@ import org.apache.hadoop.mapreduce.Mapper.Context;
 import org.apache.log4j.Logger;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.metrics.core.Counter;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -43,8 +53,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -53,12 +66,20 @@ import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.apache.giraph.conf.GiraphConstants.MAX_PARTITIONS_IN_MEMORY;
+import static org.apache.giraph.conf.GiraphConstants.MMAP_STATIC_GRAPH_EDGES;
+import static org.apache.giraph.conf.GiraphConstants.OUT_OF_CORE_ADAPTIVE_EVICTION;
+import static org.apache.giraph.conf.GiraphConstants.OUT_OF_CORE_EVICTION_POLICY;
+import static org.apache.giraph.conf.GiraphConstants.OUT_OF_CORE_HEAP_HIGH_WATERMARK;
+import static org.apache.giraph.conf.GiraphConstants.OUT_OF_CORE_HEAP_LOW_WATERMARK;
+import static org.apache.giraph.conf.GiraphConstants.OUT_OF_CORE_PREFETCH_PARTITIONS;
 import static org.apache.giraph.conf.GiraphConstants.PARTITIONS_DIRECTORY;
 
 /**
@@ -66,6 +87,24 @@ import static org.apache.giraph.conf.GiraphConstants.PARTITIONS_DIRECTORY;
  * Thread-safe, but expects the caller to synchronized between deletes, adds,
  * puts and gets.
  *
+ * The edges of static graphs are written only once.  If they are
+ * memory-mapped, loading a partition only reads the vertex data, and the
+ * vertices get {@link MappedOutEdges} reading their edges straight from the
+ * mapped file.
+ *
+ * With adaptive eviction, the number of partitions held in memory follows
+ * the heap usage instead of a fixed limit: partitions are loaded as long as
+ * their estimated size fits under the high watermark of the heap, and
+ * inactive partitions which won't be requested again in the superstep are
+ * spilled while the heap is under pressure (see {@link HeapPressureMonitor}).  The victims are chosen according to the
+ * {@link OutOfCoreEvictionPolicy}.
+ *
+ * With prefetching, the partitions which will be requested next (see
+ * {@link #prefetchPartitions(Iterable, Set)}) are loaded by a background
+ * thread, evicting only partitions which won't be requested again.  The same thread
+ * writes back the partitions evicted to load a partition on demand, so the
+ * requesting thread only waits for the load.
+ *
  * @param <I> Vertex id
  * @param <V> Vertex data
  * @param <E> Edge data
@@ -73,10 +112,14 @@ import static org.apache.giraph.conf.GiraphConstants.PARTITIONS_DIRECTORY;
 @SuppressWarnings("rawtypes")
 public class DiskBackedPartitionStore<I extends WritableComparable,
     V extends Writable, E extends Writable>
-    extends PartitionStore<I, V, E> {
+    extends PartitionStore<I, V, E> implements ResetSuperstepMetricsObserver {
   /** Class logger. */
   private static final Logger LOG =
       Logger.getLogger(DiskBackedPartitionStore.class);
+  /** Estimated serialized size of a vertex before any partition is spilled */
+  private static final long DEFAULT_BYTES_PER_VERTEX = 256;
+  /** Milliseconds to wait before checking the heap usage again */
+  private static final long HEAP_CHECK_INTERVAL_MS = 100;
   /** States the partition can be found in */
   private enum State { ACTIVE, INACTIVE, LOADING, OFFLOADING, ONDISK };
   /** Global lock to the whole partition */
@@ -119,8 +162,33 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
   private final HashFunction hasher = Hashing.murmur3_32();
   /** Maximum number of slots */
   private final int maxInMemoryPartitions;
+  /** Whether the edges of the static graph are memory-mapped */
+  private final boolean mmapStaticEdges;
+  /** Order in which inactive partitions are spilled */
+  private final OutOfCoreEvictionPolicy evictionPolicy;
+  /** Heap usage monitor, if the eviction is adaptive (null otherwise) */
+  private final HeapPressureMonitor heapMonitor;
+  /** Bytes written by spills that wrote both vertices and edges */
+  private final AtomicLong sampledSpillBytes = new AtomicLong();
+  /** Vertices written by spills that wrote both vertices and edges */
+  private final AtomicLong sampledSpillVertices = new AtomicLong();
+  /** Number of upcoming partitions to load in the background */
+  private final int prefetchPartitions;
+  /** Thread doing the background IO (null if prefetching is disabled) */
+  private final ExecutorService ioExecutor;
+  /** Ids of the partitions left in the superstep, which aren't spilled */
+  private volatile Set<Integer> remainingPartitionIds =
+      Collections.emptySet();
+  /** First failure of the background IO, rethrown to the callers */
+  private volatile IOException ioFailure;
   /** Number of slots used */
   private int inMemoryPartitions;
+  /** Counter of bytes spilled to disk in the current superstep */
+  private volatile Counter spillBytes;
+  /** Counter of bytes loaded from disk in the current superstep */
+  private volatile Counter loadBytes;
+  /** Counter of time spent waiting for memory in the current superstep */
+  private volatile Counter stallMs;
 
   /**
    * Constructor
@@ -131,10 +199,39 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
   public DiskBackedPartitionStore(
       ImmutableClassesGiraphConfiguration<I, V, E> conf,
       Mapper<?, ?, ?, ?>.Context context) {
+    this(conf, context, OUT_OF_CORE_ADAPTIVE_EVICTION.get(conf) ?
+        new HeapPressureMonitor(OUT_OF_CORE_HEAP_HIGH_WATERMARK.get(conf),
+            OUT_OF_CORE_HEAP_LOW_WATERMARK.get(conf)) : null);
+  }
+
+  /**
+   * Constructor with the heap usage monitor, which is shut down with the
+   * store.
+   *
+   * @param conf Configuration
+   * @param context Context
+   * @param heapMonitor Heap usage monitor, if the eviction is adaptive (null
+   *                    otherwise)
+   */
+  DiskBackedPartitionStore(
+      ImmutableClassesGiraphConfiguration<I, V, E> conf,
+      Mapper<?, ?, ?, ?>.Context context, HeapPressureMonitor heapMonitor) {
     this.conf = conf;
     this.context = context;
     // We must be able to hold at least one partition in memory
     maxInMemoryPartitions = Math.max(MAX_PARTITIONS_IN_MEMORY.get(conf), 1);
+    mmapStaticEdges = conf.isStaticGraph() && MMAP_STATIC_GRAPH_EDGES.get(conf);
+    evictionPolicy = OUT_OF_CORE_EVICTION_POLICY.get(conf);
+    this.heapMonitor = heapMonitor;
+    prefetchPartitions = OUT_OF_CORE_PREFETCH_PARTITIONS.get(conf);
+    if (prefetchPartitions > 0) {
+      ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("partition-io-%d").setDaemon(true).build());
+    } else {
+      ioExecutor = null;
+    }
+    newSuperstep(GiraphMetrics.get().perSuperstep());
+    GiraphMetrics.get().addSuperstepResetObserver(this);
 
     // Take advantage of multiple disks
     String[] userPaths = PARTITIONS_DIRECTORY.getArray(conf);
@@ -145,10 +242,23 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     }
     if (LOG.isInfoEnabled()) {
       LOG.info("DiskBackedPartitionStore with maxInMemoryPartitions=" +
-          maxInMemoryPartitions + ", isStaticGraph=" + conf.isStaticGraph());
+          maxInMemoryPartitions + ", isStaticGraph=" + conf.isStaticGraph() +
+          ", mmapStaticEdges=" + mmapStaticEdges +
+          ", adaptiveEviction=" + (heapMonitor != null) +
+          ", evictionPolicy=" + evictionPolicy +
+          ", prefetchPartitions=" + prefetchPartitions);
     }
   }
 
+  @Override
+  public void newSuperstep(SuperstepMetricsRegistry superstepMetrics) {
+    spillBytes = superstepMetrics.getCounter(
+        MetricNames.OUT_OF_CORE_SPILL_BYTES);
+    loadBytes = superstepMetrics.getCounter(
+        MetricNames.OUT_OF_CORE_LOAD_BYTES);
+    stallMs = superstepMetrics.getCounter(MetricNames.OUT_OF_CORE_STALL_MS);
+  }
+
   @Override
   public Iterable<Integer> getPartitionIds() {
     try {
@@ -284,8 +394,54 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     }
   }
 
+  @Override
+  public void prefetchPartitions(Iterable<Integer> partitionIds,
+      Set<Integer> remainingPartitionIds) {
+    // Heap pressure spills keep the remaining partitions in memory too
+    this.remainingPartitionIds = remainingPartitionIds;
+    if (ioExecutor == null) {
+      return;
+    }
+    // Only the ids we prefetch are copied, since the caller passes all of
+    // the partitions left in the superstep.  None of the remaining
+    // partitions is evicted, though, since it would be loaded again later.
+    List<Integer> upcoming = Lists.newArrayList(
+        Iterables.limit(partitionIds, prefetchPartitions));
+    wLock.lock();
+    try {
+      for (Integer id : upcoming) {
+        if (states.get(id) != State.ONDISK) {
+          continue;
+        }
+        Entry<Integer, Partition<I, V, E>> victim = null;
+        if (hasRoomInMemory(onDisk.get(id))) {
+          inMemoryPartitions++;
+        } else {
+          victim = removeEvictionEntry(remainingPartitionIds);
+          if (victim == null) {
+            break;
+          }
+          states.put(victim.getKey(), State.OFFLOADING);
+          pending.get(victim.getKey()).signalAll();
+        }
+        states.put(id, State.LOADING);
+        ioExecutor.submit(new PrefetchPartition(id, onDisk.remove(id), victim));
+      }
+    } finally {
+      wLock.unlock();
+    }
+  }
+
   @Override
   public void shutdown() {
+    if (ioExecutor != null) {
+      ioExecutor.shutdown();
+      try {
+        ioExecutor.awaitTermination(120, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        ioExecutor.shutdownNow();
+      }
+    }
     try {
       pool.shutdown();
       try {
@@ -296,6 +452,10 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         pool.shutdownNow();
       }
     } finally {
+      GiraphMetrics.get().removeSuperstepResetObserver(this);
+      if (heapMonitor != null) {
+        heapMonitor.shutdown();
+      }
       for (Integer id : onDisk.values()) {
         deletePartitionFiles(id);
       }
@@ -361,6 +521,121 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     return count;
   }
 
+  /**
+   * Estimate the size of a partition in memory, from the serialized size
+   * of the vertices spilled so far.
+   *
+   * @param numVertices Number of vertices of the partition
+   * @return Estimated size in bytes
+   */
+  private long estimatePartitionSize(long numVertices) {
+    long vertices = sampledSpillVertices.get();
+    if (vertices == 0) {
+      return numVertices * DEFAULT_BYTES_PER_VERTEX;
+    }
+    return numVertices * (sampledSpillBytes.get() / vertices);
+  }
+
+  /**
+   * Check whether there is room in memory for one more partition, and take
+   * it if so.  With adaptive eviction, there is always room for a first
+   * partition, so that the computation can progress.  Caller should hold
+   * the global write lock.
+   *
+   * @param numVertices Number of vertices of the partition
+   * @return True iff the partition fits in memory
+   */
+  private boolean hasRoomInMemory(long numVertices) {
+    if (heapMonitor == null) {
+      return inMemoryPartitions < maxInMemoryPartitions;
+    }
+    return inMemoryPartitions == 0 ||
+        heapMonitor.admit(estimatePartitionSize(numVertices));
+  }
+
+  /**
+   * Removes and returns the next inactive entry to spill, according to the
+   * eviction policy.  Caller should hold the global write lock.
+   *
+   * @param excluded Ids of the partitions which mustn't be spilled
+   * @return The entry to spill, null if all inactive entries are excluded
+   */
+  private Entry<Integer, Partition<I, V, E>> removeEvictionEntry(
+      Set<Integer> excluded) {
+    Entry<Integer, Partition<I, V, E>> victim = null;
+    for (Entry<Integer, Partition<I, V, E>> entry : inactive.entrySet()) {
+      if (excluded.contains(entry.getKey())) {
+        continue;
+      }
+      if (evictionPolicy != OutOfCoreEvictionPolicy.LARGEST_FIRST) {
+        victim = entry;
+        break;
+      }
+      // Estimated sizes grow with the number of vertices
+      if (victim == null || entry.getValue().getVertexCount() >
+          victim.getValue().getVertexCount()) {
+        victim = entry;
+      }
+    }
+    if (victim != null) {
+      inactive.remove(victim.getKey());
+    }
+    return victim;
+  }
+
+  /**
+   * Write an evicted partition to disk and mark it as such.  Caller should
+   * not hold the global write lock.
+   *
+   * @param victim The evicted partition, in state OFFLOADING
+   * @throws IOException
+   */
+  private void writeBack(Entry<Integer, Partition<I, V, E>> victim)
+    throws IOException {
+    offloadPartition(victim.getValue());
+    wLock.lock();
+    try {
+      states.put(victim.getKey(), State.ONDISK);
+      onDisk.put(victim.getKey(), (int) victim.getValue().getVertexCount());
+      pending.get(victim.getKey()).signalAll();
+    } finally {
+      wLock.unlock();
+    }
+  }
+
+  /**
+   * Record a failure of the background IO on a partition, and wake up all
+   * of the waiting threads, so they can fail too.
+   *
+   * @param id The id of the partition
+   * @param e The failure
+   */
+  private void failBackgroundIo(Integer id, IOException e) {
+    LOG.error("failBackgroundIo: IO failed on partition " + id, e);
+    wLock.lock();
+    try {
+      if (ioFailure == null) {
+        ioFailure = e;
+      }
+      for (Condition condition : pending.values()) {
+        condition.signalAll();
+      }
+      notEmpty.signalAll();
+    } finally {
+      wLock.unlock();
+    }
+  }
+
+  /**
+   * Fail if the background IO failed, as partitions may be lost.
+   */
+  private void checkIoFailure() {
+    if (ioFailure != null) {
+      throw new IllegalStateException(
+          "checkIoFailure: Background IO failed", ioFailure);
+    }
+  }
+
   /**
    * Writes vertex data (Id, value and halted state) to stream.
    *
@@ -376,7 +651,9 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
   }
 
   /**
-   * Writes vertex edges (Id, edges) to stream.
+   * Writes vertex edges (Id, edges) to stream.  Memory-mapped edges are
+   * written by {@link MappedOutEdges#writeMappable(DataOutput, OutEdges)},
+   * so they can be mapped without reading them.
    *
    * @param output The output stream
    * @param vertex The vertex to serialize
@@ -386,7 +663,12 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
   private void writeOutEdges(DataOutput output, Vertex<I, V, E> vertex)
     throws IOException {
     vertex.getId().write(output);
-    ((OutEdges<I, E>) vertex.getEdges()).write(output);
+    OutEdges<I, E> edges = (OutEdges<I, E>) vertex.getEdges();
+    if (mmapStaticEdges) {
+      MappedOutEdges.writeMappable(output, edges);
+    } else {
+      edges.write(output);
+    }
   }
 
   /**
@@ -424,10 +706,61 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     I id = conf.createVertexId();
     id.readFields(in);
     Vertex<I, V, E> v = partition.getVertex(id);
-    ((OutEdges<I, E>) v.getEdges()).readFields(in);
+    if (mmapStaticEdges) {
+      // Too big to be mapped, so the serialized edges are kept on the heap
+      int numEdges = in.readInt();
+      byte[] serializedEdges = new byte[in.readInt()];
+      in.readFully(serializedEdges);
+      byte[] writtenEdges = new byte[in.readInt()];
+      in.readFully(writtenEdges);
+      v.setEdges(new MappedOutEdges<I, E>(conf,
+          ByteBuffer.wrap(serializedEdges), ByteBuffer.wrap(writtenEdges),
+          numEdges));
+    } else {
+      ((OutEdges<I, E>) v.getEdges()).readFields(in);
+    }
     partition.saveVertex(v);
   }
 
+  /**
+   * Memory-map the edges of a partition and set them to its vertices.
+   *
+   * @param file The file with the edges of the partition
+   * @param partition The partition owning the vertices
+   * @param numVertices The number of vertices contained on disk
+   * @throws IOException
+   */
+  private void mapOutEdges(File file, Partition<I, V, E> partition,
+      int numVertices) throws IOException {
+    MappedByteBuffer buffer;
+    RandomAccessFile edgesFile = new RandomAccessFile(file, "r");
+    try {
+      // The mapping stays valid after the file is closed
+      buffer = edgesFile.getChannel().map(
+          FileChannel.MapMode.READ_ONLY, 0, edgesFile.length());
+    } finally {
+      edgesFile.close();
+    }
+    ByteBufferInputStream in = new ByteBufferInputStream(buffer);
+    for (int i = 0; i < numVertices; ++i) {
+      I id = conf.createVertexId();
+      id.readFields(in);
+      int numEdges = in.readInt();
+      int numBytes = in.readInt();
+      ByteBuffer serializedEdges = buffer.slice();
+      serializedEdges.limit(numBytes);
+      buffer.position(buffer.position() + numBytes);
+      numBytes = in.readInt();
+      ByteBuffer writtenEdges = buffer.slice();
+      writtenEdges.limit(numBytes);
+      buffer.position(buffer.position() + numBytes);
+      Vertex<I, V, E> v = partition.getVertex(id);
+      v.setEdges(new MappedOutEdges<I, E>(
+          conf, serializedEdges, writtenEdges, numEdges));
+      partition.saveVertex(v);
+    }
+  }
+
 
   /**
    * Load a partition from disk. It deletes the files after the load,
@@ -462,12 +795,18 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         inputStream = null;
       }
     }
+    loadBytes.inc(file.length());
     file.delete();
     file = new File(getEdgesPath(id));
     if (LOG.isDebugEnabled()) {
       LOG.debug("loadPartition: loading partition edges " +
           partition.getId() + " from " + file.getAbsolutePath());
     }
+    // A single mapping can't be bigger than 2GB
+    if (mmapStaticEdges && file.length() <= Integer.MAX_VALUE) {
+      mapOutEdges(file, partition, numVertices);
+      return partition;
+    }
     try {
       inputStream = new DataInputStream(
           new BufferedInputStream(new FileInputStream(file)));
@@ -479,6 +818,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         inputStream.close();
       }
     }
+    loadBytes.inc(file.length());
     /*
      * If the graph is static, keep the file around.
      */
@@ -516,6 +856,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         outputStream = null;
       }
     }
+    long bytes = file.length();
     file = new File(getEdgesPath(partition.getId()));
     /*
      * Avoid writing back edges if we have already written them once and
@@ -538,7 +879,11 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
           outputStream.close();
         }
       }
+      bytes += file.length();
+      sampledSpillBytes.addAndGet(bytes);
+      sampledSpillVertices.addAndGet(partition.getVertexCount());
     }
+    spillBytes.inc(bytes);
   }
 
   /**
@@ -554,6 +899,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     Integer count = onDisk.get(id);
     onDisk.put(id, count + (int) partition.getVertexCount());
     File file = new File(getVerticesPath(id));
+    long previousBytes = file.length();
     DataOutputStream outputStream = null;
     try {
       outputStream = new DataOutputStream(
@@ -567,7 +913,9 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         outputStream = null;
       }
     }
+    long bytes = file.length() - previousBytes;
     file = new File(getEdgesPath(id));
+    previousBytes = file.length();
     try {
       outputStream = new DataOutputStream(
           new BufferedOutputStream(new FileOutputStream(file, true)));
@@ -579,6 +927,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
         outputStream.close();
       }
     }
+    spillBytes.inc(bytes + file.length() - previousBytes);
   }
 
   /**
@@ -641,19 +990,6 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
       this.id = id;
     }
 
-    /**
-     * Removes and returns the last recently used entry.
-     *
-     * @return The last recently used entry.
-     */
-    private Entry<Integer, Partition<I, V, E>> getLRUEntry() {
-      Iterator<Entry<Integer, Partition<I, V, E>>> i =
-          inactive.entrySet().iterator();
-      Entry<Integer, Partition<I, V, E>> lruEntry = i.next();
-      i.remove();
-      return lruEntry;
-    }
-
     @Override
     public Partition<I, V, E> call() throws Exception {
       Partition<I, V, E> partition = null;
@@ -661,6 +997,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
       while (partition == null) {
         wLock.lock();
         try {
+          checkIoFailure();
           State pState = states.get(id);
           switch (pState) {
           case ONDISK:
@@ -670,17 +1007,34 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
             /*
              * Wait until we have space in memory or inactive data for a switch
              */
-            while (inMemoryPartitions >= maxInMemoryPartitions &&
-                inactive.size() == 0) {
-              notEmpty.await();
+            boolean hasRoom = hasRoomInMemory(numVertices);
+            if (!hasRoom && inactive.size() == 0) {
+              long startMillis = System.currentTimeMillis();
+              while (!hasRoom && inactive.size() == 0) {
+                if (heapMonitor == null) {
+                  notEmpty.await();
+                } else {
+                  // The heap usage changes without signals
+                  notEmpty.await(HEAP_CHECK_INTERVAL_MS,
+                      TimeUnit.MILLISECONDS);
+                }
+                checkIoFailure();
+                hasRoom = hasRoomInMemory(numVertices);
+              }
+              stallMs.inc(System.currentTimeMillis() - startMillis);
             }
             /*
              * we have to make some space first
              */
-            if (inMemoryPartitions >= maxInMemoryPartitions) {
-              lru = getLRUEntry();
+            if (!hasRoom) {
+              lru = removeEvictionEntry(Collections.<Integer>emptySet());
               states.put(lru.getKey(), State.OFFLOADING);
               pending.get(lru.getKey()).signalAll();
+              if (ioExecutor != null) {
+                // The victim stays in memory until written in the background
+                ioExecutor.submit(new WriteBackPartition(lru));
+                lru = null;
+              }
             } else { // there is space, just add it to the in-memory partitions
               inMemoryPartitions++;
             }
@@ -718,7 +1072,9 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
             incrementCounter(id);
             break;
           case LOADING:
+            long startMillis = System.currentTimeMillis();
             pending.get(id).await();
+            stallMs.inc(System.currentTimeMillis() - startMillis);
             break;
           case OFFLOADING:
             pending.get(id).await();
@@ -761,12 +1117,44 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
           states.put(id, State.INACTIVE);
           pending.get(id).signalAll();
           notEmpty.signal();
+          if (heapMonitor != null && heapMonitor.isUnderPressure()) {
+            spillInactivePartition();
+          }
         }
         return null;
       } finally {
         wLock.unlock();
       }
     }
+
+    /**
+     * Spill an inactive partition to relieve the heap, unless all of them
+     * are left in the superstep.  Caller should hold the global write lock,
+     * which is released during the IO.
+     *
+     * @throws IOException
+     */
+    private void spillInactivePartition() throws IOException {
+      Entry<Integer, Partition<I, V, E>> victim =
+          removeEvictionEntry(remainingPartitionIds);
+      if (victim == null) {
+        return;
+      }
+      Integer victimId = victim.getKey();
+      states.put(victimId, State.OFFLOADING);
+      pending.get(victimId).signalAll();
+      wLock.unlock();
+      try {
+        offloadPartition(victim.getValue());
+      } finally {
+        wLock.lock();
+      }
+      states.put(victimId, State.ONDISK);
+      onDisk.put(victimId, (int) victim.getValue().getVertexCount());
+      inMemoryPartitions--;
+      pending.get(victimId).signalAll();
+      notEmpty.signal();
+    }
   }
 
   /**
@@ -799,6 +1187,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
           boolean isOOC = false;
           boolean done  = false;
           while (!done) {
+            checkIoFailure();
             State pState = states.get(id);
             switch (pState) {
             case ONDISK:
@@ -837,7 +1226,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
           Condition newC = wLock.newCondition();
           pending.put(id, newC);
           partitionIds.add(id);
-          if (inMemoryPartitions < maxInMemoryPartitions) {
+          if (hasRoomInMemory(partition.getVertexCount())) {
             inMemoryPartitions++;
             states.put(id, State.INACTIVE);
             inactive.put(id, partition);
@@ -882,6 +1271,7 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
       wLock.lock();
       try {
         while (!done) {
+          checkIoFailure();
           State pState = states.get(id);
           switch (pState) {
           case ONDISK:
@@ -920,6 +1310,85 @@ public class DiskBackedPartitionStore<I extends WritableComparable,
     }
   }
 
+  /**
+   * Task that writes back an evicted partition in the background
+   */
+  private class WriteBackPartition implements Callable<Void> {
+    /** The evicted partition */
+    private final Entry<Integer, Partition<I, V, E>> victim;
+
+    /**
+     * Constructor
+     *
+     * @param victim The evicted partition, in state OFFLOADING
+     */
+    public WriteBackPartition(Entry<Integer, Partition<I, V, E>> victim) {
+      this.victim = victim;
+    }
+
+    @Override
+    public Void call() {
+      try {
+        writeBack(victim);
+      } catch (IOException e) {
+        failBackgroundIo(victim.getKey(), e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Task that loads a partition in the background, before it is requested
+   */
+  private class PrefetchPartition implements Callable<Void> {
+    /** Partition id */
+    private final Integer id;
+    /** The number of vertices contained on disk */
+    private final int numVertices;
+    /** Partition evicted to make room (can be null) */
+    private final Entry<Integer, Partition<I, V, E>> victim;
+
+    /**
+     * Constructor
+     *
+     * @param id The partition id, in state LOADING
+     * @param numVertices The number of vertices contained on disk
+     * @param victim Partition evicted to make room, in state OFFLOADING
+     *               (can be null)
+     */
+    public PrefetchPartition(Integer id, int numVertices,
+        Entry<Integer, Partition<I, V, E>> victim) {
+      this.id = id;
+      this.numVertices = numVertices;
+      this.victim = victim;
+    }
+
+    @Override
+    public Void call() {
+      Partition<I, V, E> partition;
+      try {
+        if (victim != null) {
+          writeBack(victim);
+        }
+        partition = loadPartition(id, numVertices);
+      } catch (IOException e) {
+        failBackgroundIo(id, e);
+        return null;
+      }
+      wLock.lock();
+      try {
+        // Loaded partitions are the most recently used
+        inactive.put(id, partition);
+        states.put(id, State.INACTIVE);
+        pending.get(id).signalAll();
+        notEmpty.signal();
+      } finally {
+        wLock.unlock();
+      }
+      return null;
+    }
+  }
+
   /**
    * Direct Executor that executes tasks within the calling threads.
    */
@@ -0,0 +1,748 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.partition;
+
+import org.apache.giraph.conf.DefaultImmutableClassesGiraphConfigurable;
+import org.apache.giraph.edge.Edge;
+import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.edge.LongNullArrayEdges;
+import org.apache.giraph.edge.MutableEdge;
+import org.apache.giraph.edge.MutableOutEdges;
+import org.apache.giraph.edge.OutEdges;
+import org.apache.giraph.edge.ReusableEdge;
+import org.apache.giraph.edge.ReuseObjectsOutEdges;
+import org.apache.giraph.graph.Vertex;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.util.Progressable;
+
+import com.google.common.collect.Iterables;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Partition for graphs with long ids, double values and no edge values,
+ * which keeps its vertices in primitive array columns instead of Vertex
+ * objects: ids, values, halted bits and the edges in compressed sparse row
+ * format (per-vertex offset and count into one array of target ids).
+ *
+ * Vertices are exposed through a single flyweight Vertex which reads the
+ * columns in place, so like {@link ByteArrayPartition} only one thread at a
+ * time may use the vertices returned by {@link #getVertex} and
+ * {@link #iterator()}.  Edges are only copied when they are mutated; the
+ * mutated edges are written back by {@link #saveVertex}, in place when they
+ * fit, otherwise appended (the edge array is compacted once too much of it
+ * is unused).
+ */
+public class LongDoubleNullArrayPartition
+    extends BasicPartition<LongWritable, DoubleWritable, NullWritable>
+    implements ReusesObjectsPartition<LongWritable, DoubleWritable,
+    NullWritable>, ActiveVerticesPartition<LongWritable, DoubleWritable,
+    NullWritable> {
+  /** Vertex id to its index in the columns */
+  private Long2IntOpenHashMap indices;
+  /** Vertex ids */
+  private LongArrayList ids;
+  /** Vertex values */
+  private DoubleArrayList values;
+  /** Halted bit of every vertex */
+  private BitSet halted;
+  /** Offset of the edges of every vertex in edgeTargets */
+  private IntArrayList edgeOffsets;
+  /** Number of edges of every vertex */
+  private IntArrayList edgeCounts;
+  /** Target vertex ids of all edges */
+  private LongArrayList edgeTargets;
+  /** Number of entries in edgeTargets which aren't used by any vertex */
+  private int unusedEdgeTargets;
+  /** Flyweight vertex */
+  private FlyweightVertex flyweightVertex;
+
+  /**
+   * Constructor for reflection.
+   */
+  public LongDoubleNullArrayPartition() { }
+
+  @Override
+  public void initialize(int partitionId, Progressable progressable) {
+    super.initialize(partitionId, progressable);
+    checkTypes();
+    initializeColumns(16, 16);
+  }
+
+  /**
+   * Make sure the configured types are the ones supported.
+   */
+  private void checkTypes() {
+    if (!LongWritable.class.equals(getConf().getVertexIdClass()) ||
+        !DoubleWritable.class.equals(getConf().getVertexValueClass()) ||
+        !NullWritable.class.equals(getConf().getEdgeValueClass())) {
+      throw new IllegalStateException("checkTypes: " +
+          getClass().getSimpleName() + " only supports LongWritable ids, " +
+          "DoubleWritable values and NullWritable edge values, but got " +
+          getConf().getVertexIdClass() + ", " +
+          getConf().getVertexValueClass() + " and " +
+          getConf().getEdgeValueClass());
+    }
+  }
+
+  /**
+   * Create empty columns.
+   *
+   * @param numVertices Expected number of vertices
+   * @param numEdges Expected number of edges
+   */
+  private void initializeColumns(int numVertices, int numEdges) {
+    indices = new Long2IntOpenHashMap(numVertices);
+    indices.defaultReturnValue(-1);
+    ids = new LongArrayList(numVertices);
+    values = new DoubleArrayList(numVertices);
+    halted = new BitSet(numVertices);
+    edgeOffsets = new IntArrayList(numVertices);
+    edgeCounts = new IntArrayList(numVertices);
+    edgeTargets = new LongArrayList(numEdges);
+    unusedEdgeTargets = 0;
+    flyweightVertex = new FlyweightVertex();
+    flyweightVertex.setConf(getConf());
+  }
+
+  @Override
+  public synchronized Vertex<LongWritable, DoubleWritable, NullWritable>
+  getVertex(LongWritable vertexIndex) {
+    int index = indices.get(vertexIndex.get());
+    if (index < 0) {
+      return null;
+    }
+    flyweightVertex.moveTo(index);
+    return flyweightVertex;
+  }
+
+  @Override
+  public synchronized Vertex<LongWritable, DoubleWritable, NullWritable>
+  putVertex(Vertex<LongWritable, DoubleWritable, NullWritable> vertex) {
+    int index = indices.get(vertex.getId().get());
+    Vertex<LongWritable, DoubleWritable, NullWritable> oldVertex =
+        index < 0 ? null : copyVertex(index);
+    storeVertex(vertex);
+    return oldVertex;
+  }
+
+  @Override
+  public synchronized Vertex<LongWritable, DoubleWritable, NullWritable>
+  removeVertex(LongWritable vertexIndex) {
+    int index = indices.remove(vertexIndex.get());
+    if (index < 0) {
+      return null;
+    }
+    Vertex<LongWritable, DoubleWritable, NullWritable> removedVertex =
+        copyVertex(index);
+    unusedEdgeTargets += edgeCounts.getInt(index);
+    // Move the last vertex into the hole
+    int last = ids.size() - 1;
+    if (index != last) {
+      ids.set(index, ids.getLong(last));
+      values.set(index, values.getDouble(last));
+      halted.set(index, halted.get(last));
+      edgeOffsets.set(index, edgeOffsets.getInt(last));
+      edgeCounts.set(index, edgeCounts.getInt(last));
+      indices.put(ids.getLong(index), index);
+    }
+    ids.removeLong(last);
+    values.removeDouble(last);
+    halted.clear(last);
+    edgeOffsets.removeInt(last);
+    edgeCounts.removeInt(last);
+    return removedVertex;
+  }
+
+  @Override
+  public synchronized void addPartition(
+      Partition<LongWritable, DoubleWritable, NullWritable> partition) {
+    for (Vertex<LongWritable, DoubleWritable, NullWritable> vertex :
+        partition) {
+      storeVertex(vertex);
+    }
+  }
+
+  @Override
+  public synchronized long getVertexCount() {
+    return ids.size();
+  }
+
+  @Override
+  public synchronized long getEdgeCount() {
+    return edgeTargets.size() - unusedEdgeTargets;
+  }
+
+  @Override
+  public synchronized void saveVertex(
+      Vertex<LongWritable, DoubleWritable, NullWritable> vertex) {
+    if (vertex == flyweightVertex) {
+      // Halted bit is written through, only the value and mutated edges
+      // need to be saved
+      int index = flyweightVertex.index;
+      values.set(index, flyweightVertex.value.get());
+      if (flyweightVertex.edges.isCopied()) {
+        storeEdges(index, flyweightVertex.edges,
+            flyweightVertex.edges.size());
+        flyweightVertex.edges.moveTo(index);
+      }
+    } else {
+      storeVertex(vertex);
+    }
+  }
+
+  /**
+   * Get the ids of the vertices which are not halted.  The halted bits are
+   * read as the ids are iterated, and the same id object is returned by
+   * every call to next(), so ids must be copied to be kept.
+   *
+   * @return Ids of the active vertices
+   */
+  @Override
+  public Iterable<LongWritable> getActiveVertexIds() {
+    return new Iterable<LongWritable>() {
+      @Override
+      public Iterator<LongWritable> iterator() {
+        return new Iterator<LongWritable>() {
+          /** Reused id */
+          private final LongWritable id = new LongWritable();
+          /** Index of the last returned vertex */
+          private int index = -1;
+
+          @Override
+          public boolean hasNext() {
+            return halted.nextClearBit(index + 1) < ids.size();
+          }
+
+          @Override
+          public LongWritable next() {
+            int nextIndex = halted.nextClearBit(index + 1);
+            if (nextIndex >= ids.size()) {
+              throw new NoSuchElementException();
+            }
+            index = nextIndex;
+            id.set(ids.getLong(index));
+            return id;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException(
+                "remove: This method is not supported.");
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public void saveComputedVertex(
+      Vertex<LongWritable, DoubleWritable, NullWritable> vertex,
+      int previousNumEdges) {
+    // The edge count is kept by the columns already
+    saveVertex(vertex);
+  }
+
+  /**
+   * Store a vertex, overwriting the vertex with the same id if it exists.
+   *
+   * @param vertex Vertex to store
+   */
+  private void storeVertex(
+      Vertex<LongWritable, DoubleWritable, NullWritable> vertex) {
+    long id = vertex.getId().get();
+    int index = indices.get(id);
+    if (index < 0) {
+      index = ids.size();
+      indices.put(id, index);
+      ids.add(id);
+      values.add(vertex.getValue().get());
+      edgeOffsets.add(edgeTargets.size());
+      edgeCounts.add(0);
+    } else {
+      values.set(index, vertex.getValue().get());
+    }
+    halted.set(index, vertex.isHalted());
+    // The flyweight vertex positioned at the same vertex has the stored
+    // edges unless they were copied
+    if (vertex != flyweightVertex || flyweightVertex.index != index ||
+        flyweightVertex.edges.isCopied()) {
+      storeEdges(index, vertex.getEdges(), vertex.getNumEdges());
+    }
+  }
+
+  /**
+   * Store the edges of a vertex, in place if they fit, otherwise at the end
+   * of the edge array.
+   *
+   * @param index Index of the vertex
+   * @param edges Edges to store
+   * @param numEdges Number of edges
+   */
+  private void storeEdges(int index,
+      Iterable<Edge<LongWritable, NullWritable>> edges, int numEdges) {
+    int oldCount = edgeCounts.getInt(index);
+    if (numEdges <= oldCount) {
+      int offset = edgeOffsets.getInt(index);
+      for (Edge<LongWritable, NullWritable> edge : edges) {
+        edgeTargets.set(offset++, edge.getTargetVertexId().get());
+      }
+      unusedEdgeTargets += oldCount - numEdges;
+    } else {
+      unusedEdgeTargets += oldCount;
+      edgeOffsets.set(index, edgeTargets.size());
+      for (Edge<LongWritable, NullWritable> edge : edges) {
+        edgeTargets.add(edge.getTargetVertexId().get());
+      }
+    }
+    edgeCounts.set(index, numEdges);
+    if (unusedEdgeTargets > edgeTargets.size() / 2) {
+      compactEdges();
+    }
+  }
+
+  /**
+   * Rewrite the edge array without the unused entries.
+   */
+  private void compactEdges() {
+    LongArrayList compacted =
+        new LongArrayList(edgeTargets.size() - unusedEdgeTargets);
+    for (int i = 0; i < ids.size(); ++i) {
+      int offset = edgeOffsets.getInt(i);
+      edgeOffsets.set(i, compacted.size());
+      compacted.addElements(compacted.size(), edgeTargets.elements(),
+          offset, edgeCounts.getInt(i));
+    }
+    edgeTargets = compacted;
+    unusedEdgeTargets = 0;
+  }
+
+  /**
+   * Copy a vertex out of the columns into a new Vertex object.
+   *
+   * @param index Index of the vertex
+   * @return Vertex object with the same data
+   */
+  private Vertex<LongWritable, DoubleWritable, NullWritable> copyVertex(
+      int index) {
+    int offset = edgeOffsets.getInt(index);
+    int count = edgeCounts.getInt(index);
+    OutEdges<LongWritable, NullWritable> edges =
+        getConf().createAndInitializeOutEdges(count);
+    for (int i = offset; i < offset + count; ++i) {
+      edges.add(EdgeFactory.create(new LongWritable(edgeTargets.getLong(i))));
+    }
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        getConf().createVertex();
+    vertex.initialize(new LongWritable(ids.getLong(index)),
+        new DoubleWritable(values.getDouble(index)), edges);
+    if (halted.get(index)) {
+      vertex.voteToHalt();
+    }
+    return vertex;
+  }
+
+  @Override
+  public synchronized void write(DataOutput output) throws IOException {
+    super.write(output);
+    output.writeInt(ids.size());
+    output.writeInt(edgeTargets.size() - unusedEdgeTargets);
+    for (int i = 0; i < ids.size(); ++i) {
+      progress();
+      output.writeLong(ids.getLong(i));
+      output.writeDouble(values.getDouble(i));
+      output.writeBoolean(halted.get(i));
+      int offset = edgeOffsets.getInt(i);
+      int count = edgeCounts.getInt(i);
+      output.writeInt(count);
+      for (int j = offset; j < offset + count; ++j) {
+        output.writeLong(edgeTargets.getLong(j));
+      }
+    }
+  }
+
+  @Override
+  public synchronized void readFields(DataInput input) throws IOException {
+    super.readFields(input);
+    checkTypes();
+    int numVertices = input.readInt();
+    int numEdges = input.readInt();
+    initializeColumns(numVertices, numEdges);
+    for (int i = 0; i < numVertices; ++i) {
+      progress();
+      long id = input.readLong();
+      if (indices.put(id, i) != -1) {
+        throw new IllegalStateException("readFields: " + this +
+            " already has same id " + id);
+      }
+      ids.add(id);
+      values.add(input.readDouble());
+      halted.set(i, input.readBoolean());
+      int count = input.readInt();
+      edgeOffsets.add(edgeTargets.size());
+      edgeCounts.add(count);
+      for (int j = 0; j < count; ++j) {
+        edgeTargets.add(input.readLong());
+      }
+    }
+  }
+
+  @Override
+  public Iterator<Vertex<LongWritable, DoubleWritable, NullWritable>>
+  iterator() {
+    return new Iterator<Vertex<LongWritable, DoubleWritable, NullWritable>>() {
+      /** Index of the next vertex */
+      private int nextIndex = 0;
+
+      @Override
+      public boolean hasNext() {
+        return nextIndex < ids.size();
+      }
+
+      @Override
+      public Vertex<LongWritable, DoubleWritable, NullWritable> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        flyweightVertex.moveTo(nextIndex++);
+        return flyweightVertex;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException(
+            "remove: This method is not supported.");
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "(id=" + getId() + ",V=" + ids.size() + ")";
+  }
+
+  /**
+   * Vertex which reads and writes the columns of the vertex it is moved to.
+   */
+  private class FlyweightVertex
+      extends DefaultImmutableClassesGiraphConfigurable<LongWritable,
+      DoubleWritable, NullWritable>
+      implements Vertex<LongWritable, DoubleWritable, NullWritable> {
+    /** Index of the current vertex */
+    private int index;
+    /** Id of the current vertex */
+    private final LongWritable id = new LongWritable();
+    /** Value of the current vertex (saved back by saveVertex) */
+    private final DoubleWritable value = new DoubleWritable();
+    /** Edges of the current vertex */
+    private final FlyweightOutEdges edges = new FlyweightOutEdges();
+
+    /**
+     * Point this vertex to another vertex of the partition.
+     *
+     * @param index Index of the vertex
+     */
+    void moveTo(int index) {
+      this.index = index;
+      id.set(ids.getLong(index));
+      value.set(values.getDouble(index));
+      edges.moveTo(index);
+    }
+
+    @Override
+    public void initialize(LongWritable id, DoubleWritable value,
+        Iterable<Edge<LongWritable, NullWritable>> edges) {
+      throw new UnsupportedOperationException("initialize: Vertices of " +
+          "a partition can't be reinitialized");
+    }
+
+    @Override
+    public void initialize(LongWritable id, DoubleWritable value) {
+      throw new UnsupportedOperationException("initialize: Vertices of " +
+          "a partition can't be reinitialized");
+    }
+
+    @Override
+    public LongWritable getId() {
+      return id;
+    }
+
+    @Override
+    public DoubleWritable getValue() {
+      return value;
+    }
+
+    @Override
+    public void setValue(DoubleWritable value) {
+      this.value.set(value.get());
+    }
+
+    @Override
+    public void voteToHalt() {
+      halted.set(index);
+    }
+
+    @Override
+    public void wakeUp() {
+      halted.clear(index);
+    }
+
+    @Override
+    public boolean isHalted() {
+      return halted.get(index);
+    }
+
+    @Override
+    public int getNumEdges() {
+      return edges.size();
+    }
+
+    @Override
+    public Iterable<Edge<LongWritable, NullWritable>> getEdges() {
+      return edges;
+    }
+
+    @Override
+    public void setEdges(Iterable<Edge<LongWritable, NullWritable>> edges) {
+      this.edges.initialize(edges);
+    }
+
+    @Override
+    public Iterable<MutableEdge<LongWritable, NullWritable>>
+    getMutableEdges() {
+      return new Iterable<MutableEdge<LongWritable, NullWritable>>() {
+        @Override
+        public Iterator<MutableEdge<LongWritable, NullWritable>> iterator() {
+          return edges.mutableIterator();
+        }
+      };
+    }
+
+    @Override
+    public NullWritable getEdgeValue(LongWritable targetVertexId) {
+      for (Edge<LongWritable, NullWritable> edge : edges) {
+        if (edge.getTargetVertexId().get() == targetVertexId.get()) {
+          return NullWritable.get();
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void setEdgeValue(LongWritable targetVertexId,
+        NullWritable edgeValue) {
+      // No edge values to set
+    }
+
+    @Override
+    public Iterable<NullWritable> getAllEdgeValues(
+        LongWritable targetVertexId) {
+      int count = 0;
+      for (Edge<LongWritable, NullWritable> edge : edges) {
+        if (edge.getTargetVertexId().get() == targetVertexId.get()) {
+          ++count;
+        }
+      }
+      return Collections.nCopies(count, NullWritable.get());
+    }
+
+    @Override
+    public void addEdge(Edge<LongWritable, NullWritable> edge) {
+      edges.add(edge);
+    }
+
+    @Override
+    public void removeEdges(LongWritable targetVertexId) {
+      edges.remove(targetVertexId);
+    }
+
+    @Override
+    public void unwrapMutableEdges() {
+      // Mutable edges are never wrapped
+    }
+
+    @Override
+    public String toString() {
+      return "Vertex(id=" + getId() + ",value=" + getValue() +
+          ",#edges=" + getNumEdges() + ")";
+    }
+  }
+
+  /**
+   * Edges of the flyweight vertex, read in place from the edge array until
+   * they are mutated, at which point they are copied.
+   */
+  private class FlyweightOutEdges
+      implements ReuseObjectsOutEdges<LongWritable, NullWritable>,
+      MutableOutEdges<LongWritable, NullWritable> {
+    /** Index of the vertex whose edges these are */
+    private int index;
+    /** Copy of the edges once they were mutated, null until then */
+    private LongNullArrayEdges copy;
+
+    /**
+     * Point to the edges of another vertex of the partition.
+     *
+     * @param index Index of the vertex
+     */
+    void moveTo(int index) {
+      this.index = index;
+      copy = null;
+    }
+
+    /**
+     * Were the edges copied, i.e. possibly mutated?
+     *
+     * @return True iff the edges were copied
+     */
+    boolean isCopied() {
+      return copy != null;
+    }
+
+    /**
+     * Get the copy of the edges, creating it if needed.
+     *
+     * @return Mutable copy of the edges
+     */
+    private LongNullArrayEdges getCopy() {
+      if (copy == null) {
+        LongNullArrayEdges newCopy = new LongNullArrayEdges();
+        newCopy.initialize(size());
+        for (Edge<LongWritable, NullWritable> edge : this) {
+          newCopy.add(edge);
+        }
+        copy = newCopy;
+      }
+      return copy;
+    }
+
+    @Override
+    public void initialize(Iterable<Edge<LongWritable, NullWritable>> edges) {
+      LongNullArrayEdges newCopy = new LongNullArrayEdges();
+      newCopy.initialize(Iterables.size(edges));
+      for (Edge<LongWritable, NullWritable> edge : edges) {
+        newCopy.add(edge);
+      }
+      copy = newCopy;
+    }
+
+    @Override
+    public void initialize(int capacity) {
+      copy = new LongNullArrayEdges();
+      copy.initialize(capacity);
+    }
+
+    @Override
+    public void initialize() {
+      copy = new LongNullArrayEdges();
+      copy.initialize();
+    }
+
+    @Override
+    public void add(Edge<LongWritable, NullWritable> edge) {
+      getCopy().add(edge);
+    }
+
+    @Override
+    public void remove(LongWritable targetVertexId) {
+      getCopy().remove(targetVertexId);
+    }
+
+    @Override
+    public int size() {
+      return copy != null ? copy.size() : edgeCounts.getInt(index);
+    }
+
+    @Override
+    public Iterator<Edge<LongWritable, NullWritable>> iterator() {
+      if (copy != null) {
+        return copy.iterator();
+      }
+      return new Iterator<Edge<LongWritable, NullWritable>>() {
+        /** Position of the next edge in the edge array */
+        private int next = edgeOffsets.getInt(index);
+        /** End of the edges in the edge array */
+        private final int end = next + edgeCounts.getInt(index);
+        /** Representative edge object */
+        private final ReusableEdge<LongWritable, NullWritable>
+        representativeEdge = EdgeFactory.createReusable(new LongWritable());
+
+        @Override
+        public boolean hasNext() {
+          return next < end;
+        }
+
+        @Override
+        public Edge<LongWritable, NullWritable> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          representativeEdge.getTargetVertexId().set(
+              edgeTargets.getLong(next++));
+          return representativeEdge;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException(
+              "remove: Use mutableIterator() to remove edges");
+        }
+      };
+    }
+
+    @Override
+    public Iterator<MutableEdge<LongWritable, NullWritable>>
+    mutableIterator() {
+      return getCopy().mutableIterator();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      if (copy != null) {
+        copy.write(out);
+        return;
+      }
+      int offset = edgeOffsets.getInt(index);
+      int count = edgeCounts.getInt(index);
+      out.writeInt(count);
+      for (int i = offset; i < offset + count; ++i) {
+        out.writeLong(edgeTargets.getLong(i));
+      }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      copy = new LongNullArrayEdges();
+      copy.readFields(in);
+    }
+  }
+}
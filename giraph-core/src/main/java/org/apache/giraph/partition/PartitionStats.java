@@ -151,6 +151,24 @@ public class PartitionStats implements Writable {
     return messagesSentCount;
   }
 
+  /**
+   * Add the counts of other stats of the same partition (i.e. computed
+   * separately for different vertex ranges).
+   *
+   * @param other Stats to add
+   */
+  public void addPartitionStats(PartitionStats other) {
+    if (other.getPartitionId() != partitionId) {
+      throw new IllegalArgumentException("addPartitionStats: Cannot add " +
+          "stats of partition " + other.getPartitionId() + " to " +
+          partitionId);
+    }
+    vertexCount += other.getVertexCount();
+    finishedVertexCount += other.getFinishedVertexCount();
+    edgeCount += other.getEdgeCount();
+    messagesSentCount += other.getMessagesSentCount();
+  }
+
   @Override
   public void readFields(DataInput input) throws IOException {
     partitionId = input.readInt();
@@ -21,6 +21,8 @@ package org.apache.giraph.partition;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 
+import java.util.Set;
+
 /**
  * Structure that stores partitions for a worker.
  *
@@ -104,6 +106,19 @@ public abstract class PartitionStore<I extends WritableComparable,
     return getNumPartitions() == 0;
   }
 
+  /**
+   * Hint about the partitions which will be requested next, in order, so
+   * that they can be made available in the background.  Implementations
+   * only iterate over as many ids as they prefetch.
+   *
+   * @param partitionIds Ids of the partitions which will be requested next
+   * @param remainingPartitionIds Live view of the ids of all partitions
+   *                              which will still be requested, in any
+   *                              order
+   */
+  public void prefetchPartitions(Iterable<Integer> partitionIds,
+      Set<Integer> remainingPartitionIds) { }
+
   /**
    * Called at the end of the computation.
    */
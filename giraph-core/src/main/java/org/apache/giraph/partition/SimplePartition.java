@@ -24,15 +24,21 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.util.Progressable;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.apache.giraph.conf.GiraphConstants.ACTIVE_VERTEX_FRONTIER;
 import static org.apache.giraph.conf.GiraphConstants.USE_OUT_OF_CORE_MESSAGES;
 
 /**
@@ -46,9 +52,22 @@ import static org.apache.giraph.conf.GiraphConstants.USE_OUT_OF_CORE_MESSAGES;
 @SuppressWarnings("rawtypes")
 public class SimplePartition<I extends WritableComparable,
     V extends Writable, E extends Writable>
-    extends BasicPartition<I, V, E> {
+    extends BasicPartition<I, V, E>
+    implements ActiveVerticesPartition<I, V, E> {
   /** Vertex map for this range (keyed by index) */
   private ConcurrentMap<I, Vertex<I, V, E>> vertexMap;
+  /**
+   * Ids of the vertices which are not halted, only tracked if the active
+   * vertex frontier is used (null otherwise)
+   */
+  private Set<I> activeVertexIds;
+  /** Number of edges of the vertices in this partition */
+  private final AtomicLong edgeCount = new AtomicLong();
+  /**
+   * Whether vertices might have been modified in place since edgeCount was
+   * computed, so that it has to be computed again
+   */
+  private volatile boolean edgeCountStale = false;
 
   /**
    * Constructor for reflection.
@@ -63,6 +82,34 @@ public class SimplePartition<I extends WritableComparable,
     } else {
       vertexMap = Maps.newConcurrentMap();
     }
+    initializeActiveVertexIds();
+  }
+
+  /**
+   * Create the set of active vertex ids if they need to be tracked.
+   */
+  private void initializeActiveVertexIds() {
+    if (ACTIVE_VERTEX_FRONTIER.get(getConf())) {
+      activeVertexIds =
+          Sets.newSetFromMap(Maps.<I, Boolean>newConcurrentMap());
+    } else {
+      activeVertexIds = null;
+    }
+  }
+
+  /**
+   * Update whether a vertex is active, if active vertices are tracked.
+   *
+   * @param vertex Added or modified vertex
+   */
+  private void trackVertex(Vertex<I, V, E> vertex) {
+    if (activeVertexIds != null) {
+      if (vertex.isHalted()) {
+        activeVertexIds.remove(vertex.getId());
+      } else {
+        activeVertexIds.add(vertex.getId());
+      }
+    }
   }
 
   @Override
@@ -70,20 +117,49 @@ public class SimplePartition<I extends WritableComparable,
     return vertexMap.get(vertexIndex);
   }
 
+  /**
+   * Update the edge count after a vertex replaced another one.
+   *
+   * @param vertex Added vertex
+   * @param oldVertex Replaced vertex (null if there was none)
+   */
+  private void countEdges(Vertex<I, V, E> vertex,
+      Vertex<I, V, E> oldVertex) {
+    if (oldVertex == vertex) {
+      // Modified in place, its previous number of edges is unknown
+      edgeCountStale = true;
+    } else if (oldVertex == null) {
+      edgeCount.addAndGet(vertex.getNumEdges());
+    } else {
+      edgeCount.addAndGet(vertex.getNumEdges() - oldVertex.getNumEdges());
+    }
+  }
+
   @Override
   public Vertex<I, V, E> putVertex(Vertex<I, V, E> vertex) {
-    return vertexMap.put(vertex.getId(), vertex);
+    Vertex<I, V, E> oldVertex = vertexMap.put(vertex.getId(), vertex);
+    countEdges(vertex, oldVertex);
+    trackVertex(vertex);
+    return oldVertex;
   }
 
   @Override
   public Vertex<I, V, E> removeVertex(I vertexIndex) {
-    return vertexMap.remove(vertexIndex);
+    if (activeVertexIds != null) {
+      activeVertexIds.remove(vertexIndex);
+    }
+    Vertex<I, V, E> vertex = vertexMap.remove(vertexIndex);
+    if (vertex != null) {
+      edgeCount.addAndGet(-vertex.getNumEdges());
+    }
+    return vertex;
   }
 
   @Override
   public void addPartition(Partition<I, V, E> partition) {
     for (Vertex<I, V, E> vertex : partition) {
-      vertexMap.put(vertex.getId(), vertex);
+      countEdges(vertex, vertexMap.put(vertex.getId(), vertex));
+      trackVertex(vertex);
     }
   }
 
@@ -94,16 +170,44 @@ public class SimplePartition<I extends WritableComparable,
 
   @Override
   public long getEdgeCount() {
-    long edges = 0;
-    for (Vertex<I, V, E> vertex : vertexMap.values()) {
-      edges += vertex.getNumEdges();
+    if (edgeCountStale) {
+      edgeCountStale = false;
+      long edges = 0;
+      for (Vertex<I, V, E> vertex : vertexMap.values()) {
+        edges += vertex.getNumEdges();
+      }
+      edgeCount.set(edges);
     }
-    return edges;
+    return edgeCount.get();
   }
 
   @Override
   public void saveVertex(Vertex<I, V, E> vertex) {
-    // No-op, vertices are stored as Java objects in this partition
+    // Vertices are stored as Java objects in this partition, only whether
+    // they are active and how many edges they have might have changed
+    edgeCountStale = true;
+    trackVertex(vertex);
+  }
+
+  @Override
+  public void saveComputedVertex(Vertex<I, V, E> vertex,
+      int previousNumEdges) {
+    edgeCount.addAndGet(vertex.getNumEdges() - previousNumEdges);
+    trackVertex(vertex);
+  }
+
+  @Override
+  public Iterable<I> getActiveVertexIds() {
+    if (activeVertexIds != null) {
+      return Lists.newArrayList(activeVertexIds);
+    }
+    List<I> ids = Lists.newArrayList();
+    for (Vertex<I, V, E> vertex : vertexMap.values()) {
+      if (!vertex.isHalted()) {
+        ids.add(vertex.getId());
+      }
+    }
+    return ids;
   }
 
   @Override
@@ -119,6 +223,9 @@ public class SimplePartition<I extends WritableComparable,
     } else {
       vertexMap = Maps.newConcurrentMap();
     }
+    initializeActiveVertexIds();
+    edgeCount.set(0);
+    edgeCountStale = false;
     int vertices = input.readInt();
     for (int i = 0; i < vertices; ++i) {
       progress();
@@ -129,6 +236,8 @@ public class SimplePartition<I extends WritableComparable,
             "readFields: " + this +
             " already has same id " + vertex);
       }
+      edgeCount.addAndGet(vertex.getNumEdges());
+      trackVertex(vertex);
     }
   }
 
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.utils;
+
+import org.apache.giraph.metrics.GiraphMetrics;
+import org.apache.giraph.metrics.MetricNames;
+import org.apache.giraph.metrics.ResetSuperstepMetricsObserver;
+import org.apache.giraph.metrics.SuperstepMetricsRegistry;
+
+import com.yammer.metrics.core.Counter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of byte arrays in power of two size classes, so that
+ * the buffers of sent requests can be reused instead of becoming garbage.
+ * An array taken from size class k is at least 2^k bytes long.  The pool
+ * holds at most a configurable number of bytes; arrays recycled beyond
+ * that, and arrays too small to be worth pooling, are dropped.
+ */
+public class ByteArrayPool implements ResetSuperstepMetricsObserver {
+  /** Smallest size class which is pooled (1 KB arrays) */
+  private static final int MIN_SIZE_CLASS = 10;
+  /** Number of size classes */
+  private static final int NUM_SIZE_CLASSES = 31;
+  /** Maximum number of bytes held by the pool */
+  private final long maxPooledBytes;
+  /** Arrays held by the pool, by size class */
+  private final Queue<byte[]>[] pooledArrays;
+  /** Number of bytes held by the pool */
+  private final AtomicLong pooledBytes = new AtomicLong(0);
+  /** Counter of arrays taken from the pool in the current superstep */
+  private volatile Counter hits;
+  /** Counter of arrays allocated in the current superstep */
+  private volatile Counter misses;
+
+  /**
+   * Constructor
+   *
+   * @param maxPooledBytes Maximum number of bytes held by the pool
+   */
+  @SuppressWarnings("unchecked")
+  public ByteArrayPool(long maxPooledBytes) {
+    this.maxPooledBytes = maxPooledBytes;
+    pooledArrays = new Queue[NUM_SIZE_CLASSES];
+    for (int i = 0; i < NUM_SIZE_CLASSES; ++i) {
+      pooledArrays[i] = new ConcurrentLinkedQueue<byte[]>();
+    }
+    newSuperstep(GiraphMetrics.get().perSuperstep());
+    GiraphMetrics.get().addSuperstepResetObserver(this);
+  }
+
+  @Override
+  public void newSuperstep(SuperstepMetricsRegistry superstepMetrics) {
+    hits = superstepMetrics.getCounter(MetricNames.SEND_BUFFER_POOL_HITS);
+    misses = superstepMetrics.getCounter(MetricNames.SEND_BUFFER_POOL_MISSES);
+  }
+
+  /**
+   * Get an array, from the pool if it has one which is big enough.
+   *
+   * @param minSize Minimum size of the array
+   * @return Array of at least minSize bytes, possibly with old contents
+   */
+  public byte[] getArray(int minSize) {
+    int sizeClass = Math.max(MIN_SIZE_CLASS,
+        32 - Integer.numberOfLeadingZeros(Math.max(minSize, 1) - 1));
+    if (sizeClass < NUM_SIZE_CLASSES) {
+      byte[] array = pooledArrays[sizeClass].poll();
+      if (array != null) {
+        pooledBytes.addAndGet(-array.length);
+        hits.inc();
+        return array;
+      }
+      misses.inc();
+      return new byte[1 << sizeClass];
+    }
+    misses.inc();
+    return new byte[minSize];
+  }
+
+  /**
+   * Return an array to the pool.  The array must not be used afterwards.
+   *
+   * @param array Array to recycle
+   */
+  public void recycle(byte[] array) {
+    int sizeClass = 31 - Integer.numberOfLeadingZeros(array.length);
+    if (sizeClass < MIN_SIZE_CLASS) {
+      return;
+    }
+    if (pooledBytes.addAndGet(array.length) > maxPooledBytes) {
+      pooledBytes.addAndGet(-array.length);
+      return;
+    }
+    pooledArrays[sizeClass].add(array);
+  }
+
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+}
@@ -26,17 +26,24 @@ import org.apache.hadoop.io.WritableComparable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
- * Stores pairs of vertex id and generic data in a single byte array
+ * Stores pairs of vertex id and generic data in a single byte array.
+ * When read from a {@link SharedBufferDataInput}, the data is kept in the
+ * buffer it was read from until more pairs are added.
  *
  * @param <I> Vertex id
  * @param <T> Data
  */
 public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
   implements Writable, ImmutableClassesGiraphConfigurable {
-  /** Extended data output */
+  /** Extended data output (null while the data is shared) */
   private ExtendedDataOutput extendedDataOutput;
+  /** Data shared with the buffer it was read from (null if not shared) */
+  private ByteBuffer sharedData;
+  /** Pool to recycle the output's array to (null if not pooled) */
+  private ByteArrayPool pool;
   /** Configuration */
   private ImmutableClassesGiraphConfiguration<I, ?, ?> configuration;
 
@@ -73,6 +80,8 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
    */
   public void initialize() {
     extendedDataOutput = configuration.createExtendedDataOutput();
+    sharedData = null;
+    pool = null;
   }
 
   /**
@@ -83,6 +92,64 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
    */
   public void initialize(int expectedSize) {
     extendedDataOutput = configuration.createExtendedDataOutput(expectedSize);
+    sharedData = null;
+    pool = null;
+  }
+
+  /**
+   * Initialize the inner state with an array from a pool, to which it is
+   * recycled by {@link #release()}.  Must be called before {@code add()}
+   * is called.
+   *
+   * @param expectedSize Number of bytes to be expected
+   * @param pool Pool to take the array from
+   */
+  public void initialize(int expectedSize, ByteArrayPool pool) {
+    extendedDataOutput = configuration.createExtendedDataOutput(
+        pool.getArray(expectedSize), 0);
+    sharedData = null;
+    this.pool = pool;
+  }
+
+  /**
+   * Recycle the array to the pool it came from, if any.  The data can't
+   * be used after this, until it is initialized again.
+   */
+  public void release() {
+    if (pool != null) {
+      pool.recycle(extendedDataOutput.getByteArray());
+      extendedDataOutput = null;
+      pool = null;
+    }
+  }
+
+  /**
+   * Keep the data beyond the request carrying it: a pooled array is left
+   * to the garbage collector instead of being recycled by
+   * {@link #release()}.
+   */
+  public void detachFromPool() {
+    pool = null;
+  }
+
+  /**
+   * Copy the shared data to an output of our own, so that it can be added
+   * to.
+   */
+  private void unshare() {
+    if (sharedData != null) {
+      ExtendedDataOutput output =
+          configuration.createExtendedDataOutput(sharedData.remaining());
+      try {
+        output.write(sharedData.array(),
+            sharedData.arrayOffset() + sharedData.position(),
+            sharedData.remaining());
+      } catch (IOException e) {
+        throw new IllegalStateException("unshare: IOException", e);
+      }
+      extendedDataOutput = output;
+      sharedData = null;
+    }
   }
 
   /**
@@ -92,6 +159,7 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
    * @param data Data
    */
   public void add(I vertexId, T data) {
+    unshare();
     try {
       vertexId.write(extendedDataOutput);
       writeData(extendedDataOutput, data);
@@ -106,6 +174,9 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
    * @return Bytes used
    */
   public int getSize() {
+    if (sharedData != null) {
+      return sharedData.remaining();
+    }
     return extendedDataOutput.getPos();
   }
 
@@ -124,25 +195,49 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
    * @return Whether the list is empty
    */
   public boolean isEmpty() {
-    return extendedDataOutput.getPos() == 0;
+    return getSize() == 0;
   }
 
   /**
    * Clear the list.
    */
   public void clear() {
-    extendedDataOutput.reset();
+    if (sharedData != null) {
+      initialize();
+    } else {
+      extendedDataOutput.reset();
+    }
   }
 
   /**
-   * Get the underlying byte-array.
+   * Get the underlying byte-array.  If the data is shared, it doesn't
+   * start at the beginning of the array, but the positions of the
+   * iterators are positions in this array.
    *
    * @return The underlying byte-array
    */
   public byte[] getByteArray() {
+    if (sharedData != null) {
+      return sharedData.array();
+    }
     return extendedDataOutput.getByteArray();
   }
 
+  /**
+   * Create an input reading all of the pairs.
+   *
+   * @return Input over the pairs
+   */
+  private ExtendedDataInput createExtendedDataInput() {
+    if (sharedData != null) {
+      return configuration.createExtendedDataInput(sharedData.array(),
+          sharedData.arrayOffset() + sharedData.position(),
+          sharedData.remaining());
+    }
+    return configuration.createExtendedDataInput(
+        extendedDataOutput.getByteArray(), 0, extendedDataOutput.getPos());
+  }
+
   @Override
   public void setConf(ImmutableClassesGiraphConfiguration configuration) {
     this.configuration = configuration;
@@ -155,13 +250,28 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
 
   @Override
   public void write(DataOutput dataOutput) throws IOException {
-    WritableUtils.writeExtendedDataOutput(extendedDataOutput, dataOutput);
+    if (sharedData != null) {
+      dataOutput.writeInt(sharedData.remaining());
+      dataOutput.write(sharedData.array(),
+          sharedData.arrayOffset() + sharedData.position(),
+          sharedData.remaining());
+    } else {
+      WritableUtils.writeExtendedDataOutput(extendedDataOutput, dataOutput);
+    }
   }
 
   @Override
   public void readFields(DataInput dataInput) throws IOException {
-    extendedDataOutput =
-        WritableUtils.readExtendedDataOutput(dataInput, configuration);
+    if (dataInput instanceof SharedBufferDataInput) {
+      sharedData = ((SharedBufferDataInput) dataInput).readSharedBytes(
+          dataInput.readInt());
+      extendedDataOutput = null;
+    } else {
+      extendedDataOutput =
+          WritableUtils.readExtendedDataOutput(dataInput, configuration);
+      sharedData = null;
+    }
+    pool = null;
   }
 
   /**
@@ -189,7 +299,7 @@ public abstract class ByteArrayVertexIdData<I extends WritableComparable, T>
 
     /** Default constructor. */
     public VertexIdDataIterator() {
-      super(extendedDataOutput, configuration);
+      super(createExtendedDataInput());
     }
 
     @Override
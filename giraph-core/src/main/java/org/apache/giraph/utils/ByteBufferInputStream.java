@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.utils;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Special input that reads from a {@link ByteBuffer}, e.g. a memory-mapped
+ * file, without copying it to the heap first.  Reading advances the
+ * position of the buffer.
+ */
+public class ByteBufferInputStream implements DataInput {
+  /** Buffer to read from */
+  private final ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Buffer to read from (big-endian)
+   */
+  public ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Make sure enough bytes are left to read.
+   *
+   * @param length Number of bytes to read
+   * @throws EOFException If there are less than length bytes left
+   */
+  private void ensureRemaining(int length) throws EOFException {
+    if (buffer.remaining() < length) {
+      throw new EOFException("ensureRemaining: Only " + buffer.remaining() +
+          " bytes remaining, trying to read " + length);
+    }
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    ensureRemaining(len);
+    buffer.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = Math.min(n, buffer.remaining());
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    ensureRemaining(1);
+    return buffer.get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    ensureRemaining(2);
+    return buffer.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    ensureRemaining(2);
+    return buffer.getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    ensureRemaining(4);
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    ensureRemaining(8);
+    return buffer.getLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    ensureRemaining(4);
+    return buffer.getFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    ensureRemaining(8);
+    return buffer.getDouble();
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    if (!buffer.hasRemaining()) {
+      return null;
+    }
+    StringBuilder line = new StringBuilder();
+    while (buffer.hasRemaining()) {
+      char c = (char) (buffer.get() & 0xff);
+      if (c == '\n') {
+        break;
+      } else if (c == '\r') {
+        if (buffer.hasRemaining() &&
+            buffer.get(buffer.position()) == '\n') {
+          buffer.get();
+        }
+        break;
+      }
+      line.append(c);
+    }
+    return line.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.utils;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Map;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Watches the heap usage after garbage collections, to decide whether more
+ * data fits in memory.  The heap is under pressure from the moment a
+ * collection leaves more than the high watermark in use (reported by a
+ * {@link MemoryPoolMXBean} collection usage threshold notification) until
+ * a collection leaves less than the low watermark.  Both watermarks are
+ * fractions of the maximum heap size.
+ */
+public class HeapPressureMonitor implements NotificationListener {
+  /** Class logger */
+  private static final Logger LOG =
+      Logger.getLogger(HeapPressureMonitor.class);
+  /** Heap used after a collection above which the heap is under pressure */
+  private final long highWatermarkBytes;
+  /** Heap used after a collection below which the pressure ends */
+  private final long lowWatermarkBytes;
+  /** Heap pools with collection usage thresholds */
+  private final List<MemoryPoolMXBean> heapPools = Lists.newArrayList();
+  /** Collection usage thresholds of the pools before we set them */
+  private final Map<MemoryPoolMXBean, Long> previousThresholds =
+      Maps.newHashMap();
+  /** Whether the high watermark was exceeded after a collection */
+  private volatile boolean underPressure = false;
+  /** Total number of collections when the admitted bytes were reset */
+  private long lastCollectionCount = -1;
+  /** Bytes admitted since the last collection */
+  private long admittedBytes = 0;
+
+  /**
+   * Constructor
+   *
+   * @param highWatermark Fraction of the maximum heap used after a
+   *                      collection which puts the heap under pressure
+   * @param lowWatermark Fraction of the maximum heap used after a
+   *                     collection which ends the pressure
+   */
+  public HeapPressureMonitor(float highWatermark, float lowWatermark) {
+    long maxHeap = Runtime.getRuntime().maxMemory();
+    highWatermarkBytes = (long) (maxHeap * highWatermark);
+    lowWatermarkBytes = (long) (maxHeap * Math.min(lowWatermark,
+        highWatermark));
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP &&
+          pool.isCollectionUsageThresholdSupported()) {
+        long poolMax = pool.getUsage().getMax();
+        if (poolMax > 0) {
+          previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+          // A threshold of zero would disable the notifications
+          pool.setCollectionUsageThreshold(
+              Math.max(1, (long) (poolMax * highWatermark)));
+        }
+        heapPools.add(pool);
+      }
+    }
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+        .addNotificationListener(this, null, null);
+    if (LOG.isInfoEnabled()) {
+      LOG.info("HeapPressureMonitor: High watermark " +
+          (highWatermarkBytes >> 20) + " MB, low watermark " +
+          (lowWatermarkBytes >> 20) + " MB, watching " + heapPools.size() +
+          " heap pools");
+    }
+  }
+
+  @Override
+  public void handleNotification(Notification notification,
+      Object handback) {
+    if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+        notification.getType())) {
+      if (!underPressure && LOG.isInfoEnabled()) {
+        LOG.info("handleNotification: Heap under pressure, " +
+            (getUsedAfterCollection() >> 20) + " MB used after collection");
+      }
+      underPressure = true;
+    }
+  }
+
+  /**
+   * Get the heap in use after the last collection of every pool.
+   *
+   * @return Bytes in use after the last collections
+   */
+  public long getUsedAfterCollection() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      if (pool.getCollectionUsage() != null) {
+        used += pool.getCollectionUsage().getUsed();
+      }
+    }
+    return used;
+  }
+
+  /**
+   * Get the total number of collections of all of the collectors.
+   *
+   * @return Number of collections
+   */
+  private static long getCollectionCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(collector.getCollectionCount(), 0);
+    }
+    return count;
+  }
+
+  /**
+   * Is the heap under pressure, so that data should be moved out of it?
+   *
+   * @return True iff the heap is under pressure
+   */
+  public boolean isUnderPressure() {
+    if (underPressure && getUsedAfterCollection() < lowWatermarkBytes) {
+      if (LOG.isInfoEnabled()) {
+        LOG.info("isUnderPressure: Heap pressure relieved");
+      }
+      underPressure = false;
+    }
+    return underPressure;
+  }
+
+  /**
+   * Check whether data fits in the heap without putting it under pressure,
+   * and count it as admitted until the next collection if so.
+   *
+   * @param bytes Estimated size of the data
+   * @return True iff the data fits
+   */
+  public synchronized boolean admit(long bytes) {
+    if (isUnderPressure()) {
+      return false;
+    }
+    long collectionCount = getCollectionCount();
+    if (collectionCount != lastCollectionCount) {
+      lastCollectionCount = collectionCount;
+      admittedBytes = 0;
+    }
+    if (getUsedAfterCollection() + admittedBytes + bytes >
+        highWatermarkBytes) {
+      return false;
+    }
+    admittedBytes += bytes;
+    return true;
+  }
+
+  /**
+   * Stop listening to the memory notifications, and restore the collection
+   * usage thresholds, which are shared by the whole JVM.
+   */
+  public void shutdown() {
+    try {
+      ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+          .removeNotificationListener(this);
+    } catch (ListenerNotFoundException e) {
+      LOG.warn("shutdown: Listener was already removed", e);
+    }
+    for (Map.Entry<MemoryPoolMXBean, Long> entry :
+        previousThresholds.entrySet()) {
+      entry.getKey().setCollectionUsageThreshold(entry.getValue());
+    }
+    previousThresholds.clear();
+  }
+}
@@ -35,11 +35,15 @@ import org.apache.zookeeper.server.quorum.QuorumPeerConfig;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -182,12 +186,22 @@ public class InternalVertexRunner {
         zookeeper.end();
       }
 
-      File outFile = new File(outputDir, "part-m-00000");
-      if (conf.hasVertexOutputFormat() && outFile.canRead()) {
-        return Files.readLines(outFile, Charsets.UTF_8);
-      } else {
+      if (!conf.hasVertexOutputFormat() || !outputDir.isDirectory()) {
         return ImmutableList.of();
       }
+      // There are several output files when writing a file per vertex writer
+      File[] outFiles = outputDir.listFiles(new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.startsWith("part-m-00000");
+        }
+      });
+      Arrays.sort(outFiles);
+      List<String> outputLines = Lists.newArrayList();
+      for (File outFile : outFiles) {
+        outputLines.addAll(Files.readLines(outFile, Charsets.UTF_8));
+      }
+      return outputLines;
     } finally {
       FileUtils.delete(tmpDir);
     }
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.utils;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Data input over a buffer which isn't reused after reading, so that
+ * readers may keep references to ranges of it instead of copying them.
+ */
+public interface SharedBufferDataInput extends DataInput {
+  /**
+   * Read bytes, sharing them with this input if possible.
+   *
+   * @param length Number of bytes to read
+   * @return Heap byte buffer with the bytes between its position and limit
+   * @throws IOException If there are less than length bytes available
+   */
+  ByteBuffer readSharedBytes(int length) throws IOException;
+}
@@ -82,7 +82,7 @@ public class UnsafeByteArrayInputStream implements ExtendedDataInput {
   public UnsafeByteArrayInputStream(byte[] buf, int offset, int length) {
     this.buf = buf;
     this.pos = offset;
-    this.bufLength = length;
+    this.bufLength = offset + length;
   }
 
   /**
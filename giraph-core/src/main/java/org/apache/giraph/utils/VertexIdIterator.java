@@ -47,6 +47,15 @@ public abstract class VertexIdIterator<I extends WritableComparable> {
         extendedDataOutput.getByteArray(), 0, extendedDataOutput.getPos());
   }
 
+  /**
+   * Constructor.
+   *
+   * @param extendedDataInput Reader of the serialized data
+   */
+  public VertexIdIterator(ExtendedDataInput extendedDataInput) {
+    this.extendedDataInput = extendedDataInput;
+  }
+
   /**
    * Returns true if the iteration has more elements.
    *
@@ -55,6 +64,16 @@ public abstract class VertexIdIterator<I extends WritableComparable> {
   public boolean hasNext() {
     return extendedDataInput.available() > 0;
   }
+
+  /**
+   * Get the position of the next element in the serialized data.
+   *
+   * @return Position of the next element
+   */
+  public int getPos() {
+    return extendedDataInput.getPos();
+  }
+
   /**
    * Moves to the next element in the iteration.
    */
@@ -30,6 +30,7 @@ import org.apache.giraph.comm.netty.NettyWorkerAggregatorRequestProcessor;
 import org.apache.giraph.comm.netty.NettyWorkerClient;
 import org.apache.giraph.comm.netty.NettyWorkerClientRequestProcessor;
 import org.apache.giraph.comm.netty.NettyWorkerServer;
+import org.apache.giraph.comm.requests.SendWorkerFinishedRequest;
 import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.graph.AddressesAndPartitionsWritable;
@@ -48,6 +49,7 @@ import org.apache.giraph.master.SuperstepClasses;
 import org.apache.giraph.metrics.GiraphMetrics;
 import org.apache.giraph.metrics.GiraphTimer;
 import org.apache.giraph.metrics.GiraphTimerContext;
+import org.apache.giraph.metrics.MetricNames;
 import org.apache.giraph.metrics.ResetSuperstepMetricsObserver;
 import org.apache.giraph.metrics.SuperstepMetricsRegistry;
 import org.apache.giraph.metrics.WorkerSuperstepMetrics;
@@ -58,6 +60,8 @@ import org.apache.giraph.partition.PartitionStats;
 import org.apache.giraph.partition.PartitionStore;
 import org.apache.giraph.partition.WorkerGraphPartitioner;
 import org.apache.giraph.utils.CallableFactory;
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import org.apache.giraph.utils.ExtendedDataOutput;
 import org.apache.giraph.utils.JMapHistoDumper;
 import org.apache.giraph.utils.LoggerUtils;
 import org.apache.giraph.utils.MemoryUtils;
@@ -66,11 +70,16 @@ import org.apache.giraph.utils.WritableUtils;
 import org.apache.giraph.zk.BspEvent;
 import org.apache.giraph.zk.PredicateLock;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.CreateMode;
@@ -85,13 +94,22 @@ import org.json.JSONObject;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.metrics.core.Counter;
 import net.iharder.Base64;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -104,7 +122,13 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ZooKeeper-based implementation of {@link CentralizedServiceWorker}.
@@ -156,11 +180,43 @@ public class BspServiceWorker<I extends WritableComparable,
   /** array of observers to call back to */
   private final WorkerObserver[] observers;
 
+  /** Checkpoint the edges of static graphs only once? */
+  private final boolean incrementalCheckpoints;
+  /**
+   * Checkpoint files with the edges of partitions, for incremental
+   * checkpoints
+   */
+  private final ConcurrentMap<Integer, String> checkpointEdgesFiles =
+      Maps.newConcurrentMap();
+  /**
+   * Lock serializing the checkpoint threads' access to the message stores,
+   * whose writePartition() and readFieldsForPartition() share state
+   * between partitions
+   */
+  private final Object checkpointMessagesLock = new Object();
+
+  /** Write checkpoints in the background? */
+  private final boolean asyncCheckpoints;
+  /** Executor writing checkpoints in the background */
+  private final ExecutorService checkpointWriteExecutor;
+  /** Background write of the last checkpoint, if not waited for yet */
+  private Future<Void> checkpointWrite;
+  /** Local directory with copies of the checkpoints, null if none */
+  private final File checkpointLocalCacheDirectory;
+  /** Local copies of the last checkpoint written by this worker */
+  private Set<File> localCheckpointFiles = new HashSet<File>();
+  /** Number of partitions loaded from local copies of their checkpoints */
+  private final AtomicInteger localCheckpointLoads = new AtomicInteger();
+
   // Per-Superstep Metrics
   /** Timer for WorkerContext#postSuperstep */
   private GiraphTimer wcPostSuperstepTimer;
   /** Time spent waiting on requests to finish */
   private GiraphTimer waitRequestsTimer;
+  /** Bytes of vertices of the partitions moved to other workers */
+  private Counter migrationBytes;
+  /** Time spent sending the partitions moved to other workers */
+  private GiraphTimer migrationTimer;
 
   /**
    * Constructor for setting up the worker.
@@ -205,6 +261,23 @@ public class BspServiceWorker<I extends WritableComparable,
     }
     observers = conf.createWorkerObservers();
 
+    incrementalCheckpoints = GiraphConstants.INCREMENTAL_CHECKPOINTS.get(conf);
+    if (incrementalCheckpoints && !conf.isStaticGraph()) {
+      throw new IllegalStateException("BspServiceWorker: " +
+          GiraphConstants.INCREMENTAL_CHECKPOINTS.getKey() +
+          " requires a static graph");
+    }
+    asyncCheckpoints = GiraphConstants.ASYNC_CHECKPOINTS.get(conf);
+    checkpointWriteExecutor = asyncCheckpoints ?
+        Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("checkpoint-writer-%d").setDaemon(true).build()) :
+        null;
+    checkpointLocalCacheDirectory =
+        GiraphConstants.USE_CHECKPOINT_LOCAL_CACHE.get(conf) ?
+            new File(
+                GiraphConstants.CHECKPOINT_LOCAL_CACHE_DIRECTORY.get(conf)) :
+            null;
+
     GiraphMetrics.get().addSuperstepResetObserver(this);
   }
 
@@ -214,6 +287,10 @@ public class BspServiceWorker<I extends WritableComparable,
         TIMER_WAIT_REQUESTS, TimeUnit.MICROSECONDS);
     wcPostSuperstepTimer = new GiraphTimer(superstepMetrics,
         "worker-context-post-superstep", TimeUnit.MICROSECONDS);
+    migrationBytes =
+        superstepMetrics.getCounter(MetricNames.PARTITION_MIGRATION_BYTES);
+    migrationTimer = new GiraphTimer(superstepMetrics,
+        MetricNames.PARTITION_MIGRATION_MS, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -737,6 +814,9 @@ public class BspServiceWorker<I extends WritableComparable,
     // 5. Let the master know it is finished.
     // 6. Wait for the master's superstep info, and check if done
     waitForRequestsToFinish();
+    // The checkpoint of this superstep has to be written before the master
+    // can mark it valid
+    waitForCheckpointWrite();
 
     getGraphTaskManager().notifyFinishedCommunication();
 
@@ -759,7 +839,7 @@ public class BspServiceWorker<I extends WritableComparable,
           MemoryUtils.getRuntimeMemoryStats());
     }
 
-    writeFinshedSuperstepInfoToZK(partitionStatsList, workerSentMessages);
+    writeFinishedSuperstepInfo(partitionStatsList, workerSentMessages);
 
     LoggerUtils.setStatusAndLog(getContext(), LOG, Level.INFO,
         "finishSuperstep: (waiting for rest " +
@@ -850,12 +930,13 @@ public class BspServiceWorker<I extends WritableComparable,
   }
 
   /**
-   * Write finished superstep info to ZooKeeper.
+   * Write finished superstep info to ZooKeeper, or send it to the master
+   * with the Netty superstep barrier.
    *
    * @param partitionStatsList List of partition stats from superstep.
    * @param workerSentMessages Number of messages sent in superstep.
    */
-  private void writeFinshedSuperstepInfoToZK(
+  private void writeFinishedSuperstepInfo(
       List<PartitionStats> partitionStatsList, long workerSentMessages) {
     Collection<PartitionStats> finalizedPartitionStats =
         workerGraphPartitioner.finalizePartitionStats(
@@ -879,6 +960,16 @@ public class BspServiceWorker<I extends WritableComparable,
       throw new RuntimeException(e);
     }
 
+    if (GiraphConstants.NETTY_SUPERSTEP_BARRIER.get(getConfiguration())) {
+      workerClient.sendWritableRequest(getMasterInfo().getTaskId(),
+          new SendWorkerFinishedRequest(getApplicationAttempt(),
+              getSuperstep(), getHostnamePartitionId(),
+              workerFinishedInfoObj.toString().getBytes()));
+      // The master has the information once the request is acknowledged
+      workerClient.waitAllRequests();
+      return;
+    }
+
     String finishedWorkerPath =
         getWorkerFinishedPath(getApplicationAttempt(), getSuperstep()) +
         "/" + getHostnamePartitionId();
@@ -1021,6 +1112,20 @@ public class BspServiceWorker<I extends WritableComparable,
     setCachedSuperstep(getSuperstep() - 1);
     saveVertices(finishedSuperstepStats.getLocalVertexCount());
     getPartitionStore().shutdown();
+    if (checkpointWriteExecutor != null) {
+      checkpointWriteExecutor.shutdown();
+    }
+    if (checkpointLocalCacheDirectory != null &&
+        GiraphConstants.CLEANUP_CHECKPOINTS_AFTER_SUCCESS.get(
+            getConfiguration())) {
+      File localCheckpoints =
+          getLocalCheckpointFile(new Path(checkpointBasePath));
+      boolean deleted = FileUtil.fullyDelete(localCheckpoints);
+      if (LOG.isInfoEnabled()) {
+        LOG.info("cleanup: Removed local checkpoint copies in " +
+            localCheckpoints + " with return = " + deleted);
+      }
+    }
     // All worker processes should denote they are done by adding special
     // znode.  Once the number of znodes equals the number of partitions
     // for workers and masters, the master will clean up the ZooKeeper
@@ -1071,6 +1176,8 @@ public class BspServiceWorker<I extends WritableComparable,
 
   @Override
   public void storeCheckpoint() throws IOException {
+    // A checkpoint can't start before the previous one is written
+    waitForCheckpointWrite();
     LoggerUtils.setStatusAndLog(getContext(), LOG, Level.INFO,
         "storeCheckpoint: Starting checkpoint " +
             getGraphTaskManager().getGraphFunctions().toString() +
@@ -1078,19 +1185,16 @@ public class BspServiceWorker<I extends WritableComparable,
             ", Superstep=" + getSuperstep());
 
     // Algorithm:
-    // For each partition, dump vertices and messages
+    // For each partition, dump vertices and messages to a file of its own,
+    // with several threads.  Asynchronous checkpoints first capture all of
+    // the partitions in memory, and write them in the background.
+    final long superstep = getSuperstep();
+    final String checkpointPrefix =
+        getCheckpointBasePath(superstep) + "." + getHostnamePartitionId();
     Path metadataFilePath =
-        new Path(getCheckpointBasePath(getSuperstep()) + "." +
-            getHostnamePartitionId() +
-            CHECKPOINT_METADATA_POSTFIX);
-    Path verticesFilePath =
-        new Path(getCheckpointBasePath(getSuperstep()) + "." +
-            getHostnamePartitionId() +
-            CHECKPOINT_VERTICES_POSTFIX);
+        new Path(checkpointPrefix + CHECKPOINT_METADATA_POSTFIX);
     Path validFilePath =
-        new Path(getCheckpointBasePath(getSuperstep()) + "." +
-            getHostnamePartitionId() +
-            CHECKPOINT_VALID_POSTFIX);
+        new Path(checkpointPrefix + CHECKPOINT_VALID_POSTFIX);
 
     // Remove these files if they already exist (shouldn't though, unless
     // of previous failure of this worker)
@@ -1102,57 +1206,159 @@ public class BspServiceWorker<I extends WritableComparable,
       LOG.warn("storeCheckpoint: Removed metadata file " +
           metadataFilePath);
     }
-    if (getFs().delete(verticesFilePath, false)) {
-      LOG.warn("storeCheckpoint: Removed file " + verticesFilePath);
-    }
 
-    FSDataOutputStream verticesOutputStream =
-        getFs().create(verticesFilePath);
-    ByteArrayOutputStream metadataByteStream = new ByteArrayOutputStream();
-    DataOutput metadataOutput = new DataOutputStream(metadataByteStream);
-    for (Integer partitionId : getPartitionStore().getPartitionIds()) {
-      Partition<I, V, E> partition =
-          getPartitionStore().getPartition(partitionId);
-      long startPos = verticesOutputStream.getPos();
-      partition.write(verticesOutputStream);
-      // write messages
-      getServerData().getCurrentMessageStore().writePartition(
-          verticesOutputStream, partition.getId());
-      // Write the metadata for this partition
-      // Format:
-      // <index count>
-      //   <index 0 start pos><partition id>
-      //   <index 1 start pos><partition id>
-      metadataOutput.writeLong(startPos);
-      metadataOutput.writeInt(partition.getId());
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("storeCheckpoint: Vertex file starting " +
-            "offset = " + startPos + ", length = " +
-            (verticesOutputStream.getPos() - startPos) +
-            ", partition = " + partition.toString());
+    final int numPartitions = getPartitionStore().getNumPartitions();
+    final int numThreads = Math.max(1, Math.min(numPartitions,
+        GiraphConstants.NUM_CHECKPOINT_IO_THREADS.get(getConfiguration())));
+    final Queue<Integer> partitionIdQueue =
+        (numPartitions == 0) ? new LinkedList<Integer>() :
+            new ArrayBlockingQueue<Integer>(numPartitions);
+    Iterables.addAll(partitionIdQueue, getPartitionStore().getPartitionIds());
+    final CompressionCodec codec = createCheckpointCompressionCodec();
+    final ConcurrentMap<Integer, Long> partitionDataLengths =
+        Maps.newConcurrentMap();
+    final Queue<PartitionCheckpoint> capturedPartitions =
+        new ConcurrentLinkedQueue<PartitionCheckpoint>();
+
+    CallableFactory<Void> callableFactory = new CallableFactory<Void>() {
+      @Override
+      public Callable<Void> newCallable(int callableId) {
+        return new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            while (!partitionIdQueue.isEmpty()) {
+              Integer partitionId = partitionIdQueue.poll();
+              if (partitionId == null) {
+                break;
+              }
+              Partition<I, V, E> partition =
+                  getPartitionStore().getPartition(partitionId);
+              try {
+                if (asyncCheckpoints) {
+                  capturedPartitions.add(
+                      capturePartitionCheckpoint(partition));
+                } else {
+                  partitionDataLengths.put(partitionId,
+                      writePartitionCheckpoint(checkpointPrefix,
+                          partition, codec));
+                }
+              } finally {
+                getPartitionStore().putPartition(partition);
+              }
+              getContext().progress();
+            }
+            return null;
+          }
+        };
       }
-      getPartitionStore().putPartition(partition);
-      getContext().progress();
+    };
+    ProgressableUtils.getResultsWithNCallables(callableFactory, numThreads,
+        "checkpoint-store-%d", getContext());
+
+    if (!asyncCheckpoints) {
+      finishCheckpoint(superstep, checkpointPrefix, partitionDataLengths);
+      return;
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("storeCheckpoint: Captured " + capturedPartitions.size() +
+          " partitions, writing them in the background");
+    }
+    checkpointWrite = checkpointWriteExecutor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        CallableFactory<Void> writerFactory = new CallableFactory<Void>() {
+          @Override
+          public Callable<Void> newCallable(int callableId) {
+            return new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                while (!capturedPartitions.isEmpty()) {
+                  PartitionCheckpoint partitionCheckpoint =
+                      capturedPartitions.poll();
+                  if (partitionCheckpoint == null) {
+                    break;
+                  }
+                  partitionDataLengths.put(
+                      partitionCheckpoint.getPartitionId(),
+                      writePartitionCheckpoint(checkpointPrefix,
+                          partitionCheckpoint, codec));
+                }
+                return null;
+              }
+            };
+          }
+        };
+        ProgressableUtils.getResultsWithNCallables(writerFactory, numThreads,
+            "checkpoint-write-%d", getContext());
+        finishCheckpoint(superstep, checkpointPrefix, partitionDataLengths);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Wait for the asynchronous write of the last checkpoint to finish, if
+   * there is one.
+   */
+  private void waitForCheckpointWrite() {
+    if (checkpointWrite == null) {
+      return;
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("waitForCheckpointWrite: Waiting for the checkpoint to be " +
+          "written");
     }
-    // Metadata is buffered and written at the end since it's small and
-    // needs to know how many partitions this worker owns
+    ProgressableUtils.getFutureResult(checkpointWrite, getContext());
+    checkpointWrite = null;
+  }
+
+  /**
+   * Write the metadata of the checkpoint once all of its partitions are
+   * written, and let the master know about it.
+   *
+   * @param superstep Superstep of the checkpoint
+   * @param checkpointPrefix Checkpoint file prefix of this worker
+   * @param partitionDataLengths Checkpointed partitions with the number of
+   *                             bytes written for each one
+   * @throws IOException
+   */
+  private void finishCheckpoint(long superstep, String checkpointPrefix,
+      Map<Integer, Long> partitionDataLengths) throws IOException {
+    Path metadataFilePath =
+        new Path(checkpointPrefix + CHECKPOINT_METADATA_POSTFIX);
+    // Metadata is written at the end since it's small and needs to know how
+    // many partitions this worker owns
+    // Format:
+    // <version marker><format version><index count>
+    //   <partition 0 data length><partition id>
+    //   <partition 1 data length><partition id>
     FSDataOutputStream metadataOutputStream =
         getFs().create(metadataFilePath);
-    metadataOutputStream.writeInt(getPartitionStore().getNumPartitions());
-    metadataOutputStream.write(metadataByteStream.toByteArray());
+    metadataOutputStream.writeInt(CHECKPOINT_METADATA_VERSION_MARKER);
+    metadataOutputStream.writeInt(CHECKPOINT_FORMAT_VERSION);
+    metadataOutputStream.writeInt(partitionDataLengths.size());
+    for (Entry<Integer, Long> entry : partitionDataLengths.entrySet()) {
+      metadataOutputStream.writeLong(entry.getValue());
+      metadataOutputStream.writeInt(entry.getKey());
+    }
     metadataOutputStream.close();
-    verticesOutputStream.close();
     if (LOG.isInfoEnabled()) {
-      LOG.info("storeCheckpoint: Finished metadata (" +
-          metadataFilePath + ") and vertices (" + verticesFilePath + ").");
+      LOG.info("finishCheckpoint: Finished metadata (" +
+          metadataFilePath + ") and " + partitionDataLengths.size() +
+          " partitions.");
     }
 
-    getFs().createNewFile(validFilePath);
+    getFs().createNewFile(
+        new Path(checkpointPrefix + CHECKPOINT_VALID_POSTFIX));
+    if (checkpointLocalCacheDirectory != null) {
+      deleteStaleLocalCheckpointFiles(checkpointPrefix,
+          partitionDataLengths.keySet());
+    }
 
     // Notify master that checkpoint is stored
     String workerWroteCheckpoint =
         getWorkerWroteCheckpointPath(getApplicationAttempt(),
-            getSuperstep()) + "/" + getHostnamePartitionId();
+            superstep) + "/" + getHostnamePartitionId();
     try {
       getZkExt().createExt(workerWroteCheckpoint,
           new byte[0],
@@ -1160,7 +1366,7 @@ public class BspServiceWorker<I extends WritableComparable,
           CreateMode.PERSISTENT,
           true);
     } catch (KeeperException.NodeExistsException e) {
-      LOG.warn("storeCheckpoint: wrote checkpoint worker path " +
+      LOG.warn("finishCheckpoint: wrote checkpoint worker path " +
           workerWroteCheckpoint + " already exists!");
     } catch (KeeperException e) {
       throw new IllegalStateException("Creating " + workerWroteCheckpoint +
@@ -1186,73 +1392,47 @@ public class BspServiceWorker<I extends WritableComparable,
     // Algorithm:
     // Examine all the partition owners and load the ones
     // that match my hostname and id from the master designated checkpoint
-    // prefixes.
-    long startPos = 0;
-    int loadedPartitions = 0;
+    // prefixes, with several threads.
+    final Queue<PartitionOwner> partitionOwnerQueue =
+        new ConcurrentLinkedQueue<PartitionOwner>();
     for (PartitionOwner partitionOwner :
       workerGraphPartitioner.getPartitionOwners()) {
       if (partitionOwner.getWorkerInfo().equals(getWorkerInfo())) {
-        String metadataFile =
-            partitionOwner.getCheckpointFilesPrefix() +
-            CHECKPOINT_METADATA_POSTFIX;
-        String partitionsFile =
-            partitionOwner.getCheckpointFilesPrefix() +
-            CHECKPOINT_VERTICES_POSTFIX;
-        try {
-          int partitionId = -1;
-          DataInputStream metadataStream =
-              getFs().open(new Path(metadataFile));
-          int partitions = metadataStream.readInt();
-          for (int i = 0; i < partitions; ++i) {
-            startPos = metadataStream.readLong();
-            partitionId = metadataStream.readInt();
-            if (partitionId == partitionOwner.getPartitionId()) {
-              break;
+        partitionOwnerQueue.add(partitionOwner);
+      }
+    }
+    int loadedPartitions = partitionOwnerQueue.size();
+    int numThreads = Math.max(1, Math.min(loadedPartitions,
+        GiraphConstants.NUM_CHECKPOINT_IO_THREADS.get(getConfiguration())));
+    CallableFactory<Void> callableFactory = new CallableFactory<Void>() {
+      @Override
+      public Callable<Void> newCallable(int callableId) {
+        return new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            while (!partitionOwnerQueue.isEmpty()) {
+              PartitionOwner partitionOwner = partitionOwnerQueue.poll();
+              if (partitionOwner == null) {
+                break;
+              }
+              loadPartitionCheckpoint(partitionOwner);
+              getContext().progress();
             }
+            return null;
           }
-          if (partitionId != partitionOwner.getPartitionId()) {
-            throw new IllegalStateException(
-                "loadCheckpoint: " + partitionOwner +
-                " not found!");
-          }
-          metadataStream.close();
-          Partition<I, V, E> partition =
-              getConfiguration().createPartition(partitionId, getContext());
-          DataInputStream partitionsStream =
-              getFs().open(new Path(partitionsFile));
-          if (partitionsStream.skip(startPos) != startPos) {
-            throw new IllegalStateException(
-                "loadCheckpoint: Failed to skip " + startPos +
-                " on " + partitionsFile);
-          }
-          partition.readFields(partitionsStream);
-          getServerData().getIncomingMessageStore().readFieldsForPartition(
-              partitionsStream, partitionId);
-          partitionsStream.close();
-          if (LOG.isInfoEnabled()) {
-            LOG.info("loadCheckpoint: Loaded partition " +
-                partition);
-          }
-          if (getPartitionStore().hasPartition(partitionId)) {
-            throw new IllegalStateException(
-                "loadCheckpoint: Already has partition owner " +
-                    partitionOwner);
-          }
-          getPartitionStore().addPartition(partition);
-          getContext().progress();
-          ++loadedPartitions;
-        } catch (IOException e) {
-          throw new RuntimeException(
-              "loadCheckpoint: Failed to get partition owner " +
-                  partitionOwner, e);
-        }
+        };
       }
-    }
+    };
+    localCheckpointLoads.set(0);
+    ProgressableUtils.getResultsWithNCallables(callableFactory, numThreads,
+        "checkpoint-load-%d", getContext());
     if (LOG.isInfoEnabled()) {
       LOG.info("loadCheckpoint: Loaded " + loadedPartitions +
           " partitions of out " +
           workerGraphPartitioner.getPartitionOwners().size() +
-          " total.");
+          " total using " + numThreads + " threads" +
+          (checkpointLocalCacheDirectory == null ? "." :
+              ", " + localCheckpointLoads.get() + " from local copies."));
     }
 
     // Load global stats and superstep classes
@@ -1284,6 +1464,361 @@ else[HADOOP_NON_SECURE]*/
         globalStats.getEdgeCount());
   }
 
+  /**
+   * Get the checkpoint file of a partition.
+   *
+   * @param checkpointPrefix Checkpoint file prefix of the worker
+   * @param partitionId Id of the partition
+   * @return Path of the checkpoint file of the partition
+   */
+  private static Path getPartitionCheckpointPath(String checkpointPrefix,
+      int partitionId) {
+    return new Path(checkpointPrefix + "." + partitionId +
+        CHECKPOINT_VERTICES_POSTFIX);
+  }
+
+  /**
+   * Create the configured compression codec for the checkpoints.
+   *
+   * @return Compression codec, or null if checkpoints aren't compressed
+   */
+  private CompressionCodec createCheckpointCompressionCodec() {
+    Class<? extends CompressionCodec> codecClass =
+        GiraphConstants.CHECKPOINT_COMPRESSION_CODEC.get(getConfiguration());
+    if (codecClass == null) {
+      return null;
+    }
+    return ReflectionUtils.newInstance(codecClass, getConfiguration());
+  }
+
+  /**
+   * Capture a partition and its current messages in memory, for an
+   * asynchronous checkpoint.
+   *
+   * @param partition Partition to capture
+   * @return Captured partition
+   * @throws IOException
+   */
+  private PartitionCheckpoint capturePartitionCheckpoint(
+      Partition<I, V, E> partition) throws IOException {
+    // Checkpoints are read with DataInput, so they can't use the unsafe
+    // byte order
+    ExtendedDataOutput output = new ExtendedByteArrayDataOutput();
+    boolean edges = writePartitionCheckpointData(partition, output);
+    return new PartitionCheckpoint(partition.getId(), edges, output);
+  }
+
+  /**
+   * Write a partition and its current messages.  In incremental mode,
+   * partitions whose edges were already checkpointed are written as their
+   * vertex values and halted flags only.
+   *
+   * Format:
+   * <false><partition>
+   * or
+   * <true><file with the edges><vertex count>
+   *   <vertex 0 id><vertex 0 value><vertex 0 halted>...
+   * and in both cases
+   * <messages>
+   *
+   * @param partition Partition to write
+   * @param output Output to write to
+   * @return True iff the edges of the partition were written
+   * @throws IOException
+   */
+  private boolean writePartitionCheckpointData(Partition<I, V, E> partition,
+      DataOutput output) throws IOException {
+    String edgesFile = checkpointEdgesFiles.get(partition.getId());
+    output.writeBoolean(edgesFile != null);
+    if (edgesFile == null) {
+      partition.write(output);
+    } else {
+      output.writeUTF(edgesFile);
+      output.writeLong(partition.getVertexCount());
+      for (Vertex<I, V, E> vertex : partition) {
+        vertex.getId().write(output);
+        vertex.getValue().write(output);
+        output.writeBoolean(vertex.isHalted());
+      }
+    }
+    synchronized (checkpointMessagesLock) {
+      getServerData().getCurrentMessageStore().writePartition(
+          output, partition.getId());
+    }
+    return edgesFile == null;
+  }
+
+  /**
+   * Get the local copy of a checkpoint file, which mirrors its path in the
+   * local cache directory.
+   *
+   * @param path Checkpoint file
+   * @return Local copy of the file
+   */
+  private File getLocalCheckpointFile(Path path) {
+    return new File(checkpointLocalCacheDirectory, path.toUri().getPath());
+  }
+
+  /**
+   * Delete the local copies of older checkpoints, except for the edges
+   * still referenced by incremental checkpoints, so that the local cache
+   * only holds the last checkpoint.
+   *
+   * @param checkpointPrefix Checkpoint file prefix of the last checkpoint
+   * @param partitionIds Partitions of the last checkpoint
+   */
+  private void deleteStaleLocalCheckpointFiles(String checkpointPrefix,
+      Collection<Integer> partitionIds) {
+    Set<File> currentFiles = new HashSet<File>();
+    for (Integer partitionId : partitionIds) {
+      currentFiles.add(getLocalCheckpointFile(
+          getPartitionCheckpointPath(checkpointPrefix, partitionId)));
+    }
+    for (String edgesFile : checkpointEdgesFiles.values()) {
+      currentFiles.add(getLocalCheckpointFile(new Path(edgesFile)));
+    }
+    for (File file : localCheckpointFiles) {
+      if (!currentFiles.contains(file) && file.delete() &&
+          LOG.isDebugEnabled()) {
+        LOG.debug("deleteStaleLocalCheckpointFiles: Deleted " + file);
+      }
+    }
+    localCheckpointFiles = currentFiles;
+  }
+
+  /**
+   * Write a captured partition to a checkpoint file of its own.
+   *
+   * @param checkpointPrefix Checkpoint file prefix of this worker
+   * @param partitionCheckpoint Captured partition
+   * @param codec Compression codec, or null for no compression
+   * @return Number of bytes written
+   * @throws IOException
+   */
+  private long writePartitionCheckpoint(String checkpointPrefix,
+      PartitionCheckpoint partitionCheckpoint, CompressionCodec codec)
+    throws IOException {
+    return writePartitionCheckpoint(checkpointPrefix,
+        partitionCheckpoint.getPartitionId(), null, partitionCheckpoint,
+        codec);
+  }
+
+  /**
+   * Stream a partition straight to a checkpoint file of its own.
+   *
+   * @param checkpointPrefix Checkpoint file prefix of this worker
+   * @param partition Partition to write
+   * @param codec Compression codec, or null for no compression
+   * @return Number of bytes written
+   * @throws IOException
+   */
+  private long writePartitionCheckpoint(String checkpointPrefix,
+      Partition<I, V, E> partition, CompressionCodec codec)
+    throws IOException {
+    return writePartitionCheckpoint(checkpointPrefix, partition.getId(),
+        partition, null, codec);
+  }
+
+  /**
+   * Write a partition to a checkpoint file of its own, preceded by the name
+   * of its compression codec (or an empty string).  With the local cache,
+   * the file is written locally first and then copied to the file system,
+   * so that a restart on this host can skip reading it back.
+   *
+   * @param checkpointPrefix Checkpoint file prefix of this worker
+   * @param partitionId Id of the partition
+   * @param partition Partition to write, or null to write a captured one
+   * @param partitionCheckpoint Captured partition, if partition is null
+   * @param codec Compression codec, or null for no compression
+   * @return Number of bytes written
+   * @throws IOException
+   */
+  private long writePartitionCheckpoint(String checkpointPrefix,
+      int partitionId, Partition<I, V, E> partition,
+      PartitionCheckpoint partitionCheckpoint, CompressionCodec codec)
+    throws IOException {
+    Path partitionPath =
+        getPartitionCheckpointPath(checkpointPrefix, partitionId);
+    File localFile = null;
+    OutputStream fileStream;
+    if (checkpointLocalCacheDirectory == null) {
+      fileStream = getFs().create(partitionPath);
+    } else {
+      localFile = getLocalCheckpointFile(partitionPath);
+      File localDirectory = localFile.getParentFile();
+      if (!localDirectory.isDirectory() && !localDirectory.mkdirs() &&
+          !localDirectory.isDirectory()) {
+        throw new IOException("writePartitionCheckpoint: Failed to " +
+            "create local checkpoint directory " + localDirectory);
+      }
+      fileStream = new FileOutputStream(localFile);
+    }
+    DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(fileStream));
+    output.writeUTF(codec == null ? "" : codec.getClass().getName());
+    CompressionOutputStream compressedStream = null;
+    DataOutputStream dataOutput = output;
+    if (codec != null) {
+      compressedStream = codec.createOutputStream(output);
+      dataOutput = new DataOutputStream(
+          new BufferedOutputStream(compressedStream));
+    }
+    boolean edges;
+    if (partition == null) {
+      ExtendedDataOutput data = partitionCheckpoint.getData();
+      dataOutput.write(data.getByteArray(), 0, data.getPos());
+      edges = partitionCheckpoint.hasEdges();
+    } else {
+      edges = writePartitionCheckpointData(partition, dataOutput);
+    }
+    if (compressedStream != null) {
+      dataOutput.flush();
+      compressedStream.finish();
+    }
+    long dataLength = output.size();
+    output.close();
+    if (localFile != null) {
+      getFs().copyFromLocalFile(
+          new Path(localFile.getAbsolutePath()), partitionPath);
+      // Stamp the local copy so that it can be matched with the file it
+      // was copied to, rather than with a later file at the same path
+      localFile.setLastModified(
+          getFs().getFileStatus(partitionPath).getModificationTime());
+    }
+    if (edges && incrementalCheckpoints) {
+      checkpointEdgesFiles.put(partitionId, partitionPath.toString());
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("writePartitionCheckpoint: Wrote " + dataLength +
+          " bytes of partition " + partitionId + " to " + partitionPath +
+          (edges ? "" : " without edges"));
+    }
+    return dataLength;
+  }
+
+  /**
+   * Open a partition checkpoint file, and decompress it if needed.  A local
+   * copy of the file is preferred if it matches the file's length and
+   * modification time.
+   *
+   * @param partitionFile Checkpoint file of the partition
+   * @return Stream positioned after the compression codec
+   * @throws IOException
+   */
+  private DataInputStream openPartitionCheckpoint(String partitionFile)
+    throws IOException {
+    Path partitionPath = new Path(partitionFile);
+    InputStream fileStream = null;
+    if (checkpointLocalCacheDirectory != null) {
+      File localFile = getLocalCheckpointFile(partitionPath);
+      if (localFile.isFile()) {
+        FileStatus fileStatus = getFs().getFileStatus(partitionPath);
+        // Local file systems may only keep whole seconds
+        if (localFile.length() == fileStatus.getLen() &&
+            localFile.lastModified() / 1000 ==
+            fileStatus.getModificationTime() / 1000) {
+          fileStream = new FileInputStream(localFile);
+          localCheckpointLoads.incrementAndGet();
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("openPartitionCheckpoint: Using local copy " +
+                localFile + " of " + partitionFile);
+          }
+        }
+      }
+    }
+    if (fileStream == null) {
+      fileStream = getFs().open(partitionPath);
+    }
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(fileStream));
+    String codecClassName = input.readUTF();
+    if (codecClassName.isEmpty()) {
+      return input;
+    }
+    CompressionCodec codec;
+    try {
+      codec = (CompressionCodec) ReflectionUtils.newInstance(
+          getConfiguration().getClassByName(codecClassName),
+          getConfiguration());
+    } catch (ClassNotFoundException e) {
+      input.close();
+      throw new IllegalStateException("openPartitionCheckpoint: " +
+          "Compression codec of " + partitionFile + " not found", e);
+    }
+    return new DataInputStream(
+        new BufferedInputStream(codec.createInputStream(input)));
+  }
+
+  /**
+   * Load a partition and its messages from its checkpoint file.
+   *
+   * @param partitionOwner Owner of the partition, with its checkpoint file
+   *                       prefix
+   * @throws IOException
+   */
+  private void loadPartitionCheckpoint(PartitionOwner partitionOwner)
+    throws IOException {
+    int partitionId = partitionOwner.getPartitionId();
+    String partitionFile = getPartitionCheckpointPath(
+        partitionOwner.getCheckpointFilesPrefix(), partitionId).toString();
+    Partition<I, V, E> partition =
+        getConfiguration().createPartition(partitionId, getContext());
+    DataInputStream input = openPartitionCheckpoint(partitionFile);
+    String edgesFile;
+    if (input.readBoolean()) {
+      edgesFile = input.readUTF();
+      DataInputStream edgesInput = openPartitionCheckpoint(edgesFile);
+      if (edgesInput.readBoolean()) {
+        edgesInput.close();
+        throw new IllegalStateException("loadPartitionCheckpoint: " +
+            edgesFile + " of " + partitionOwner + " has no edges");
+      }
+      partition.readFields(edgesInput);
+      edgesInput.close();
+      long vertexCount = input.readLong();
+      for (long i = 0; i < vertexCount; ++i) {
+        I id = getConfiguration().createVertexId();
+        id.readFields(input);
+        Vertex<I, V, E> vertex = partition.getVertex(id);
+        if (vertex == null) {
+          throw new IllegalStateException("loadPartitionCheckpoint: " +
+              "Vertex " + id + " of " + partitionFile + " not in " +
+              edgesFile);
+        }
+        V value = getConfiguration().createVertexValue();
+        value.readFields(input);
+        vertex.setValue(value);
+        if (input.readBoolean()) {
+          vertex.voteToHalt();
+        } else {
+          vertex.wakeUp();
+        }
+        partition.saveVertex(vertex);
+      }
+    } else {
+      edgesFile = partitionFile;
+      partition.readFields(input);
+    }
+    synchronized (checkpointMessagesLock) {
+      getServerData().getIncomingMessageStore().readFieldsForPartition(
+          input, partitionId);
+    }
+    input.close();
+    if (incrementalCheckpoints) {
+      checkpointEdgesFiles.put(partitionId, edgesFile);
+    }
+    if (LOG.isInfoEnabled()) {
+      LOG.info("loadPartitionCheckpoint: Loaded partition " + partition +
+          " from " + partitionFile);
+    }
+    if (getPartitionStore().hasPartition(partitionId)) {
+      throw new IllegalStateException(
+          "loadPartitionCheckpoint: Already has partition owner " +
+              partitionOwner);
+    }
+    getPartitionStore().addPartition(partition);
+  }
+
   /**
    * Send the worker partitions to their destination workers
    *
@@ -1299,6 +1834,8 @@ else[HADOOP_NON_SECURE]*/
     WorkerClientRequestProcessor<I, V, E> workerClientRequestProcessor =
         new NettyWorkerClientRequestProcessor<I, V, E>(getContext(),
             getConfiguration(), this);
+    long startMillis = System.currentTimeMillis();
+    long sentBytes = 0;
     for (Entry<WorkerInfo, List<Integer>> workerPartitionList :
       randomEntryList) {
       for (Integer partitionId : workerPartitionList.getValue()) {
@@ -1315,19 +1852,25 @@ else[HADOOP_NON_SECURE]*/
               workerPartitionList.getKey() + " partition " +
               partitionId);
         }
-        workerClientRequestProcessor.sendPartitionRequest(
+        sentBytes += workerClientRequestProcessor.sendPartitionInChunks(
             workerPartitionList.getKey(),
             partition);
       }
     }
 
-
     try {
       workerClientRequestProcessor.flush();
       workerClient.waitAllRequests();
     } catch (IOException e) {
       throw new IllegalStateException("sendWorkerPartitions: Flush failed", e);
     }
+    long elapsedMillis = System.currentTimeMillis() - startMillis;
+    migrationBytes.inc(sentBytes);
+    migrationTimer.set(elapsedMillis, TimeUnit.MILLISECONDS);
+    if (LOG.isInfoEnabled()) {
+      LOG.info("sendWorkerPartitions: Sent " + sentBytes + " bytes of " +
+          "vertices in " + elapsedMillis + " ms");
+    }
     String myPartitionExchangeDonePath =
         getPartitionExchangeWorkerPath(
             getApplicationAttempt(), getSuperstep(), getWorkerInfo());
@@ -1522,4 +2065,57 @@ else[HADOOP_NON_SECURE]*/
   public SuperstepOutput<I, V, E> getSuperstepOutput() {
     return superstepOutput;
   }
+
+  /**
+   * Partition and its messages captured in memory for a checkpoint.
+   */
+  private static class PartitionCheckpoint {
+    /** Id of the partition */
+    private final int partitionId;
+    /** Whether the edges of the partition were captured */
+    private final boolean edges;
+    /** Serialized partition and messages */
+    private final ExtendedDataOutput data;
+
+    /**
+     * Constructor
+     *
+     * @param partitionId Id of the partition
+     * @param edges Whether the edges of the partition were captured
+     * @param data Serialized partition and messages
+     */
+    public PartitionCheckpoint(int partitionId, boolean edges,
+        ExtendedDataOutput data) {
+      this.partitionId = partitionId;
+      this.edges = edges;
+      this.data = data;
+    }
+
+    /**
+     * Get the id of the partition.
+     *
+     * @return Id of the partition
+     */
+    public int getPartitionId() {
+      return partitionId;
+    }
+
+    /**
+     * Were the edges of the partition captured?
+     *
+     * @return True iff the edges were captured
+     */
+    public boolean hasEdges() {
+      return edges;
+    }
+
+    /**
+     * Get the serialized partition and messages.
+     *
+     * @return Serialized partition and messages
+     */
+    public ExtendedDataOutput getData() {
+      return data;
+    }
+  }
 }
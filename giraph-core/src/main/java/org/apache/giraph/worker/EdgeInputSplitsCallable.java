@@ -195,6 +195,7 @@ public class EdgeInputSplitsCallable<I extends WritableComparable,
       }
     }
     edgeReader.close();
+    aggregatorUsage.finishThreadComputation();
 
     totalEdgesFiltered.inc(inputSplitEdgesFiltered);
     totalEdgesMeter.mark(inputSplitEdgesLoaded % EDGES_UPDATE_PERIOD);
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.worker;
+
+import org.apache.giraph.aggregators.Aggregator;
+import org.apache.giraph.aggregators.DoubleMaxAggregator;
+import org.apache.giraph.aggregators.DoubleMinAggregator;
+import org.apache.giraph.aggregators.DoubleSumAggregator;
+import org.apache.giraph.aggregators.FloatMaxAggregator;
+import org.apache.giraph.aggregators.FloatMinAggregator;
+import org.apache.giraph.aggregators.FloatSumAggregator;
+import org.apache.giraph.aggregators.IntMaxAggregator;
+import org.apache.giraph.aggregators.IntMinAggregator;
+import org.apache.giraph.aggregators.IntSumAggregator;
+import org.apache.giraph.aggregators.LongMaxAggregator;
+import org.apache.giraph.aggregators.LongMinAggregator;
+import org.apache.giraph.aggregators.LongSumAggregator;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free accumulator for the common sum, min and max aggregators of
+ * primitive values.  As in a striped adder, threads update different cells
+ * picked by their thread id, so concurrent aggregate() calls rarely contend
+ * and never lock.  The cells are combined into the aggregator when the
+ * superstep finishes.
+ *
+ * Int and long values are kept in long cells, float and double values in
+ * cells with the bits of a double.  Float values are rounded to float after
+ * every operation, so float aggregators get float arithmetic as they do
+ * without the accumulator.
+ */
+public abstract class StripedAccumulator {
+  /** Longs from one cell to the next, so that cells don't share a line */
+  private static final int CELL_STRIDE = 8;
+  /** Cells with the partial values */
+  protected final AtomicLongArray cells;
+  /** Mask to get the cell of a thread */
+  private final int cellMask;
+  /** Value of a cell nothing was accumulated into */
+  private final long identity;
+  /** Was anything accumulated since the last fold? */
+  private volatile boolean used = false;
+
+  /**
+   * Constructor
+   *
+   * @param numCells Number of cells, a power of two
+   * @param identity Value of a cell nothing was accumulated into
+   */
+  protected StripedAccumulator(int numCells, long identity) {
+    cells = new AtomicLongArray(numCells * CELL_STRIDE);
+    cellMask = numCells - 1;
+    this.identity = identity;
+    for (int i = 0; i < numCells; i++) {
+      cells.set(i * CELL_STRIDE, identity);
+    }
+  }
+
+  /**
+   * Create an accumulator for an aggregator, if it is one of the common
+   * sum, min and max aggregators.
+   *
+   * @param aggregatorClass Class of the aggregator
+   * @param numThreads Number of threads which will aggregate concurrently
+   * @return Accumulator, null if there is none for this aggregator
+   */
+  public static StripedAccumulator create(
+      Class<? extends Aggregator> aggregatorClass, int numThreads) {
+    int numCells = Integer.highestOneBit(Math.max(1, 2 * numThreads - 1)) * 2;
+    if (aggregatorClass == LongSumAggregator.class ||
+        aggregatorClass == IntSumAggregator.class) {
+      return new LongSumAccumulator(numCells);
+    } else if (aggregatorClass == LongMinAggregator.class ||
+        aggregatorClass == IntMinAggregator.class) {
+      return new LongMinMaxAccumulator(numCells, true);
+    } else if (aggregatorClass == LongMaxAggregator.class ||
+        aggregatorClass == IntMaxAggregator.class) {
+      return new LongMinMaxAccumulator(numCells, false);
+    } else if (aggregatorClass == DoubleSumAggregator.class ||
+        aggregatorClass == FloatSumAggregator.class) {
+      return new DoubleAccumulator(numCells, 0d, Op.SUM,
+          aggregatorClass == FloatSumAggregator.class);
+    } else if (aggregatorClass == DoubleMinAggregator.class ||
+        aggregatorClass == FloatMinAggregator.class) {
+      return new DoubleAccumulator(numCells, Double.POSITIVE_INFINITY, Op.MIN,
+          aggregatorClass == FloatMinAggregator.class);
+    } else if (aggregatorClass == DoubleMaxAggregator.class ||
+        aggregatorClass == FloatMaxAggregator.class) {
+      return new DoubleAccumulator(numCells, Double.NEGATIVE_INFINITY, Op.MAX,
+          aggregatorClass == FloatMaxAggregator.class);
+    }
+    return null;
+  }
+
+  /**
+   * Accumulate a value.  Thread-safe.
+   *
+   * @param value Value of the aggregator type
+   */
+  public void accumulate(Writable value) {
+    if (!used) {
+      used = true;
+    }
+    int cell = ((int) Thread.currentThread().getId() & cellMask) *
+        CELL_STRIDE;
+    accumulate(cell, value);
+  }
+
+  /**
+   * Accumulate a value into a cell.
+   *
+   * @param cell Index of the cell in the array
+   * @param value Value of the aggregator type
+   */
+  protected abstract void accumulate(int cell, Writable value);
+
+  /**
+   * Combine two partial values.
+   *
+   * @param partial Partial value
+   * @param cellValue Value of a cell
+   * @return Combined value
+   */
+  protected abstract long combine(long partial, long cellValue);
+
+  /**
+   * Set the combined value of the cells on a value of the aggregator type.
+   *
+   * @param combined Combined value of the cells
+   * @param value Value to set
+   */
+  protected abstract void setValue(long combined, Writable value);
+
+  /**
+   * Aggregate the accumulated values into the aggregator, and start
+   * accumulating from scratch.  Must not be called concurrently with
+   * accumulate().
+   *
+   * @param aggregator Aggregator of this accumulator
+   */
+  public void foldInto(Aggregator<Writable> aggregator) {
+    if (!used) {
+      return;
+    }
+    long combined = identity;
+    for (int i = 0; i < cells.length(); i += CELL_STRIDE) {
+      combined = combine(combined, cells.get(i));
+      cells.set(i, identity);
+    }
+    used = false;
+    Writable value = aggregator.createInitialValue();
+    setValue(combined, value);
+    aggregator.aggregate(value);
+  }
+
+  /** Operation of the double accumulator */
+  private enum Op {
+    /** Sum */
+    SUM,
+    /** Minimum */
+    MIN,
+    /** Maximum */
+    MAX
+  }
+
+  /**
+   * Get the primitive value of an int or long aggregator value.
+   *
+   * @param value Int or long writable
+   * @return Value
+   */
+  private static long toLong(Writable value) {
+    return value instanceof IntWritable ? ((IntWritable) value).get() :
+        ((LongWritable) value).get();
+  }
+
+  /**
+   * Set the primitive value of an int or long aggregator value.
+   *
+   * @param combined Value to set
+   * @param value Int or long writable
+   */
+  private static void setLong(long combined, Writable value) {
+    if (value instanceof IntWritable) {
+      ((IntWritable) value).set((int) combined);
+    } else {
+      ((LongWritable) value).set(combined);
+    }
+  }
+
+  /** Sum of ints or longs */
+  private static class LongSumAccumulator extends StripedAccumulator {
+    /**
+     * Constructor
+     *
+     * @param numCells Number of cells
+     */
+    LongSumAccumulator(int numCells) {
+      super(numCells, 0L);
+    }
+
+    @Override
+    protected void accumulate(int cell, Writable value) {
+      cells.addAndGet(cell, toLong(value));
+    }
+
+    @Override
+    protected long combine(long partial, long cellValue) {
+      return partial + cellValue;
+    }
+
+    @Override
+    protected void setValue(long combined, Writable value) {
+      setLong(combined, value);
+    }
+  }
+
+  /** Minimum or maximum of ints or longs */
+  private static class LongMinMaxAccumulator extends StripedAccumulator {
+    /** Keep the minimum, otherwise the maximum */
+    private final boolean min;
+
+    /**
+     * Constructor
+     *
+     * @param numCells Number of cells
+     * @param min Keep the minimum, otherwise the maximum
+     */
+    LongMinMaxAccumulator(int numCells, boolean min) {
+      super(numCells, min ? Long.MAX_VALUE : Long.MIN_VALUE);
+      this.min = min;
+    }
+
+    @Override
+    protected void accumulate(int cell, Writable value) {
+      long newValue = toLong(value);
+      long current = cells.get(cell);
+      while (combine(current, newValue) != current &&
+          !cells.compareAndSet(cell, current, newValue)) {
+        current = cells.get(cell);
+      }
+    }
+
+    @Override
+    protected long combine(long partial, long cellValue) {
+      return min ? Math.min(partial, cellValue) :
+          Math.max(partial, cellValue);
+    }
+
+    @Override
+    protected void setValue(long combined, Writable value) {
+      setLong(combined, value);
+    }
+  }
+
+  /** Sum, minimum or maximum of floats or doubles */
+  private static class DoubleAccumulator extends StripedAccumulator {
+    /** Operation */
+    private final Op op;
+    /** Round every result to float */
+    private final boolean floatRounding;
+
+    /**
+     * Constructor
+     *
+     * @param numCells Number of cells
+     * @param identity Identity of the operation
+     * @param op Operation
+     * @param floatRounding Round every result to float
+     */
+    DoubleAccumulator(int numCells, double identity, Op op,
+        boolean floatRounding) {
+      super(numCells, Double.doubleToRawLongBits(identity));
+      this.op = op;
+      this.floatRounding = floatRounding;
+    }
+
+    @Override
+    protected void accumulate(int cell, Writable value) {
+      double newValue = value instanceof FloatWritable ?
+          ((FloatWritable) value).get() : ((DoubleWritable) value).get();
+      long newBits = Double.doubleToRawLongBits(newValue);
+      long current = cells.get(cell);
+      long combined = combine(current, newBits);
+      while (combined != current &&
+          !cells.compareAndSet(cell, current, combined)) {
+        current = cells.get(cell);
+        combined = combine(current, newBits);
+      }
+    }
+
+    @Override
+    protected long combine(long partial, long cellValue) {
+      double a = Double.longBitsToDouble(partial);
+      double b = Double.longBitsToDouble(cellValue);
+      double result;
+      switch (op) {
+      case SUM:
+        result = a + b;
+        break;
+      case MIN:
+        result = Math.min(a, b);
+        break;
+      default:
+        result = Math.max(a, b);
+        break;
+      }
+      return Double.doubleToRawLongBits(
+          floatRounding ? (float) result : result);
+    }
+
+    @Override
+    protected void setValue(long combined, Writable value) {
+      double result = Double.longBitsToDouble(combined);
+      if (value instanceof FloatWritable) {
+        ((FloatWritable) value).set((float) result);
+      } else {
+        ((DoubleWritable) value).set(result);
+      }
+    }
+  }
+}
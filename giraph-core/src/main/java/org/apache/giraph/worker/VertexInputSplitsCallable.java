@@ -209,6 +209,7 @@ public class VertexInputSplitsCallable<I extends WritableComparable,
     totalVerticesFilteredCounter.inc(inputSplitVerticesFiltered);
 
     vertexReader.close();
+    aggregatorUsage.finishThreadComputation();
     return new VertexEdgeCount(inputSplitVerticesLoaded,
         inputSplitEdgesLoaded + edgesSinceLastUpdate);
   }
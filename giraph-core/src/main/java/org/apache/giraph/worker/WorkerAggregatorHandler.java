@@ -18,6 +18,7 @@
 
 package org.apache.giraph.worker;
 
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.comm.aggregators.WorkerAggregatorRequestProcessor;
@@ -26,16 +27,29 @@ import org.apache.giraph.comm.aggregators.AggregatorUtils;
 import org.apache.giraph.comm.aggregators.AllAggregatorServerData;
 import org.apache.giraph.comm.aggregators.OwnerAggregatorServerData;
 import org.apache.giraph.aggregators.Aggregator;
+import org.apache.giraph.metrics.GiraphMetrics;
+import org.apache.giraph.metrics.GiraphTimer;
+import org.apache.giraph.metrics.MetricNames;
+import org.apache.giraph.metrics.ResetSuperstepMetricsObserver;
+import org.apache.giraph.metrics.SuperstepMetricsRegistry;
+import org.apache.giraph.utils.CallableFactory;
+import org.apache.giraph.utils.ProgressableUtils;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.util.Progressable;
 import org.apache.log4j.Logger;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.yammer.metrics.core.Counter;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handler for aggregators on worker. Provides the aggregated values and
@@ -52,17 +66,32 @@ import java.util.Set;
  * Finally, at the end of the superstep, the worker calls finishSuperstep(),
  * which propagates non-owned partial aggregates to the owner workers,
  * and sends the final aggregate from the owner worker to the master.
+ *
+ * With giraph.aggregatorTreeFanOut set, the workers instead form a tree in
+ * the order of the worker list: each worker combines its partial aggregates
+ * with the ones of its children before sending them to its parent, the root
+ * exchanges all of the aggregators with the master, and the final
+ * aggregates are forwarded from parents to children.
  */
-public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
+public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage,
+    ResetSuperstepMetricsObserver {
   /** Class logger */
   private static final Logger LOG =
       Logger.getLogger(WorkerAggregatorHandler.class);
+  /** Minimum number of accumulators to fold per thread */
+  private static final int MIN_ACCUMULATORS_PER_FOLD_THREAD = 1000;
   /** Map of values from previous superstep */
   private Map<String, Writable> previousAggregatedValueMap =
       Maps.newHashMap();
   /** Map of aggregators for current superstep */
   private Map<String, Aggregator<Writable>> currentAggregatorMap =
       Maps.newHashMap();
+  /**
+   * Lock-free accumulators of the aggregators for current superstep which
+   * have one, rebuilt before each superstep
+   */
+  private Map<String, StripedAccumulator> accumulatorMap =
+      Maps.newHashMap();
   /** Service worker */
   private final CentralizedServiceWorker<?, ?, ?> serviceWorker;
   /** Progressable for reporting progress */
@@ -71,6 +100,20 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
   private final int maxBytesPerAggregatorRequest;
   /** Giraph configuration */
   private final ImmutableClassesGiraphConfiguration conf;
+  /** Fan-out of the aggregator tree, 0 if aggregators go through owners */
+  private final int treeFanOut;
+  /** Use lock-free accumulators for the aggregators which have one? */
+  private final boolean useStripedAggregators;
+  /** Maximum number of threads which aggregate concurrently */
+  private final int numAggregatingThreads;
+  /** Bytes of partial aggregated values sent in superstep */
+  private Counter reduceBytes;
+  /** Time spent reducing the aggregators */
+  private GiraphTimer reduceTimer;
+  /** Bytes of final aggregated values forwarded in superstep */
+  private Counter broadcastBytes;
+  /** Time spent receiving and forwarding the aggregators */
+  private GiraphTimer broadcastTimer;
 
   /**
    * Constructor
@@ -89,10 +132,34 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
     maxBytesPerAggregatorRequest = conf.getInt(
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST,
         AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST_DEFAULT);
+    treeFanOut = AggregatorUtils.getTreeFanOut(conf);
+    useStripedAggregators = GiraphConstants.USE_STRIPED_AGGREGATORS.get(conf);
+    numAggregatingThreads = Math.max(conf.getNumComputeThreads(),
+        GiraphConstants.NUM_INPUT_THREADS.get(conf));
+    newSuperstep(GiraphMetrics.get().perSuperstep());
+    GiraphMetrics.get().addSuperstepResetObserver(this);
+  }
+
+  @Override
+  public void newSuperstep(SuperstepMetricsRegistry superstepMetrics) {
+    reduceBytes =
+        superstepMetrics.getCounter(MetricNames.AGGREGATOR_REDUCE_BYTES);
+    reduceTimer = new GiraphTimer(superstepMetrics,
+        MetricNames.AGGREGATOR_REDUCE_MS, TimeUnit.MILLISECONDS);
+    broadcastBytes =
+        superstepMetrics.getCounter(MetricNames.AGGREGATOR_BROADCAST_BYTES);
+    broadcastTimer = new GiraphTimer(superstepMetrics,
+        MetricNames.AGGREGATOR_BROADCAST_MS, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public <A extends Writable> void aggregate(String name, A value) {
+    StripedAccumulator accumulator = accumulatorMap.get(name);
+    if (accumulator != null) {
+      progressable.progress();
+      accumulator.accumulate(value);
+      return;
+    }
     Aggregator<Writable> aggregator = currentAggregatorMap.get(name);
     if (aggregator != null) {
       progressable.progress();
@@ -127,12 +194,26 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
     if (LOG.isDebugEnabled()) {
       LOG.debug("prepareSuperstep: Start preparing aggregators");
     }
+    long startNanos = System.nanoTime();
     AllAggregatorServerData allAggregatorData =
         serviceWorker.getServerData().getAllAggregatorData();
     // Wait for my aggregators
     Iterable<byte[]> dataToDistribute =
         allAggregatorData.getDataFromMasterWhenReady(
             serviceWorker.getMasterInfo());
+    Set<Integer> senderIds = getOtherWorkerIdsSet();
+    if (treeFanOut > 0) {
+      // All of the aggregators come from the parent, which we have to wait
+      // for before forwarding them to the children
+      senderIds = Collections.emptySet();
+      WorkerInfo parent = AggregatorUtils.getTreeParent(
+          serviceWorker.getWorkerInfo().getTaskId(),
+          serviceWorker.getWorkerInfoList(), treeFanOut);
+      if (parent != null) {
+        dataToDistribute =
+            allAggregatorData.getDataFromWorkerWhenReady(parent.getTaskId());
+      }
+    }
     try {
       // Distribute my aggregators
       requestProcessor.distributeAggregators(dataToDistribute);
@@ -142,11 +223,18 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
     }
     // Wait for all other aggregators and store them
     allAggregatorData.fillNextSuperstepMapsWhenReady(
-        getOtherWorkerIdsSet(), previousAggregatedValueMap,
-        currentAggregatorMap);
+        senderIds, previousAggregatedValueMap, currentAggregatorMap);
     allAggregatorData.reset();
+    createAccumulators();
+    long bytes = requestProcessor.resetSentBytes();
+    broadcastBytes.inc(bytes);
+    broadcastTimer.set(System.nanoTime() - startNanos,
+        TimeUnit.NANOSECONDS);
     if (LOG.isDebugEnabled()) {
-      LOG.debug("prepareSuperstep: Aggregators prepared");
+      LOG.debug("prepareSuperstep: Aggregators prepared, forwarded " + bytes +
+          " bytes in " +
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) +
+          " ms");
     }
   }
 
@@ -162,8 +250,146 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
           "workers will send their aggregated values " +
           "once they are done with superstep computation");
     }
+    long startNanos = System.nanoTime();
+    foldAccumulators();
     OwnerAggregatorServerData ownerAggregatorData =
         serviceWorker.getServerData().getOwnerAggregatorData();
+    if (treeFanOut > 0) {
+      finishSuperstepInTree(requestProcessor, ownerAggregatorData);
+    } else {
+      finishSuperstepThroughOwners(requestProcessor, ownerAggregatorData);
+    }
+    // Wait for master to receive aggregated values before proceeding
+    serviceWorker.getWorkerClient().waitAllRequests();
+
+    ownerAggregatorData.reset();
+    long bytes = requestProcessor.resetSentBytes();
+    reduceBytes.inc(bytes);
+    reduceTimer.set(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("finishSuperstep: Aggregators finished, sent " + bytes +
+          " bytes in " +
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) +
+          " ms");
+    }
+  }
+
+  /**
+   * Create the lock-free accumulators of the aggregators for current
+   * superstep which have one.
+   */
+  private void createAccumulators() {
+    Map<String, StripedAccumulator> newAccumulatorMap = Maps.newHashMap();
+    if (useStripedAggregators) {
+      for (Map.Entry<String, Aggregator<Writable>> entry :
+          currentAggregatorMap.entrySet()) {
+        StripedAccumulator accumulator = StripedAccumulator.create(
+            entry.getValue().getClass(), numAggregatingThreads);
+        if (accumulator != null) {
+          newAccumulatorMap.put(entry.getKey(), accumulator);
+        }
+      }
+    }
+    accumulatorMap = newAccumulatorMap;
+  }
+
+  /**
+   * Aggregate what the lock-free accumulators collected into their
+   * aggregators, in parallel if there are many of them.
+   */
+  private void foldAccumulators() {
+    final List<String> names = Lists.newArrayList(accumulatorMap.keySet());
+    final int numThreads = Math.max(1, Math.min(numAggregatingThreads,
+        names.size() / MIN_ACCUMULATORS_PER_FOLD_THREAD));
+    if (numThreads == 1) {
+      foldAccumulators(names, 0, 1);
+      return;
+    }
+    CallableFactory<Void> callableFactory = new CallableFactory<Void>() {
+      @Override
+      public Callable<Void> newCallable(final int callableId) {
+        return new Callable<Void>() {
+          @Override
+          public Void call() {
+            foldAccumulators(names, callableId, numThreads);
+            return null;
+          }
+        };
+      }
+    };
+    ProgressableUtils.getResultsWithNCallables(callableFactory, numThreads,
+        "fold-aggregators-%d", progressable);
+  }
+
+  /**
+   * Fold one of the stripes of the accumulators into their aggregators.
+   *
+   * @param names Names of the aggregators with accumulators
+   * @param stripe Index of the stripe to fold
+   * @param numStripes Number of stripes
+   */
+  private void foldAccumulators(List<String> names, int stripe,
+      int numStripes) {
+    for (int i = stripe; i < names.size(); i += numStripes) {
+      String name = names.get(i);
+      accumulatorMap.get(name).foldInto(currentAggregatorMap.get(name));
+    }
+  }
+
+  /**
+   * Reduce the aggregators through the tree over workers: combine the values
+   * of this worker with the ones from its children, and send the result to
+   * the parent, or to the master from the root.
+   *
+   * @param requestProcessor Request processor for aggregators
+   * @param ownerAggregatorData Aggregators this worker reduces
+   */
+  private void finishSuperstepInTree(
+      WorkerAggregatorRequestProcessor requestProcessor,
+      OwnerAggregatorServerData ownerAggregatorData) {
+    for (Map.Entry<String, Aggregator<Writable>> entry :
+        currentAggregatorMap.entrySet()) {
+      ownerAggregatorData.aggregate(entry.getKey(),
+          entry.getValue().getAggregatedValue());
+      progressable.progress();
+    }
+    Set<Integer> childIds = Sets.newHashSetWithExpectedSize(treeFanOut);
+    for (WorkerInfo child : AggregatorUtils.getTreeChildren(
+        serviceWorker.getWorkerInfo().getTaskId(),
+        serviceWorker.getWorkerInfoList(), treeFanOut)) {
+      childIds.add(child.getTaskId());
+    }
+    Iterable<Map.Entry<String, Writable>> subtreeAggregators =
+        ownerAggregatorData.getMyAggregatorValuesWhenReady(childIds);
+    if (AggregatorUtils.getTreeParent(
+        serviceWorker.getWorkerInfo().getTaskId(),
+        serviceWorker.getWorkerInfoList(), treeFanOut) == null) {
+      sendAggregatedValuesToMaster(requestProcessor, subtreeAggregators);
+      return;
+    }
+    try {
+      for (Map.Entry<String, Writable> entry : subtreeAggregators) {
+        requestProcessor.sendAggregatedValue(entry.getKey(),
+            entry.getValue());
+        progressable.progress();
+      }
+      requestProcessor.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException("finishSuperstepInTree: " +
+          "IOException occurred while sending aggregators to the parent", e);
+    }
+  }
+
+  /**
+   * Send the aggregators to their owners, and the ones this worker owns to
+   * the master once the other workers sent their values.
+   *
+   * @param requestProcessor Request processor for aggregators
+   * @param ownerAggregatorData Aggregators this worker owns
+   */
+  private void finishSuperstepThroughOwners(
+      WorkerAggregatorRequestProcessor requestProcessor,
+      OwnerAggregatorServerData ownerAggregatorData) {
     // First send partial aggregated values to their owners and determine
     // which aggregators belong to this worker
     for (Map.Entry<String, Aggregator<Writable>> entry :
@@ -195,8 +421,18 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
     Iterable<Map.Entry<String, Writable>> myAggregators =
         ownerAggregatorData.getMyAggregatorValuesWhenReady(
             getOtherWorkerIdsSet());
+    sendAggregatedValuesToMaster(requestProcessor, myAggregators);
+  }
 
-    // Send final aggregated values to master
+  /**
+   * Send final aggregated values to master
+   *
+   * @param requestProcessor Request processor for aggregators
+   * @param myAggregators Final values of the aggregators of this worker
+   */
+  private void sendAggregatedValuesToMaster(
+      WorkerAggregatorRequestProcessor requestProcessor,
+      Iterable<Map.Entry<String, Writable>> myAggregators) {
     AggregatedValueOutputStream aggregatorOutput =
         new AggregatedValueOutputStream();
     for (Map.Entry<String, Writable> entry : myAggregators) {
@@ -220,13 +456,6 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
       throw new IllegalStateException("finishSuperstep: " +
           "IOException occured while sending aggregators to master", e);
     }
-    // Wait for master to receive aggregated values before proceeding
-    serviceWorker.getWorkerClient().waitAllRequests();
-
-    ownerAggregatorData.reset();
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("finishSuperstep: Aggregators finished");
-    }
   }
 
   /**
@@ -271,6 +500,9 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
    * synchronizing on each aggregate() call. In the end of superstep,
    * values from each of these will be aggregated back to {@link
    * WorkerAggregatorHandler}
+   *
+   * Aggregators with a lock-free accumulator are not copied, and the others
+   * are only copied once the thread uses them.
    */
   public class ThreadLocalWorkerAggregatorUsage
       implements WorkerThreadAggregatorUsage {
@@ -284,28 +516,33 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
      * {@link WorkerAggregatorHandler}
      */
     public ThreadLocalWorkerAggregatorUsage() {
-      threadAggregatorMap = Maps.newHashMapWithExpectedSize(
-          WorkerAggregatorHandler.this.currentAggregatorMap.size());
-      for (Map.Entry<String, Aggregator<Writable>> entry :
-          WorkerAggregatorHandler.this.currentAggregatorMap.entrySet()) {
-        threadAggregatorMap.put(entry.getKey(),
-            AggregatorUtils.newAggregatorInstance(
-                (Class<Aggregator<Writable>>) entry.getValue().getClass(),
-                conf));
-      }
+      threadAggregatorMap = Maps.newHashMap();
     }
 
     @Override
     public <A extends Writable> void aggregate(String name, A value) {
-      Aggregator<Writable> aggregator = threadAggregatorMap.get(name);
-      if (aggregator != null) {
+      StripedAccumulator accumulator = accumulatorMap.get(name);
+      if (accumulator != null) {
         progressable.progress();
-        aggregator.aggregate(value);
-      } else {
-        throw new IllegalStateException("aggregate: " +
-            AggregatorUtils.getUnregisteredAggregatorMessage(name,
-                threadAggregatorMap.size() != 0, conf));
+        accumulator.accumulate(value);
+        return;
       }
+      Aggregator<Writable> aggregator = threadAggregatorMap.get(name);
+      if (aggregator == null) {
+        Map<String, Aggregator<Writable>> sharedAggregatorMap =
+            WorkerAggregatorHandler.this.currentAggregatorMap;
+        Aggregator<Writable> sharedAggregator = sharedAggregatorMap.get(name);
+        if (sharedAggregator == null) {
+          throw new IllegalStateException("aggregate: " +
+              AggregatorUtils.getUnregisteredAggregatorMessage(name,
+                  !sharedAggregatorMap.isEmpty(), conf));
+        }
+        aggregator = AggregatorUtils.newAggregatorInstance(
+            (Class<Aggregator<Writable>>) sharedAggregator.getClass(), conf);
+        threadAggregatorMap.put(name, aggregator);
+      }
+      progressable.progress();
+      aggregator.aggregate(value);
     }
 
     @Override
@@ -322,6 +559,8 @@ public class WorkerAggregatorHandler implements WorkerThreadAggregatorUsage {
         WorkerAggregatorHandler.this.aggregate(entry.getKey(),
             entry.getValue().getAggregatedValue());
       }
+      // Start over, in case the thread keeps aggregating
+      threadAggregatorMap.clear();
     }
   }
 }
@@ -25,7 +25,8 @@ package org.apache.giraph.worker;
 public interface WorkerThreadAggregatorUsage extends WorkerAggregatorUsage {
   /**
    * Call this after thread's computation is finished,
-   * i.e. when all vertices have provided their values to aggregators
+   * i.e. when all vertices have provided their values to aggregators.
+   * Input threads call it after each input split.
    */
   void finishThreadComputation();
 }
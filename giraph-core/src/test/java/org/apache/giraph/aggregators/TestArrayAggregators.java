@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.aggregators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.giraph.utils.WritableUtils;
+import org.junit.Test;
+
+public class TestArrayAggregators {
+
+  @Test
+  public void testDoubleArraySumAggregator() {
+    DoubleArraySumAggregator sum = new DoubleArraySumAggregator();
+    sum.aggregate(new DoubleArrayWritable(new double[] {1.0, 2.0}));
+    DoubleArrayWritable sparse = DoubleArrayWritable.createSparse();
+    sparse.set(3, 4.0);
+    sparse.set(0, 0.5);
+    sum.aggregate(sparse);
+    assertFalse(sum.getAggregatedValue().isSparse());
+    assertEquals(4, sum.getAggregatedValue().getLength());
+    assertEquals(1.5, sum.getAggregatedValue().get(0), 0d);
+    assertEquals(2.0, sum.getAggregatedValue().get(1), 0d);
+    assertEquals(0.0, sum.getAggregatedValue().get(2), 0d);
+    assertEquals(4.0, sum.getAggregatedValue().get(3), 0d);
+    assertEquals(0.0, sum.getAggregatedValue().get(10), 0d);
+  }
+
+  @Test
+  public void testLongArrayMinMaxAggregators() {
+    LongArrayMaxAggregator max = new LongArrayMaxAggregator();
+    LongArrayMinAggregator min = new LongArrayMinAggregator();
+    for (long[] values : new long[][] {{3, -1}, {-2, 5, 7}}) {
+      max.aggregate(new LongArrayWritable(values));
+      min.aggregate(new LongArrayWritable(values));
+    }
+    assertEquals(3, max.getAggregatedValue().get(0));
+    assertEquals(5, max.getAggregatedValue().get(1));
+    assertEquals(7, max.getAggregatedValue().get(2));
+    assertEquals(-2, min.getAggregatedValue().get(0));
+    assertEquals(-1, min.getAggregatedValue().get(1));
+    assertEquals(7, min.getAggregatedValue().get(2));
+    max.reset();
+    assertEquals(0, max.getAggregatedValue().getLength());
+  }
+
+  @Test
+  public void testFloatArraySerialization() {
+    // Mostly default values are written sparse, and read back dense
+    FloatArrayWritable sparse = FloatArrayWritable.createSparse();
+    sparse.set(999, 1.5f);
+    byte[] sparseBytes = WritableUtils.writeToByteArray(sparse);
+    FloatArrayWritable dense = new FloatArrayWritable(new float[1000]);
+    dense.set(999, 1.5f);
+    assertArrayEquals(sparseBytes, WritableUtils.writeToByteArray(dense));
+    assertTrue(sparseBytes.length < 100);
+
+    FloatArrayWritable read = new FloatArrayWritable();
+    WritableUtils.readFieldsFromByteArray(sparseBytes, read);
+    assertFalse(read.isSparse());
+    assertEquals(1000, read.getLength());
+    assertEquals(1.5f, read.get(999), 0f);
+    assertEquals(0f, read.get(998), 0f);
+
+    FloatArrayMaxAggregator max = new FloatArrayMaxAggregator();
+    max.aggregate(new FloatArrayWritable(new float[] {1f, 2f, 3f}));
+    byte[] maxBytes = WritableUtils.writeToByteArray(max.getAggregatedValue());
+    assertEquals(4 + 4 + 1 + 3 * 4, maxBytes.length);
+    // Reading into a vector reuses its array
+    WritableUtils.readFieldsFromByteArray(maxBytes, read);
+    assertEquals(3, read.getLength());
+    assertEquals(Float.NEGATIVE_INFINITY, read.getDefaultValue(), 0f);
+    assertEquals(3f, read.get(2), 0f);
+    assertEquals(Float.NEGATIVE_INFINITY, read.get(3), 0f);
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm;
+
+import org.apache.giraph.comm.netty.NettyClient;
+import org.apache.giraph.comm.netty.NettyServer;
+import org.apache.giraph.comm.netty.handler.RequestServerHandler;
+import org.apache.giraph.comm.netty.handler.ServerCreditHandler;
+import org.apache.giraph.comm.netty.handler.WorkerRequestReservedMap;
+import org.apache.giraph.comm.netty.handler.WorkerRequestServerHandler;
+import org.apache.giraph.comm.requests.SendWorkerMessagesRequest;
+import org.apache.giraph.comm.requests.WorkerRequest;
+import org.apache.giraph.comm.requests.WritableRequest;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.factories.TestMessageValueFactory;
+import org.apache.giraph.graph.TaskInfo;
+import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.IntNoOpComputation;
+import org.apache.giraph.utils.MockUtils;
+import org.apache.giraph.utils.PairList;
+import org.apache.giraph.worker.WorkerInfo;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Mapper.Context;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the credit based flow control of the netty client with a fast and a
+ * slow server.
+ */
+public class CreditFlowControlTest {
+  /** Number of requests sent to every server */
+  private static final int NUM_REQUESTS = 5;
+  /** Configuration */
+  private ImmutableClassesGiraphConfiguration conf;
+  /** Mock context */
+  private Context context;
+
+  @Before
+  public void setUp() {
+    GiraphConfiguration tmpConf = new GiraphConfiguration();
+    tmpConf.setComputationClass(IntNoOpComputation.class);
+    GiraphConstants.NETTY_CREDIT_FLOW_CONTROL.set(tmpConf, true);
+    // Only a single open request per server
+    GiraphConstants.NETTY_SERVER_CREDIT_BYTES.set(tmpConf, 1);
+    // Without flow control, the slow server would get several requests at
+    // once on different channels
+    GiraphConstants.CHANNELS_PER_SERVER.set(tmpConf, 4);
+    conf = new ImmutableClassesGiraphConfiguration(tmpConf);
+
+    context = mock(Context.class);
+    when(context.getConfiguration()).thenReturn(conf);
+  }
+
+  private SendWorkerMessagesRequest<IntWritable, IntWritable> getRequest() {
+    PairList<Integer, ByteArrayVertexIdMessages<IntWritable, IntWritable>>
+        dataToSend = new PairList<Integer,
+        ByteArrayVertexIdMessages<IntWritable, IntWritable>>();
+    dataToSend.initialize();
+    ByteArrayVertexIdMessages<IntWritable, IntWritable> vertexIdMessages =
+        new ByteArrayVertexIdMessages<IntWritable, IntWritable>(
+            new TestMessageValueFactory<IntWritable>(IntWritable.class));
+    vertexIdMessages.setConf(conf);
+    vertexIdMessages.initialize();
+    dataToSend.add(0, vertexIdMessages);
+    for (int i = 1; i < 7; ++i) {
+      IntWritable vertexId = new IntWritable(i);
+      for (int j = 0; j < i; ++j) {
+        vertexIdMessages.add(vertexId, new IntWritable(j));
+      }
+    }
+    return new SendWorkerMessagesRequest<IntWritable, IntWritable>(
+        dataToSend);
+  }
+
+  private int getMessageSum(
+      ServerData<IntWritable, IntWritable, IntWritable> serverData)
+    throws IOException {
+    int messageSum = 0;
+    for (IntWritable vertexId : serverData.getIncomingMessageStore().
+        getPartitionDestinationVertices(0)) {
+      Iterable<IntWritable> messages =
+          serverData.<IntWritable>getIncomingMessageStore().getVertexMessages(
+              vertexId);
+      synchronized (messages) {
+        for (IntWritable message : messages) {
+          messageSum += message.get();
+        }
+      }
+    }
+    return messageSum;
+  }
+
+  @Test
+  public void slowServerDoesNotStallFastServer() throws Exception {
+    // Fast server
+    ServerData<IntWritable, IntWritable, IntWritable> fastServerData =
+        MockUtils.createNewServerData(conf, context);
+    fastServerData.prepareSuperstep();
+    WorkerInfo fastWorkerInfo = new WorkerInfo();
+    fastWorkerInfo.setTaskId(1);
+    NettyServer fastServer = new NettyServer(conf,
+        new WorkerRequestServerHandler.Factory(fastServerData),
+        fastWorkerInfo, context);
+    fastServer.start();
+    fastWorkerInfo.setInetSocketAddress(fastServer.getMyAddress());
+
+    // Slow server, which doesn't process requests until it is released
+    final ServerData<IntWritable, IntWritable, IntWritable> slowServerData =
+        MockUtils.createNewServerData(conf, context);
+    slowServerData.prepareSuperstep();
+    final CountDownLatch releaseSlowServer = new CountDownLatch(1);
+    final AtomicInteger slowServerRequests = new AtomicInteger(0);
+    WorkerInfo slowWorkerInfo = new WorkerInfo();
+    slowWorkerInfo.setTaskId(2);
+    NettyServer slowServer = new NettyServer(conf,
+        new RequestServerHandler.Factory() {
+          @Override
+          public RequestServerHandler newHandler(
+              WorkerRequestReservedMap workerRequestReservedMap,
+              ImmutableClassesGiraphConfiguration conf,
+              TaskInfo myTaskInfo) {
+            return new WorkerRequestServerHandler<IntWritable, IntWritable,
+                IntWritable, IntWritable>(slowServerData,
+                workerRequestReservedMap, conf, myTaskInfo) {
+              @Override
+              public void processRequest(
+                  WorkerRequest<IntWritable, IntWritable, IntWritable>
+                      request) {
+                slowServerRequests.incrementAndGet();
+                try {
+                  releaseSlowServer.await();
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+                super.processRequest(request);
+              }
+            };
+          }
+        }, slowWorkerInfo, context);
+    slowServer.start();
+    slowWorkerInfo.setInetSocketAddress(slowServer.getMyAddress());
+
+    NettyClient client = new NettyClient(context, conf, new WorkerInfo());
+    client.connectAllAddresses(
+        Lists.<WorkerInfo>newArrayList(fastWorkerInfo, slowWorkerInfo));
+
+    // Sending doesn't block on the slow server
+    for (int i = 0; i < NUM_REQUESTS; ++i) {
+      client.sendWritableRequest(slowWorkerInfo.getTaskId(), getRequest());
+      client.sendWritableRequest(fastWorkerInfo.getTaskId(), getRequest());
+    }
+
+    // The fast server gets all of its requests, the slow one only has the
+    // credit for one
+    long deadline = System.currentTimeMillis() + 60 * 1000;
+    while (getMessageSum(fastServerData) < 35 * NUM_REQUESTS &&
+        System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(35 * NUM_REQUESTS, getMessageSum(fastServerData));
+    Thread.sleep(100);
+    assertEquals(1, slowServerRequests.get());
+
+    releaseSlowServer.countDown();
+    client.waitAllRequests();
+    assertEquals(NUM_REQUESTS, slowServerRequests.get());
+    assertEquals(35 * NUM_REQUESTS, getMessageSum(slowServerData));
+
+    client.stop();
+    fastServer.stop();
+    slowServer.stop();
+  }
+
+  /**
+   * Create a server which records the lowest credit it advertised to every
+   * client, and processes every request with a delay.
+   *
+   * @param conf Configuration
+   * @param taskId Task id of the server
+   * @param serverData Server data
+   * @param delayMillis Delay of processing every request
+   * @param minCredits Lowest credit advertised to each client
+   * @return Started server
+   */
+  private NettyServer startServer(ImmutableClassesGiraphConfiguration conf,
+      int taskId,
+      final ServerData<IntWritable, IntWritable, IntWritable> serverData,
+      final long delayMillis, final Map<Integer, Integer> minCredits) {
+    WorkerInfo workerInfo = new WorkerInfo();
+    workerInfo.setTaskId(taskId);
+    NettyServer server = new NettyServer(conf,
+        new RequestServerHandler.Factory() {
+          @Override
+          public RequestServerHandler newHandler(
+              WorkerRequestReservedMap workerRequestReservedMap,
+              ImmutableClassesGiraphConfiguration conf,
+              TaskInfo myTaskInfo) {
+            final AtomicReference<ServerCreditHandler> creditHandler =
+                new AtomicReference<ServerCreditHandler>();
+            return new WorkerRequestServerHandler<IntWritable, IntWritable,
+                IntWritable, IntWritable>(serverData,
+                workerRequestReservedMap, conf, myTaskInfo) {
+              @Override
+              public void messageReceived(ChannelHandlerContext ctx,
+                  MessageEvent e) {
+                creditHandler.set(
+                    ctx.getPipeline().get(ServerCreditHandler.class));
+                super.messageReceived(ctx, e);
+              }
+
+              @Override
+              public void processRequest(
+                  WorkerRequest<IntWritable, IntWritable, IntWritable>
+                      request) {
+                try {
+                  Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                  throw new IllegalStateException(e);
+                }
+                super.processRequest(request);
+                int clientId = ((WritableRequest) request).getClientId();
+                int credit = creditHandler.get().getCredit(clientId);
+                synchronized (minCredits) {
+                  Integer minCredit = minCredits.get(clientId);
+                  if (minCredit == null || credit < minCredit) {
+                    minCredits.put(clientId, credit);
+                  }
+                }
+              }
+            };
+          }
+        }, workerInfo, context);
+    server.start();
+    workerInfo.setInetSocketAddress(server.getMyAddress());
+    return server;
+  }
+
+  @Test
+  public void slowServerThrottlesOnlyItsClients() throws Exception {
+    int maxCredit = 4 * 1024;
+    GiraphConfiguration tmpConf = new GiraphConfiguration();
+    tmpConf.setComputationClass(IntNoOpComputation.class);
+    GiraphConstants.NETTY_CREDIT_FLOW_CONTROL.set(tmpConf, true);
+    GiraphConstants.NETTY_SERVER_CREDIT_BYTES.set(tmpConf, maxCredit);
+    GiraphConstants.NETTY_SERVER_MIN_CREDIT_BYTES.set(tmpConf, 256);
+    ImmutableClassesGiraphConfiguration fastConf =
+        new ImmutableClassesGiraphConfiguration(tmpConf);
+    // The slow server processes one request at a time, so its backlog grows
+    GiraphConstants.NETTY_SERVER_EXECUTION_THREADS.set(tmpConf, 1);
+    ImmutableClassesGiraphConfiguration slowConf =
+        new ImmutableClassesGiraphConfiguration(tmpConf);
+
+    ServerData<IntWritable, IntWritable, IntWritable> fastServerData =
+        MockUtils.createNewServerData(fastConf, context);
+    fastServerData.prepareSuperstep();
+    Map<Integer, Integer> fastMinCredits = Maps.newHashMap();
+    NettyServer fastServer =
+        startServer(fastConf, 1, fastServerData, 0, fastMinCredits);
+    WorkerInfo fastWorkerInfo = new WorkerInfo();
+    fastWorkerInfo.setTaskId(1);
+    fastWorkerInfo.setInetSocketAddress(fastServer.getMyAddress());
+
+    ServerData<IntWritable, IntWritable, IntWritable> slowServerData =
+        MockUtils.createNewServerData(slowConf, context);
+    slowServerData.prepareSuperstep();
+    Map<Integer, Integer> slowMinCredits = Maps.newHashMap();
+    NettyServer slowServer =
+        startServer(slowConf, 2, slowServerData, 10, slowMinCredits);
+    WorkerInfo slowWorkerInfo = new WorkerInfo();
+    slowWorkerInfo.setTaskId(2);
+    slowWorkerInfo.setInetSocketAddress(slowServer.getMyAddress());
+
+    // Worker 10 sends to both servers, worker 11 only to the fast one
+    WorkerInfo bothWorkerInfo = new WorkerInfo();
+    bothWorkerInfo.setTaskId(10);
+    NettyClient bothClient = new NettyClient(context, fastConf, bothWorkerInfo);
+    bothClient.connectAllAddresses(
+        Lists.<WorkerInfo>newArrayList(fastWorkerInfo, slowWorkerInfo));
+    WorkerInfo fastOnlyWorkerInfo = new WorkerInfo();
+    fastOnlyWorkerInfo.setTaskId(11);
+    NettyClient fastOnlyClient =
+        new NettyClient(context, fastConf, fastOnlyWorkerInfo);
+    fastOnlyClient.connectAllAddresses(
+        Lists.<WorkerInfo>newArrayList(fastWorkerInfo));
+
+    int numRequests = 100;
+    for (int i = 0; i < numRequests; ++i) {
+      bothClient.sendWritableRequest(slowWorkerInfo.getTaskId(), getRequest());
+      bothClient.sendWritableRequest(fastWorkerInfo.getTaskId(), getRequest());
+      fastOnlyClient.sendWritableRequest(
+          fastWorkerInfo.getTaskId(), getRequest());
+    }
+    bothClient.waitAllRequests();
+    fastOnlyClient.waitAllRequests();
+    assertEquals(35 * numRequests, getMessageSum(slowServerData));
+    assertEquals(2 * 35 * numRequests, getMessageSum(fastServerData));
+
+    // Only the client of the slow server was throttled, and only by it
+    assertTrue(slowMinCredits.get(10) <= maxCredit / 4);
+    assertEquals(maxCredit, (int) fastMinCredits.get(10));
+    assertEquals(maxCredit, (int) fastMinCredits.get(11));
+
+    bothClient.stop();
+    fastOnlyClient.stop();
+    fastServer.stop();
+    slowServer.stop();
+  }
+}
@@ -150,6 +150,21 @@ public class RequestFailureTest {
     checkSendingTwoRequests();
   }
 
+  @Test
+  public void resendRequestWithCreditFlowControl() throws IOException {
+    // Only one open request, so the second one waits for credit
+    GiraphConstants.NETTY_CREDIT_FLOW_CONTROL.set(conf, true);
+    GiraphConstants.NETTY_SERVER_CREDIT_BYTES.set(conf, 1);
+    // Force a drop of the first request
+    GiraphConstants.NETTY_SIMULATE_FIRST_REQUEST_CLOSED.set(conf, true);
+    // One second to finish a request
+    GiraphConstants.MAX_REQUEST_MILLISECONDS.set(conf, 1000);
+    // Loop every 2 seconds
+    GiraphConstants.WAITING_REQUEST_MSECS.set(conf, 2000);
+
+    checkSendingTwoRequests();
+  }
+
   private void checkSendingTwoRequests() throws IOException {
     // Start the service
     serverData = MockUtils.createNewServerData(conf, context);
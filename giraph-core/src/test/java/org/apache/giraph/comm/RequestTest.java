@@ -18,12 +18,18 @@
 
 package org.apache.giraph.comm;
 
+import org.apache.giraph.bsp.BspService;
+import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.comm.netty.NettyClient;
 import org.apache.giraph.comm.netty.NettyServer;
+import org.apache.giraph.comm.netty.NettyWorkerClientRequestProcessor;
+import org.apache.giraph.comm.netty.handler.SharedChannelBufferInputStream;
 import org.apache.giraph.comm.netty.handler.WorkerRequestServerHandler;
 import org.apache.giraph.comm.requests.SendPartitionMutationsRequest;
+import org.apache.giraph.comm.requests.SendPartitionVerticesRequest;
 import org.apache.giraph.comm.requests.SendVertexRequest;
 import org.apache.giraph.comm.requests.SendWorkerMessagesRequest;
+import org.apache.giraph.comm.requests.WritableRequest;
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
@@ -35,27 +41,43 @@ import org.apache.giraph.graph.VertexMutations;
 import org.apache.giraph.metrics.GiraphMetrics;
 import org.apache.giraph.partition.Partition;
 import org.apache.giraph.partition.PartitionStore;
+import org.apache.giraph.utils.ByteArrayPool;
 import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.ExtendedDataOutput;
 import org.apache.giraph.utils.IntNoOpComputation;
 import org.apache.giraph.utils.MockUtils;
 import org.apache.giraph.utils.PairList;
+import org.apache.giraph.utils.WritableUtils;
 import org.apache.giraph.worker.WorkerInfo;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.mapreduce.Mapper.Context;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -135,6 +157,149 @@ public class RequestTest {
     partitionStore.shutdown();
   }
 
+  @Test
+  public void sendPartitionVerticesInChunks() throws IOException {
+    // Send a partition in two chunks, and an empty partition
+    int partitionId = 13;
+    for (int chunk = 0; chunk < 2; ++chunk) {
+      ExtendedDataOutput vertices = conf.createExtendedDataOutput();
+      for (int i = chunk * 5; i < (chunk + 1) * 5; ++i) {
+        Vertex vertex = conf.createVertex();
+        vertex.initialize(new IntWritable(i), new IntWritable(i));
+        WritableUtils.writeVertexToDataOutput(vertices, vertex, conf);
+      }
+      SendPartitionVerticesRequest<IntWritable, IntWritable, IntWritable>
+          request = new SendPartitionVerticesRequest<IntWritable,
+          IntWritable, IntWritable>(partitionId, 5, vertices);
+      client.sendWritableRequest(workerInfo.getTaskId(), request);
+    }
+    SendPartitionVerticesRequest<IntWritable, IntWritable, IntWritable>
+        emptyRequest = new SendPartitionVerticesRequest<IntWritable,
+        IntWritable, IntWritable>(
+        partitionId + 1, 0, conf.createExtendedDataOutput());
+    client.sendWritableRequest(workerInfo.getTaskId(), emptyRequest);
+    client.waitAllRequests();
+
+    // Stop the service
+    client.stop();
+    server.stop();
+
+    // Check the output
+    PartitionStore<IntWritable, IntWritable, IntWritable> partitionStore =
+        serverData.getPartitionStore();
+    assertTrue(partitionStore.hasPartition(partitionId));
+    assertTrue(partitionStore.hasPartition(partitionId + 1));
+    Partition<IntWritable, IntWritable, IntWritable> partition =
+        partitionStore.getPartition(partitionId);
+    assertEquals(10, partition.getVertexCount());
+    int total = 0;
+    for (Vertex<IntWritable, IntWritable, IntWritable> vertex : partition) {
+      assertEquals(vertex.getId().get(), vertex.getValue().get());
+      total += vertex.getId().get();
+    }
+    partitionStore.putPartition(partition);
+    assertEquals(45, total);
+    partitionStore.shutdown();
+  }
+
+  @Test
+  public void sendPartitionInChunks() throws IOException {
+    // Chunks of three vertices, and wait after every full chunk
+    Vertex vertex = conf.createVertex();
+    vertex.initialize(new IntWritable(0), new IntWritable(0));
+    ExtendedDataOutput vertexBytes = conf.createExtendedDataOutput();
+    WritableUtils.writeVertexToDataOutput(vertexBytes, vertex, conf);
+    int vertexSize = vertexBytes.getPos();
+    GiraphConfiguration tmpConf = new GiraphConfiguration(conf);
+    GiraphConstants.PARTITION_MIGRATION_CHUNK_SIZE.set(
+        tmpConf, 3 * vertexSize);
+    GiraphConstants.PARTITION_MIGRATION_MAX_OPEN_BYTES.set(
+        tmpConf, vertexSize);
+    ImmutableClassesGiraphConfiguration<IntWritable, IntWritable,
+        IntWritable> chunkConf = new ImmutableClassesGiraphConfiguration<
+        IntWritable, IntWritable, IntWritable>(tmpConf);
+    GiraphMetrics.init(chunkConf);
+
+    // Requests go through the real client, as if to a remote worker
+    WorkerClient<IntWritable, IntWritable, IntWritable> workerClient =
+        mock(WorkerClient.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        client.sendWritableRequest((Integer) invocation.getArguments()[0],
+            (WritableRequest) invocation.getArguments()[1]);
+        return null;
+      }
+    }).when(workerClient).sendWritableRequest(
+        any(Integer.class), any(WritableRequest.class));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        client.waitAllRequests();
+        return null;
+      }
+    }).when(workerClient).waitAllRequests();
+    CentralizedServiceWorker<IntWritable, IntWritable, IntWritable>
+        serviceWorker = mock(CentralizedServiceWorker.class);
+    WorkerInfo senderInfo = new WorkerInfo();
+    senderInfo.setTaskId(workerInfo.getTaskId() + 1);
+    when(serviceWorker.getWorkerInfo()).thenReturn(senderInfo);
+    when(serviceWorker.getWorkerClient()).thenReturn(workerClient);
+    when(serviceWorker.getServerData()).thenReturn(serverData);
+    when(serviceWorker.getSuperstep()).thenReturn(BspService.INPUT_SUPERSTEP);
+    doReturn(Collections.emptyList()).when(serviceWorker)
+        .getPartitionOwners();
+    when(serviceWorker.getWorkerInfoList())
+        .thenReturn(Collections.<WorkerInfo>emptyList());
+    @SuppressWarnings("rawtypes")
+    Context context = mock(Context.class);
+    when(context.getConfiguration()).thenReturn(chunkConf);
+    NettyWorkerClientRequestProcessor<IntWritable, IntWritable, IntWritable>
+        processor = new NettyWorkerClientRequestProcessor<IntWritable,
+        IntWritable, IntWritable>(context, chunkConf, serviceWorker);
+
+    // Send a partition of ten vertices, and an empty partition
+    int partitionId = 13;
+    Partition<IntWritable, IntWritable, IntWritable> partition =
+        chunkConf.createPartition(partitionId, null);
+    for (int i = 0; i < 10; ++i) {
+      vertex = chunkConf.createVertex();
+      vertex.initialize(new IntWritable(i), new IntWritable(i));
+      partition.putVertex(vertex);
+    }
+    assertEquals(10 * vertexSize,
+        processor.sendPartitionInChunks(workerInfo, partition));
+    assertEquals(0, processor.sendPartitionInChunks(workerInfo,
+        chunkConf.createPartition(partitionId + 1, null)));
+    client.waitAllRequests();
+
+    // Stop the service
+    client.stop();
+    server.stop();
+
+    // Chunks of 3, 3, 3 and 1 vertices, and one for the empty partition
+    verify(workerClient, times(5)).sendWritableRequest(
+        any(Integer.class), any(WritableRequest.class));
+    verify(workerClient, times(3)).waitAllRequests();
+
+    // Check the output
+    PartitionStore<IntWritable, IntWritable, IntWritable> partitionStore =
+        serverData.getPartitionStore();
+    assertTrue(partitionStore.hasPartition(partitionId));
+    assertTrue(partitionStore.hasPartition(partitionId + 1));
+    Partition<IntWritable, IntWritable, IntWritable> partition2 =
+        partitionStore.getPartition(partitionId);
+    assertEquals(10, partition2.getVertexCount());
+    int total = 0;
+    for (Vertex<IntWritable, IntWritable, IntWritable> vertex2 : partition2) {
+      assertEquals(vertex2.getId().get(), vertex2.getValue().get());
+      total += vertex2.getId().get();
+    }
+    partitionStore.putPartition(partition2);
+    assertEquals(45, total);
+    partitionStore.shutdown();
+  }
+
   @Test
   public void sendWorkerMessagesRequest() throws IOException {
     // Data to send
@@ -188,6 +353,161 @@ public class RequestTest {
     assertEquals(35, messageSum);
   }
 
+  @Test
+  public void sendWorkerMessagesRequestWithBufferPool() throws IOException {
+    // Client recycling the buffers of the encoded requests
+    ByteArrayPool bufferPool = new ByteArrayPool(1024 * 1024);
+    client.stop();
+    @SuppressWarnings("rawtypes")
+    Context context = mock(Context.class);
+    when(context.getConfiguration()).thenReturn(conf);
+    client = new NettyClient(context, conf, new WorkerInfo(), bufferPool);
+    client.connectAllAddresses(
+        Lists.<WorkerInfo>newArrayList(workerInfo));
+
+    // Data to send, in a pooled buffer
+    PairList<Integer, ByteArrayVertexIdMessages<IntWritable, IntWritable>>
+        dataToSend = new PairList<Integer,
+        ByteArrayVertexIdMessages<IntWritable, IntWritable>>();
+    dataToSend.initialize();
+    ByteArrayVertexIdMessages<IntWritable, IntWritable> vertexIdMessages =
+        new ByteArrayVertexIdMessages<IntWritable, IntWritable>(
+            new TestMessageValueFactory<IntWritable>(IntWritable.class));
+    vertexIdMessages.setConf(conf);
+    vertexIdMessages.initialize(1024, bufferPool);
+    dataToSend.add(0, vertexIdMessages);
+    for (int i = 1; i < 7; ++i) {
+      IntWritable vertexId = new IntWritable(i);
+      for (int j = 0; j < i; ++j) {
+        vertexIdMessages.add(vertexId, new IntWritable(j));
+      }
+    }
+
+    // Send the request
+    SendWorkerMessagesRequest<IntWritable, IntWritable> request =
+        new SendWorkerMessagesRequest<IntWritable, IntWritable>(dataToSend);
+    client.sendWritableRequest(workerInfo.getTaskId(), request);
+    client.waitAllRequests();
+
+    // Stop the service
+    client.stop();
+    server.stop();
+
+    // Both the data and the encoded request buffers were recycled
+    assertEquals(2 * 1024, bufferPool.getPooledBytes());
+
+    // Check the output
+    int messageSum = 0;
+    for (IntWritable vertexId : serverData.getIncomingMessageStore().
+        getPartitionDestinationVertices(0)) {
+      Iterable<IntWritable> messages =
+          serverData.<IntWritable>getIncomingMessageStore().getVertexMessages(
+              vertexId);
+      synchronized (messages) {
+        for (IntWritable message : messages) {
+          messageSum += message.get();
+        }
+      }
+    }
+    assertEquals(35, messageSum);
+  }
+
+  @Test
+  public void readSharedWorkerMessages() throws IOException {
+    ByteArrayVertexIdMessages<IntWritable, IntWritable> vertexIdMessages =
+        new ByteArrayVertexIdMessages<IntWritable, IntWritable>(
+            new TestMessageValueFactory<IntWritable>(IntWritable.class));
+    vertexIdMessages.setConf(conf);
+    vertexIdMessages.initialize();
+    for (int i = 1; i < 4; ++i) {
+      vertexIdMessages.add(new IntWritable(i), new IntWritable(i * 10));
+    }
+
+    // Serialize after some other data, as in a request frame
+    ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+    ChannelBufferOutputStream outputStream =
+        new ChannelBufferOutputStream(buffer);
+    outputStream.writeLong(-1);
+    vertexIdMessages.write(outputStream);
+    SharedChannelBufferInputStream inputStream =
+        new SharedChannelBufferInputStream(buffer);
+    assertEquals(-1, inputStream.readLong());
+    ByteArrayVertexIdMessages<IntWritable, IntWritable> readMessages =
+        new ByteArrayVertexIdMessages<IntWritable, IntWritable>(
+            new TestMessageValueFactory<IntWritable>(IntWritable.class));
+    readMessages.setConf(conf);
+    readMessages.readFields(inputStream);
+    assertSame(buffer.array(), readMessages.getByteArray());
+    assertEquals(vertexIdMessages.getSize(), readMessages.getSize());
+
+    // Adding to the shared messages copies them first
+    readMessages.add(new IntWritable(4), new IntWritable(40));
+    assertNotSame(buffer.array(), readMessages.getByteArray());
+    ByteArrayVertexIdMessages<IntWritable, IntWritable>.VertexIdMessageIterator
+        iterator = readMessages.getVertexIdMessageIterator();
+    int i = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      ++i;
+      assertEquals(i, iterator.getCurrentVertexId().get());
+      assertEquals(i * 10, iterator.getCurrentMessage().get());
+    }
+    assertEquals(4, i);
+  }
+
+  @Test
+  public void sendWorkerMessagesRequestsWithByteLimit() throws IOException {
+    // Replace the client with one which can only have a single open request
+    client.stop();
+    GiraphConstants.MAX_OPEN_REQUEST_BYTES.set(conf, 1);
+    @SuppressWarnings("rawtypes")
+    Context context = mock(Context.class);
+    when(context.getConfiguration()).thenReturn(conf);
+    client = new NettyClient(context, conf, new WorkerInfo());
+    client.connectAllAddresses(
+        Lists.<WorkerInfo>newArrayList(workerInfo));
+
+    // Send a request with messages to every vertex
+    for (int i = 1; i < 7; ++i) {
+      PairList<Integer, ByteArrayVertexIdMessages<IntWritable,
+          IntWritable>> dataToSend = new PairList<Integer,
+          ByteArrayVertexIdMessages<IntWritable, IntWritable>>();
+      dataToSend.initialize();
+      ByteArrayVertexIdMessages<IntWritable, IntWritable> vertexIdMessages =
+          new ByteArrayVertexIdMessages<IntWritable, IntWritable>(
+              new TestMessageValueFactory<IntWritable>(IntWritable.class));
+      vertexIdMessages.setConf(conf);
+      vertexIdMessages.initialize();
+      dataToSend.add(0, vertexIdMessages);
+      for (int j = 0; j < i; ++j) {
+        vertexIdMessages.add(new IntWritable(i), new IntWritable(j));
+      }
+      client.sendWritableRequest(workerInfo.getTaskId(),
+          new SendWorkerMessagesRequest<IntWritable, IntWritable>(
+              dataToSend));
+    }
+    client.waitAllRequests();
+
+    // Stop the service
+    client.stop();
+    server.stop();
+
+    // Check the output
+    int messageSum = 0;
+    for (IntWritable vertexId : serverData.getIncomingMessageStore().
+        getPartitionDestinationVertices(0)) {
+      Iterable<IntWritable> messages =
+          serverData.<IntWritable>getIncomingMessageStore().getVertexMessages(
+              vertexId);
+      synchronized (messages) {
+        for (IntWritable message : messages) {
+          messageSum += message.get();
+        }
+      }
+    }
+    assertEquals(35, messageSum);
+  }
+
   @Test
   public void sendPartitionMutationsRequest() throws IOException {
     // Data to send
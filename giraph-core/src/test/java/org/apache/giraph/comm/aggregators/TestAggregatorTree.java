@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.aggregators;
+
+import org.apache.giraph.worker.WorkerInfo;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Test the shape of the tree which reduces and broadcasts aggregators */
+public class TestAggregatorTree {
+  /**
+   * Create workers with task ids in reverse order, so that positions in the
+   * list and task ids differ.
+   *
+   * @param numWorkers Number of workers
+   * @return List of workers
+   */
+  private static List<WorkerInfo> createWorkers(int numWorkers) {
+    List<WorkerInfo> workers = Lists.newArrayList();
+    for (int i = 0; i < numWorkers; i++) {
+      WorkerInfo worker = new WorkerInfo();
+      worker.setTaskId(100 - i);
+      workers.add(worker);
+    }
+    return workers;
+  }
+
+  @Test
+  public void testTreeShape() {
+    List<WorkerInfo> workers = createWorkers(10);
+    int fanOut = 3;
+    assertSame(workers.get(0), AggregatorUtils.getTreeRoot(workers));
+    assertNull(AggregatorUtils.getTreeParent(100, workers, fanOut));
+    assertEquals(3,
+        AggregatorUtils.getTreeChildren(100, workers, fanOut).size());
+    // Every worker apart from the root is a child of its parent
+    int numChildren = 0;
+    for (WorkerInfo worker : workers) {
+      List<WorkerInfo> children = AggregatorUtils.getTreeChildren(
+          worker.getTaskId(), workers, fanOut);
+      assertTrue(children.size() <= fanOut);
+      for (WorkerInfo child : children) {
+        assertSame(worker, AggregatorUtils.getTreeParent(
+            child.getTaskId(), workers, fanOut));
+      }
+      numChildren += children.size();
+    }
+    assertEquals(workers.size() - 1, numChildren);
+    // The last worker is a leaf of the last internal node
+    assertSame(workers.get(2),
+        AggregatorUtils.getTreeParent(91, workers, fanOut));
+    assertTrue(AggregatorUtils.getTreeChildren(91, workers, fanOut).isEmpty());
+  }
+
+  @Test
+  public void testFanOutOne() {
+    List<WorkerInfo> workers = createWorkers(4);
+    for (int i = 1; i < workers.size(); i++) {
+      assertSame(workers.get(i - 1), AggregatorUtils.getTreeParent(
+          workers.get(i).getTaskId(), workers, 1));
+    }
+  }
+}
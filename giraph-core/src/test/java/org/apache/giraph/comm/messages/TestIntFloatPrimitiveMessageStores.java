@@ -18,8 +18,11 @@
 
 package org.apache.giraph.comm.messages;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.combiner.FloatSumCombiner;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveDiskBackedMessageStore;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveWritableType;
 import org.apache.giraph.comm.messages.primitives.IntByteArrayMessageStore;
 import org.apache.giraph.comm.messages.primitives.IntFloatMessageStore;
 import org.apache.giraph.conf.GiraphConfiguration;
@@ -41,9 +44,11 @@ import org.mockito.stubbing.Answer;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 
 import junit.framework.Assert;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 
@@ -170,4 +175,39 @@ public class TestIntFloatPrimitiveMessageStores {
     Assert.assertTrue(
         Iterables.isEmpty(messageStore.getVertexMessages(new IntWritable(3))));
   }
+
+  @Test
+  public void testIntFloatDiskBackedMessageStore() throws IOException {
+    File directory = Files.createTempDir();
+    PrimitiveDiskBackedMessageStore<IntWritable, FloatWritable> messageStore =
+        new PrimitiveDiskBackedMessageStore<IntWritable, FloatWritable>(
+            service, new FloatSumCombiner(), PrimitiveWritableType.INT,
+            PrimitiveWritableType.FLOAT,
+            new String[] { new File(directory, "messages").toString() },
+            1024, 1);
+    insertIntFloatMessages(messageStore);
+    insertIntFloatMessages(messageStore);
+    Assert.assertTrue(directory.listFiles().length > 0);
+
+    Iterable<FloatWritable> m0 =
+        messageStore.getVertexMessages(new IntWritable(0));
+    Assert.assertEquals(1, Iterables.size(m0));
+    Assert.assertEquals((float) 20.0, m0.iterator().next().get());
+    Iterable<FloatWritable> m1 =
+        messageStore.getVertexMessages(new IntWritable(1));
+    Assert.assertEquals(1, Iterables.size(m1));
+    Assert.assertEquals((float) 16.0, m1.iterator().next().get());
+    Iterable<FloatWritable> m2 =
+        messageStore.getVertexMessages(new IntWritable(2));
+    Assert.assertEquals(1, Iterables.size(m2));
+    Assert.assertEquals((float) 6.0, m2.iterator().next().get());
+    Assert.assertTrue(
+        Iterables.isEmpty(messageStore.getVertexMessages(new IntWritable(3))));
+
+    messageStore.clearPartition(0);
+    Assert.assertFalse(messageStore.hasMessagesForVertex(new IntWritable(0)));
+    messageStore.clearAll();
+    Assert.assertEquals(0, directory.listFiles().length);
+    FileUtils.deleteDirectory(directory);
+  }
 }
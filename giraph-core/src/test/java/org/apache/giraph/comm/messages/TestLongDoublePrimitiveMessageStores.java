@@ -18,8 +18,11 @@
 
 package org.apache.giraph.comm.messages;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.giraph.bsp.CentralizedServiceWorker;
 import org.apache.giraph.combiner.DoubleSumCombiner;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveDiskBackedMessageStore;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveWritableType;
 import org.apache.giraph.comm.messages.primitives.LongByteArrayMessageStore;
 import org.apache.giraph.comm.messages.primitives.LongDoubleMessageStore;
 import org.apache.giraph.conf.GiraphConfiguration;
@@ -41,9 +44,15 @@ import org.mockito.stubbing.Answer;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.io.Files;
 
 import junit.framework.Assert;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 
@@ -170,4 +179,57 @@ public class TestLongDoublePrimitiveMessageStores {
     Assert.assertTrue(
         Iterables.isEmpty(messageStore.getVertexMessages(new LongWritable(3))));
   }
+
+  @Test
+  public void testLongDoubleDiskBackedMessageStore() throws IOException {
+    File directory = Files.createTempDir();
+    // Every partition is spilled as soon as it has two messages
+    PrimitiveDiskBackedMessageStore<LongWritable, DoubleWritable> messageStore =
+        new PrimitiveDiskBackedMessageStore<LongWritable, DoubleWritable>(
+            service, new DoubleSumCombiner(), PrimitiveWritableType.LONG,
+            PrimitiveWritableType.DOUBLE,
+            new String[] { new File(directory, "messages").toString() },
+            1024, 1);
+    insertLongDoubleMessages(messageStore);
+    insertLongDoubleMessages(messageStore);
+    Assert.assertTrue(directory.listFiles().length > 0);
+
+    // Vertices of a partition are merged in id order
+    Assert.assertEquals(Lists.newArrayList(new LongWritable(0),
+        new LongWritable(2)), Lists.newArrayList(
+        messageStore.getPartitionDestinationVertices(0)));
+    Iterable<DoubleWritable> m0 =
+        messageStore.getVertexMessages(new LongWritable(0));
+    Assert.assertEquals(1, Iterables.size(m0));
+    Assert.assertEquals(20.0, m0.iterator().next().get());
+    Iterable<DoubleWritable> m1 =
+        messageStore.getVertexMessages(new LongWritable(1));
+    Assert.assertEquals(1, Iterables.size(m1));
+    Assert.assertEquals(16.0, m1.iterator().next().get());
+    Assert.assertTrue(
+        Iterables.isEmpty(messageStore.getVertexMessages(new LongWritable(3))));
+    messageStore.clearVertexMessages(new LongWritable(0));
+    Assert.assertFalse(messageStore.hasMessagesForVertex(new LongWritable(0)));
+    Assert.assertTrue(messageStore.hasMessagesForVertex(new LongWritable(2)));
+
+    // Messages received after merging are merged again
+    insertLongDoubleMessages(messageStore);
+    Assert.assertEquals(10.0, messageStore.getVertexMessages(
+        new LongWritable(0)).iterator().next().get());
+    Assert.assertEquals(9.0, messageStore.getVertexMessages(
+        new LongWritable(2)).iterator().next().get());
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    messageStore.writePartition(new DataOutputStream(bytes), 1);
+    LongDoubleMessageStore readStore =
+        new LongDoubleMessageStore(service, new DoubleSumCombiner());
+    readStore.readFieldsForPartition(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())), 1);
+    Assert.assertEquals(24.0, readStore.getVertexMessages(
+        new LongWritable(1)).iterator().next().get());
+
+    messageStore.clearAll();
+    Assert.assertEquals(0, directory.listFiles().length);
+    FileUtils.deleteDirectory(directory);
+  }
 }
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.comm.messages;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.combiner.SimpleSumCombiner;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveDiskBackedMessageStore;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveDiskBackedMessageStoreFactory;
+import org.apache.giraph.comm.messages.out_of_core.PrimitiveWritableType;
+import org.apache.giraph.comm.messages.primitives.LongIntMessageStore;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.factories.TestMessageValueFactory;
+import org.apache.giraph.graph.BasicComputation;
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.partition.Partition;
+import org.apache.giraph.partition.PartitionStore;
+import org.apache.giraph.utils.ByteArrayVertexIdMessages;
+import org.apache.giraph.utils.ExtendedDataOutput;
+import org.apache.giraph.utils.UnsafeByteArrayInputStream;
+import org.apache.giraph.utils.UnsafeByteArrayOutputStream;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TestLongIntPrimitiveMessageStores {
+  private static final int NUM_PARTITIONS = 2;
+  private static CentralizedServiceWorker<LongWritable, ?, ?> service;
+
+  @Before
+  public void prepare() throws IOException {
+    service = Mockito.mock(CentralizedServiceWorker.class);
+    Mockito.when(
+        service.getPartitionId(Mockito.any(LongWritable.class))).thenAnswer(
+        new Answer<Integer>() {
+          @Override
+          public Integer answer(InvocationOnMock invocation) {
+            LongWritable vertexId = (LongWritable) invocation.getArguments()[0];
+            return (int) (vertexId.get() % NUM_PARTITIONS);
+          }
+        }
+    );
+    PartitionStore partitionStore = Mockito.mock(PartitionStore.class);
+    Mockito.when(service.getPartitionStore()).thenReturn(partitionStore);
+    Mockito.when(partitionStore.getPartitionIds()).thenReturn(
+        Lists.newArrayList(0, 1));
+    Partition partition = Mockito.mock(Partition.class);
+    Mockito.when(partition.getVertexCount()).thenReturn(Long.valueOf(1));
+    Mockito.when(partitionStore.getPartition(0)).thenReturn(partition);
+    Mockito.when(partitionStore.getPartition(1)).thenReturn(partition);
+  }
+
+  private static class LongIntNoOpComputation extends
+      BasicComputation<LongWritable, NullWritable, NullWritable,
+          IntWritable> {
+    @Override
+    public void compute(Vertex<LongWritable, NullWritable, NullWritable> vertex,
+        Iterable<IntWritable> messages) throws IOException {
+    }
+  }
+
+  private static ImmutableClassesGiraphConfiguration<LongWritable, ?, ?>
+  createLongIntConf() {
+    GiraphConfiguration initConf = new GiraphConfiguration();
+    initConf.setComputationClass(LongIntNoOpComputation.class);
+    initConf.setCombinerClass(SimpleSumCombiner.class);
+    return new ImmutableClassesGiraphConfiguration(initConf);
+  }
+
+  private static ByteArrayVertexIdMessages<LongWritable, IntWritable>
+  createLongIntMessages() {
+    ByteArrayVertexIdMessages<LongWritable, IntWritable> messages =
+        new ByteArrayVertexIdMessages<LongWritable, IntWritable>(
+            new TestMessageValueFactory<IntWritable>(IntWritable.class));
+    messages.setConf(createLongIntConf());
+    messages.initialize();
+    return messages;
+  }
+
+  private static void insertLongIntMessages(
+      MessageStore<LongWritable, IntWritable> messageStore) throws
+      IOException {
+    ByteArrayVertexIdMessages<LongWritable, IntWritable> messages =
+        createLongIntMessages();
+    messages.add(new LongWritable(0), new IntWritable(1));
+    messages.add(new LongWritable(2), new IntWritable(3));
+    messages.add(new LongWritable(0), new IntWritable(4));
+    messageStore.addPartitionMessages(0, messages);
+    messages = createLongIntMessages();
+    messages.add(new LongWritable(1), new IntWritable(1));
+    messages.add(new LongWritable(1), new IntWritable(3));
+    messages.add(new LongWritable(1), new IntWritable(4));
+    messageStore.addPartitionMessages(1, messages);
+    messages = createLongIntMessages();
+    messages.add(new LongWritable(0), new IntWritable(5));
+    messageStore.addPartitionMessages(0, messages);
+  }
+
+  @Test
+  public void testLongIntMessageStore() throws IOException {
+    LongIntMessageStore messageStore =
+        new LongIntMessageStore(service, new SimpleSumCombiner());
+    insertLongIntMessages(messageStore);
+
+    Iterable<IntWritable> m0 =
+        messageStore.getVertexMessages(new LongWritable(0));
+    Assert.assertEquals(1, Iterables.size(m0));
+    Assert.assertEquals(10, m0.iterator().next().get());
+    Iterable<IntWritable> m1 =
+        messageStore.getVertexMessages(new LongWritable(1));
+    Assert.assertEquals(1, Iterables.size(m1));
+    Assert.assertEquals(8, m1.iterator().next().get());
+    Iterable<IntWritable> m2 =
+        messageStore.getVertexMessages(new LongWritable(2));
+    Assert.assertEquals(1, Iterables.size(m2));
+    Assert.assertEquals(3, m2.iterator().next().get());
+    Assert.assertTrue(
+        Iterables.isEmpty(messageStore.getVertexMessages(new LongWritable(3))));
+  }
+
+  @Test
+  public void testLongIntMessageStoreWriteRead() throws IOException {
+    LongIntMessageStore messageStore =
+        new LongIntMessageStore(service, new SimpleSumCombiner());
+    insertLongIntMessages(messageStore);
+
+    ExtendedDataOutput out = new UnsafeByteArrayOutputStream();
+    messageStore.writePartition(out, 0);
+    LongIntMessageStore readStore =
+        new LongIntMessageStore(service, new SimpleSumCombiner());
+    readStore.readFieldsForPartition(
+        new UnsafeByteArrayInputStream(out.getByteArray(), 0, out.getPos()),
+        0);
+
+    Assert.assertEquals(10,
+        readStore.getVertexMessages(new LongWritable(0)).iterator().next()
+            .get());
+    Assert.assertEquals(3,
+        readStore.getVertexMessages(new LongWritable(2)).iterator().next()
+            .get());
+    Assert.assertEquals(2,
+        Iterables.size(readStore.getPartitionDestinationVertices(0)));
+  }
+
+  @Test
+  public void testFactoryCreatesPrimitiveStore() {
+    InMemoryMessageStoreFactory<LongWritable, IntWritable> factory =
+        new InMemoryMessageStoreFactory<LongWritable, IntWritable>(
+            (CentralizedServiceWorker<LongWritable, ?, ?>) service,
+            createLongIntConf());
+    Assert.assertTrue(factory.newStore(
+        new TestMessageValueFactory<IntWritable>(IntWritable.class))
+        instanceof LongIntMessageStore);
+  }
+
+  @Test
+  public void testLongIntDiskBackedMessageStore() throws IOException {
+    File directory = Files.createTempDir();
+    PrimitiveDiskBackedMessageStore<LongWritable, IntWritable> messageStore =
+        new PrimitiveDiskBackedMessageStore<LongWritable, IntWritable>(
+            service, new SimpleSumCombiner(), PrimitiveWritableType.LONG,
+            PrimitiveWritableType.INT,
+            new String[] { new File(directory, "messages").toString() },
+            1024, 1);
+    insertLongIntMessages(messageStore);
+    insertLongIntMessages(messageStore);
+    Assert.assertTrue(directory.listFiles().length > 0);
+
+    Iterable<IntWritable> m0 =
+        messageStore.getVertexMessages(new LongWritable(0));
+    Assert.assertEquals(1, Iterables.size(m0));
+    Assert.assertEquals(20, m0.iterator().next().get());
+    Iterable<IntWritable> m1 =
+        messageStore.getVertexMessages(new LongWritable(1));
+    Assert.assertEquals(1, Iterables.size(m1));
+    Assert.assertEquals(16, m1.iterator().next().get());
+    Iterable<IntWritable> m2 =
+        messageStore.getVertexMessages(new LongWritable(2));
+    Assert.assertEquals(1, Iterables.size(m2));
+    Assert.assertEquals(6, m2.iterator().next().get());
+    Assert.assertTrue(
+        Iterables.isEmpty(messageStore.getVertexMessages(new LongWritable(3))));
+
+    ExtendedDataOutput out = new UnsafeByteArrayOutputStream();
+    messageStore.writePartition(out, 0);
+    LongIntMessageStore readStore =
+        new LongIntMessageStore(service, new SimpleSumCombiner());
+    readStore.readFieldsForPartition(
+        new UnsafeByteArrayInputStream(out.getByteArray(), 0, out.getPos()),
+        0);
+    Assert.assertEquals(20,
+        readStore.getVertexMessages(new LongWritable(0)).iterator().next()
+            .get());
+
+    messageStore.clearPartition(0);
+    Assert.assertFalse(messageStore.hasMessagesForVertex(new LongWritable(0)));
+    messageStore.clearAll();
+    Assert.assertEquals(0, directory.listFiles().length);
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testFactoryCreatesPrimitiveDiskBackedStore() {
+    ImmutableClassesGiraphConfiguration<LongWritable, ?, ?> conf =
+        createLongIntConf();
+    PrimitiveDiskBackedMessageStoreFactory<LongWritable, IntWritable>
+        factory =
+        new PrimitiveDiskBackedMessageStoreFactory<LongWritable, IntWritable>(
+            (CentralizedServiceWorker<LongWritable, ?, ?>) service, conf, 1,
+            new InMemoryMessageStoreFactory<LongWritable, IntWritable>(
+                (CentralizedServiceWorker<LongWritable, ?, ?>) service,
+                conf));
+    Assert.assertTrue(factory.newStore(
+        new TestMessageValueFactory<IntWritable>(IntWritable.class))
+        instanceof PrimitiveDiskBackedMessageStore);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.edge;
+
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link LongNullCompressedEdges} and {@link IntNullCompressedEdges}.
+ */
+public class TestCompressedEdges {
+  /**
+   * Check that edges are returned sorted, with parallel edges, and survive
+   * adding, removing and serialization.
+   */
+  @Test
+  public void testLongEdges() {
+    List<Long> expected = Lists.newArrayList(
+        5L, -3L, Long.MAX_VALUE, 1000000L, 5L, Long.MIN_VALUE, 0L);
+    LongNullCompressedEdges edges = new LongNullCompressedEdges();
+    List<Edge<LongWritable, NullWritable>> initialEdges = Lists.newArrayList();
+    for (long id : expected) {
+      initialEdges.add(EdgeFactory.create(new LongWritable(id)));
+    }
+    edges.initialize(initialEdges);
+    assertLongEdges(expected, edges);
+
+    // Enough added edges to be compressed on the way
+    Random random = new Random(42);
+    for (int i = 0; i < 100; ++i) {
+      long id = random.nextInt(1000);
+      expected.add(id);
+      edges.add(EdgeFactory.createReusable(new LongWritable(id)));
+      assertEquals(expected.size(), edges.size());
+    }
+    assertNotNull(edges.getEdgeValue(new LongWritable(-3)));
+    assertNotNull(edges.getEdgeValue(new LongWritable(expected.get(100))));
+    assertNull(edges.getEdgeValue(new LongWritable(-4)));
+    assertLongEdges(expected, edges);
+
+    edges.remove(new LongWritable(5));
+    expected.removeAll(Collections.singleton(5L));
+    assertNull(edges.getEdgeValue(new LongWritable(5)));
+    assertLongEdges(expected, edges);
+
+    LongNullCompressedEdges readEdges = new LongNullCompressedEdges();
+    WritableUtils.readFieldsFromByteArray(
+        WritableUtils.writeToByteArray(edges), readEdges);
+    assertLongEdges(expected, readEdges);
+  }
+
+  /**
+   * Check that int edges are returned sorted and survive adding, removing
+   * and serialization.
+   */
+  @Test
+  public void testIntEdges() {
+    List<Integer> expected = Lists.newArrayList();
+    IntNullCompressedEdges edges = new IntNullCompressedEdges();
+    edges.initialize(10);
+    expected.add(Integer.MIN_VALUE);
+    expected.add(Integer.MAX_VALUE);
+    Random random = new Random(42);
+    for (int i = 0; i < 100; ++i) {
+      expected.add(random.nextInt());
+    }
+    for (int id : expected) {
+      edges.add(EdgeFactory.createReusable(new IntWritable(id)));
+    }
+    assertIntEdges(expected, edges);
+    assertNotNull(edges.getEdgeValue(new IntWritable(expected.get(50))));
+
+    edges.remove(new IntWritable(Integer.MIN_VALUE));
+    expected.remove(Integer.valueOf(Integer.MIN_VALUE));
+    assertIntEdges(expected, edges);
+
+    IntNullCompressedEdges readEdges = new IntNullCompressedEdges();
+    WritableUtils.readFieldsFromByteArray(
+        WritableUtils.writeToByteArray(edges), readEdges);
+    assertIntEdges(expected, readEdges);
+
+    edges.initialize();
+    assertEquals(0, edges.size());
+    assertNull(edges.getEdgeValue(new IntWritable(0)));
+  }
+
+  /**
+   * Check that edges have the expected target vertex ids, in order.
+   *
+   * @param expected Expected target vertex ids, in any order
+   * @param edges Edges to check
+   */
+  private static void assertLongEdges(List<Long> expected,
+      OutEdges<LongWritable, NullWritable> edges) {
+    List<Long> sorted = Lists.newArrayList(expected);
+    Collections.sort(sorted);
+    List<Long> actual = Lists.newArrayList();
+    for (Edge<LongWritable, NullWritable> edge : edges) {
+      actual.add(edge.getTargetVertexId().get());
+    }
+    assertEquals(sorted, actual);
+    assertEquals(sorted.size(), edges.size());
+  }
+
+  /**
+   * Check that edges have the expected target vertex ids, in order.
+   *
+   * @param expected Expected target vertex ids, in any order
+   * @param edges Edges to check
+   */
+  private static void assertIntEdges(List<Integer> expected,
+      OutEdges<IntWritable, NullWritable> edges) {
+    List<Integer> sorted = Lists.newArrayList(expected);
+    Collections.sort(sorted);
+    List<Integer> actual = Lists.newArrayList();
+    for (Edge<IntWritable, NullWritable> edge : edges) {
+      actual.add(edge.getTargetVertexId().get());
+    }
+    assertEquals(sorted, actual);
+    assertEquals(sorted.size(), edges.size());
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.edge;
+
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.partition.Partition;
+import org.apache.giraph.partition.PartitionStore;
+import org.apache.giraph.partition.SimplePartitionStore;
+import org.apache.giraph.utils.ByteArrayVertexIdEdges;
+import org.apache.giraph.utils.NoOpComputation;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the sorted ingestion of {@link EdgeStore}.
+ */
+public class TestEdgeStore {
+  public static class IntComputation extends NoOpComputation<IntWritable,
+      NullWritable, IntWritable, NullWritable> { }
+
+  public static class TextComputation extends NoOpComputation<Text,
+      NullWritable, IntWritable, NullWritable> { }
+
+  /** Sources of the edges, in the order they arrive */
+  private static final int[] SOURCES = new int[] { 3, 1, 3, -2, 1, 3, 1 };
+
+  @Test
+  public void testSortedIngestionPrimitiveIds() {
+    GiraphConfiguration configuration = new GiraphConfiguration();
+    configuration.setComputationClass(IntComputation.class);
+    configuration.setOutEdgesClass(ByteArrayEdges.class);
+    ImmutableClassesGiraphConfiguration<IntWritable, NullWritable,
+        IntWritable> conf = new ImmutableClassesGiraphConfiguration<
+        IntWritable, NullWritable, IntWritable>(configuration);
+    List<IntWritable> sourceIds = Lists.newArrayList();
+    for (int source : SOURCES) {
+      sourceIds.add(new IntWritable(source));
+    }
+    testSortedIngestion(conf, sourceIds);
+  }
+
+  @Test
+  public void testSortedIngestionGenericIds() {
+    GiraphConfiguration configuration = new GiraphConfiguration();
+    configuration.setComputationClass(TextComputation.class);
+    configuration.setOutEdgesClass(ArrayListEdges.class);
+    ImmutableClassesGiraphConfiguration<Text, NullWritable,
+        IntWritable> conf = new ImmutableClassesGiraphConfiguration<
+        Text, NullWritable, IntWritable>(configuration);
+    List<Text> sourceIds = Lists.newArrayList();
+    for (int source : SOURCES) {
+      sourceIds.add(new Text("v" + source));
+    }
+    testSortedIngestion(conf, sourceIds);
+  }
+
+  /**
+   * Send the edges from the given sources in two chunks to a partition,
+   * with the index of each edge as its value, and check that every vertex
+   * gets its edges in the order they arrived.
+   *
+   * @param conf Configuration
+   * @param sourceIds Sources of the edges
+   */
+  private <I extends WritableComparable, V extends Writable>
+  void testSortedIngestion(
+      ImmutableClassesGiraphConfiguration<I, V, IntWritable> conf,
+      List<I> sourceIds) {
+    conf.setEdgeStoreSortedIngestion(true);
+    Mapper<?, ?, ?, ?>.Context context = mock(Mapper.Context.class);
+    PartitionStore<I, V, IntWritable> partitionStore =
+        new SimplePartitionStore<I, V, IntWritable>(conf, context);
+    partitionStore.addPartition(conf.createPartition(0, context));
+    CentralizedServiceWorker<I, V, IntWritable> service =
+        mock(CentralizedServiceWorker.class);
+    when(service.getPartitionStore()).thenReturn(partitionStore);
+    EdgeStore<I, V, IntWritable> edgeStore =
+        new EdgeStore<I, V, IntWritable>(service, conf, context);
+
+    int numEdges = sourceIds.size();
+    int[] chunkEnds = new int[] { numEdges / 2, numEdges };
+    int start = 0;
+    for (int end : chunkEnds) {
+      ByteArrayVertexIdEdges<I, IntWritable> edges =
+          new ByteArrayVertexIdEdges<I, IntWritable>();
+      edges.setConf(conf);
+      edges.initialize();
+      for (int i = start; i < end; ++i) {
+        edges.add(sourceIds.get(i),
+            EdgeFactory.create(sourceIds.get(i), new IntWritable(i)));
+      }
+      edgeStore.addPartitionEdges(0, edges);
+      start = end;
+    }
+    edgeStore.moveEdgesToVertices();
+
+    Partition<I, V, IntWritable> partition = partitionStore.getPartition(0);
+    int numVertices = 0;
+    int numMovedEdges = 0;
+    for (Vertex<I, V, IntWritable> vertex : partition) {
+      ++numVertices;
+      int previousIndex = -1;
+      for (Edge<I, IntWritable> edge : vertex.getEdges()) {
+        int index = edge.getValue().get();
+        assertEquals(sourceIds.get(index), vertex.getId());
+        assertEquals(vertex.getId(), edge.getTargetVertexId());
+        // Edges of a vertex keep the order they arrived in
+        assertTrue(index > previousIndex);
+        previousIndex = index;
+        ++numMovedEdges;
+      }
+    }
+    partitionStore.putPartition(partition);
+    assertEquals(3, numVertices);
+    assertEquals(numEdges, numMovedEdges);
+  }
+}
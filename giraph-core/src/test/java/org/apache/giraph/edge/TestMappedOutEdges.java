@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.edge;
+
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.utils.ExtendedByteArrayDataOutput;
+import org.apache.giraph.utils.IntNoOpComputation;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link MappedOutEdges}.
+ */
+public class TestMappedOutEdges {
+  @Test
+  public void testWriteCopiesWrittenEdges() throws IOException {
+    GiraphConfiguration giraphConf = new GiraphConfiguration();
+    giraphConf.setComputationClass(IntNoOpComputation.class);
+    giraphConf.setOutEdgesClass(ByteArrayEdges.class);
+    ImmutableClassesGiraphConfiguration<IntWritable, IntWritable,
+        IntWritable> conf = new ImmutableClassesGiraphConfiguration<
+        IntWritable, IntWritable, IntWritable>(giraphConf);
+    OutEdges<IntWritable, IntWritable> edges =
+        conf.createAndInitializeOutEdges();
+    for (int i = 0; i < 3; ++i) {
+      edges.add(EdgeFactory.create(new IntWritable(i), new IntWritable(i)));
+    }
+
+    // Map the edges the way the partition store does
+    ExtendedByteArrayDataOutput mappable = new ExtendedByteArrayDataOutput();
+    MappedOutEdges.writeMappable(mappable, edges);
+    ByteBuffer buffer = ByteBuffer.wrap(mappable.getByteArray(), 0,
+        mappable.getPos());
+    int numEdges = buffer.getInt();
+    int numBytes = buffer.getInt();
+    ByteBuffer serializedEdges = buffer.slice();
+    serializedEdges.limit(numBytes);
+    buffer.position(buffer.position() + numBytes);
+    numBytes = buffer.getInt();
+    ByteBuffer writtenEdges = buffer.slice();
+    writtenEdges.limit(numBytes);
+
+    // Writing the mapped edges mustn't read them
+    ImmutableClassesGiraphConfiguration<IntWritable, IntWritable,
+        IntWritable> spyConf = Mockito.spy(conf);
+    MappedOutEdges<IntWritable, IntWritable> mappedEdges =
+        new MappedOutEdges<IntWritable, IntWritable>(
+            spyConf, serializedEdges, writtenEdges, numEdges);
+    DataOutputBuffer output = new DataOutputBuffer();
+    mappedEdges.write(output);
+    Mockito.verify(spyConf, Mockito.never()).createAndInitializeOutEdges(
+        Mockito.anyInt());
+
+    DataOutputBuffer expected = new DataOutputBuffer();
+    edges.write(expected);
+    assertArrayEquals(
+        Arrays.copyOf(expected.getData(), expected.getLength()),
+        Arrays.copyOf(output.getData(), output.getLength()));
+    DataInputBuffer input = new DataInputBuffer();
+    input.reset(output.getData(), output.getLength());
+    OutEdges<IntWritable, IntWritable> readEdges = conf.createOutEdges();
+    readEdges.readFields(input);
+    assertEquals(3, readEdges.size());
+  }
+}
@@ -112,6 +112,46 @@ public class TestEdgeInput extends BspCase {
     assertEquals(2, (int) values.get(4));
   }
 
+  // It should build the same graph when sorting the edges in chunks,
+  // both for new vertices and vertices from the vertex input.
+  @Test
+  public void testSortedIngestion() throws Exception {
+    String[] vertices = new String[] {
+        "1 75",
+        "2 34",
+        "3 13",
+        "4 32"
+    };
+    String[] edges = new String[] {
+        "2 3",
+        "1 2",
+        "5 3",
+        "2 4",
+        "4 1",
+        "2 1"
+    };
+
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(ComputationCountEdges.class);
+    conf.setOutEdgesClass(ByteArrayEdges.class);
+    conf.setEdgeStoreSortedIngestion(true);
+    conf.setVertexInputFormatClass(IntIntTextVertexValueInputFormat.class);
+    conf.setEdgeInputFormatClass(IntNullReverseTextEdgeInputFormat.class);
+    conf.setVertexOutputFormatClass(IdWithValueTextOutputFormat.class);
+    Iterable<String> results = InternalVertexRunner.run(conf, vertices, edges);
+
+    Map<Integer, Integer> values = parseResults(results);
+
+    // Check that all vertices have been created
+    assertEquals(5, values.size());
+    // Check the number of edges for each vertex
+    assertEquals(3, (int) values.get(1));
+    assertEquals(4, (int) values.get(2));
+    assertEquals(2, (int) values.get(3));
+    assertEquals(2, (int) values.get(4));
+    assertEquals(1, (int) values.get(5));
+  }
+
   // It should be able to build a graph by specifying vertex data and edges
   // as separate input formats.
   @Test
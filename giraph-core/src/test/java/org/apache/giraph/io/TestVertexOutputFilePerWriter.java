@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.io;
+
+import org.apache.giraph.BspCase;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.edge.ByteArrayEdges;
+import org.apache.giraph.io.formats.IdWithValueTextOutputFormat;
+import org.apache.giraph.io.formats.IntNullTextEdgeInputFormat;
+import org.apache.giraph.utils.ComputationCountEdges;
+import org.apache.giraph.utils.InternalVertexRunner;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test writing the output of several threads to a file per vertex writer.
+ */
+public class TestVertexOutputFilePerWriter extends BspCase {
+  public TestVertexOutputFilePerWriter() {
+    super(TestVertexOutputFilePerWriter.class.getName());
+  }
+
+  @Test
+  public void testParallelTextOutput() throws Exception {
+    String[] edges = new String[100];
+    for (int i = 0; i < edges.length; ++i) {
+      edges[i] = i + " " + ((i + 1) % edges.length);
+    }
+
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(ComputationCountEdges.class);
+    conf.setOutEdgesClass(ByteArrayEdges.class);
+    conf.setEdgeInputFormatClass(IntNullTextEdgeInputFormat.class);
+    conf.setVertexOutputFormatClass(IdWithValueTextOutputFormat.class);
+    conf.setVertexOutputFilePerWriter(true);
+    conf.setVertexOutputFormatThreadSafe(true);
+    conf.setNumOutputThreads(4);
+    GiraphConstants.USER_PARTITION_COUNT.set(conf, 8);
+    Iterable<String> results = InternalVertexRunner.run(conf, null, edges);
+
+    Map<Integer, Integer> values = Maps.newHashMap();
+    for (String line : results) {
+      String[] tokens = line.split("\\s+");
+      values.put(Integer.valueOf(tokens[0]), Integer.valueOf(tokens[1]));
+    }
+    // Every vertex is written exactly once, by one of the writers
+    assertEquals(edges.length, values.size());
+    for (int i = 0; i < edges.length; ++i) {
+      assertEquals(1, (int) values.get(i));
+    }
+  }
+}
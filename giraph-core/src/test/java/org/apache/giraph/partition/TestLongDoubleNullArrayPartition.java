@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.partition;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.edge.Edge;
+import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.edge.LongNullArrayEdges;
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.utils.NoOpComputation;
+import org.apache.giraph.utils.UnsafeByteArrayInputStream;
+import org.apache.giraph.utils.UnsafeByteArrayOutputStream;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test case for {@link LongDoubleNullArrayPartition}.
+ */
+public class TestLongDoubleNullArrayPartition {
+  private ImmutableClassesGiraphConfiguration<LongWritable, DoubleWritable,
+      NullWritable> conf;
+  private Mapper<?, ?, ?, ?>.Context context;
+
+  public static class MyComputation extends NoOpComputation<LongWritable,
+      DoubleWritable, NullWritable, DoubleWritable> { }
+
+  @Before
+  public void setUp() {
+    GiraphConfiguration configuration = new GiraphConfiguration();
+    configuration.setComputationClass(MyComputation.class);
+    configuration.setOutEdgesClass(LongNullArrayEdges.class);
+    configuration.setPartitionClass(LongDoubleNullArrayPartition.class);
+    conf = new ImmutableClassesGiraphConfiguration<LongWritable,
+        DoubleWritable, NullWritable>(configuration);
+    context = mock(Mapper.Context.class);
+  }
+
+  private Vertex<LongWritable, DoubleWritable, NullWritable> createVertex(
+      long id, double value, long... targets) {
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        conf.createVertex();
+    vertex.initialize(new LongWritable(id), new DoubleWritable(value));
+    for (long target : targets) {
+      vertex.addEdge(EdgeFactory.create(new LongWritable(target)));
+    }
+    return vertex;
+  }
+
+  private Set<Long> getTargets(
+      Vertex<LongWritable, DoubleWritable, NullWritable> vertex) {
+    Set<Long> targets = Sets.newHashSet();
+    for (Edge<LongWritable, NullWritable> edge : vertex.getEdges()) {
+      targets.add(edge.getTargetVertexId().get());
+    }
+    return targets;
+  }
+
+  private Set<Long> getActiveIds(
+      ActiveVerticesPartition<LongWritable, DoubleWritable, NullWritable>
+          partition) {
+    // The ids are reused, so they have to be copied
+    Set<Long> ids = Sets.newHashSet();
+    for (LongWritable id : partition.getActiveVertexIds()) {
+      ids.add(id.get());
+    }
+    return ids;
+  }
+
+  private Partition<LongWritable, DoubleWritable, NullWritable>
+  createPartition() {
+    Partition<LongWritable, DoubleWritable, NullWritable> partition =
+        conf.createPartition(7, context);
+    partition.putVertex(createVertex(1, 1.5, 2, 3));
+    partition.putVertex(createVertex(2, 2.5, 3));
+    partition.putVertex(createVertex(3, 3.5));
+    return partition;
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    Partition<LongWritable, DoubleWritable, NullWritable> partition =
+        createPartition();
+    assertEquals(3, partition.getVertexCount());
+    assertEquals(3, partition.getEdgeCount());
+
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        partition.getVertex(new LongWritable(1));
+    assertEquals(1.5, vertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(2L, 3L), getTargets(vertex));
+    assertNull(partition.getVertex(new LongWritable(4)));
+
+    Vertex<LongWritable, DoubleWritable, NullWritable> oldVertex =
+        partition.putVertex(createVertex(2, 20, 1, 3, 4));
+    assertEquals(2.5, oldVertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(3L), getTargets(oldVertex));
+    assertEquals(5, partition.getEdgeCount());
+
+    Vertex<LongWritable, DoubleWritable, NullWritable> removedVertex =
+        partition.removeVertex(new LongWritable(1));
+    assertEquals(1.5, removedVertex.getValue().get(), 0d);
+    assertEquals(2, partition.getVertexCount());
+    assertEquals(3, partition.getEdgeCount());
+    assertNull(partition.getVertex(new LongWritable(1)));
+    vertex = partition.getVertex(new LongWritable(2));
+    assertEquals(20, vertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(1L, 3L, 4L), getTargets(vertex));
+  }
+
+  @Test
+  public void testSaveVertex() {
+    Partition<LongWritable, DoubleWritable, NullWritable> partition =
+        createPartition();
+    for (Vertex<LongWritable, DoubleWritable, NullWritable> vertex :
+        partition) {
+      vertex.getValue().set(vertex.getId().get() * 10);
+      if (vertex.getId().get() == 1) {
+        vertex.removeEdges(new LongWritable(2));
+        vertex.voteToHalt();
+      } else if (vertex.getId().get() == 3) {
+        vertex.addEdge(EdgeFactory.create(new LongWritable(1)));
+        vertex.addEdge(EdgeFactory.create(new LongWritable(2)));
+      }
+      partition.saveVertex(vertex);
+    }
+
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        partition.getVertex(new LongWritable(1));
+    assertEquals(10, vertex.getValue().get(), 0d);
+    assertTrue(vertex.isHalted());
+    assertEquals(Sets.newHashSet(3L), getTargets(vertex));
+    vertex = partition.getVertex(new LongWritable(2));
+    assertEquals(20, vertex.getValue().get(), 0d);
+    assertFalse(vertex.isHalted());
+    assertEquals(Sets.newHashSet(3L), getTargets(vertex));
+    vertex = partition.getVertex(new LongWritable(3));
+    assertEquals(30, vertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(1L, 2L), getTargets(vertex));
+    assertEquals(4, partition.getEdgeCount());
+  }
+
+  @Test
+  public void testActiveVertexIds() {
+    ActiveVerticesPartition<LongWritable, DoubleWritable, NullWritable>
+        partition = (ActiveVerticesPartition<LongWritable, DoubleWritable,
+            NullWritable>) createPartition();
+    partition.getVertex(new LongWritable(2)).voteToHalt();
+    assertEquals(Sets.newHashSet(1L, 3L), getActiveIds(partition));
+
+    partition.removeVertex(new LongWritable(1));
+    partition.getVertex(new LongWritable(2)).wakeUp();
+    partition.putVertex(createVertex(4, 4.5));
+    assertEquals(Sets.newHashSet(2L, 3L, 4L), getActiveIds(partition));
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    Partition<LongWritable, DoubleWritable, NullWritable> partition =
+        createPartition();
+    partition.getVertex(new LongWritable(3)).voteToHalt();
+    UnsafeByteArrayOutputStream outputStream =
+        new UnsafeByteArrayOutputStream();
+    partition.write(outputStream);
+    UnsafeByteArrayInputStream inputStream = new UnsafeByteArrayInputStream(
+        outputStream.getByteArray(), 0, outputStream.getPos());
+    Partition<LongWritable, DoubleWritable, NullWritable>
+        deserializedPartition = conf.createPartition(-1, context);
+    deserializedPartition.readFields(inputStream);
+
+    assertEquals(7, deserializedPartition.getId());
+    assertEquals(3, deserializedPartition.getVertexCount());
+    assertEquals(3, deserializedPartition.getEdgeCount());
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        deserializedPartition.getVertex(new LongWritable(1));
+    assertEquals(1.5, vertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(2L, 3L), getTargets(vertex));
+    assertTrue(deserializedPartition.getVertex(
+        new LongWritable(3)).isHalted());
+  }
+
+  @Test
+  public void testDiskBackedPartitionStore() throws IOException {
+    File directory = Files.createTempDir();
+    GiraphConstants.PARTITIONS_DIRECTORY.set(
+        conf, new File(directory, "giraph_partitions").toString());
+    GiraphConstants.USE_OUT_OF_CORE_GRAPH.set(conf, true);
+    GiraphConstants.MAX_PARTITIONS_IN_MEMORY.set(conf, 1);
+    PartitionStore<LongWritable, DoubleWritable, NullWritable>
+        partitionStore = new DiskBackedPartitionStore<LongWritable,
+            DoubleWritable, NullWritable>(conf, context);
+
+    partitionStore.addPartition(createPartition());
+    Partition<LongWritable, DoubleWritable, NullWritable> other =
+        conf.createPartition(8, context);
+    other.putVertex(createVertex(10, 10.5, 1));
+    partitionStore.addPartition(other);
+
+    Partition<LongWritable, DoubleWritable, NullWritable> partition =
+        partitionStore.getPartition(7);
+    assertEquals(3, partition.getVertexCount());
+    assertEquals(3, partition.getEdgeCount());
+    Vertex<LongWritable, DoubleWritable, NullWritable> vertex =
+        partition.getVertex(new LongWritable(2));
+    assertEquals(2.5, vertex.getValue().get(), 0d);
+    assertEquals(Sets.newHashSet(3L), getTargets(vertex));
+    partitionStore.putPartition(partition);
+
+    partitionStore.shutdown();
+    FileUtils.deleteDirectory(directory);
+  }
+}
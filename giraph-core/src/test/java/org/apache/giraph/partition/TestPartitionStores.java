@@ -22,8 +22,12 @@ import org.apache.commons.io.FileUtils;
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.edge.Edge;
 import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.edge.MappedOutEdges;
 import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.graph.VertexRangeScheduler;
+import org.apache.giraph.utils.HeapPressureMonitor;
 import org.apache.giraph.utils.NoOpComputation;
 import org.apache.giraph.utils.UnsafeByteArrayInputStream;
 import org.apache.giraph.utils.UnsafeByteArrayOutputStream;
@@ -34,13 +38,18 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -86,6 +95,51 @@ public class TestPartitionStores {
     partitionStore.shutdown();
   }
 
+  @Test
+  public void testSimplePartitionEdgeCount() throws IOException {
+    Vertex<IntWritable, IntWritable, NullWritable> v1 = conf.createVertex();
+    v1.initialize(new IntWritable(1), new IntWritable(1));
+    v1.addEdge(EdgeFactory.create(new IntWritable(2)));
+    Vertex<IntWritable, IntWritable, NullWritable> v2 = conf.createVertex();
+    v2.initialize(new IntWritable(2), new IntWritable(2));
+    v2.addEdge(EdgeFactory.create(new IntWritable(1)));
+    v2.addEdge(EdgeFactory.create(new IntWritable(3)));
+    Partition<IntWritable, IntWritable, NullWritable> partition =
+        createPartition(conf, 1, v1, v2);
+    assertEquals(3, partition.getEdgeCount());
+
+    // Computed vertices report their change
+    ActiveVerticesPartition<IntWritable, IntWritable, NullWritable>
+        activePartition = (ActiveVerticesPartition<IntWritable, IntWritable,
+            NullWritable>) partition;
+    int previousNumEdges = v1.getNumEdges();
+    v1.addEdge(EdgeFactory.create(new IntWritable(3)));
+    activePartition.saveComputedVertex(v1, previousNumEdges);
+    assertEquals(4, partition.getEdgeCount());
+
+    // Vertices modified in place are counted again
+    v2.removeEdges(new IntWritable(3));
+    partition.putVertex(v2);
+    assertEquals(3, partition.getEdgeCount());
+    partition.removeVertex(new IntWritable(1));
+    assertEquals(1, partition.getEdgeCount());
+
+    Vertex<IntWritable, IntWritable, NullWritable> v3 = conf.createVertex();
+    v3.initialize(new IntWritable(3), new IntWritable(3));
+    v3.addEdge(EdgeFactory.create(new IntWritable(1)));
+    partition.addPartition(createPartition(conf, 1, v3));
+    assertEquals(2, partition.getEdgeCount());
+
+    UnsafeByteArrayOutputStream outputStream =
+        new UnsafeByteArrayOutputStream();
+    partition.write(outputStream);
+    Partition<IntWritable, IntWritable, NullWritable> readPartition =
+        conf.createPartition(-1, context);
+    readPartition.readFields(new UnsafeByteArrayInputStream(
+        outputStream.getByteArray(), 0, outputStream.getPos()));
+    assertEquals(2, readPartition.getEdgeCount());
+  }
+
   @Test
   public void testUnsafePartitionSerializationClass() throws IOException {
     conf.setPartitionClass(ByteArrayPartition.class);
@@ -163,6 +217,242 @@ public class TestPartitionStores {
     FileUtils.deleteDirectory(directory);
   }
 
+  @Test
+  public void testDiskBackedPartitionStoreAdaptiveEviction()
+    throws IOException {
+    File directory = Files.createTempDir();
+    GiraphConstants.PARTITIONS_DIRECTORY.set(
+        conf, new File(directory, "giraph_partitions").toString());
+    GiraphConstants.USE_OUT_OF_CORE_GRAPH.set(conf, true);
+    GiraphConstants.OUT_OF_CORE_ADAPTIVE_EVICTION.set(conf, true);
+    Map<String, Long> thresholds = getCollectionUsageThresholds();
+
+    // Everything fits in memory
+    GiraphConstants.OUT_OF_CORE_HEAP_HIGH_WATERMARK.set(conf, 1.0f);
+    PartitionStore<IntWritable, IntWritable, NullWritable> partitionStore =
+        new DiskBackedPartitionStore<IntWritable, IntWritable, NullWritable>(
+            conf, context);
+    testReadWrite(partitionStore, conf);
+    partitionStore.shutdown();
+
+    // Nothing fits in memory, beyond the one partition always allowed
+    GiraphConstants.OUT_OF_CORE_HEAP_HIGH_WATERMARK.set(conf, 0.0f);
+    GiraphConstants.OUT_OF_CORE_HEAP_LOW_WATERMARK.set(conf, 0.0f);
+    GiraphConstants.OUT_OF_CORE_EVICTION_POLICY.set(
+        conf, OutOfCoreEvictionPolicy.LARGEST_FIRST);
+    partitionStore = new DiskBackedPartitionStore<IntWritable,
+        IntWritable, NullWritable>(conf, context);
+    testReadWrite(partitionStore, conf);
+    partitionStore.shutdown();
+    FileUtils.deleteDirectory(directory);
+
+    // The thresholds are shared by the whole JVM
+    assertEquals(thresholds, getCollectionUsageThresholds());
+  }
+
+  /**
+   * Get the collection usage thresholds of the heap pools supporting them.
+   *
+   * @return Thresholds by pool name
+   */
+  private static Map<String, Long> getCollectionUsageThresholds() {
+    Map<String, Long> thresholds = Maps.newHashMap();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.isCollectionUsageThresholdSupported()) {
+        thresholds.put(pool.getName(), pool.getCollectionUsageThreshold());
+      }
+    }
+    return thresholds;
+  }
+
+  @Test
+  public void testDiskBackedPartitionStorePrefetch() throws IOException {
+    File directory = Files.createTempDir();
+    GiraphConstants.PARTITIONS_DIRECTORY.set(
+        conf, new File(directory, "giraph_partitions").toString());
+    GiraphConstants.USE_OUT_OF_CORE_GRAPH.set(conf, true);
+    GiraphConstants.MAX_PARTITIONS_IN_MEMORY.set(conf, 2);
+    GiraphConstants.OUT_OF_CORE_PREFETCH_PARTITIONS.set(conf, 2);
+
+    PartitionStore<IntWritable, IntWritable, NullWritable> partitionStore =
+        new DiskBackedPartitionStore<IntWritable, IntWritable, NullWritable>(
+            conf, context);
+    testReadWrite(partitionStore, conf);
+    for (int i = 5; i < 10; ++i) {
+      Vertex<IntWritable, IntWritable, NullWritable> vertex =
+          conf.createVertex();
+      vertex.initialize(new IntWritable(i), new IntWritable(i));
+      partitionStore.addPartition(createPartition(conf, i, vertex));
+    }
+
+    // Supersteps handing out the partitions in the order of the scheduler
+    for (int superstep = 0; superstep < 3; ++superstep) {
+      VertexRangeScheduler<IntWritable, IntWritable, NullWritable> scheduler =
+          new VertexRangeScheduler<IntWritable, IntWritable, NullWritable>(
+              partitionStore, 0);
+      int numVertices = 0;
+      VertexRangeScheduler.VertexRange<IntWritable, IntWritable,
+          NullWritable> range = null;
+      while ((range = scheduler.next(range)) != null) {
+        Partition<IntWritable, IntWritable, NullWritable> partition =
+            range.getPartition();
+        for (Vertex<IntWritable, IntWritable, NullWritable> vertex :
+            range.getVertices()) {
+          vertex.setValue(new IntWritable(vertex.getValue().get() + 1));
+          partition.saveVertex(vertex);
+          numVertices++;
+        }
+        assertTrue(scheduler.finish(range));
+        partitionStore.putPartition(partition);
+      }
+      assertEquals(9, numVertices);
+    }
+    Partition<IntWritable, IntWritable, NullWritable> partition =
+        partitionStore.getPartition(9);
+    assertEquals(12,
+        partition.getVertex(new IntWritable(9)).getValue().get());
+    partitionStore.putPartition(partition);
+    partition = partitionStore.getPartition(4);
+    assertEquals(2, partition.getEdgeCount());
+    partitionStore.putPartition(partition);
+
+    partitionStore.shutdown();
+    FileUtils.deleteDirectory(directory);
+  }
+
+  /**
+   * Heap monitor whose pressure is set by the test.
+   */
+  private static class FakeHeapPressureMonitor extends HeapPressureMonitor {
+    /** Whether the heap is under pressure */
+    private volatile boolean underPressure = false;
+
+    /**
+     * Constructor, with watermarks which are never exceeded
+     */
+    public FakeHeapPressureMonitor() {
+      super(1.0f, 1.0f);
+    }
+
+    public void setUnderPressure(boolean underPressure) {
+      this.underPressure = underPressure;
+    }
+
+    @Override
+    public boolean isUnderPressure() {
+      return underPressure;
+    }
+
+    @Override
+    public boolean admit(long bytes) {
+      return !underPressure;
+    }
+  }
+
+  @Test
+  public void testDiskBackedPartitionStorePressureKeepsRemaining()
+    throws IOException {
+    File directory = Files.createTempDir();
+    GiraphConstants.PARTITIONS_DIRECTORY.set(
+        conf, new File(directory, "giraph_partitions").toString());
+    GiraphConstants.USE_OUT_OF_CORE_GRAPH.set(conf, true);
+    GiraphConstants.OUT_OF_CORE_ADAPTIVE_EVICTION.set(conf, true);
+    GiraphConstants.OUT_OF_CORE_PREFETCH_PARTITIONS.set(conf, 2);
+    FakeHeapPressureMonitor heapMonitor = new FakeHeapPressureMonitor();
+
+    PartitionStore<IntWritable, IntWritable, NullWritable> partitionStore =
+        new DiskBackedPartitionStore<IntWritable, IntWritable, NullWritable>(
+            conf, context, heapMonitor);
+    Map<Integer, Partition<IntWritable, IntWritable, NullWritable>>
+        partitions = Maps.newHashMap();
+    for (int i = 1; i <= 4; ++i) {
+      if (i == 4) {
+        // The last partition doesn't fit, so it goes to disk
+        heapMonitor.setUnderPressure(true);
+      }
+      Vertex<IntWritable, IntWritable, NullWritable> vertex =
+          conf.createVertex();
+      vertex.initialize(new IntWritable(i), new IntWritable(i));
+      Partition<IntWritable, IntWritable, NullWritable> partition =
+          createPartition(conf, i, vertex);
+      partitions.put(i, partition);
+      partitionStore.addPartition(partition);
+    }
+
+    // Every put spills under pressure, but only the finished partitions
+    VertexRangeScheduler<IntWritable, IntWritable, NullWritable> scheduler =
+        new VertexRangeScheduler<IntWritable, IntWritable, NullWritable>(
+            partitionStore, 0);
+    int numVertices = 0;
+    VertexRangeScheduler.VertexRange<IntWritable, IntWritable,
+        NullWritable> range = null;
+    while ((range = scheduler.next(range)) != null) {
+      Partition<IntWritable, IntWritable, NullWritable> partition =
+          range.getPartition();
+      if (partition.getId() != 4) {
+        assertSame(partitions.get(partition.getId()), partition);
+      }
+      for (Vertex<IntWritable, IntWritable, NullWritable> vertex :
+          range.getVertices()) {
+        assertEquals(partition.getId(), vertex.getValue().get());
+        numVertices++;
+      }
+      assertTrue(scheduler.finish(range));
+      partitionStore.putPartition(partition);
+    }
+    assertEquals(4, numVertices);
+
+    partitionStore.shutdown();
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testDiskBackedPartitionStoreMmapStaticEdges()
+    throws IOException {
+    File directory = Files.createTempDir();
+    GiraphConstants.PARTITIONS_DIRECTORY.set(
+        conf, new File(directory, "giraph_partitions").toString());
+    GiraphConstants.USE_OUT_OF_CORE_GRAPH.set(conf, true);
+    GiraphConstants.MAX_PARTITIONS_IN_MEMORY.set(conf, 1);
+    GiraphConstants.STATIC_GRAPH.set(conf, true);
+    GiraphConstants.MMAP_STATIC_GRAPH_EDGES.set(conf, true);
+
+    PartitionStore<IntWritable, IntWritable, NullWritable> partitionStore =
+        new DiskBackedPartitionStore<IntWritable, IntWritable, NullWritable>(
+            conf, context);
+    testReadWrite(partitionStore, conf);
+
+    // Swap partition 4 out and in again, so its edges are mapped
+    Partition<IntWritable, IntWritable, NullWritable> partition =
+        partitionStore.getPartition(1);
+    partitionStore.putPartition(partition);
+    partition = partitionStore.getPartition(4);
+    Vertex<IntWritable, IntWritable, NullWritable> vertex =
+        partition.getVertex(new IntWritable(7));
+    assertTrue(vertex.getEdges() instanceof MappedOutEdges);
+    assertEquals(2, vertex.getNumEdges());
+    int targetSum = 0;
+    for (Edge<IntWritable, NullWritable> edge : vertex.getEdges()) {
+      targetSum += edge.getTargetVertexId().get();
+    }
+    assertEquals(3, targetSum);
+    vertex.setValue(new IntWritable(8));
+    partitionStore.putPartition(partition);
+
+    // Vertex values are still written back, the edges stay mapped
+    partition = partitionStore.getPartition(1);
+    partitionStore.putPartition(partition);
+    partition = partitionStore.getPartition(4);
+    vertex = partition.getVertex(new IntWritable(7));
+    assertEquals(8, vertex.getValue().get());
+    assertEquals(2, vertex.getNumEdges());
+    assertEquals(2, partition.getEdgeCount());
+    partitionStore.putPartition(partition);
+
+    partitionStore.shutdown();
+    FileUtils.deleteDirectory(directory);
+  }
+
   /**
    * Test reading/writing to/from a partition store
    *
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link ByteArrayPool}.
+ */
+public class TestByteArrayPool {
+  @Test
+  public void testSizeClasses() {
+    ByteArrayPool pool = new ByteArrayPool(1024 * 1024);
+    byte[] array = pool.getArray(3000);
+    assertEquals(4096, array.length);
+    pool.recycle(array);
+    assertEquals(4096, pool.getPooledBytes());
+
+    // Too big for the recycled array
+    assertEquals(8192, pool.getArray(4097).length);
+    // Fits the recycled array
+    assertSame(array, pool.getArray(2049));
+    assertEquals(0, pool.getPooledBytes());
+
+    // Grown arrays are pooled in the size class they fully cover
+    byte[] grownArray = new byte[6000];
+    pool.recycle(grownArray);
+    assertNotSame(grownArray, pool.getArray(6000));
+    assertSame(grownArray, pool.getArray(4096));
+  }
+
+  @Test
+  public void testLimits() {
+    ByteArrayPool pool = new ByteArrayPool(2048);
+    // Too small to pool
+    byte[] smallArray = pool.getArray(10);
+    assertTrue(smallArray.length >= 10);
+    pool.recycle(new byte[100]);
+    assertEquals(0, pool.getPooledBytes());
+
+    pool.recycle(new byte[2048]);
+    assertEquals(2048, pool.getPooledBytes());
+    // Over the maximum number of pooled bytes
+    pool.recycle(new byte[1024]);
+    assertEquals(2048, pool.getPooledBytes());
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.giraph.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.giraph.aggregators.Aggregator;
+import org.apache.giraph.aggregators.DoubleMaxAggregator;
+import org.apache.giraph.aggregators.DoubleSumAggregator;
+import org.apache.giraph.aggregators.FloatSumAggregator;
+import org.apache.giraph.aggregators.IntMinAggregator;
+import org.apache.giraph.aggregators.LongSumAggregator;
+import org.apache.giraph.aggregators.TextAppendAggregator;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestStripedAccumulator {
+  /** Number of threads accumulating concurrently */
+  private static final int NUM_THREADS = 8;
+  /** Number of values accumulated by each thread */
+  private static final int NUM_VALUES = 10000;
+
+  /**
+   * Accumulate the values 1..NUM_VALUES from each of the threads.
+   *
+   * @param accumulator Accumulator
+   * @param writableClass Class of the values
+   */
+  private static void accumulateConcurrently(
+      final StripedAccumulator accumulator,
+      final Class<? extends Writable> writableClass)
+      throws InterruptedException {
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 1; i <= NUM_VALUES; i++) {
+            Writable value;
+            if (writableClass == IntWritable.class) {
+              value = new IntWritable(i);
+            } else if (writableClass == LongWritable.class) {
+              value = new LongWritable(i);
+            } else {
+              value = new DoubleWritable(i);
+            }
+            accumulator.accumulate(value);
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void testSum() throws InterruptedException {
+    Aggregator<Writable> longSum = (Aggregator) new LongSumAggregator();
+    StripedAccumulator accumulator =
+        StripedAccumulator.create(LongSumAggregator.class, NUM_THREADS);
+    accumulateConcurrently(accumulator, LongWritable.class);
+    accumulator.foldInto(longSum);
+    long expected = NUM_THREADS * (long) NUM_VALUES * (NUM_VALUES + 1) / 2;
+    assertEquals(expected, ((LongWritable) longSum.getAggregatedValue()).get());
+    // Folding again adds nothing
+    accumulator.foldInto(longSum);
+    assertEquals(expected, ((LongWritable) longSum.getAggregatedValue()).get());
+
+    Aggregator<Writable> doubleSum = (Aggregator) new DoubleSumAggregator();
+    accumulator =
+        StripedAccumulator.create(DoubleSumAggregator.class, NUM_THREADS);
+    accumulateConcurrently(accumulator, DoubleWritable.class);
+    accumulator.foldInto(doubleSum);
+    assertEquals(expected,
+        ((DoubleWritable) doubleSum.getAggregatedValue()).get(), 0d);
+  }
+
+  @Test
+  public void testMinMax() throws InterruptedException {
+    Aggregator<Writable> intMin = (Aggregator) new IntMinAggregator();
+    StripedAccumulator accumulator =
+        StripedAccumulator.create(IntMinAggregator.class, NUM_THREADS);
+    accumulateConcurrently(accumulator, IntWritable.class);
+    accumulator.foldInto(intMin);
+    assertEquals(1, ((IntWritable) intMin.getAggregatedValue()).get());
+
+    Aggregator<Writable> doubleMax = (Aggregator) new DoubleMaxAggregator();
+    accumulator =
+        StripedAccumulator.create(DoubleMaxAggregator.class, NUM_THREADS);
+    accumulateConcurrently(accumulator, DoubleWritable.class);
+    accumulator.foldInto(doubleMax);
+    assertEquals(NUM_VALUES,
+        ((DoubleWritable) doubleMax.getAggregatedValue()).get(), 0d);
+  }
+
+  @Test
+  public void testFloatSumRounding() {
+    // 1 is lost when added to 1e8 in float, but not in double
+    Aggregator<Writable> expected = (Aggregator) new FloatSumAggregator();
+    Aggregator<Writable> floatSum = (Aggregator) new FloatSumAggregator();
+    StripedAccumulator accumulator =
+        StripedAccumulator.create(FloatSumAggregator.class, 1);
+    expected.aggregate(new FloatWritable(1e8f));
+    accumulator.accumulate(new FloatWritable(1e8f));
+    for (int i = 0; i < 10; i++) {
+      expected.aggregate(new FloatWritable(1f));
+      accumulator.accumulate(new FloatWritable(1f));
+    }
+    accumulator.foldInto(floatSum);
+    assertEquals(((FloatWritable) expected.getAggregatedValue()).get(),
+        ((FloatWritable) floatSum.getAggregatedValue()).get(), 0f);
+  }
+
+  @Test
+  public void testUnsupportedAggregator() {
+    assertNull(StripedAccumulator.create(TextAppendAggregator.class, 1));
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.giraph.worker;
+
+import org.apache.giraph.aggregators.LongSumAggregator;
+import org.apache.giraph.bsp.CentralizedServiceWorker;
+import org.apache.giraph.comm.ServerData;
+import org.apache.giraph.comm.WorkerClient;
+import org.apache.giraph.comm.aggregators.AllAggregatorServerData;
+import org.apache.giraph.comm.aggregators.OwnerAggregatorServerData;
+import org.apache.giraph.comm.aggregators.SendAggregatorCache;
+import org.apache.giraph.comm.netty.NettyWorkerAggregatorRequestProcessor;
+import org.apache.giraph.comm.requests.SendAggregatorsToMasterRequest;
+import org.apache.giraph.comm.requests.SendAggregatorsToOwnerRequest;
+import org.apache.giraph.comm.requests.WorkerRequest;
+import org.apache.giraph.comm.requests.WritableRequest;
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.master.MasterInfo;
+import org.apache.giraph.utils.IntNoOpComputation;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.util.Progressable;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test reducing and broadcasting aggregators through the tree over workers,
+ * with the requests delivered straight to the server data of the workers.
+ */
+public class TestWorkerAggregatorTree {
+  /** Name of the aggregator */
+  private static final String SUM = "sum";
+  /** Number of workers, so that the tree has an internal node and leaves */
+  private static final int NUM_WORKERS = 4;
+
+  /** Server data of the workers, by task id */
+  private final Map<Integer, ServerData> serverDataMap = Maps.newHashMap();
+  /** Aggregator data the root sent to the master */
+  private final List<byte[]> masterData = Lists.newArrayList();
+
+  @Test
+  public void testReduceAndBroadcast() throws IOException {
+    GiraphConfiguration configuration = new GiraphConfiguration();
+    configuration.setComputationClass(IntNoOpComputation.class);
+    GiraphConstants.AGGREGATOR_TREE_FAN_OUT.set(configuration, 2);
+    ImmutableClassesGiraphConfiguration conf =
+        new ImmutableClassesGiraphConfiguration(configuration);
+    Progressable progressable = mock(Progressable.class);
+
+    List<WorkerInfo> workers = Lists.newArrayList();
+    for (int i = 0; i < NUM_WORKERS; i++) {
+      WorkerInfo worker = new WorkerInfo();
+      worker.setTaskId(10 + i);
+      workers.add(worker);
+    }
+    WorkerClient workerClient = mock(WorkerClient.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        Integer taskId = (Integer) invocation.getArguments()[0];
+        WritableRequest request =
+            (WritableRequest) invocation.getArguments()[1];
+        if (request instanceof SendAggregatorsToMasterRequest) {
+          masterData.add(((SendAggregatorsToMasterRequest) request).getData());
+        } else {
+          ((WorkerRequest) request).doRequest(serverDataMap.get(taskId));
+        }
+        return null;
+      }
+    }).when(workerClient).sendWritableRequest(
+        Mockito.anyInt(), Mockito.any(WritableRequest.class));
+
+    List<WorkerAggregatorHandler> handlers = Lists.newArrayList();
+    List<NettyWorkerAggregatorRequestProcessor> requestProcessors =
+        Lists.newArrayList();
+    for (WorkerInfo worker : workers) {
+      ServerData serverData = mock(ServerData.class);
+      when(serverData.getAllAggregatorData()).thenReturn(
+          new AllAggregatorServerData(progressable, conf));
+      when(serverData.getOwnerAggregatorData()).thenReturn(
+          new OwnerAggregatorServerData(progressable, conf));
+      serverDataMap.put(worker.getTaskId(), serverData);
+      CentralizedServiceWorker service = mock(CentralizedServiceWorker.class);
+      when(service.getWorkerInfo()).thenReturn(worker);
+      when(service.getWorkerInfoList()).thenReturn(workers);
+      when(service.getMasterInfo()).thenReturn(new MasterInfo());
+      when(service.getServerData()).thenReturn(serverData);
+      when(service.getWorkerClient()).thenReturn(workerClient);
+      handlers.add(new WorkerAggregatorHandler(service, conf, progressable));
+      requestProcessors.add(new NettyWorkerAggregatorRequestProcessor(
+          progressable, conf, service));
+    }
+
+    long value = 5;
+    for (int superstep = 0; superstep < 2; superstep++) {
+      sendFromMaster(workers, value);
+      // Parents forward the values before their children wait for them
+      for (int i = 0; i < NUM_WORKERS; i++) {
+        handlers.get(i).prepareSuperstep(requestProcessors.get(i));
+        assertEquals(value,
+            handlers.get(i).<LongWritable>getAggregatedValue(SUM).get());
+        handlers.get(i).aggregate(SUM,
+            new LongWritable(workers.get(i).getTaskId()));
+      }
+      // Children send their values before their parents wait for them
+      for (int i = NUM_WORKERS - 1; i >= 0; i--) {
+        handlers.get(i).finishSuperstep(requestProcessors.get(i));
+      }
+      // Only the root sends the total of all of the workers to the master
+      assertEquals(1, masterData.size());
+      DataInputStream input = new DataInputStream(
+          new ByteArrayInputStream(masterData.remove(0)));
+      assertEquals(1, input.readInt());
+      assertEquals(SUM, input.readUTF());
+      LongWritable total = new LongWritable();
+      total.readFields(input);
+      assertEquals(10 + 11 + 12 + 13, total.get());
+      value = total.get();
+    }
+  }
+
+  /**
+   * Send the value of the aggregator from the master to the root, and the
+   * request counts to all of the workers.
+   *
+   * @param workers Workers
+   * @param value Value of the aggregator
+   */
+  private void sendFromMaster(List<WorkerInfo> workers, long value)
+    throws IOException {
+    SendAggregatorCache cache = new SendAggregatorCache();
+    cache.addAggregator(workers.get(0).getTaskId(), SUM,
+        LongSumAggregator.class, new LongWritable(value));
+    for (WorkerInfo worker : workers) {
+      cache.addCountAggregator(worker.getTaskId());
+      new SendAggregatorsToOwnerRequest(
+          cache.removeAggregators(worker.getTaskId()),
+          new MasterInfo().getTaskId()).doRequest(
+          serverDataMap.get(worker.getTaskId()));
+    }
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.giraph.examples;
 
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.graph.BasicComputation;
 import org.apache.giraph.graph.Vertex;
 import org.apache.giraph.worker.DefaultWorkerContext;
@@ -30,7 +31,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Vertex to test the local variables in Computation, and pre/postSuperstep
- * methods
+ * and pre/postPartition methods
  */
 public class TestComputationStateComputation extends BasicComputation<
     LongWritable, DoubleWritable, FloatWritable, DoubleWritable> {
@@ -42,8 +43,8 @@ public class TestComputationStateComputation extends BasicComputation<
   public static final int NUM_PARTITIONS = 25;
 
   /**
-   * The counter should hold the number of vertices in this partition,
-   * plus the current superstep
+   * The counter should hold the number of vertices in the partitions of
+   * this Computation, plus the current superstep for each of them
    */
   private long counter;
 
@@ -59,7 +60,14 @@ public class TestComputationStateComputation extends BasicComputation<
 
   @Override
   public void preSuperstep() {
-    counter =
+    counter = 0;
+    ((TestComputationStateWorkerContext) getWorkerContext()).numComputations
+        .incrementAndGet();
+  }
+
+  @Override
+  public void prePartition(int partitionId) {
+    counter +=
       ((TestComputationStateWorkerContext) getWorkerContext()).superstepCounter;
   }
 
@@ -80,17 +88,25 @@ public class TestComputationStateComputation extends BasicComputation<
      * This counter should hold the sum of Computation's counters
      */
     private AtomicLong totalCounter;
+    /** Number of Computations created in this superstep */
+    private AtomicLong numComputations;
 
     @Override
     public void preSuperstep() {
       superstepCounter = getSuperstep();
       totalCounter = new AtomicLong(0);
+      numComputations = new AtomicLong(0);
     }
 
     @Override
     public void postSuperstep() {
       assertEquals(totalCounter.get(),
           NUM_PARTITIONS * superstepCounter + getTotalNumVertices());
+      boolean computationPerThread =
+          GiraphConstants.COMPUTATION_PER_THREAD.get(
+              getContext().getConfiguration());
+      assertEquals(computationPerThread ? NUM_COMPUTE_THREADS : NUM_PARTITIONS,
+          numComputations.get());
     }
   }
 
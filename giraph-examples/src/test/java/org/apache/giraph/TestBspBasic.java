@@ -252,6 +252,35 @@ public class
     }
   }
 
+  /**
+   * Run a sample BSP job locally and test supersteps, with the workers
+   * letting the master know they finished through Netty.
+   *
+   * @throws IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testBspNettySuperstepBarrier()
+      throws IOException, InterruptedException, ClassNotFoundException {
+    String callingMethod = getCallingMethodName();
+    Path outputPath = getTempPath(callingMethod);
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(SimpleSuperstepComputation.class);
+    conf.setVertexInputFormatClass(SimpleSuperstepVertexInputFormat.class);
+    conf.setVertexOutputFormatClass(SimpleSuperstepVertexOutputFormat.class);
+    GiraphConstants.NETTY_SUPERSTEP_BARRIER.set(conf, true);
+    GiraphJob job = prepareJob(callingMethod, conf, outputPath);
+    Configuration configuration = job.getConfiguration();
+    // GeneratedInputSplit will generate 10 vertices
+    GeneratedVertexReader.READER_VERTICES.set(configuration, 10);
+    assertTrue(job.run(true));
+    if (!runningInDistributedMode()) {
+      FileStatus fileStatus = getSinglePartFileStatus(configuration, outputPath);
+      assertEquals(49l, fileStatus.getLen());
+    }
+  }
+
   /**
    * Run a sample BSP job locally and test messages.
    *
@@ -38,6 +38,17 @@ public class TestComputationState extends BspCase {
   @Test
   public void testComputationState() throws IOException,
       ClassNotFoundException, InterruptedException {
+    testComputationState(false);
+  }
+
+  @Test
+  public void testComputationStatePerThread() throws IOException,
+      ClassNotFoundException, InterruptedException {
+    testComputationState(true);
+  }
+
+  private void testComputationState(boolean computationPerThread)
+      throws IOException, ClassNotFoundException, InterruptedException {
     if (runningInDistributedMode()) {
       System.out.println(
           "testComputeContext: Ignore this test in distributed mode.");
@@ -50,6 +61,7 @@ public class TestComputationState extends BspCase {
     conf.setWorkerContextClass(
         TestComputationStateComputation.TestComputationStateWorkerContext.class);
     GiraphJob job = prepareJob(getCallingMethodName(), conf);
+    job.getConfiguration().setComputationPerThread(computationPerThread);
     // Use multithreading
     job.getConfiguration().setNumComputeThreads(
         TestComputationStateComputation.NUM_COMPUTE_THREADS);
@@ -21,13 +21,18 @@ package org.apache.giraph;
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.examples.SimpleCheckpoint;
+import org.apache.giraph.examples.SimplePageRankComputation;
+import org.apache.giraph.examples.SimplePageRankComputation.SimplePageRankVertexInputFormat;
+import org.apache.giraph.examples.SimplePageRankComputation.SimplePageRankVertexOutputFormat;
 import org.apache.giraph.examples.SimpleSuperstepComputation.SimpleSuperstepVertexInputFormat;
 import org.apache.giraph.examples.SimpleSuperstepComputation.SimpleSuperstepVertexOutputFormat;
 import org.apache.giraph.job.GiraphJob;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
@@ -111,4 +116,129 @@ public class TestManualCheckpoint extends BspCase {
       assertEquals(idSum, idSumRestarted);
     }
   }
+
+  /**
+   * Run PageRank on a static graph with compressed incremental checkpoints,
+   * and restart it from a checkpoint without edges.
+   * @throws IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testBspIncrementalCheckpoint()
+      throws IOException, InterruptedException, ClassNotFoundException {
+    checkPageRankRestart(getCallingMethodName(), false, false);
+  }
+
+  /**
+   * Run PageRank with checkpoints written while computing, and restart it.
+   * @throws IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testBspAsyncCheckpoint()
+      throws IOException, InterruptedException, ClassNotFoundException {
+    checkPageRankRestart(getCallingMethodName(), true, false);
+  }
+
+  /**
+   * Run PageRank with local copies of the checkpoints, and restart it from
+   * them.
+   * @throws IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  @Test
+  public void testBspLocalCacheCheckpoint()
+      throws IOException, InterruptedException, ClassNotFoundException {
+    checkPageRankRestart(getCallingMethodName(), false, true);
+  }
+
+  /**
+   * Run PageRank with checkpoints every two supersteps, restart it from
+   * superstep 4 and check that the results are the same.  Superstep 4 only
+   * has the vertex values, the edges are in superstep 2.
+   *
+   * @param name Name of the job
+   * @param asyncCheckpoints Write the checkpoints while computing?
+   * @param useLocalCache Keep local copies of the checkpoints?
+   * @throws IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  private void checkPageRankRestart(String name, boolean asyncCheckpoints,
+      boolean useLocalCache)
+      throws IOException, InterruptedException, ClassNotFoundException {
+    Path checkpointsDir = getTempPath(name + "CheckPoints");
+    Path localCacheDir = getTempPath(name + "LocalCache");
+    Path outputPath = getTempPath(name);
+    GiraphJob job = prepareJob(name, createPageRankConfiguration(
+        asyncCheckpoints, useLocalCache, localCacheDir), outputPath);
+    GiraphConfiguration configuration = job.getConfiguration();
+    GiraphConstants.CHECKPOINT_DIRECTORY.set(configuration,
+        checkpointsDir.toString());
+    GiraphConstants.CLEANUP_CHECKPOINTS_AFTER_SUCCESS.set(configuration,
+        false);
+    configuration.setCheckpointFrequency(2);
+
+    assertTrue(job.run(true));
+    if (useLocalCache && !runningInDistributedMode()) {
+      assertTrue(new File(localCacheDir.toUri().getPath(),
+          checkpointsDir.toUri().getPath()).isDirectory());
+    }
+    double maxPageRank =
+        SimplePageRankComputation.SimplePageRankWorkerContext.getFinalMax();
+    double minPageRank =
+        SimplePageRankComputation.SimplePageRankWorkerContext.getFinalMin();
+
+    outputPath = getTempPath(name + "Restarted");
+    GiraphJob restartedJob = prepareJob(name + "Restarted",
+        createPageRankConfiguration(
+            asyncCheckpoints, useLocalCache, localCacheDir), outputPath);
+    GiraphConfiguration restartedJobConf = restartedJob.getConfiguration();
+    GiraphConstants.CHECKPOINT_DIRECTORY.set(restartedJobConf,
+        checkpointsDir.toString());
+    restartedJobConf.setLong(GiraphConstants.RESTART_SUPERSTEP, 4);
+
+    assertTrue(restartedJob.run(true));
+    if (!runningInDistributedMode()) {
+      assertEquals(maxPageRank,
+          SimplePageRankComputation.SimplePageRankWorkerContext.getFinalMax(),
+          0d);
+      assertEquals(minPageRank,
+          SimplePageRankComputation.SimplePageRankWorkerContext.getFinalMin(),
+          0d);
+    }
+  }
+
+  /**
+   * Create the configuration of a PageRank job with compressed incremental
+   * checkpoints.
+   *
+   * @param asyncCheckpoints Write the checkpoints while computing?
+   * @param useLocalCache Keep local copies of the checkpoints?
+   * @param localCacheDir Directory of the local copies
+   * @return Configuration
+   */
+  private static GiraphConfiguration createPageRankConfiguration(
+      boolean asyncCheckpoints, boolean useLocalCache, Path localCacheDir) {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(SimplePageRankComputation.class);
+    conf.setMasterComputeClass(
+        SimplePageRankComputation.SimplePageRankMasterCompute.class);
+    conf.setWorkerContextClass(
+        SimplePageRankComputation.SimplePageRankWorkerContext.class);
+    conf.setVertexInputFormatClass(SimplePageRankVertexInputFormat.class);
+    conf.setVertexOutputFormatClass(SimplePageRankVertexOutputFormat.class);
+    GiraphConstants.STATIC_GRAPH.set(conf, true);
+    GiraphConstants.INCREMENTAL_CHECKPOINTS.set(conf, true);
+    GiraphConstants.CHECKPOINT_COMPRESSION_CODEC.set(conf,
+        DefaultCodec.class);
+    GiraphConstants.ASYNC_CHECKPOINTS.set(conf, asyncCheckpoints);
+    GiraphConstants.USE_CHECKPOINT_LOCAL_CACHE.set(conf, useLocalCache);
+    GiraphConstants.CHECKPOINT_LOCAL_CACHE_DIRECTORY.set(conf,
+        localCacheDir.toUri().getPath());
+    return conf;
+  }
 }
@@ -88,6 +88,73 @@ public class TestAggregatorsHandling extends BspCase {
     assertTrue(job.run(true));
   }
 
+  /**
+   * Tests if aggregators are handled correctly with several compute threads
+   * and lock-free accumulators
+   */
+  @Test
+  public void testAggregatorsHandlingWithThreads() throws IOException,
+      ClassNotFoundException, InterruptedException {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(AggregatorsTestComputation.class);
+    conf.setVertexInputFormatClass(
+        AggregatorsTestComputation.SimpleVertexInputFormat.class);
+    conf.setEdgeInputFormatClass(
+        AggregatorsTestComputation.SimpleEdgeInputFormat.class);
+    GiraphJob job = prepareJob(getCallingMethodName(), conf);
+    job.getConfiguration().setMasterComputeClass(
+        AggregatorsTestComputation.AggregatorsTestMasterCompute.class);
+    job.getConfiguration().setNumComputeThreads(4);
+    job.getConfiguration().setBoolean(
+        AggregatorUtils.USE_THREAD_LOCAL_AGGREGATORS, true);
+    GiraphConstants.USE_STRIPED_AGGREGATORS.set(job.getConfiguration(),
+        true);
+    assertTrue(job.run(true));
+  }
+
+  /**
+   * Tests if aggregators are handled correctly with thread-local copies of
+   * all of them, when the lock-free accumulators are disabled
+   */
+  @Test
+  public void testAggregatorsHandlingWithThreadLocalCopies()
+      throws IOException, ClassNotFoundException, InterruptedException {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(AggregatorsTestComputation.class);
+    conf.setVertexInputFormatClass(
+        AggregatorsTestComputation.SimpleVertexInputFormat.class);
+    conf.setEdgeInputFormatClass(
+        AggregatorsTestComputation.SimpleEdgeInputFormat.class);
+    GiraphJob job = prepareJob(getCallingMethodName(), conf);
+    job.getConfiguration().setMasterComputeClass(
+        AggregatorsTestComputation.AggregatorsTestMasterCompute.class);
+    job.getConfiguration().setNumComputeThreads(4);
+    job.getConfiguration().setBoolean(
+        AggregatorUtils.USE_THREAD_LOCAL_AGGREGATORS, true);
+    GiraphConstants.USE_STRIPED_AGGREGATORS.set(job.getConfiguration(),
+        false);
+    assertTrue(job.run(true));
+  }
+
+  /** Tests if aggregators are handled correctly through the worker tree */
+  @Test
+  public void testAggregatorsHandlingInTree() throws IOException,
+      ClassNotFoundException, InterruptedException {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setComputationClass(AggregatorsTestComputation.class);
+    conf.setVertexInputFormatClass(
+        AggregatorsTestComputation.SimpleVertexInputFormat.class);
+    conf.setEdgeInputFormatClass(
+        AggregatorsTestComputation.SimpleEdgeInputFormat.class);
+    GiraphJob job = prepareJob(getCallingMethodName(), conf);
+    job.getConfiguration().setMasterComputeClass(
+        AggregatorsTestComputation.AggregatorsTestMasterCompute.class);
+    job.getConfiguration().setInt(
+        AggregatorUtils.MAX_BYTES_PER_AGGREGATOR_REQUEST, 50);
+    GiraphConstants.AGGREGATOR_TREE_FAN_OUT.set(job.getConfiguration(), 2);
+    assertTrue(job.run(true));
+  }
+
   /** Test if aggregators serialization captures everything */
   @Test
   public void testMasterAggregatorsSerialization() throws
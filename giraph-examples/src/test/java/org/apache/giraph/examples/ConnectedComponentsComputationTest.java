@@ -20,6 +20,7 @@ package org.apache.giraph.examples;
 
 import org.apache.giraph.combiner.MinimumIntCombiner;
 import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.edge.ByteArrayEdges;
 import org.apache.giraph.io.formats.IdWithValueTextOutputFormat;
 import org.apache.giraph.io.formats.IntIntNullTextInputFormat;
@@ -46,7 +47,22 @@ public class ConnectedComponentsComputationTest {
      */
     @Test
     public void testToyData() throws Exception {
+        testToyData(new GiraphConfiguration());
+    }
+
+    /**
+     * A local integration test on toy data, combining messages on the
+     * sending side with a cache too small for all of them
+     */
+    @Test
+    public void testToyDataSendCombiningCache() throws Exception {
+        GiraphConfiguration conf = new GiraphConfiguration();
+        conf.setSendCombiningCache(true);
+        GiraphConstants.SEND_COMBINING_CACHE_MAX_MESSAGES.set(conf, 4);
+        testToyData(conf);
+    }
 
+    private void testToyData(GiraphConfiguration conf) throws Exception {
         // a small graph with three components
         String[] graph = new String[] {
                 "1 2 3",
@@ -65,7 +81,6 @@ public class ConnectedComponentsComputationTest {
 
                 "9" };
 
-        GiraphConfiguration conf = new GiraphConfiguration();
         conf.setComputationClass(ConnectedComponentsComputation.class);
         conf.setOutEdgesClass(ByteArrayEdges.class);
         conf.setCombinerClass(MinimumIntCombiner.class);
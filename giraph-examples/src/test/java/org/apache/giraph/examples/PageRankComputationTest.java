@@ -20,6 +20,9 @@ package org.apache.giraph.examples;
 
 import org.apache.giraph.conf.GiraphConfiguration;
 import org.apache.giraph.edge.ByteArrayEdges;
+import org.apache.giraph.edge.LongNullArrayEdges;
+import org.apache.giraph.edge.LongNullCompressedEdges;
+import org.apache.giraph.partition.LongDoubleNullArrayPartition;
 import org.apache.giraph.utils.InternalVertexRunner;
 import org.junit.Test;
 
@@ -38,7 +41,39 @@ public class PageRankComputationTest {
    */
   @Test
   public void testToyData() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setOutEdgesClass(ByteArrayEdges.class);
+    testToyData(conf);
+  }
+
+  /**
+   * A local integration test on toy data, keeping the graph in primitive
+   * arrays
+   */
+  @Test
+  public void testToyDataArrayPartition() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setOutEdgesClass(LongNullArrayEdges.class);
+    conf.setPartitionClass(LongDoubleNullArrayPartition.class);
+    testToyData(conf);
+  }
 
+  /**
+   * A local integration test on toy data, keeping the edges compressed
+   */
+  @Test
+  public void testToyDataCompressedEdges() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setOutEdgesClass(LongNullCompressedEdges.class);
+    testToyData(conf);
+  }
+
+  /**
+   * Run on toy data and check the results
+   *
+   * @param conf Configuration with the graph storage classes set
+   */
+  private void testToyData(GiraphConfiguration conf) throws Exception {
     // A small graph
     String[] graph = new String[] {
       "1 4 2 3",
@@ -47,12 +82,10 @@ public class PageRankComputationTest {
       "5 2 4"
     };
 
-    GiraphConfiguration conf = new GiraphConfiguration();
     conf.setInt(RandomWalkWithRestartComputation.MAX_SUPERSTEPS, 50);
     conf.setFloat(
         RandomWalkWithRestartComputation.TELEPORTATION_PROBABILITY, 0.15f);
     conf.setComputationClass(PageRankComputation.class);
-    conf.setOutEdgesClass(ByteArrayEdges.class);
     conf.setVertexInputFormatClass(LongDoubleNullTextInputFormat.class);
     conf.setVertexOutputFormatClass(
         VertexWithDoubleValueNullEdgeTextOutputFormat.class);
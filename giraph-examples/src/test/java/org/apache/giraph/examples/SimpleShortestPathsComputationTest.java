@@ -18,7 +18,10 @@
 
 package org.apache.giraph.examples;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.giraph.combiner.MinimumDoubleCombiner;
 import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.edge.ByteArrayEdges;
 import org.apache.giraph.edge.EdgeFactory;
 import org.apache.giraph.graph.DefaultVertex;
@@ -38,7 +41,9 @@ import org.mockito.Mockito;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 
+import java.io.File;
 import java.util.Map;
 
 import static org.apache.giraph.examples.SimpleShortestPathsComputation.SOURCE_ID;
@@ -115,7 +120,63 @@ public class SimpleShortestPathsComputationTest {
    */
   @Test
   public void testToyData() throws Exception {
+    testToyData(new GiraphConfiguration());
+  }
+
+  /**
+   * A local integration test on toy data, only computing the active vertices
+   * and the vertices which received messages
+   */
+  @Test
+  public void testToyDataActiveVertexFrontier() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setActiveVertexFrontier(true);
+    testToyData(conf);
+  }
 
+  /**
+   * A local integration test on toy data, sending the messages of every
+   * partition as soon as it is computed
+   */
+  @Test
+  public void testToyDataPipelineMessageFlush() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setPipelineMessageFlush(true);
+    conf.setMaxOpenRequestBytes(1);
+    testToyData(conf);
+  }
+
+  /**
+   * A local integration test on toy data, reusing the buffers of the sent
+   * messages
+   */
+  @Test
+  public void testToyDataSendBufferPool() throws Exception {
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setSendBufferPool(true);
+    testToyData(conf);
+  }
+
+  /**
+   * A local integration test on toy data, with combined out-of-core
+   * messages spilled after every message
+   */
+  @Test
+  public void testToyDataOutOfCoreMessages() throws Exception {
+    File directory = Files.createTempDir();
+    GiraphConfiguration conf = new GiraphConfiguration();
+    conf.setCombinerClass(MinimumDoubleCombiner.class);
+    GiraphConstants.USE_OUT_OF_CORE_MESSAGES.set(conf, true);
+    GiraphConstants.MAX_MESSAGES_IN_MEMORY.set(conf, 1);
+    GiraphConstants.MESSAGES_DIRECTORY.set(conf, directory.toString());
+    try {
+      testToyData(conf);
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  private void testToyData(GiraphConfiguration conf) throws Exception {
     // a small four vertex graph
     String[] graph = new String[] {
         "[1,0,[[2,1],[3,3]]]",
@@ -124,7 +185,6 @@ public class SimpleShortestPathsComputationTest {
         "[4,0,[]]"
     };
 
-    GiraphConfiguration conf = new GiraphConfiguration();
     // start from vertex 1
     SOURCE_ID.set(conf, 1);
     conf.setComputationClass(SimpleShortestPathsComputation.class);
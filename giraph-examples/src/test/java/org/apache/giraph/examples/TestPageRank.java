@@ -53,6 +53,12 @@ public class TestPageRank extends BspCase {
     testPageRank(10);
   }
 
+  @Test
+  public void testPageRankVertexRangesCompute()
+      throws ClassNotFoundException, IOException, InterruptedException {
+    testPageRank(4, 1);
+  }
+
   /**
    * Generic page rank test
    *
@@ -63,6 +69,21 @@ public class TestPageRank extends BspCase {
    */
   private void testPageRank(int numComputeThreads)
       throws IOException, InterruptedException, ClassNotFoundException {
+    testPageRank(numComputeThreads, 0);
+  }
+
+  /**
+   * Generic page rank test
+   *
+   * @param numComputeThreads Number of compute threads to use
+   * @param vertexRangeSize Vertex range size to split partitions into (all
+   *                        vertices are put into a single partition if > 0)
+   * @throws java.io.IOException
+   * @throws ClassNotFoundException
+   * @throws InterruptedException
+   */
+  private void testPageRank(int numComputeThreads, int vertexRangeSize)
+      throws IOException, InterruptedException, ClassNotFoundException {
     GiraphConfiguration conf = new GiraphConfiguration();
     conf.setComputationClass(SimplePageRankComputation.class);
     conf.setVertexInputFormatClass(
@@ -73,7 +94,11 @@ public class TestPageRank extends BspCase {
         SimplePageRankComputation.SimplePageRankMasterCompute.class);
     conf.setNumComputeThreads(numComputeThreads);
     // Set enough partitions to generate randomness on the compute side
-    if (numComputeThreads != 1) {
+    if (vertexRangeSize > 0) {
+      // Compute threads can only share the single partition by splitting it
+      GiraphConstants.USER_PARTITION_COUNT.set(conf, 1);
+      conf.setComputeVertexRangeSize(vertexRangeSize);
+    } else if (numComputeThreads != 1) {
       GiraphConstants.USER_PARTITION_COUNT.set(conf, numComputeThreads * 5);
     }
     GiraphJob job = prepareJob(getCallingMethodName(), conf);